@@ -1,17 +1,87 @@
 package application;
 
 import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.util.List;
 
+import configuration.GlobalEventManager;
+import configuration.ReferenceData;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.layout.BorderPane; 
 import javafx.stage.Stage;
+import library.audit.AuditLog;
+import library.logging.Log;
+import library.reminders.OutboxSink;
+import library.reminders.ReminderScheduler;
+import library.utilities.JournalReplayer;
+import library.utilities.MigrationRunner;
+import library.utilities.TransactionDAO;
 
 public class App extends Application {
 
+    private static final Log LOG = Log.get(App.class);
+
+    // Replays loans/returns recorded while the database was unreachable
+    private JournalReplayer journalReplayer;
+    // Daily due-date reminders, enabled with -Dpatronmanager.reminders.at=HH:mm
+    private ReminderScheduler reminderScheduler;
+    // Why init() found the schema unusable, or null
+    private String schemaProblem;
+
+    /**
+     * Brings the schema up to date before any tab queries it (runs before the window
+     * opens). Only the online migrations are applied; those marked NOT ONLINE are left
+     * to MigrationRunner, run out of hours, unless started with
+     * -Dpatronmanager.migrate=all. With -Dpatronmanager.migrate=false nothing is
+     * applied, e.g. for desks whose database user may not change the schema.
+     *
+     * A desk whose schema is still behind, or whose migration failed, refuses to start
+     * ({@link #start}); a desk that cannot reach the database starts anyway and works
+     * offline.
+     */
+    @Override
+    public void init() {
+        String mode = System.getProperty("patronmanager.migrate", "online");
+        MigrationRunner runner = new MigrationRunner();
+        try {
+            if (!mode.equals("false")) {
+                for (String script : runner.migrate(!mode.equals("all"))) {
+                    LOG.atInfo("migrate").message("Applied schema migration").field("script", script).log();
+                }
+            }
+            List<String> pending = runner.pending();
+            if (!pending.isEmpty()) {
+                schemaProblem = "The database schema is behind this version of the application. " +
+                    "Apply these migrations with MigrationRunner, out of hours: " + String.join(", ", pending);
+            }
+        } catch (SQLException e) {
+            if (TransactionDAO.isConnectivityFailure(e)) {
+                LOG.atWarn("migrate").message("Database unreachable, starting offline").cause(e).log();
+            } else {
+                LOG.atError("migrate").message("Schema migrations not applied").cause(e).log();
+                schemaProblem = "A schema migration failed: " + e.getMessage();
+            }
+        } catch (IOException e) {
+            LOG.atError("migrate").message("Schema migrations not applied").cause(e).log();
+            schemaProblem = "The schema migrations could not be read: " + e.getMessage();
+        }
+    }
+
     @Override
     public void start(Stage primaryStage) {
+        if (schemaProblem != null) {
+            // The tabs' queries would fail or corrupt data against an older schema
+            Alert alert = new Alert(Alert.AlertType.ERROR, schemaProblem);
+            alert.setHeaderText("Cannot start");
+            alert.showAndWait();
+            Platform.exit();
+            return;
+        }
         try {
             // Load main layout
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/ui/MainApplication.fxml"));
@@ -27,12 +97,51 @@ public class App extends Application {
             primaryStage.setScene(scene);
             primaryStage.setTitle("Library Management System"); 
             primaryStage.show();
+
+            // The tabs are showing the reference snapshot (if any): check it against the
+            // database now, and keep the saved copy current after every refresh
+            ReferenceData.getInstance().reconcile(true);
+            GlobalEventManager.getInstance().getRefreshSignal().addListener(
+                (obs, oldVal, newVal) -> ReferenceData.getInstance().reconcile(false));
+
+            journalReplayer = JournalReplayer.forSharedJournal();
+            if (journalReplayer != null) {
+                journalReplayer.startWatcher(15, conflicts -> Platform.runLater(() -> {
+                    GlobalEventManager.getInstance().triggerRefresh();
+                    if (!conflicts.isEmpty()) showReplayConflicts(conflicts);
+                }));
+            }
+
+            String remindersAt = System.getProperty("patronmanager.reminders.at");
+            if (remindersAt != null) {
+                reminderScheduler = new ReminderScheduler(new OutboxSink(OutboxSink.defaultDirectory()), 3, 7, 4, 500);
+                reminderScheduler.start(LocalTime.parse(remindersAt));
+            }
         } catch (IOException e) {
-            System.err.println("Failed to load FXML: " + e.getMessage());
-            e.printStackTrace();
+            LOG.atError("start").message("Failed to load FXML").cause(e).log();
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.atError("start").message("Failed to start").cause(e).log();
+        }
+    }
+
+    /** The loans and returns recorded offline that the database did not take: staff must follow them up. */
+    private static void showReplayConflicts(List<String> conflicts) {
+        Alert alert = new Alert(Alert.AlertType.WARNING, String.join("\n", conflicts));
+        alert.setTitle("Offline Journal");
+        alert.setHeaderText(conflicts.size() + " offline loans or returns could not be applied");
+        alert.show();
+    }
+
+    @Override
+    public void stop() {
+        if (journalReplayer != null) {
+            journalReplayer.stopWatcher();
+        }
+        if (reminderScheduler != null) {
+            reminderScheduler.stop();
         }
+        ReferenceData.getInstance().save();
+        AuditLog.getInstance().shutdown(); // writes the audit events still buffered
     }
 
     public static void main(String[] args) {
@@ -3,24 +3,122 @@ package configuration;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import library.logging.Log;
 
 public class DBConnector {
+    private static final Log LOG = Log.get(DBConnector.class);
+
     //  connection parameters
-    private static final String URL = "jdbc:mariadb://localhost:3306/PatronManagerDB";
-    private static final String USER = "root";
-    private static final String PASSWORD = "";
+    //  connectTimeout keeps a dead link from freezing the desk; the DAOs fall back to the offline journal
+    private static final String DEFAULT_URL = "jdbc:mariadb://localhost:3306/PatronManagerDB?connectTimeout=3000";
+    private static final String URL = System.getProperty("patronmanager.db.url", DEFAULT_URL);
+    private static final String USER = System.getProperty("patronmanager.db.user", "root");
+    private static final String PASSWORD = System.getProperty("patronmanager.db.password", "");
+
+    //  read replicas: comma-separated JDBC URLs, e.g.
+    //  -Dpatronmanager.db.replicas=jdbc:mariadb://localhost:3307/PatronManagerDB?connectTimeout=1000
+    private static final List<Replica> REPLICAS = parseReplicas(System.getProperty("patronmanager.db.replicas", ""));
+
+    //  after a failed connect/validation a replica is skipped for this long
+    private static final long REPLICA_COOLDOWN_MILLIS = 30_000;
+    //  reads issued this soon after primary activity stay on the primary (read-your-writes)
+    private static final long READ_YOUR_WRITES_MILLIS = 5_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private static final AtomicInteger nextReplica = new AtomicInteger();
+    private static final AtomicLong lastPrimaryUse = new AtomicLong();
 
     /**
-     * Establishes and returns a connection to the MariaDB database.
+     * Establishes and returns a connection to the primary MariaDB database.
+     * All writes use this connection; reads that must see the latest writes use
+     * {@link #getPrimaryReadConnection()}.
      * @return A valid Connection object.
      * @throws SQLException If a connection error occurs.
      */
     public static Connection getConnection() throws SQLException {
+        lastPrimaryUse.set(System.currentTimeMillis());
         return DriverManager.getConnection(URL, USER, PASSWORD);
         //  The DriverManager uses the JDBC driver (MariaDB Connector/J)
         //  to establish the connection using the URL, User, and Password.
     }
 
+    /**
+     * A connection to the primary for reads that must see the latest commits but write
+     * nothing (e.g. a background tail of new rows). Unlike {@link #getConnection()} it
+     * does not restart the read-your-writes window, which only writes should do:
+     * otherwise a steady stream of such reads keeps every read on the primary.
+     */
+    public static Connection getPrimaryReadConnection() throws SQLException {
+        return DriverManager.getConnection(URL, USER, PASSWORD);
+    }
+
+    /**
+     * Returns a connection for read-only queries (catalog loads, history, reports).
+     * Replicas are tried round-robin; unhealthy ones are skipped for a cool-down period.
+     * Falls back to the primary when no replica is configured or reachable, or when
+     * the primary was used within the read-your-writes window.
+     * @return A valid, read-only Connection object.
+     * @throws SQLException If neither a replica nor the primary can be reached.
+     */
+    public static Connection getReadConnection() throws SQLException {
+        long now = System.currentTimeMillis();
+        if (REPLICAS.isEmpty() || now - lastPrimaryUse.get() < READ_YOUR_WRITES_MILLIS) {
+            return getPrimaryReadConnection();
+        }
+
+        int start = Math.floorMod(nextReplica.getAndIncrement(), REPLICAS.size());
+        for (int i = 0; i < REPLICAS.size(); i++) {
+            Replica replica = REPLICAS.get((start + i) % REPLICAS.size());
+            if (replica.downUntil > now) continue;
+
+            Connection link = null;
+            try {
+                link = DriverManager.getConnection(replica.url, USER, PASSWORD);
+                if (link.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    link.setReadOnly(true);
+                    return link;
+                }
+                link.close();
+            } catch (SQLException e) {
+                LOG.atWarn("getReadConnection").message("Read replica unavailable").field("url", replica.url).cause(e).log();
+                if (link != null) link.close();
+            }
+            replica.downUntil = now + REPLICA_COOLDOWN_MILLIS;
+        }
+
+        // No healthy replica: the primary serves the read
+        return getPrimaryReadConnection();
+    }
+
+    /**
+     * Number of configured read replicas (0 means every read goes to the primary).
+     */
+    public static int replicaCount() {
+        return REPLICAS.size();
+    }
+
+    private static List<Replica> parseReplicas(String urls) {
+        List<Replica> replicas = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            if (!url.isBlank()) replicas.add(new Replica(url.trim()));
+        }
+        return replicas;
+    }
+
+    private static final class Replica {
+        final String url;
+        volatile long downUntil;
+
+        Replica(String url) {
+            this.url = url;
+        }
+    }
+
     // --- CONNECTION TESTER ---
     @SuppressWarnings("CallToPrintStackTrace")
     public static void main(String[] args) {
@@ -40,6 +138,15 @@ public class DBConnector {
                 System.out.println("FAILURE: Connection object is null or closed.");
             }
 
+            // 3. Check the read path (replicas, if configured)
+            if (replicaCount() > 0) {
+                Thread.sleep(READ_YOUR_WRITES_MILLIS);
+                try (Connection readConn = getReadConnection()) {
+                    System.out.println("Read connection: " + readConn.getMetaData().getURL()
+                        + " (" + replicaCount() + " replica(s) configured)");
+                }
+            }
+
         } catch (SQLException e) {
             System.err.println("\n❌ CONNECTION ERROR! Please check the following:");
             System.err.println("1. Is XAMPP's MariaDB/MySQL running?");
@@ -47,8 +154,10 @@ public class DBConnector {
             System.err.println("3. Is the MariaDB/MySQL JDBC driver (JAR file) correctly added to the classpath (settings.json)?");
             System.err.println("--- Full Error Details ---");
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
-            // 3. Close the connection in a finally block
+            // 4. Close the connection in a finally block
             if (testConn != null) {
                 try {
                     testConn.close();
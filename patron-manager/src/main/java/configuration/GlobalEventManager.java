@@ -1,8 +1,11 @@
 package configuration;
 
 import javafx.beans.property.SimpleBooleanProperty;
+import library.logging.Log;
 
 public class GlobalEventManager {
+    private static final Log LOG = Log.get(GlobalEventManager.class);
+
     
     // A singleton instance to ensure all parts of the application use the same signal
     private static final GlobalEventManager INSTANCE = new GlobalEventManager();
@@ -33,6 +36,6 @@ public class GlobalEventManager {
     public void triggerRefresh() {
         // Toggling the value (true -> false or false -> true) forces a change event.
         refreshSignal.set(!refreshSignal.get());
-        System.out.println("Global Refresh triggered.");
+        LOG.atInfo("triggerRefresh").message("Global Refresh triggered").log();
     }
 }
\ No newline at end of file
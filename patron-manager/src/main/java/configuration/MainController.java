@@ -4,6 +4,7 @@ import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Tab;
+import library.utilities.QueryCache;
 
 public class MainController {
 
@@ -40,6 +41,7 @@ public class MainController {
      */
     @FXML
     private void handleGlobalRefresh() {
+        QueryCache.getInstance().clear(); // reload from the database, not from this desk's cache
         GlobalEventManager.getInstance().triggerRefresh();
     }
 }
\ No newline at end of file
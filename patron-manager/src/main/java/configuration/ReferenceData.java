@@ -0,0 +1,136 @@
+package configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import library.logging.Log;
+import library.models.Book;
+import library.models.Category;
+import library.models.Patron;
+import library.utilities.ReferenceSnapshot;
+
+/**
+ * Warm start: the categories, books and patrons saved at the last run, shown while
+ * the database is still being asked what changed.
+ *
+ * The tabs take their first rows from {@link #getBooks()} and the like (null when
+ * there is no snapshot: they then read the database as before) and listen to the
+ * properties, which are set on the FX thread when {@link #reconcile} finds that a
+ * table changed since the snapshot. The snapshot is re-checked and saved in the
+ * background after every global refresh, and saved again at shutdown if a save is
+ * still pending. Disabled with -Dpatronmanager.warmStart=false.
+ */
+public class ReferenceData {
+
+    private static final Log LOG = Log.get(ReferenceData.class);
+
+    private static final ReferenceData INSTANCE = new ReferenceData();
+
+    private final Path file = ReferenceSnapshot.defaultFile();
+    private final boolean enabled = Boolean.parseBoolean(System.getProperty("patronmanager.warmStart", "true"));
+    private final ReadOnlyObjectWrapper<List<Category>> categories = new ReadOnlyObjectWrapper<>();
+    private final ReadOnlyObjectWrapper<List<Book>> books = new ReadOnlyObjectWrapper<>();
+    private final ReadOnlyObjectWrapper<List<Patron>> patrons = new ReadOnlyObjectWrapper<>();
+    private ReferenceSnapshot snapshot; // the last one read or saved; guarded by this
+    private boolean unsaved;
+
+    private ReferenceData() {
+        if (enabled) {
+            long t0 = System.nanoTime();
+            snapshot = ReferenceSnapshot.read(file);
+            if (snapshot != null) {
+                categories.set(snapshot.getCategories());
+                books.set(snapshot.getBooks());
+                patrons.set(snapshot.getPatrons());
+                LOG.atInfo("readSnapshot").latencySince(t0).message("Reference snapshot read")
+                    .field("categories", snapshot.getCategories().size())
+                    .field("books", snapshot.getBooks().size())
+                    .field("patrons", snapshot.getPatrons().size()).log();
+            }
+        }
+    }
+
+    public static ReferenceData getInstance() {
+        return INSTANCE;
+    }
+
+    // ---------------------------------------------
+    // --- ROWS TO SHOW ---
+    // ---------------------------------------------
+    public List<Category> getCategories() {
+        return categories.get();
+    }
+    public List<Book> getBooks() {
+        return books.get();
+    }
+    public List<Patron> getPatrons() {
+        return patrons.get();
+    }
+
+    public ReadOnlyObjectProperty<List<Category>> categoriesProperty() {
+        return categories.getReadOnlyProperty();
+    }
+    public ReadOnlyObjectProperty<List<Book>> booksProperty() {
+        return books.getReadOnlyProperty();
+    }
+    public ReadOnlyObjectProperty<List<Patron>> patronsProperty() {
+        return patrons.getReadOnlyProperty();
+    }
+
+    // ---------------------------------------------
+    // --- RECONCILE AND SAVE ---
+    // ---------------------------------------------
+    /**
+     * Starts a background check of the snapshot against the database. The tables that
+     * changed are re-read and the snapshot is saved. With {@code publish}, the tabs are
+     * given the re-read rows (at startup, when they are showing the snapshot); a global
+     * refresh does not publish, because the tabs reload themselves.
+     */
+    public void reconcile(boolean publish) {
+        if (!enabled) return;
+        Thread worker = new Thread(() -> {
+            try {
+                ReferenceSnapshot previous = current();
+                ReferenceSnapshot updated = ReferenceSnapshot.readChanged(previous); // not under the lock: save() stays quick
+                synchronized (this) {
+                    snapshot = updated;
+                    unsaved = true;
+                }
+                if (publish && previous != null) publish(previous, updated);
+                save();
+            } catch (SQLException e) {
+                LOG.atWarn("reconcile").message("Reference snapshot not reconciled").cause(e).log();
+            }
+        }, "reference-data");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private synchronized ReferenceSnapshot current() {
+        return snapshot;
+    }
+
+    private void publish(ReferenceSnapshot previous, ReferenceSnapshot current) {
+        Platform.runLater(() -> {
+            categories.set(current.getCategories()); // counters move with every loan
+            if (current.getBooks() != previous.getBooks()) books.set(current.getBooks());
+            if (current.getPatrons() != previous.getPatrons()) patrons.set(current.getPatrons());
+        });
+    }
+
+    /** Writes the snapshot if the last one read has not been saved yet. */
+    public synchronized void save() {
+        if (!unsaved || snapshot == null) return;
+        try {
+            snapshot.write(file);
+            unsaved = false;
+        } catch (IOException e) {
+            LOG.atError("save").message("Error saving reference snapshot").field("file", file).cause(e).log();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package library.audit;
+
+/**
+ * One audit record: what was done to which record, and when. Who did it (the desk and
+ * its user) is the same for every event of a desk and is added by the sink.
+ *
+ * The ring buffer of {@link AuditLog} holds a fixed set of these and reuses them, so
+ * an event is only valid during the {@link AuditSink#write} call it is passed to.
+ */
+public final class AuditEvent {
+
+    public enum Action { CREATE, UPDATE, DELETE, MOVE, BORROW, RETURN }
+
+    public enum Entity { BOOK, PATRON, CATEGORY, LOAN }
+
+    /** Version of an event without one (categories, deletes, loans). */
+    public static final int NO_VERSION = -1;
+
+    private long occurredAt; // epoch millis
+    private Action action;
+    private Entity entity;
+    private String recordID;
+    private String relatedID;
+    private int version;
+
+    AuditEvent() {
+    }
+
+    void set(long occurredAt, Action action, Entity entity, String recordID, String relatedID, int version) {
+        this.occurredAt = occurredAt;
+        this.action = action;
+        this.entity = entity;
+        this.recordID = recordID;
+        this.relatedID = relatedID;
+        this.version = version;
+    }
+
+    void copyFrom(AuditEvent other) {
+        set(other.occurredAt, other.action, other.entity, other.recordID, other.relatedID, other.version);
+    }
+
+    public long getOccurredAt() {
+        return occurredAt;
+    }
+    public Action getAction() {
+        return action;
+    }
+    public Entity getEntity() {
+        return entity;
+    }
+    /** The book, patron or category code, or the loan's TransactionID. */
+    public String getRecordID() {
+        return recordID;
+    }
+    /** The book's category (the new one for an update or a move) or the loan's book; may be null. */
+    public String getRelatedID() {
+        return relatedID;
+    }
+    /** The book's or patron's version after the change, or {@link #NO_VERSION}. */
+    public int getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,305 @@
+package library.audit;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import library.audit.AuditEvent.Action;
+import library.audit.AuditEvent.Entity;
+import library.logging.Log;
+import library.utilities.OfflineJournal;
+
+/**
+ * Audit trail of the DAO writes: who created, edited or deleted which book, patron or
+ * category, and who processed which loan.
+ *
+ * The DAOs {@link #publish} an event after each committed change. Publishing copies
+ * the event into a slot of a ring buffer allocated up front and returns; it takes no
+ * lock and allocates nothing. A single writer thread drains the buffer in batches into
+ * the sink (by default the 'audit_log' table, with local files as fallback), so a DAO
+ * call never waits for the audit write.
+ *
+ * When the buffer is full (the sink is slower than the desk, for a while) a publisher
+ * waits for the writer to free slots, up to {@code maxWaitNanos}; past that the event
+ * is dropped. Both are counted in {@link #stats()}. {@link #shutdown()}, called when
+ * the application stops and by a shutdown hook, writes every event published before
+ * it, so a clean shutdown loses none.
+ *
+ * Configured with system properties:
+ *   patronmanager.audit                db (default), file, or off
+ *   patronmanager.audit.capacity       ring buffer slots, a power of two (8192)
+ *   patronmanager.audit.batch          events per sink write (256)
+ *   patronmanager.audit.maxWaitMillis  longest a publisher waits for a free slot (2000)
+ *   patronmanager.audit.actor          the user recorded (the OS user name)
+ *   patronmanager.audit.dir            directory of the audit files (~/.patron-manager/audit)
+ */
+public class AuditLog {
+
+    private static final Log LOG = Log.get(AuditLog.class);
+
+    /** Counters since start. {@code maxDepth} is the most events ever waiting in the buffer. */
+    public record Stats(long published, long written, long dropped, long fullWaits, long waitNanos,
+                        int maxDepth, int depth, int capacity, long sinkFailures) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%d published, %d written, %d dropped; buffer %d of %d (max %d); %d waits for a free slot (%.1f ms), %d sink failures",
+                published, written, dropped, depth, capacity, maxDepth, fullWaits, waitNanos / 1e6, sinkFailures);
+        }
+    }
+
+    // Set in the claim sequence by shutdown(): no slot can be claimed afterwards
+    private static final long CLOSED = 1L << 62;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long RETRY_MILLIS = 1000;
+    private static final long SHUTDOWN_WAIT_MILLIS = 10_000;
+
+    private static final AuditLog INSTANCE = create();
+
+    private final AuditSink sink;
+    private final AuditEvent[] slots;
+    private final int mask;
+    private final AuditEvent[] batch;
+    private final long maxWaitNanos;
+
+    // Slot of sequence s is slots[s & mask]. published[s & mask] == s once its event is
+    // complete; the writer copies it out and then moves 'consumed' past it.
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLongArray published;
+    private volatile long consumed;
+    private volatile boolean writerParked;
+    private Thread writer; // set by start() before the log is handed out; null when disabled
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong fullWaits = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private volatile long written;      // written by the writer thread only
+    private volatile long sinkFailures; // written by the writer thread only
+
+    private AuditLog(AuditSink sink, int capacity, int batchSize, long maxWaitNanos) {
+        this.sink = sink;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AuditEvent[size];
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new AuditEvent();
+            published.set(i, -1);
+        }
+        this.batch = new AuditEvent[Math.min(batchSize, size)];
+        for (int i = 0; i < batch.length; i++) batch[i] = new AuditEvent();
+        this.maxWaitNanos = maxWaitNanos;
+        if (sink == null) claimed.set(CLOSED);
+    }
+
+    /**
+     * A log draining into {@code sink}, its writer thread already running, or a disabled
+     * one if the sink is null. {@code capacity} is rounded up to a power of two.
+     */
+    public static AuditLog start(AuditSink sink, int capacity, int batchSize, long maxWaitNanos) {
+        AuditLog log = new AuditLog(sink, capacity, batchSize, maxWaitNanos);
+        if (sink != null) {
+            log.writer = new Thread(log::drainLoop, "audit-writer");
+            log.writer.setDaemon(true);
+            log.writer.start();
+        }
+        return log;
+    }
+
+    public static AuditLog getInstance() {
+        return INSTANCE;
+    }
+
+    private static AuditLog create() {
+        String mode = System.getProperty("patronmanager.audit", "db");
+        AuditSink sink = null;
+        if (!mode.equals("off")) {
+            String actor = System.getProperty("patronmanager.audit.actor", System.getProperty("user.name", "unknown"));
+            String deskID;
+            try {
+                deskID = OfflineJournal.getInstance().getDeskId(); // as in 'journal_replay'
+            } catch (IOException e) {
+                deskID = "unknown";
+            }
+            try {
+                AuditSink files = new FileAuditSink(FileAuditSink.defaultDirectory(), deskID, actor, 16L << 20);
+                sink = mode.equals("file") ? files : new DatabaseAuditSink(deskID, actor, files);
+            } catch (IOException e) {
+                LOG.atError("create").message("Audit log disabled").cause(e).log();
+            }
+        }
+        AuditLog log = start(sink,
+            Integer.getInteger("patronmanager.audit.capacity", 8192),
+            Integer.getInteger("patronmanager.audit.batch", 256),
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("patronmanager.audit.maxWaitMillis", 2000)));
+        if (sink != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(log::shutdown, "audit-shutdown"));
+        }
+        return log;
+    }
+
+    // ---------------------------------------------
+    // --- PUBLISH ---
+    // ---------------------------------------------
+    /** Records a change without a version (see {@link AuditEvent} for the fields). */
+    public void publish(Action action, Entity entity, String recordID, String relatedID) {
+        publish(action, entity, recordID, relatedID, AuditEvent.NO_VERSION);
+    }
+
+    /**
+     * Records a change. Called after the change is committed; returns once the event is
+     * in the buffer (at once, unless the buffer is full).
+     */
+    public void publish(Action action, Entity entity, String recordID, String relatedID, int version) {
+        if (writer == null) return; // disabled
+        long sequence = claim();
+        if (sequence < 0) {
+            dropped.incrementAndGet();
+            return;
+        }
+        int index = (int) sequence & mask;
+        slots[index].set(System.currentTimeMillis(), action, entity, recordID, relatedID, version);
+        published.set(index, sequence); // volatile write: the writer sees the complete event
+        if (writerParked) LockSupport.unpark(writer);
+    }
+
+    // Claims the next sequence once its slot is free; -1 if the log is closed or the
+    // buffer stayed full for maxWaitNanos
+    private long claim() {
+        long waitStart = 0;
+        boolean waited = false;
+        while (true) {
+            long sequence = claimed.get();
+            if ((sequence & CLOSED) != 0) return -1;
+            if (sequence - consumed < slots.length) {
+                if (claimed.compareAndSet(sequence, sequence + 1)) {
+                    if (waited) waitNanos.addAndGet(System.nanoTime() - waitStart);
+                    recordDepth((int) (sequence + 1 - consumed));
+                    return sequence;
+                }
+                continue; // another publisher took it
+            }
+            // Full: let the writer catch up
+            long now = System.nanoTime();
+            if (!waited) {
+                waited = true;
+                waitStart = now;
+                fullWaits.incrementAndGet();
+            } else if (now - waitStart > maxWaitNanos) {
+                waitNanos.addAndGet(now - waitStart);
+                return -1;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+    }
+
+    private void recordDepth(int depth) {
+        int max;
+        while (depth > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, depth)) {
+            // another publisher raised it meanwhile: compare again
+        }
+    }
+
+    // ---------------------------------------------
+    // --- WRITER ---
+    // ---------------------------------------------
+    private void drainLoop() {
+        while (true) {
+            int count = drain();
+            if (count > 0) {
+                write(count);
+                continue;
+            }
+            long claimedNow = claimed.get();
+            if ((claimedNow & CLOSED) != 0 && consumed == (claimedNow & ~CLOSED)) break; // closed and all written
+            // Idle (or a publisher is still filling its slot): sleep until a publisher wakes us
+            writerParked = true;
+            if (!isPublished(consumed)) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            writerParked = false;
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            LOG.atError("close").message("Error closing audit log").cause(e).log();
+        }
+    }
+
+    // Copies the published events at the head of the buffer into the batch and frees
+    // their slots before the sink is called, so publishers are not held up by its I/O
+    private int drain() {
+        long next = consumed;
+        int count = 0;
+        while (count < batch.length && isPublished(next)) {
+            batch[count++].copyFrom(slots[(int) next & mask]);
+            next++;
+        }
+        consumed = next;
+        return count;
+    }
+
+    private boolean isPublished(long sequence) {
+        return published.get((int) sequence & mask) == sequence;
+    }
+
+    // Retries a failing sink until it takes the batch; at shutdown, gives up after one try
+    private void write(int count) {
+        while (true) {
+            try {
+                sink.write(batch, count);
+                written += count;
+                return;
+            } catch (IOException | RuntimeException e) {
+                sinkFailures++;
+                LOG.atError("write").message("Error writing audit log").field("events", count).cause(e).log();
+                if ((claimed.get() & CLOSED) != 0) {
+                    dropped.addAndGet(count);
+                    return;
+                }
+                try {
+                    Thread.sleep(RETRY_MILLIS); // not parked: waiting publishers would wake it at once
+                } catch (InterruptedException ignored) {
+                    // Not interrupted by anything but the JVM exiting; retry now
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------
+    // --- SHUTDOWN AND STATS ---
+    // ---------------------------------------------
+    /**
+     * Stops accepting events, writes those already published and closes the sink.
+     * Waits for the writer up to ten seconds. Safe to call more than once.
+     */
+    public void shutdown() {
+        long sequence;
+        do {
+            sequence = claimed.get();
+        } while ((sequence & CLOSED) == 0 && !claimed.compareAndSet(sequence, sequence | CLOSED));
+        if (writer == null) return;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(SHUTDOWN_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            LOG.atWarn("shutdown").message("Audit events not written at shutdown")
+                .field("events", (claimed.get() & ~CLOSED) - consumed).log();
+        }
+    }
+
+    public Stats stats() {
+        long publishedNow = claimed.get() & ~CLOSED;
+        long consumedNow = consumed;
+        return new Stats(publishedNow, written, dropped.get(), fullWaits.get(), waitNanos.get(),
+            maxDepth.get(), (int) (publishedNow - consumedNow), slots.length, sinkFailures);
+    }
+}
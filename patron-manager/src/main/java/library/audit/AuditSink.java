@@ -0,0 +1,18 @@
+package library.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where the audit events end up (the 'audit_log' table, local files...).
+ * Called from the single writer thread of {@link AuditLog} only.
+ */
+public interface AuditSink extends Closeable {
+
+    /**
+     * Writes {@code events[0..count)} durably enough that a clean shutdown loses none.
+     * The events are reused once this returns; a sink must copy what it keeps. If it
+     * throws, the same batch is offered again.
+     */
+    void write(AuditEvent[] events, int count) throws IOException;
+}
@@ -0,0 +1,108 @@
+package library.audit;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import configuration.DBConnector;
+import library.logging.Log;
+
+/**
+ * Inserts audit events into the 'audit_log' table, one batched INSERT and one commit
+ * per batch, over a connection kept open between batches.
+ *
+ * While the database cannot take them (unreachable, or migration 006 not applied),
+ * the batches go to the fallback file sink instead, and the next batch tries the
+ * database again.
+ */
+public class DatabaseAuditSink implements AuditSink {
+
+    private static final Log LOG = Log.get(DatabaseAuditSink.class);
+
+    private static final String INSERT_SQL =
+        "INSERT INTO audit_log (OccurredAt, DeskID, Actor, Action, Entity, RecordID, RelatedID, Version) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final String deskID;
+    private final String actor;
+    private final AuditSink fallback;
+
+    private Connection link;
+    private PreparedStatement state;
+    private boolean failing; // reported once, not per batch
+
+    public DatabaseAuditSink(String deskID, String actor, AuditSink fallback) {
+        this.deskID = deskID;
+        this.actor = actor;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void write(AuditEvent[] events, int count) throws IOException {
+        try {
+            insert(events, count);
+            if (failing) {
+                LOG.atInfo("write").message("Audit log writing to the database again").log();
+                failing = false;
+            }
+        } catch (SQLException e) {
+            closeQuietly();
+            if (!failing) {
+                LOG.atWarn("write").message("Audit database unavailable, writing to local files").cause(e).log();
+                failing = true;
+            }
+            fallback.write(events, count);
+        }
+    }
+
+    private void insert(AuditEvent[] events, int count) throws SQLException {
+        if (link == null) {
+            link = DBConnector.getConnection();
+            link.setAutoCommit(false);
+            state = link.prepareStatement(INSERT_SQL);
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                AuditEvent event = events[i];
+                state.setTimestamp(1, new Timestamp(event.getOccurredAt()));
+                state.setString(2, deskID);
+                state.setString(3, actor);
+                state.setString(4, event.getAction().name());
+                state.setString(5, event.getEntity().name());
+                state.setString(6, event.getRecordID());
+                state.setString(7, event.getRelatedID());
+                if (event.getVersion() != AuditEvent.NO_VERSION) state.setInt(8, event.getVersion());
+                else state.setNull(8, Types.INTEGER);
+                state.addBatch();
+            }
+            state.executeBatch();
+            link.commit();
+        } catch (SQLException e) {
+            try {
+                link.rollback();
+            } catch (SQLException ignored) {
+                // The connection is broken; it is replaced on the next batch
+            }
+            throw e;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            if (link != null) link.close(); // also closes the statement
+        } catch (SQLException ignored) {
+            // Already broken
+        }
+        link = null;
+        state = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeQuietly();
+        fallback.close();
+    }
+}
@@ -0,0 +1,102 @@
+package library.audit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Appends audit events to local files, one tab-separated line per event in the
+ * column order of the 'audit_log' table (NULL written as \N), so a file can be loaded
+ * into the table as it is:
+ *
+ *   LOAD DATA LOCAL INFILE 'audit-20260105-1.log' INTO TABLE audit_log
+ *     (OccurredAt, DeskID, Actor, Action, Entity, RecordID, RelatedID, Version);
+ *
+ * A new file is started every day and whenever the current one reaches
+ * {@code maxBytes}; rotated files are kept. Each batch is forced to disk before
+ * {@link #write} returns.
+ */
+public class FileAuditSink implements AuditSink {
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter OCCURRED_AT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final Path directory;
+    private final String deskID;
+    private final String actor;
+    private final long maxBytes;
+
+    private FileChannel channel;
+    private Writer out;
+    private LocalDate day;
+
+    public FileAuditSink(Path directory, String deskID, String actor, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.deskID = deskID;
+        this.actor = actor;
+        this.maxBytes = maxBytes;
+    }
+
+    /** ~/.patron-manager/audit, or -Dpatronmanager.audit.dir. */
+    public static Path defaultDirectory() {
+        String configured = System.getProperty("patronmanager.audit.dir");
+        return configured != null
+            ? Paths.get(configured)
+            : Paths.get(System.getProperty("user.home"), ".patron-manager", "audit");
+    }
+
+    @Override
+    public void write(AuditEvent[] events, int count) throws IOException {
+        if (out == null || !LocalDate.now().equals(day) || channel.size() >= maxBytes) rotate();
+        StringBuilder line = new StringBuilder(128);
+        for (int i = 0; i < count; i++) {
+            AuditEvent event = events[i];
+            line.setLength(0);
+            line.append(OCCURRED_AT.format(Instant.ofEpochMilli(event.getOccurredAt()).atZone(ZoneId.systemDefault())))
+                .append('\t').append(deskID)
+                .append('\t').append(actor)
+                .append('\t').append(event.getAction())
+                .append('\t').append(event.getEntity())
+                .append('\t').append(event.getRecordID())
+                .append('\t').append(event.getRelatedID() != null ? event.getRelatedID() : "\\N")
+                .append('\t').append(event.getVersion() != AuditEvent.NO_VERSION ? String.valueOf(event.getVersion()) : "\\N")
+                .append('\n');
+            out.append(line);
+        }
+        out.flush();
+        channel.force(false);
+    }
+
+    // Closes the current file and opens the next free name of the day: audit-<day>-<n>.log
+    private void rotate() throws IOException {
+        close();
+        day = LocalDate.now();
+        Path file;
+        int n = 1;
+        do {
+            file = directory.resolve("audit-" + DAY.format(day) + "-" + n++ + ".log");
+        } while (Files.exists(file) && Files.size(file) >= maxBytes);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close(); // also closes the channel
+            out = null;
+            channel = null;
+        }
+    }
+}
@@ -1,22 +1,29 @@
 package library.controllers;
 
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
+import library.logging.Log;
 import library.models.Book;
 import library.models.Category;
 import library.utilities.BookDAO;
 import library.utilities.CategoryDAO;
+import library.utilities.StaleRecordException;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import configuration.GlobalEventManager;
+import configuration.ReferenceData;
 
 public class BookController {
 
+    private static final Log LOG = Log.get(BookController.class);
+
     // -------------------------------------------
     // 1. FXML COMPONENT INJECTIONS
     // -------------------------------------------
@@ -27,21 +34,31 @@ public class BookController {
     @FXML private TableColumn<Book, String> isbnColumn;
     @FXML private TableColumn<Book, Integer> publicationYearColumn;
     @FXML private TableColumn<Book, String> categoryNameColumn;
+    @FXML private TableColumn<Book, String> copiesColumn;
+    @FXML private TextField filterField;
+    @FXML private Label filterCountLabel;
     
     @FXML private TextField titleField;
     @FXML private TextField authorField;
     @FXML private TextField isbnField;
     @FXML private TextField publicationYearField;
     @FXML private ComboBox<Category> categoryComboBox;
+    @FXML private TextField copiesField;
     @FXML private Button saveBookButton;
     @FXML private Button deleteBookButton; // Used for disable/enable state
 
+    // --- Bulk Edit (multi-row selection) ---
+    @FXML private Label bulkSelectionLabel;
+    @FXML private ComboBox<Category> bulkCategoryComboBox;
+    @FXML private Button bulkMoveButton;
+
     // -------------------------------------------
     // 2. DATA LAYER INSTANCE AND STATE
     // -------------------------------------------
     private final BookDAO bookDAO = new BookDAO();
     private final CategoryDAO categoryDAO = new CategoryDAO();
-    private ObservableList<Book> bookList;
+    private final ObservableList<Book> bookList = FXCollections.observableArrayList();
+    private TableModel<Book> bookModel;
     private ObservableList<Category> categoryList;
     private Book selectedBook; 
 
@@ -51,12 +68,24 @@ public class BookController {
     @FXML
     public void initialize() {
         // Configure Table Columns
-        bookIDColumn.setCellValueFactory(new PropertyValueFactory<>("bookID"));
-        titleColumn.setCellValueFactory(new PropertyValueFactory<>("title"));
-        authorColumn.setCellValueFactory(new PropertyValueFactory<>("author"));
-        isbnColumn.setCellValueFactory(new PropertyValueFactory<>("isbn")); // Assumes getIsbn()
-        publicationYearColumn.setCellValueFactory(new PropertyValueFactory<>("publicationYear"));
-        categoryNameColumn.setCellValueFactory(new PropertyValueFactory<>("categoryName")); 
+        bookIDColumn.setCellValueFactory(cell -> cell.getValue().bookIDProperty());
+        titleColumn.setCellValueFactory(cell -> cell.getValue().titleProperty());
+        authorColumn.setCellValueFactory(cell -> cell.getValue().authorProperty());
+        isbnColumn.setCellValueFactory(cell -> cell.getValue().isbnProperty());
+        publicationYearColumn.setCellValueFactory(cell -> cell.getValue().publicationYearProperty());
+        categoryNameColumn.setCellValueFactory(cell -> cell.getValue().categoryNameProperty());
+        copiesColumn.setCellValueFactory(cell -> cell.getValue().copiesProperty()); // "available / total"
+
+        // Sorting and filtering compare keys computed once per row (see TableModel)
+        bookModel = new TableModel<>(bookList);
+        bookModel.textColumn(bookIDColumn, Book::getBookID);
+        bookModel.textColumn(titleColumn, Book::getTitle);
+        bookModel.textColumn(authorColumn, Book::getAuthor);
+        bookModel.textColumn(isbnColumn, Book::getIsbn);
+        bookModel.numberColumn(publicationYearColumn, Book::getPublicationYear);
+        bookModel.textColumn(categoryNameColumn, Book::getCategoryName);
+        bookModel.numberColumn(copiesColumn, Book::getAvailableCopies);
+        bookModel.attach(bookTable, filterField, filterCountLabel);
 
         // Add Selection Listener for Details AND Button State
         bookTable.getSelectionModel().selectedItemProperty().addListener(
@@ -65,6 +94,15 @@ public class BookController {
                 deleteBookButton.setDisable(newValue == null);
             });
 
+        // Several rows can be selected for bulk edits; the form shows the last one clicked
+        bookTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        bookTable.getSelectionModel().getSelectedItems().addListener((ListChangeListener<Book>) change -> {
+            int selected = bookTable.getSelectionModel().getSelectedItems().size();
+            bulkMoveButton.setDisable(selected == 0);
+            bulkSelectionLabel.setText(selected > 1 ? selected + " books selected."
+                : "Ctrl/Shift-click rows to select several books.");
+        });
+
         // Set initial state
         deleteBookButton.setDisable(true); 
         // --- Global Refresh Listener ---
@@ -72,42 +110,51 @@ public class BookController {
             loadBooks(); 
             loadCategories();
         });
-        loadBooks();
-        loadCategories();
+
+        // Warm start: the rows saved at the last run are shown at once, and replaced if
+        // the database has changed since (see ReferenceData)
+        ReferenceData reference = ReferenceData.getInstance();
+        reference.booksProperty().addListener((obs, oldRows, rows) -> bookList.setAll(rows));
+        reference.categoriesProperty().addListener((obs, oldRows, rows) -> showCategories(rows));
+        if (reference.getBooks() != null) bookList.setAll(reference.getBooks()); else loadBooks();
+        if (reference.getCategories() != null) showCategories(reference.getCategories()); else loadCategories();
     }
     
     private void loadCategories() {
         try {
-            List<Category> categories = categoryDAO.readAllCategories();
-            categoryList = FXCollections.observableArrayList(categories);
-            categoryComboBox.setItems(categoryList);
-            
-            // Set the converter to display Category Name in the ComboBox
-            categoryComboBox.setConverter(new javafx.util.StringConverter<Category>() {
-                @Override
-                public String toString(Category category) {
-                    return category != null ? category.getCategoryName() : "";
-                }
-                @Override
-                public Category fromString(String string) {
-                    return null;
-                }
-            });
-            
+            showCategories(categoryDAO.readAllCategories());
         } catch (SQLException e) {
             showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load categories for selection.");
-            e.printStackTrace();
+            LOG.atError("loadCategories").message("Failed to load categories for selection").cause(e).log();
         }
     }
+
+    private void showCategories(List<Category> categories) {
+        categoryList = FXCollections.observableArrayList(categories);
+        categoryComboBox.setItems(categoryList);
+        bulkCategoryComboBox.setItems(categoryList);
+        
+        // Set the converter to display Category Name in the ComboBox
+        categoryComboBox.setConverter(new javafx.util.StringConverter<Category>() {
+            @Override
+            public String toString(Category category) {
+                return category != null ? category.getCategoryName() : "";
+            }
+            @Override
+            public Category fromString(String string) {
+                return null;
+            }
+        });
+        bulkCategoryComboBox.setConverter(categoryComboBox.getConverter());
+    }
     
     private void loadBooks() {
         try {
             List<Book> books = bookDAO.readAllBooks();
-            bookList = FXCollections.observableArrayList(books);
-            bookTable.setItems(bookList);
+            bookList.setAll(books);
         } catch (SQLException e) {
             showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load books.");
-            e.printStackTrace();
+            LOG.atError("loadBooks").message("Failed to load books").cause(e).log();
         }
     }
     
@@ -118,6 +165,7 @@ public class BookController {
             authorField.setText(book.getAuthor());
             isbnField.setText(book.getIsbn());
             publicationYearField.setText(String.valueOf(book.getPublicationYear()));
+            copiesField.setText(String.valueOf(book.getTotalCopies()));
             
             // Select the Category object
             categoryComboBox.getSelectionModel().select(
@@ -160,18 +208,41 @@ public class BookController {
             return;
         }
 
+        // Copies owned: one for a new book if left empty; an existing book's copies can only be added to
+        int copies;
+        try {
+            String typed = copiesField.getText().trim();
+            copies = !typed.isEmpty() ? Integer.parseInt(typed) : selectedBook != null ? selectedBook.getTotalCopies() : 1;
+        } catch (NumberFormatException e) {
+            copies = -1;
+        }
+        if (copies < 1) {
+            showAlert(Alert.AlertType.ERROR, "Input Error", "Copies must be a number of at least 1.");
+            return;
+        }
+        if (selectedBook != null && copies < selectedBook.getTotalCopies()) {
+            showAlert(Alert.AlertType.WARNING, "Validation Error", "Copies can be added to a book but not withdrawn ("
+                + selectedBook.getTotalCopies() + " owned).");
+            return;
+        }
+
         try {
             if (selectedBook != null) {
-                // --- A. UPDATE EXISTING BOOK ---
-                selectedBook.setTitle(title);
-                selectedBook.setAuthor(author);
-                selectedBook.setIsbn(isbn);
-                selectedBook.setPublicationYear(pubYear);
-                selectedBook.setCategoryID(selectedCategory.getCategoryID());
-                selectedBook.setCategoryName(selectedCategory.getCategoryName());
+                // --- A. UPDATE EXISTING BOOK (only if no other desk saved it meanwhile) ---
+                // Edit a copy: only the fields set to a new value here are written
+                Book edited = new Book(selectedBook);
+                edited.setTitle(title);
+                edited.setAuthor(author);
+                edited.setIsbn(fromForm(isbn, selectedBook.getIsbn()));
+                edited.setPublicationYear(pubYear);
+                edited.setCategoryID(selectedCategory.getCategoryID());
+                edited.setCategoryName(selectedCategory.getCategoryName());
                 
-                bookDAO.updateBook(selectedBook);
-                bookTable.refresh();
+                if (!saveEdit(selectedBook, edited)) return; // not saved; the form keeps the edit
+                if (copies > selectedBook.getTotalCopies()) {
+                    bookDAO.addCopies(selectedBook, copies - selectedBook.getTotalCopies());
+                    bookModel.rowChanged(selectedBook);
+                }
                 showAlert(Alert.AlertType.INFORMATION, "Success", "Book updated successfully.");
 
             } else {
@@ -184,6 +255,7 @@ public class BookController {
                     pubYear,
                     selectedCategory.getCategoryID() 
                 );
+                newBook.setTotalCopies(copies);
                 
                 Book savedBook = bookDAO.createBook(newBook); 
                 // Set the display name for the UI refresh
@@ -202,7 +274,137 @@ public class BookController {
             } else {
                 showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to save book. Check logs.");
             }
-            e.printStackTrace();
+            LOG.atError("handleSaveBook").message("Failed to save book").cause(e).log();
+        }
+    }
+
+    /**
+     * Saves an edit of a table row. If another desk saved the book since it was read,
+     * offers to merge (the fields changed here are applied on top of their version) or
+     * to reload their version. Returns false if the edit was not saved.
+     */
+    private boolean saveEdit(Book row, Book edited) throws SQLException {
+        Book base = row; // the version the edit was made against
+        while (true) {
+            try {
+                bookDAO.updateBook(edited);
+                copyBook(edited, row);
+                bookModel.rowChanged(row);
+                return true;
+            } catch (StaleRecordException e) {
+                Book current = bookDAO.readCurrentBook(row.getBookID());
+                if (current == null) {
+                    showAlert(Alert.AlertType.WARNING, "Edit Conflict",
+                        "This book was deleted at another desk. Your changes were not saved.");
+                    bookList.remove(row);
+                    handleClearFields();
+                    return false;
+                }
+
+                List<String> both = new ArrayList<>();
+                if (changedOnBoth(base.getTitle(), edited.getTitle(), current.getTitle())) both.add("Title");
+                if (changedOnBoth(base.getAuthor(), edited.getAuthor(), current.getAuthor())) both.add("Author");
+                if (changedOnBoth(base.getIsbn(), edited.getIsbn(), current.getIsbn())) both.add("ISBN");
+                if (changedOnBoth(base.getPublicationYear(), edited.getPublicationYear(), current.getPublicationYear())) both.add("Publication Year");
+                if (changedOnBoth(base.getCategoryID(), edited.getCategoryID(), current.getCategoryID())) both.add("Category");
+
+                ButtonType merge = new ButtonType("Merge My Changes", ButtonBar.ButtonData.OK_DONE);
+                ButtonType reload = new ButtonType("Reload Theirs", ButtonBar.ButtonData.OTHER);
+                Alert conflict = new Alert(Alert.AlertType.WARNING, null, merge, reload, ButtonType.CANCEL);
+                conflict.setTitle("Edit Conflict");
+                conflict.setHeaderText("Another desk saved this book while you were editing it.");
+                conflict.setContentText(both.isEmpty()
+                    ? "You changed different fields; merging keeps both sets of changes."
+                    : "Both of you changed: " + String.join(", ", both) + ". Merging keeps your values for these.");
+                ButtonType choice = conflict.showAndWait().orElse(ButtonType.CANCEL);
+
+                if (choice == merge) {
+                    // Their version plus the fields changed here: only those are written
+                    Book merged = new Book(current);
+                    merged.setTitle(pick(base.getTitle(), edited.getTitle(), current.getTitle()));
+                    merged.setAuthor(pick(base.getAuthor(), edited.getAuthor(), current.getAuthor()));
+                    merged.setIsbn(pick(base.getIsbn(), edited.getIsbn(), current.getIsbn()));
+                    merged.setPublicationYear(pick(base.getPublicationYear(), edited.getPublicationYear(), current.getPublicationYear()));
+                    if (!same(edited.getCategoryID(), base.getCategoryID())) {
+                        merged.setCategoryID(edited.getCategoryID());
+                        merged.setCategoryName(edited.getCategoryName());
+                    }
+                    base = current;
+                    edited = merged; // retried against their version
+                } else {
+                    if (choice == reload) {
+                        copyBook(current, row);
+                        bookModel.rowChanged(row);
+                        showBookDetails(row);
+                    }
+                    return false;
+                }
+            }
+        }
+    }
+
+    /** The edited value if this desk changed the field, otherwise theirs. */
+    private static <T> T pick(T base, T mine, T theirs) {
+        return same(mine, base) ? theirs : mine;
+    }
+
+    private static <T> boolean changedOnBoth(T base, T mine, T theirs) {
+        return !same(mine, base) && !same(theirs, base) && !same(mine, theirs);
+    }
+
+    /** Field equality as the form sees it: an empty text field stands for NULL. */
+    private static boolean same(Object a, Object b) {
+        return Objects.equals(a == null ? "" : a, b == null ? "" : b);
+    }
+
+    /** Text as typed, except that an empty field leaves a stored NULL alone (it is not an edit). */
+    private static String fromForm(String typed, String stored) {
+        return same(typed, stored) ? stored : typed;
+    }
+
+    private static void copyBook(Book from, Book to) {
+        to.setTitle(from.getTitle());
+        to.setAuthor(from.getAuthor());
+        to.setIsbn(from.getIsbn());
+        to.setPublicationYear(from.getPublicationYear());
+        to.setCategoryID(from.getCategoryID());
+        to.setCategoryName(from.getCategoryName());
+        to.setVersion(from.getVersion());
+        to.setTotalCopies(from.getTotalCopies());
+        to.setAvailableCopies(from.getAvailableCopies());
+        to.markClean(); // mirrors the saved row
+    }
+
+    /**
+     * Moves every selected book to the chosen category in one transaction (one batched
+     * UPDATE). If any of them was saved at another desk meanwhile, none is moved.
+     */
+    @FXML
+    private void handleBulkMove() {
+        List<Book> books = new ArrayList<>(bookTable.getSelectionModel().getSelectedItems());
+        Category target = bulkCategoryComboBox.getValue();
+        if (books.isEmpty() || target == null) {
+            showAlert(Alert.AlertType.WARNING, "Validation Error", "Select the books to move and the category to move them to.");
+            return;
+        }
+
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Move Books");
+        confirm.setHeaderText(null);
+        confirm.setContentText("Move " + books.size() + " selected book(s) to " + target.getCategoryName() + "?");
+        if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) return;
+
+        try {
+            bookDAO.moveBooksToCategory(books, target.getCategoryID(), target.getCategoryName());
+            bookModel.rowsChanged(books);
+            showAlert(Alert.AlertType.INFORMATION, "Success", books.size() + " book(s) moved to " + target.getCategoryName() + ".");
+        } catch (StaleRecordException e) {
+            showAlert(Alert.AlertType.WARNING, "Edit Conflict", "Book " + e.getRecordID()
+                + " was changed at another desk, so no books were moved. The list has been reloaded; select the books again.");
+            loadBooks();
+        } catch (SQLException e) {
+            showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to move books. Check logs.");
+            LOG.atError("handleBulkMove").message("Failed to move books").cause(e).log();
         }
     }
 
@@ -226,7 +428,7 @@ public class BookController {
             } else {
                 showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to delete book. Check logs.");
             }
-            e.printStackTrace();
+            LOG.atError("handleDeleteBook").entity(bookToDelete.getBookID()).message("Failed to delete book").cause(e).log();
         }
     }
     
@@ -236,6 +438,7 @@ public class BookController {
         authorField.clear();
         isbnField.clear();
         publicationYearField.clear(); 
+        copiesField.clear();
         categoryComboBox.getSelectionModel().clearSelection();
         
         bookTable.getSelectionModel().clearSelection();
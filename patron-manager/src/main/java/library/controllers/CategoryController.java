@@ -4,19 +4,24 @@ import java.sql.SQLException;
 import java.util.List;
 
 import configuration.GlobalEventManager;
+import configuration.ReferenceData;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
-import javafx.scene.control.cell.PropertyValueFactory;
+import library.logging.Log;
 import library.models.Category;
 import library.utilities.CategoryDAO;
+import library.utilities.CategoryStatsDAO;
 
 public class CategoryController {
+    private static final Log LOG = Log.get(CategoryController.class);
+
     
     // -------------------------------------------
     // 1. FXML COMPONENT INJECTIONS (The VIEW)
@@ -26,6 +31,9 @@ public class CategoryController {
     
     // FIX HERE: Renamed 'nameColumn' to 'categoryNameColumn' to match FXML fx:id
     @FXML private TableColumn<Category, String> categoryNameColumn; 
+    @FXML private TableColumn<Category, Integer> bookCountColumn;
+    @FXML private TableColumn<Category, Integer> onLoanCountColumn;
+    @FXML private TableColumn<Category, Long> loanTotalColumn;
     
     @FXML private TextField categoryIDField;
     @FXML private TextField categoryNameField;
@@ -36,6 +44,7 @@ public class CategoryController {
     // 2. DATA LAYER INSTANCE AND STATE
     // -------------------------------------------
     private CategoryDAO categoryDAO = new CategoryDAO();
+    private CategoryStatsDAO categoryStatsDAO = new CategoryStatsDAO();
     private ObservableList<Category> categoryList;
     private Category selectedCategory; 
 
@@ -45,10 +54,13 @@ public class CategoryController {
     @FXML
     public void initialize() {
         // --- Configure Table Columns ---
-        categoryIDColumn.setCellValueFactory(new PropertyValueFactory<>("categoryID"));
+        categoryIDColumn.setCellValueFactory(cell -> cell.getValue().categoryIDProperty());
         
         // FIX HERE: Used the renamed variable 'categoryNameColumn'
-        categoryNameColumn.setCellValueFactory(new PropertyValueFactory<>("categoryName"));
+        categoryNameColumn.setCellValueFactory(cell -> cell.getValue().categoryNameProperty());
+        bookCountColumn.setCellValueFactory(cell -> cell.getValue().bookCountProperty());
+        onLoanCountColumn.setCellValueFactory(cell -> cell.getValue().onLoanCountProperty());
+        loanTotalColumn.setCellValueFactory(cell -> cell.getValue().loanTotalProperty());
         
         // --- Add Listener for Table Selection ---
         categoryTable.getSelectionModel().selectedItemProperty().addListener(
@@ -65,7 +77,12 @@ public class CategoryController {
         GlobalEventManager.getInstance().getRefreshSignal().addListener((obs, oldVal, newVal) -> {
             loadCategories();
         });
-        loadCategories();
+
+        // Warm start: the rows saved at the last run are shown at once, and replaced
+        // with the current counters once the database has answered (see ReferenceData)
+        ReferenceData reference = ReferenceData.getInstance();
+        reference.categoriesProperty().addListener((obs, oldRows, rows) -> showCategories(rows));
+        if (reference.getCategories() != null) showCategories(reference.getCategories()); else loadCategories();
     }
     
     /**
@@ -73,14 +90,17 @@ public class CategoryController {
      */
     private void loadCategories() {
         try {
-            List<Category> categories = categoryDAO.readAllCategories();
-            categoryList = FXCollections.observableArrayList(categories);
-            categoryTable.setItems(categoryList);
+            showCategories(categoryDAO.readAllCategories());
         } catch (SQLException e) {
             showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load categories.");
-            e.printStackTrace();
+            LOG.atError("loadCategories").message("Failed to load categories").cause(e).log();
         }
     }
+
+    private void showCategories(List<Category> categories) {
+        categoryList = FXCollections.observableArrayList(categories);
+        categoryTable.setItems(categoryList);
+    }
     
     /**
      * Populates the input field when a category is selected in the table.
@@ -120,7 +140,6 @@ public class CategoryController {
                 selectedCategory.setCategoryName(inputName);
                 
                 categoryDAO.updateCategory(selectedCategory);
-                categoryTable.refresh();
                 showAlert(Alert.AlertType.INFORMATION, "Success", "Category updated successfully.");
 
             } else {
@@ -140,7 +159,7 @@ public class CategoryController {
                 errorMsg = "Database Error: The Category ID or Name is already in use.";
             }
             showAlert(Alert.AlertType.ERROR, "Database Error", errorMsg);
-            e.printStackTrace();
+            LOG.atError("handleSaveCategory").message("Failed to save category").cause(e).log();
         }
     }
 
@@ -169,10 +188,38 @@ public class CategoryController {
             } else {
                 showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to delete category. Check logs.");
             }
-            e.printStackTrace();
+            LOG.atError("handleDeleteCategory").entity(categoryToDelete.getCategoryID()).message("Failed to delete category").cause(e).log();
         }
     }
     
+    /**
+     * Recounts the category counters from books and transactions and offers to repair
+     * any that have drifted (e.g. after a bulk load that bypassed the application).
+     */
+    @FXML
+    private void handleVerifyCounters() {
+        try {
+            List<String> drift = categoryStatsDAO.check();
+            if (drift.isEmpty()) {
+                showAlert(Alert.AlertType.INFORMATION, "Counters Verified", "All category counters are consistent.");
+                return;
+            }
+
+            Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+            confirm.setTitle("Counters Out of Step");
+            confirm.setHeaderText(drift.size() + " categories have drifted. Rebuild the counters?");
+            confirm.setContentText(String.join("\n", drift));
+            if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) return;
+
+            categoryStatsDAO.rebuild();
+            loadCategories();
+            showAlert(Alert.AlertType.INFORMATION, "Success", "Category counters rebuilt.");
+        } catch (SQLException e) {
+            showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to verify category counters. Check logs.");
+            LOG.atError("handleVerifyCounters").message("Failed to verify category counters").cause(e).log();
+        }
+    }
+
     /**
      * Clears the input field and resets the controller state.
      */
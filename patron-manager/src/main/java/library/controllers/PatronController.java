@@ -1,23 +1,35 @@
 package library.controllers;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import configuration.GlobalEventManager;
+import configuration.ReferenceData;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonBar;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
-import javafx.scene.control.cell.PropertyValueFactory;
+import library.logging.Log;
 import library.models.Patron;
+import library.models.Transaction;
 import library.utilities.PatronDAO;
+import library.utilities.StaleRecordException;
+import library.utilities.TransactionDAO;
 
 public class PatronController {
 
+    private static final Log LOG = Log.get(PatronController.class);
+
     // -------------------------------------------
     // 1. FXML COMPONENT INJECTIONS
     // -------------------------------------------
@@ -28,6 +40,8 @@ public class PatronController {
     @FXML private TableColumn<Patron, String> emailColumn;
     @FXML private TableColumn<Patron, String> phoneColumn;
     @FXML private TableColumn<Patron, String> addressColumn;
+    @FXML private TextField filterField;
+    @FXML private Label filterCountLabel;
     
     @FXML private TextField patronIDField;
     @FXML private TextField firstNameField;
@@ -38,30 +52,67 @@ public class PatronController {
     @FXML private Button savePatronButton;
     @FXML private Button deletePatronButton;
 
+    // --- Loan History Panel ---
+    @FXML private TableView<Transaction> historyTable;
+    @FXML private TableColumn<Transaction, String> historyTransactionIDColumn;
+    @FXML private TableColumn<Transaction, String> historyBookTitleColumn;
+    @FXML private TableColumn<Transaction, String> historyBorrowedColumn;
+    @FXML private TableColumn<Transaction, String> historyDueColumn;
+    @FXML private TableColumn<Transaction, String> historyReturnedColumn;
+    @FXML private Label historyStatusLabel;
+    @FXML private Button loadMoreHistoryButton;
+
     // -------------------------------------------
     // 2. DATA LAYER INSTANCE AND STATE
     // -------------------------------------------
     private final PatronDAO patronDAO = new PatronDAO();
-    private ObservableList<Patron> patronList;
+    private final ObservableList<Patron> patronList = FXCollections.observableArrayList();
+    private TableModel<Patron> patronModel;
     private Patron selectedPatron; 
 
+    // History is read one page at a time, only when asked for
+    private static final int HISTORY_PAGE_SIZE = 50;
+    private final TransactionDAO transactionDAO = new TransactionDAO();
+    private final ObservableList<Transaction> historyList = FXCollections.observableArrayList();
+    private String historyPatronID;
+    private int historyGeneration; // bumped on every patron change; late pages of the previous patron are dropped
+    private boolean historyLoading;
+
     // -------------------------------------------
     // 3. INITIALIZATION METHOD
     // -------------------------------------------
     @FXML
     public void initialize() {
-        // Configure Table Columns (All PropertyValueFactory names match the Patron model's getters)
-        patronIDColumn.setCellValueFactory(new PropertyValueFactory<>("patronID"));
-        firstNameColumn.setCellValueFactory(new PropertyValueFactory<>("firstName"));
-        lastNameColumn.setCellValueFactory(new PropertyValueFactory<>("lastName"));
-        emailColumn.setCellValueFactory(new PropertyValueFactory<>("email"));
-        phoneColumn.setCellValueFactory(new PropertyValueFactory<>("phone")); // FIX: Using "phone"
-        addressColumn.setCellValueFactory(new PropertyValueFactory<>("address"));
+        // Configure Table Columns (each cell shows the row's cached property; see Patron)
+        patronIDColumn.setCellValueFactory(cell -> cell.getValue().patronIDProperty());
+        firstNameColumn.setCellValueFactory(cell -> cell.getValue().firstNameProperty());
+        lastNameColumn.setCellValueFactory(cell -> cell.getValue().lastNameProperty());
+        emailColumn.setCellValueFactory(cell -> cell.getValue().emailProperty());
+        phoneColumn.setCellValueFactory(cell -> cell.getValue().phoneProperty());
+        addressColumn.setCellValueFactory(cell -> cell.getValue().addressProperty());
+
+        // Sorting and filtering compare keys computed once per row (see TableModel)
+        patronModel = new TableModel<>(patronList);
+        patronModel.textColumn(patronIDColumn, Patron::getPatronID);
+        patronModel.textColumn(firstNameColumn, Patron::getFirstName);
+        patronModel.textColumn(lastNameColumn, Patron::getLastName);
+        patronModel.textColumn(emailColumn, Patron::getEmail);
+        patronModel.textColumn(phoneColumn, Patron::getPhone);
+        patronModel.textColumn(addressColumn, Patron::getAddress);
+        patronModel.attach(patronTable, filterField, filterCountLabel);
+
+        historyTransactionIDColumn.setCellValueFactory(cell -> cell.getValue().transactionIDProperty());
+        historyBookTitleColumn.setCellValueFactory(cell -> cell.getValue().bookTitleProperty());
+        historyBorrowedColumn.setCellValueFactory(cell -> cell.getValue().dateBorrowedProperty());
+        historyDueColumn.setCellValueFactory(cell -> cell.getValue().dueDateProperty());
+        historyReturnedColumn.setCellValueFactory(cell -> cell.getValue().dateReturnedProperty());
+        historyTable.setItems(historyList);
         
         // Add Selection Listener for Details AND Button State
         patronTable.getSelectionModel().selectedItemProperty().addListener(
             (observable, oldValue, newValue) -> {
                 showPatronDetails(newValue);
+                showHistory(newValue);
                 deletePatronButton.setDisable(newValue == null);
             });
 
@@ -72,17 +123,21 @@ public class PatronController {
         GlobalEventManager.getInstance().getRefreshSignal().addListener((obs, oldVal, newVal) -> {
             loadPatrons();
         });
-        loadPatrons();
+
+        // Warm start: the rows saved at the last run are shown at once, and replaced if
+        // the database has changed since (see ReferenceData)
+        ReferenceData reference = ReferenceData.getInstance();
+        reference.patronsProperty().addListener((obs, oldRows, rows) -> patronList.setAll(rows));
+        if (reference.getPatrons() != null) patronList.setAll(reference.getPatrons()); else loadPatrons();
     }
     
     private void loadPatrons() {
         try {
             List<Patron> patrons = patronDAO.readAllPatrons();
-            patronList = FXCollections.observableArrayList(patrons);
-            patronTable.setItems(patronList);
+            patronList.setAll(patrons);
         } catch (SQLException e) {
             showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load patrons.");
-            e.printStackTrace();
+            LOG.atError("loadPatrons").message("Failed to load patrons").cause(e).log();
         }
     }
     
@@ -102,6 +157,71 @@ public class PatronController {
         savePatronButton.setText(selectedPatron != null ? "Update Patron" : "Save New Patron");
     }
 
+    // -------------------------------------------
+    // LOAN HISTORY (keyset pages, read off the FX thread)
+    // -------------------------------------------
+
+    /**
+     * Resets the history panel for the selected patron and loads its first page.
+     */
+    private void showHistory(Patron patron) {
+        historyGeneration++;
+        historyLoading = false;
+        historyList.clear();
+        loadMoreHistoryButton.setDisable(true);
+        historyPatronID = patron != null ? patron.getPatronID() : null;
+        if (historyPatronID == null) {
+            historyStatusLabel.setText("Select a patron to see their loans.");
+            return;
+        }
+        loadHistoryPage();
+    }
+
+    @FXML
+    private void handleLoadMoreHistory() {
+        loadHistoryPage();
+    }
+
+    /**
+     * Reads the page after the last loaded row on a background thread and appends it.
+     */
+    private void loadHistoryPage() {
+        if (historyPatronID == null || historyLoading) return;
+        historyLoading = true;
+        loadMoreHistoryButton.setDisable(true);
+        historyStatusLabel.setText("Loading...");
+
+        String patronID = historyPatronID;
+        int generation = historyGeneration;
+        Transaction last = historyList.isEmpty() ? null : historyList.get(historyList.size() - 1);
+        String afterDate = last != null ? last.getDateBorrowed() : null;
+        String afterID = last != null ? last.getTransactionID() : null;
+
+        Thread reader = new Thread(() -> {
+            try {
+                List<Transaction> page = transactionDAO.readPatronHistory(patronID, afterDate, afterID, HISTORY_PAGE_SIZE);
+                Platform.runLater(() -> {
+                    if (generation != historyGeneration) return; // another patron was selected meanwhile
+                    historyList.addAll(page);
+                    historyLoading = false;
+                    boolean more = page.size() == HISTORY_PAGE_SIZE;
+                    loadMoreHistoryButton.setDisable(!more);
+                    historyStatusLabel.setText(historyList.isEmpty() ? "No loans yet."
+                        : historyList.size() + (more ? "+ loans (newest first)" : " loans (newest first)"));
+                });
+            } catch (SQLException e) {
+                Platform.runLater(() -> {
+                    if (generation != historyGeneration) return;
+                    historyLoading = false;
+                    loadMoreHistoryButton.setDisable(false);
+                    historyStatusLabel.setText("History unavailable: " + e.getMessage());
+                });
+            }
+        }, "patron-history");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
     // -------------------------------------------
     // 4. EVENT HANDLERS (CRUD Actions)
     // -------------------------------------------
@@ -123,15 +243,16 @@ public class PatronController {
 
         try {
             if (selectedPatron != null) {
-                // --- A. UPDATE EXISTING PATRON ---
-                selectedPatron.setFirstName(firstName);
-                selectedPatron.setLastName(lastName);
-                selectedPatron.setEmail(email);
-                selectedPatron.setPhone(phone); // FIX: Using setPhone()
-                selectedPatron.setAddress(address);
+                // --- A. UPDATE EXISTING PATRON (only if no other desk saved it meanwhile) ---
+                // Edit a copy: only the fields set to a new value here are written
+                Patron edited = new Patron(selectedPatron);
+                edited.setFirstName(firstName);
+                edited.setLastName(lastName);
+                edited.setEmail(fromForm(email, selectedPatron.getEmail()));
+                edited.setPhone(fromForm(phone, selectedPatron.getPhone()));
+                edited.setAddress(fromForm(address, selectedPatron.getAddress()));
                 
-                patronDAO.updatePatron(selectedPatron);
-                patronTable.refresh();
+                if (!saveEdit(selectedPatron, edited)) return; // not saved; the form keeps the edit
                 showAlert(Alert.AlertType.INFORMATION, "Success", "Patron updated successfully.");
 
             } else {
@@ -155,10 +276,101 @@ public class PatronController {
 
         } catch (SQLException e) {
             showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to save patron. Check logs.");
-            e.printStackTrace();
+            LOG.atError("handleSavePatron").message("Failed to save patron").cause(e).log();
+        }
+    }
+
+    /**
+     * Saves an edit of a table row. If another desk saved the patron since it was read,
+     * offers to merge (the fields changed here are applied on top of their version) or
+     * to reload their version. Returns false if the edit was not saved.
+     */
+    private boolean saveEdit(Patron row, Patron edited) throws SQLException {
+        Patron base = row; // the version the edit was made against
+        while (true) {
+            try {
+                patronDAO.updatePatron(edited);
+                copyPatron(edited, row);
+                patronModel.rowChanged(row);
+                return true;
+            } catch (StaleRecordException e) {
+                Patron current = patronDAO.readCurrentPatron(row.getPatronID());
+                if (current == null) {
+                    showAlert(Alert.AlertType.WARNING, "Edit Conflict",
+                        "This patron was deleted at another desk. Your changes were not saved.");
+                    patronList.remove(row);
+                    handleClearFields();
+                    return false;
+                }
+
+                List<String> both = new ArrayList<>();
+                if (changedOnBoth(base.getFirstName(), edited.getFirstName(), current.getFirstName())) both.add("First Name");
+                if (changedOnBoth(base.getLastName(), edited.getLastName(), current.getLastName())) both.add("Last Name");
+                if (changedOnBoth(base.getEmail(), edited.getEmail(), current.getEmail())) both.add("Email");
+                if (changedOnBoth(base.getPhone(), edited.getPhone(), current.getPhone())) both.add("Phone");
+                if (changedOnBoth(base.getAddress(), edited.getAddress(), current.getAddress())) both.add("Address");
+
+                ButtonType merge = new ButtonType("Merge My Changes", ButtonBar.ButtonData.OK_DONE);
+                ButtonType reload = new ButtonType("Reload Theirs", ButtonBar.ButtonData.OTHER);
+                Alert conflict = new Alert(Alert.AlertType.WARNING, null, merge, reload, ButtonType.CANCEL);
+                conflict.setTitle("Edit Conflict");
+                conflict.setHeaderText("Another desk saved this patron while you were editing it.");
+                conflict.setContentText(both.isEmpty()
+                    ? "You changed different fields; merging keeps both sets of changes."
+                    : "Both of you changed: " + String.join(", ", both) + ". Merging keeps your values for these.");
+                ButtonType choice = conflict.showAndWait().orElse(ButtonType.CANCEL);
+
+                if (choice == merge) {
+                    // Their version plus the fields changed here: only those are written
+                    Patron merged = new Patron(current);
+                    merged.setFirstName(pick(base.getFirstName(), edited.getFirstName(), current.getFirstName()));
+                    merged.setLastName(pick(base.getLastName(), edited.getLastName(), current.getLastName()));
+                    merged.setEmail(pick(base.getEmail(), edited.getEmail(), current.getEmail()));
+                    merged.setPhone(pick(base.getPhone(), edited.getPhone(), current.getPhone()));
+                    merged.setAddress(pick(base.getAddress(), edited.getAddress(), current.getAddress()));
+                    base = current;
+                    edited = merged; // retried against their version
+                } else {
+                    if (choice == reload) {
+                        copyPatron(current, row);
+                        patronModel.rowChanged(row);
+                        showPatronDetails(row);
+                    }
+                    return false;
+                }
+            }
         }
     }
 
+    /** The edited value if this desk changed the field, otherwise theirs. */
+    private static String pick(String base, String mine, String theirs) {
+        return same(mine, base) ? theirs : mine;
+    }
+
+    private static boolean changedOnBoth(String base, String mine, String theirs) {
+        return !same(mine, base) && !same(theirs, base) && !same(mine, theirs);
+    }
+
+    /** Field equality as the form sees it: an empty text field stands for NULL. */
+    private static boolean same(Object a, Object b) {
+        return Objects.equals(a == null ? "" : a, b == null ? "" : b);
+    }
+
+    /** Text as typed, except that an empty field leaves a stored NULL alone (it is not an edit). */
+    private static String fromForm(String typed, String stored) {
+        return same(typed, stored) ? stored : typed;
+    }
+
+    private static void copyPatron(Patron from, Patron to) {
+        to.setFirstName(from.getFirstName());
+        to.setLastName(from.getLastName());
+        to.setEmail(from.getEmail());
+        to.setPhone(from.getPhone());
+        to.setAddress(from.getAddress());
+        to.setVersion(from.getVersion());
+        to.markClean(); // mirrors the saved row
+    }
+
     @FXML
     private void handleDeletePatron() {
         Patron patronToDelete = patronTable.getSelectionModel().getSelectedItem();
@@ -179,7 +391,7 @@ public class PatronController {
             } else {
                 showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to delete patron. Check logs.");
             }
-            e.printStackTrace();
+            LOG.atError("handleDeletePatron").entity(patronToDelete.getPatronID()).message("Failed to delete patron").cause(e).log();
         }
     }
     
@@ -0,0 +1,216 @@
+package library.controllers;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import configuration.GlobalEventManager;
+import configuration.ReferenceData;
+import javafx.application.Platform;
+import javafx.fxml.FXML;
+import javafx.scene.chart.BarChart;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import library.logging.Log;
+import library.models.Category;
+import library.utilities.CirculationRollup;
+import library.utilities.CirculationRollup.CategoryTotals;
+import library.utilities.CirculationRollup.Period;
+import library.utilities.CirculationRollup.Point;
+
+/**
+ * Circulation trends charted from the daily rollups (CirculationRollup); the
+ * transactions table is never read here. The rollups are brought up to date by the
+ * nightly job or by "Update Rollups".
+ */
+public class ReportController {
+    private static final Log LOG = Log.get(ReportController.class);
+
+    private static final String ALL_CATEGORIES_LABEL = "All categories";
+
+    /** The ranges offered, each charted at a grouping that keeps the points readable. */
+    private enum Range {
+        LAST_90_DAYS("Last 90 days", 90, Period.DAY),
+        LAST_12_MONTHS("Last 12 months", 365, Period.WEEK),
+        LAST_5_YEARS("Last 5 years", 5 * 365, Period.MONTH),
+        ALL_YEARS("All years", 100 * 365, Period.YEAR);
+
+        private final String label;
+        private final int days;
+        private final Period period;
+
+        Range(String label, int days, Period period) {
+            this.label = label;
+            this.days = days;
+            this.period = period;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // -------------------------------------------
+    // 1. FXML COMPONENT INJECTIONS (The VIEW)
+    // -------------------------------------------
+    @FXML private ComboBox<Range> rangeComboBox;
+    @FXML private ComboBox<String> categoryComboBox;
+    @FXML private Label reportStatusLabel;
+    @FXML private LineChart<String, Number> circulationChart;
+    @FXML private LineChart<String, Number> patronChart;
+    @FXML private BarChart<String, Number> categoryChart;
+
+    // -------------------------------------------
+    // 2. STATE
+    // -------------------------------------------
+    private final List<String> categoryIDs = new ArrayList<>(); // parallel to the category combo box items
+    private int reportGeneration; // bumped by every load, so a slow one cannot overwrite a newer one
+
+    // -------------------------------------------
+    // 3. INITIALIZATION METHOD
+    // -------------------------------------------
+    @FXML
+    public void initialize() {
+        rangeComboBox.getItems().setAll(Range.values());
+        rangeComboBox.setValue(Range.LAST_12_MONTHS);
+        rangeComboBox.valueProperty().addListener((obs, oldRange, range) -> loadReport());
+
+        ReferenceData reference = ReferenceData.getInstance();
+        reference.categoriesProperty().addListener((obs, oldRows, rows) -> showCategories(rows));
+        showCategories(reference.getCategories());
+        categoryComboBox.valueProperty().addListener((obs, oldValue, value) -> loadReport());
+
+        GlobalEventManager.getInstance().getRefreshSignal().addListener((obs, oldVal, newVal) -> loadReport());
+        loadReport();
+    }
+
+    private void showCategories(List<Category> categories) {
+        List<String> ids = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        ids.add(CirculationRollup.ALL_CATEGORIES);
+        labels.add(ALL_CATEGORIES_LABEL);
+        if (categories != null) {
+            for (Category category : categories) {
+                ids.add(category.getCategoryID());
+                labels.add(category.getCategoryID() + " - " + category.getCategoryName());
+            }
+        }
+        // The categories are re-published whenever their counters move; only redraw on a real change
+        if (labels.equals(categoryComboBox.getItems())) return;
+
+        String selected = selectedCategoryID();
+        categoryIDs.clear();
+        categoryIDs.addAll(ids);
+        categoryComboBox.getItems().setAll(labels);
+        int index = categoryIDs.indexOf(selected);
+        categoryComboBox.getSelectionModel().select(Math.max(index, 0));
+    }
+
+    private String selectedCategoryID() {
+        int index = categoryComboBox.getSelectionModel().getSelectedIndex();
+        return index > 0 && index < categoryIDs.size() ? categoryIDs.get(index) : CirculationRollup.ALL_CATEGORIES;
+    }
+
+    // -------------------------------------------
+    // 4. LOADING (off the FX thread)
+    // -------------------------------------------
+    /**
+     * Reads the selected range from the rollups and redraws the charts.
+     */
+    private void loadReport() {
+        Range range = rangeComboBox.getValue();
+        String categoryID = selectedCategoryID();
+        LocalDate to = LocalDate.now();
+        LocalDate from = to.minusDays(range.days - 1);
+        int generation = ++reportGeneration;
+        reportStatusLabel.setText("Loading...");
+
+        Thread reader = new Thread(() -> {
+            try {
+                List<Point> trend = CirculationRollup.readTrend(from, to, categoryID, range.period);
+                List<CategoryTotals> categories = CirculationRollup.readCategoryTotals(from, to);
+                LocalDate completeThrough = CirculationRollup.readCompleteThrough();
+                Platform.runLater(() -> {
+                    if (generation != reportGeneration) return; // another range or category was selected meanwhile
+                    showTrend(trend, range.period);
+                    showCategoryTotals(categories);
+                    reportStatusLabel.setText(completeThrough == null
+                        ? "No rollups yet: press Update Rollups."
+                        : "Rollups complete through " + completeThrough + " (today is partial).");
+                });
+            } catch (SQLException e) {
+                LOG.atError("loadReport").entity(categoryID).message("Failed to load circulation report").cause(e).log();
+                Platform.runLater(() -> {
+                    if (generation != reportGeneration) return;
+                    reportStatusLabel.setText("Report unavailable: " + e.getMessage());
+                });
+            }
+        }, "circulation-report");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void showTrend(List<Point> trend, Period period) {
+        XYChart.Series<String, Number> loans = new XYChart.Series<>();
+        XYChart.Series<String, Number> returns = new XYChart.Series<>();
+        XYChart.Series<String, Number> overdue = new XYChart.Series<>();
+        XYChart.Series<String, Number> patrons = new XYChart.Series<>();
+        loans.setName("Loans");
+        returns.setName("Returns");
+        overdue.setName("Overdue");
+        patrons.setName("Borrowers");
+        for (Point point : trend) {
+            String label = labelOf(point.start(), period);
+            loans.getData().add(new XYChart.Data<>(label, point.loans()));
+            returns.getData().add(new XYChart.Data<>(label, point.returns()));
+            overdue.getData().add(new XYChart.Data<>(label, point.overdue()));
+            patrons.getData().add(new XYChart.Data<>(label, point.patrons()));
+        }
+        circulationChart.getData().setAll(List.of(loans, returns, overdue));
+        patronChart.getData().setAll(List.of(patrons));
+    }
+
+    private void showCategoryTotals(List<CategoryTotals> categories) {
+        XYChart.Series<String, Number> loans = new XYChart.Series<>();
+        loans.setName("Loans");
+        for (CategoryTotals totals : categories) {
+            loans.getData().add(new XYChart.Data<>(totals.categoryID(), totals.loans()));
+        }
+        categoryChart.getData().setAll(List.of(loans));
+    }
+
+    private static String labelOf(LocalDate start, Period period) {
+        return switch (period) {
+            case DAY, WEEK -> start.toString();
+            case MONTH -> start.format(DateTimeFormatter.ofPattern("yyyy-MM"));
+            case YEAR -> String.valueOf(start.getYear());
+        };
+    }
+
+    // -------------------------------------------
+    // 5. EVENT HANDLERS
+    // -------------------------------------------
+    /**
+     * Rolls up the days since the last run (the whole history on the first run), then
+     * reloads the charts.
+     */
+    @FXML
+    private void handleUpdateRollups() {
+        reportStatusLabel.setText("Updating rollups...");
+        Thread roller = new Thread(() -> {
+            try {
+                CirculationRollup.run();
+                Platform.runLater(this::loadReport);
+            } catch (SQLException e) {
+                Platform.runLater(() -> reportStatusLabel.setText("Rollup failed: " + e.getMessage()));
+            }
+        }, "circulation-rollup");
+        roller.setDaemon(true);
+        roller.start();
+    }
+}
@@ -0,0 +1,120 @@
+package library.controllers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import library.utilities.SortKeys;
+
+/**
+ * The rows a table shows: its source list, filtered by the words typed in a filter
+ * field, sorted by the columns the user clicked.
+ *
+ * Sorting and filtering go through {@link SortKeys}, so a click on a column header
+ * compares keys computed when each row was loaded rather than calling the cell getter
+ * and a Collator on every comparison. Rows are added to and removed from the source
+ * list as before; a row edited in place must be passed to {@link #rowChanged} so its
+ * keys, its filter match and its position are brought up to date.
+ */
+class TableModel<T> {
+
+    private final ObservableList<T> source;
+    private final SortKeys<T> keys = new SortKeys<>();
+    private final Map<TableColumn<T, ?>, Integer> columns = new HashMap<>();
+    private final FilteredList<T> filtered;
+    private final SortedList<T> sorted;
+    private Label countLabel;
+
+    TableModel(ObservableList<T> source) {
+        this.source = source;
+        // Registered before the FilteredList's own listener, so a row's keys exist
+        // before the filter and the sort look at it
+        source.addListener((ListChangeListener<T>) change -> {
+            while (change.next()) {
+                for (T row : change.getRemoved()) keys.remove(row);
+            }
+            change.reset();
+            while (change.next()) {
+                for (T row : change.getAddedSubList()) keys.put(row);
+            }
+        });
+        for (T row : source) keys.put(row);
+        this.filtered = new FilteredList<>(source);
+        this.sorted = new SortedList<>(filtered);
+        filtered.addListener((ListChangeListener<T>) change -> showCount());
+    }
+
+    // ---------------------------------------------
+    // --- COLUMNS (before attach) ---
+    // ---------------------------------------------
+    void textColumn(TableColumn<T, ?> column, Function<T, String> value) {
+        columns.put(column, keys.textColumn(value));
+    }
+
+    void numberColumn(TableColumn<T, ?> column, ToLongFunction<T> value) {
+        columns.put(column, keys.numberColumn(value));
+    }
+
+    /**
+     * Shows the rows in the table. Only the registered columns can be sorted; the
+     * filter follows the field as it is typed, and the label (may be null) shows how
+     * many rows match.
+     */
+    void attach(TableView<T> table, TextField filterField, Label countLabel) {
+        this.countLabel = countLabel;
+        for (TableColumn<T, ?> column : table.getColumns()) {
+            column.setSortable(columns.containsKey(column));
+        }
+        table.setSortPolicy(view -> {
+            List<SortKeys.Order> orders = new ArrayList<>();
+            for (TableColumn<T, ?> column : view.getSortOrder()) {
+                Integer key = columns.get(column);
+                if (key != null) orders.add(new SortKeys.Order(key, column.getSortType() == TableColumn.SortType.ASCENDING));
+            }
+            sorted.setComparator(keys.comparator(orders));
+            return true;
+        });
+        table.setItems(sorted);
+        filterField.textProperty().addListener((obs, oldText, typed) -> filtered.setPredicate(keys.filter(typed)));
+        showCount();
+    }
+
+    // ---------------------------------------------
+    // --- EDITED ROWS ---
+    // ---------------------------------------------
+    void rowChanged(T row) {
+        rowsChanged(List.of(row));
+    }
+
+    /** Rows edited in place: recomputes their keys and re-filters and re-sorts them. */
+    void rowsChanged(Collection<T> rows) {
+        Set<T> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        changed.addAll(rows);
+        for (int i = 0; i < source.size() && !changed.isEmpty(); i++) {
+            T row = source.get(i);
+            if (changed.remove(row)) source.set(i, row); // a replacement: the listener recomputes the keys
+        }
+    }
+
+    private void showCount() {
+        if (countLabel == null) return;
+        countLabel.setText(filtered.size() == source.size()
+            ? source.size() + " rows"
+            : filtered.size() + " of " + source.size() + " rows");
+    }
+}
@@ -4,18 +4,25 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
+import library.logging.Log;
 import library.models.*;
 import library.utilities.*;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import configuration.GlobalEventManager;
+import configuration.ReferenceData;
+import javafx.application.Platform;
 
 public class TransactionController {
 
+    private static final Log LOG = Log.get(TransactionController.class);
+
     // -------------------------------------------
     // 1. FXML COMPONENT INJECTIONS (The VIEW)
     // -------------------------------------------
@@ -23,13 +30,16 @@ public class TransactionController {
     @FXML private ComboBox<Book> bookComboBox;
     @FXML private Button borrowButton;
     @FXML private Button returnButton;
+    @FXML private ListView<String> alsoBorrowedList;
 
     @FXML private TableView<Transaction> transactionTable;
     @FXML private TableColumn<Transaction, String> transactionIDColumn;
     @FXML private TableColumn<Transaction, String> patronNameColumn;
     @FXML private TableColumn<Transaction, String> bookTitleColumn;
-    @FXML private TableColumn<Transaction, LocalDate> borrowDateColumn;
-    @FXML private TableColumn<Transaction, LocalDate> dueDateColumn;
+    @FXML private TableColumn<Transaction, String> borrowDateColumn;
+    @FXML private TableColumn<Transaction, String> dueDateColumn;
+    @FXML private TextField filterField;
+    @FXML private Label filterCountLabel;
     
     // -------------------------------------------
     // 2. DATA LAYER INSTANCE AND STATE
@@ -37,8 +47,12 @@ public class TransactionController {
     private PatronDAO patronDAO = new PatronDAO();
     private BookDAO bookDAO = new BookDAO();
     private TransactionDAO transactionDAO = new TransactionDAO();
+    private HoldDAO holdDAO = new HoldDAO();
+    
+    private final ObservableList<Transaction> outstandingLoansList = FXCollections.observableArrayList();
+    private Map<String, Book> booksById = Map.of();
     
-    private ObservableList<Transaction> outstandingLoansList;
+    private static final int SUGGESTION_COUNT = 5;
     
     // -------------------------------------------
     // 3. INITIALIZATION METHOD
@@ -46,15 +60,38 @@ public class TransactionController {
     @FXML
     public void initialize() {
         // --- Configure Table Columns ---
-        transactionIDColumn.setCellValueFactory(new PropertyValueFactory<>("transactionID"));
-        patronNameColumn.setCellValueFactory(new PropertyValueFactory<>("patronName")); // Requires getPatronName() in Transaction model
-        bookTitleColumn.setCellValueFactory(new PropertyValueFactory<>("bookTitle")); // Requires getBookTitle() in Transaction model
-        borrowDateColumn.setCellValueFactory(new PropertyValueFactory<>("dateBorrowed"));
-        dueDateColumn.setCellValueFactory(new PropertyValueFactory<>("dueDate"));
+        transactionIDColumn.setCellValueFactory(cell -> cell.getValue().transactionIDProperty());
+        patronNameColumn.setCellValueFactory(cell -> cell.getValue().patronNameProperty());
+        bookTitleColumn.setCellValueFactory(cell -> cell.getValue().bookTitleProperty());
+        borrowDateColumn.setCellValueFactory(cell -> cell.getValue().dateBorrowedProperty());
+        dueDateColumn.setCellValueFactory(cell -> cell.getValue().dueDateProperty());
+
+        // Sorting and filtering compare keys computed once per row (see TableModel);
+        // the dates are yyyy-MM-dd text, which sorts in date order
+        TableModel<Transaction> loanModel = new TableModel<>(outstandingLoansList);
+        loanModel.textColumn(transactionIDColumn, Transaction::getTransactionID);
+        loanModel.textColumn(patronNameColumn, Transaction::getPatronName);
+        loanModel.textColumn(bookTitleColumn, Transaction::getBookTitle);
+        loanModel.textColumn(borrowDateColumn, Transaction::getDateBorrowed);
+        loanModel.textColumn(dueDateColumn, Transaction::getDueDate);
+        loanModel.attach(transactionTable, filterField, filterCountLabel);
         
         // --- Load Initial Data ---
-        loadPatronsAndBooks();
+        // Warm start: patrons and books saved at the last run (see ReferenceData)
+        ReferenceData reference = ReferenceData.getInstance();
+        reference.patronsProperty().addListener((obs, oldRows, rows) -> showPatrons(rows));
+        reference.booksProperty().addListener((obs, oldRows, rows) -> showBooks(rows));
+        if (reference.getPatrons() != null && reference.getBooks() != null) {
+            showPatrons(reference.getPatrons());
+            showBooks(reference.getBooks());
+        } else {
+            loadPatronsAndBooks();
+        }
         loadOutstandingLoans();
+        buildRecommendations();
+
+        // --- "Also borrowed" suggestions for the chosen book ---
+        bookComboBox.valueProperty().addListener((observable, oldValue, newValue) -> showAlsoBorrowed(newValue));
         
         // --- Selection Listener for Return Button ---
         transactionTable.getSelectionModel().selectedItemProperty().addListener(
@@ -66,6 +103,8 @@ public class TransactionController {
         GlobalEventManager.getInstance().getRefreshSignal().addListener((obs, oldVal, newVal) -> {
             // Reloads the list of currently loaned books
             loadOutstandingLoans(); 
+            // Hold queues may have changed at other desks
+            HoldDAO.clearCache();
             // Reloads patrons for the ComboBox
             loadPatronsAndBooks();                     
         });
@@ -76,40 +115,75 @@ public class TransactionController {
      */
     private void loadPatronsAndBooks() {
         try {
-            // Load Patrons
-            List<Patron> patrons = patronDAO.readAllPatrons();
-            patronComboBox.setItems(FXCollections.observableArrayList(patrons));
-            patronComboBox.setConverter(new javafx.util.StringConverter<Patron>() {
-                @Override public String toString(Patron p) { return p != null ? p.getFirstName() + " " + p.getLastName() : ""; }
-                @Override public Patron fromString(String string) { return null; }
-            });
-
-            // Load Books
-            List<Book> books = bookDAO.readAllBooks();
-            bookComboBox.setItems(FXCollections.observableArrayList(books));
-            bookComboBox.setConverter(new javafx.util.StringConverter<Book>() {
-                @Override public String toString(Book b) { return b != null ? b.getTitle() + " (" + b.getAuthor() + ")" : ""; }
-                @Override public Book fromString(String string) { return null; }
-            });
-            
+            showPatrons(patronDAO.readAllPatrons());
+            showBooks(bookDAO.readAllBooks());
         } catch (SQLException e) {
             showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load Patrons or Books for selection.");
-            e.printStackTrace();
+            LOG.atError("loadPatronsAndBooks").message("Failed to load patrons or books for selection").cause(e).log();
         }
     }
 
+    private void showPatrons(List<Patron> patrons) {
+        patronComboBox.setItems(FXCollections.observableArrayList(patrons));
+        patronComboBox.setConverter(new javafx.util.StringConverter<Patron>() {
+            @Override public String toString(Patron p) { return p != null ? p.getFirstName() + " " + p.getLastName() : ""; }
+            @Override public Patron fromString(String string) { return null; }
+        });
+    }
+
+    private void showBooks(List<Book> books) {
+        booksById = books.stream().collect(Collectors.toMap(Book::getBookID, Function.identity()));
+        bookComboBox.setItems(FXCollections.observableArrayList(books));
+        bookComboBox.setConverter(new javafx.util.StringConverter<Book>() {
+            @Override public String toString(Book b) { return b != null ? b.getTitle() + " (" + b.getAuthor() + ")" : ""; }
+            @Override public Book fromString(String string) { return null; }
+        });
+    }
+
     /**
      * Loads transactions that do not have a return date (i.e., currently borrowed).
      */
     private void loadOutstandingLoans() {
         try {
             List<Transaction> loans = transactionDAO.readOutstandingLoans(); // Assuming this method exists
-            outstandingLoansList = FXCollections.observableArrayList(loans);
-            transactionTable.setItems(outstandingLoansList);
+            outstandingLoansList.setAll(loans);
         } catch (SQLException e) {
             showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to load outstanding loans.");
-            e.printStackTrace();
+            LOG.atError("loadOutstandingLoans").message("Failed to load outstanding loans").cause(e).log();
+        }
+    }
+    
+    /**
+     * Builds the co-borrow index off the FX thread; it is kept current by borrowBook afterwards.
+     */
+    private void buildRecommendations() {
+        if (CoBorrowIndex.getInstance().isReady()) return;
+        Thread builder = new Thread(() -> {
+            try {
+                CoBorrowIndex.getInstance().rebuild();
+                Platform.runLater(() -> showAlsoBorrowed(bookComboBox.getValue()));
+            } catch (SQLException e) {
+                LOG.atWarn("buildRecommendations").message("Recommendations unavailable").cause(e).log();
+            }
+        }, "co-borrow-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * Lists the titles most often borrowed by patrons who also borrowed the given book.
+     */
+    private void showAlsoBorrowed(Book book) {
+        if (book == null) {
+            alsoBorrowedList.getItems().clear();
+            return;
         }
+        List<String> titles = CoBorrowIndex.getInstance().alsoBorrowed(book.getBookID(), SUGGESTION_COUNT).stream()
+            .map(booksById::get)
+            .filter(b -> b != null)
+            .map(b -> b.getTitle() + " (" + b.getAuthor() + ")")
+            .collect(Collectors.toList());
+        alsoBorrowedList.setItems(FXCollections.observableArrayList(titles));
     }
     
     // -------------------------------------------
@@ -130,13 +204,14 @@ public class TransactionController {
         }
 
         try {
-            // 1. Availability Check (Binary: check for outstanding loan for this book ID)
-            if (transactionDAO.isBookCurrentlyBorrowed(selectedBook.getBookID())) { // Assuming this method exists
-                showAlert(Alert.AlertType.ERROR, "Borrow Error", "This book is currently unavailable (already on loan).");
+            // 1. Availability Check (the title's counter of copies on the shelf)
+            int free = transactionDAO.availableCopies(selectedBook.getBookID());
+            if (free == 0) {
+                offerHold(selectedPatron, selectedBook);
                 return;
             }
 
-            // 2. Perform Borrowing via DAO
+            // 2. Perform Borrowing via DAO (it refuses the copies kept aside for other patrons' READY holds)
             // Assuming business rule: All loans are for 14 days (or another fixed period)
             Transaction newLoan = transactionDAO.borrowBook(
                 selectedPatron.getPatronID(), 
@@ -153,15 +228,28 @@ public class TransactionController {
             newLoan.setBookTitle(selectedBook.getTitle());
 
             outstandingLoansList.add(newLoan);
-            showAlert(Alert.AlertType.INFORMATION, "Success", "Book successfully borrowed!");
+            if (newLoan.getTransactionID().startsWith(OfflineJournal.PROVISIONAL_PREFIX)) {
+                showAlert(Alert.AlertType.WARNING, "Recorded Offline",
+                    "The database is unreachable. The loan was saved locally and will be synced automatically.");
+            } else {
+                showAlert(Alert.AlertType.INFORMATION, "Success", "Book successfully borrowed!");
+            }
             
             // Clear selections
             patronComboBox.getSelectionModel().clearSelection();
             bookComboBox.getSelectionModel().clearSelection();
             
         } catch (SQLException e) {
+            if (TransactionDAO.NO_COPY_AVAILABLE.equals(e.getSQLState())) { // the last copy went to another desk meanwhile
+                showAlert(Alert.AlertType.WARNING, "Borrow Error", "This book is currently unavailable (all copies are on loan).");
+                return;
+            }
+            if (TransactionDAO.HELD_FOR_OTHERS.equals(e.getSQLState())) {
+                showAlert(Alert.AlertType.ERROR, "Borrow Error", "This book is being held for another patron.");
+                return;
+            }
             showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to record loan.");
-            e.printStackTrace();
+            LOG.atError("handleBorrowBook").message("Failed to record loan").cause(e).log();
         }
     }
 
@@ -179,16 +267,70 @@ public class TransactionController {
 
         try {
             // 1. Perform Return via DAO
-            transactionDAO.returnBook(loanToReturn.getTransactionID()); // Assuming this updates returnDate in DB
+            Hold readyHold = transactionDAO.returnBook(loanToReturn.getTransactionID()); // Assuming this updates returnDate in DB
             
             // 2. Update UI
             outstandingLoansList.remove(loanToReturn);
-            showAlert(Alert.AlertType.INFORMATION, "Success", "Book successfully returned!");
+            String message = "Book successfully returned!";
+            long fine = loanToReturn.getTransactionID().startsWith(OfflineJournal.PROVISIONAL_PREFIX)
+                ? 0 : FinesEngine.readFine(loanToReturn.getTransactionID());
+            if (fine > 0) {
+                message += " Overdue fine: " + FinesEngine.formatCents(fine) + ".";
+            }
+            if (readyHold != null) {
+                message += " Please keep it aside: it is now on hold for " + patronName(readyHold.getPatronID()) + ".";
+            }
+            showAlert(Alert.AlertType.INFORMATION, "Success", message);
             
         } catch (SQLException e) {
+            if (TransactionDAO.ALREADY_RETURNED.equals(e.getSQLState()) || TransactionDAO.UNKNOWN_LOAN.equals(e.getSQLState())) {
+                outstandingLoansList.remove(loanToReturn); // returned at another desk meanwhile
+                showAlert(Alert.AlertType.WARNING, "Return Error", "This loan is no longer outstanding: " + e.getMessage() + ".");
+                return;
+            }
             showAlert(Alert.AlertType.ERROR, "Database Error", "Failed to record return.");
-            e.printStackTrace();
+            LOG.atError("handleReturnBook").entity(loanToReturn.getTransactionID()).message("Failed to record return").cause(e).log();
+        }
+    }
+
+    /**
+     * The book is on loan: offers to queue the patron for it, or shows their place if already queued.
+     */
+    private void offerHold(Patron patron, Book book) throws SQLException {
+        int position = holdDAO.positionInQueue(book.getBookID(), patron.getPatronID());
+        if (position >= 0) {
+            showAlert(Alert.AlertType.INFORMATION, "Already on Hold", position == 0
+                ? "A copy is already being held for this patron."
+                : "This patron is number " + position + " in the queue for this book.");
+            return;
+        }
+
+        int waiting = holdDAO.readQueue(book.getBookID()).size();
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Book on Loan");
+        confirm.setHeaderText(null);
+        confirm.setContentText("This book is currently on loan (" + waiting + " patron(s) waiting). Place a hold for "
+            + patron.getFirstName() + " " + patron.getLastName() + "?");
+        if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) return;
+
+        try {
+            holdDAO.placeHold(book.getBookID(), patron.getPatronID(), 0);
+            showAlert(Alert.AlertType.INFORMATION, "Hold Placed", "Hold placed. Position in queue: "
+                + holdDAO.positionInQueue(book.getBookID(), patron.getPatronID()) + ".");
+        } catch (SQLException e) {
+            if (e.getErrorCode() == 1062) { // duplicate key: an active hold already exists
+                showAlert(Alert.AlertType.WARNING, "Already on Hold", "This patron already holds this book.");
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    private String patronName(String patronID) {
+        for (Patron p : patronComboBox.getItems()) {
+            if (p.getPatronID().equals(patronID)) return p.getFirstName() + " " + p.getLastName();
         }
+        return patronID;
     }
 
     /**
@@ -0,0 +1,18 @@
+package library.logging;
+
+import java.util.Locale;
+
+/** Severity of a log event, lowest first. OFF disables a logger or the console. */
+public enum Level {
+    DEBUG, INFO, WARN, ERROR, OFF;
+
+    /** Parses a level name (any case); {@code fallback} if it is null or unknown. */
+    static Level parse(String name, Level fallback) {
+        if (name == null) return fallback;
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package library.logging;
+
+/**
+ * A named logger. Each class keeps one in a static field:
+ *
+ *   private static final Log LOG = Log.get(BookDAO.class);
+ *
+ *   LOG.atError("updateBook").entity(book.getBookID()).latencySince(started)
+ *      .message("Error updating book").cause(e).log();
+ *
+ * The level is checked first: below the logger's level, {@code atX} returns a shared
+ * event that ignores everything, so a disabled call builds nothing. Arguments are
+ * still evaluated; wrap a message that is costly to build in {@link #isEnabled}.
+ *
+ * Events are written as JSON lines by a background thread (see {@link LogWriter}),
+ * so logging never waits for the disk or the console.
+ *
+ * The level is INFO, or -Dpatronmanager.log.level, or -Dpatronmanager.log.level.&lt;Name&gt;
+ * for the logger of class Name.
+ */
+public final class Log {
+
+    private final String name;
+    private final Level level;
+
+    private Log(String name, Level level) {
+        this.name = name;
+        this.level = level;
+    }
+
+    public static Log get(Class<?> owner) {
+        String name = owner.getSimpleName();
+        Level fallback = Level.parse(System.getProperty("patronmanager.log.level"), Level.INFO);
+        return new Log(name, Level.parse(System.getProperty("patronmanager.log.level." + name), fallback));
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.compareTo(this.level) >= 0 && level != Level.OFF;
+    }
+
+    // ---------------------------------------------
+    // --- EVENTS ---
+    // ---------------------------------------------
+    /** Starts an event about {@code operation} (the method or task that logs it). */
+    public LogEvent at(Level level, String operation) {
+        return isEnabled(level) ? new LogEvent(level, name, operation) : LogEvent.DISABLED;
+    }
+
+    public LogEvent atDebug(String operation) {
+        return at(Level.DEBUG, operation);
+    }
+    public LogEvent atInfo(String operation) {
+        return at(Level.INFO, operation);
+    }
+    public LogEvent atWarn(String operation) {
+        return at(Level.WARN, operation);
+    }
+    public LogEvent atError(String operation) {
+        return at(Level.ERROR, operation);
+    }
+}
@@ -0,0 +1,68 @@
+package library.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One log event, filled in by the caller and handed to the writer by {@link #log()}.
+ * Obtained from {@link Log}; not reused after it is logged.
+ */
+public final class LogEvent {
+
+    /** Returned for a disabled level: ignores everything. */
+    static final LogEvent DISABLED = new LogEvent(Level.OFF, null, null);
+
+    final long time = System.currentTimeMillis();
+    final String thread;
+    final Level level;
+    final String logger;
+    final String operation;
+    String entity;
+    long latencyNanos = -1;
+    String message;
+    Throwable cause;
+    List<Object> fields; // name, value, name, value...
+
+    LogEvent(Level level, String logger, String operation) {
+        this.level = level;
+        this.logger = logger;
+        this.operation = operation;
+        this.thread = level == Level.OFF ? null : Thread.currentThread().getName();
+    }
+
+    /** The code of the record concerned (BK-0001, a TransactionID...). */
+    public LogEvent entity(String id) {
+        if (this != DISABLED) entity = id;
+        return this;
+    }
+
+    /** The time since {@code startNanos} (a System.nanoTime() taken when the operation began). */
+    public LogEvent latencySince(long startNanos) {
+        if (this != DISABLED) latencyNanos = System.nanoTime() - startNanos;
+        return this;
+    }
+
+    public LogEvent message(String text) {
+        if (this != DISABLED) message = text;
+        return this;
+    }
+
+    public LogEvent cause(Throwable error) {
+        if (this != DISABLED) cause = error;
+        return this;
+    }
+
+    /** Any other field; the value is written as a JSON number if it is a Number, else as a string. */
+    public LogEvent field(String name, Object value) {
+        if (this != DISABLED) {
+            if (fields == null) fields = new ArrayList<>(4);
+            fields.add(name);
+            fields.add(value);
+        }
+        return this;
+    }
+
+    public void log() {
+        if (this != DISABLED) LogWriter.getInstance().submit(this);
+    }
+}
@@ -0,0 +1,261 @@
+package library.logging;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The background writer behind every {@link Log}.
+ *
+ * Logging threads only put the event in a bounded queue (a short lock, no I/O); if the
+ * queue is full the event is dropped, and the count of dropped events is written with
+ * the next one. The "log-writer" thread formats each event as one JSON line:
+ *
+ *   {"ts":"2026-01-05T09:12:44.031Z","level":"ERROR","logger":"BookDAO","thread":"JavaFX Application Thread",
+ *    "op":"updateBook","entity":"BK-0042","latencyMs":3.412,"msg":"Error updating book",
+ *    "error":"java.sql.SQLException: ...","sqlState":"08S01","stack":"..."}
+ *
+ * and appends it to ~/.patron-manager/logs/patron-manager.log (-Dpatronmanager.log.dir).
+ * When the file reaches 10 MiB (-Dpatronmanager.log.maxBytes) it is renamed to .1, the
+ * older ones to .2 and so on, keeping 5 files in all (-Dpatronmanager.log.files).
+ *
+ * Events at WARN and above are also printed to stderr as one short line, by the same
+ * thread (-Dpatronmanager.log.console=&lt;level&gt;, or OFF). The queue is written out
+ * when the JVM exits normally.
+ */
+final class LogWriter {
+
+    private static final int CAPACITY = 8192;
+    private static final String FILE_NAME = "patron-manager.log";
+
+    private static final LogWriter INSTANCE = new LogWriter();
+
+    private final BlockingQueue<LogEvent> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Level consoleLevel = Level.parse(System.getProperty("patronmanager.log.console"), Level.WARN);
+    private final Path directory;
+    private final long maxBytes = Long.getLong("patronmanager.log.maxBytes", 10L << 20);
+    private final int files = Integer.getInteger("patronmanager.log.files", 5);
+    private final Thread writer;
+    private volatile boolean stopping;
+
+    // Used by the writer thread only
+    private final StringBuilder line = new StringBuilder(512);
+    private Writer out;
+    private long written;
+    private boolean fileFailed;
+
+    private LogWriter() {
+        String configured = System.getProperty("patronmanager.log.dir");
+        directory = configured != null
+            ? Paths.get(configured)
+            : Paths.get(System.getProperty("user.home"), ".patron-manager", "logs");
+        writer = new Thread(this::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "log-shutdown"));
+    }
+
+    static LogWriter getInstance() {
+        return INSTANCE;
+    }
+
+    void submit(LogEvent event) {
+        if (!queue.offer(event)) dropped.incrementAndGet();
+    }
+
+    // ---------------------------------------------
+    // --- WRITER ---
+    // ---------------------------------------------
+    private void drainLoop() {
+        List<LogEvent> batch = new ArrayList<>(256);
+        while (!stopping) {
+            try {
+                LogEvent first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, 255);
+            writeAll(batch);
+            batch.clear();
+        }
+    }
+
+    private synchronized void writeAll(List<LogEvent> batch) {
+        for (LogEvent event : batch) {
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) write(droppedEvent(lost));
+            write(event);
+        }
+        try {
+            if (out != null) out.flush();
+        } catch (IOException e) {
+            fileFailed(e);
+        }
+    }
+
+    private void write(LogEvent event) {
+        if (event.level.compareTo(consoleLevel) >= 0 && consoleLevel != Level.OFF) {
+            System.err.println(consoleLine(event));
+        }
+        if (fileFailed) return;
+        try {
+            if (out == null || written >= maxBytes) rotate();
+            String json = jsonLine(event);
+            out.write(json);
+            written += json.length();
+        } catch (IOException e) {
+            fileFailed(e);
+        }
+    }
+
+    private void fileFailed(IOException e) {
+        fileFailed = true; // console only from now on
+        System.err.println("Log file unavailable in " + directory + ": " + e.getMessage());
+    }
+
+    private LogEvent droppedEvent(long lost) {
+        return new LogEvent(Level.WARN, "LogWriter", "queue")
+            .message(lost + " log events dropped (queue full)")
+            .field("dropped", lost);
+    }
+
+    // Writes what is still queued; runs in the shutdown hook. The writer is stopped with
+    // a flag, not interrupted: an interrupt would close the file channel mid-write.
+    private void shutdown() {
+        stopping = true;
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<LogEvent> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        writeAll(rest);
+        try {
+            if (out != null) out.close();
+        } catch (IOException ignored) {
+            // Exiting anyway
+        }
+    }
+
+    // ---------------------------------------------
+    // --- FILES ---
+    // ---------------------------------------------
+    // patron-manager.log -> .1 -> .2 ... ; the oldest is deleted
+    private void rotate() throws IOException {
+        Files.createDirectories(directory);
+        Path current = directory.resolve(FILE_NAME);
+        if (out != null) {
+            out.close();
+            out = null;
+            int oldest = Math.max(1, files - 1);
+            Files.deleteIfExists(directory.resolve(FILE_NAME + "." + oldest));
+            for (int i = oldest - 1; i >= 1; i--) {
+                Path older = directory.resolve(FILE_NAME + "." + i);
+                if (Files.exists(older)) {
+                    Files.move(older, directory.resolve(FILE_NAME + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(current, directory.resolve(FILE_NAME + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        out = Files.newBufferedWriter(current, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        written = Files.size(current);
+    }
+
+    // ---------------------------------------------
+    // --- FORMAT ---
+    // ---------------------------------------------
+    private String jsonLine(LogEvent e) {
+        line.setLength(0);
+        line.append('{');
+        field("ts", Instant.ofEpochMilli(e.time).toString());
+        field("level", e.level.name());
+        field("logger", e.logger);
+        field("thread", e.thread);
+        field("op", e.operation);
+        if (e.entity != null) field("entity", e.entity);
+        if (e.latencyNanos >= 0) {
+            line.append(",\"latencyMs\":").append(String.format(Locale.ROOT, "%.3f", e.latencyNanos / 1e6));
+        }
+        if (e.message != null) field("msg", e.message);
+        if (e.fields != null) {
+            for (int i = 0; i + 1 < e.fields.size(); i += 2) {
+                Object value = e.fields.get(i + 1);
+                if (value instanceof Number) {
+                    line.append(',');
+                    quote(String.valueOf(e.fields.get(i)));
+                    line.append(':').append(value);
+                } else {
+                    field(String.valueOf(e.fields.get(i)), value == null ? null : value.toString());
+                }
+            }
+        }
+        if (e.cause != null) {
+            field("error", e.cause.toString());
+            if (e.cause instanceof SQLException sql && sql.getSQLState() != null) field("sqlState", sql.getSQLState());
+            StringWriter stack = new StringWriter();
+            e.cause.printStackTrace(new PrintWriter(stack));
+            field("stack", stack.toString());
+        }
+        return line.append("}\n").toString();
+    }
+
+    private static String consoleLine(LogEvent e) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(e.level).append(' ').append(e.logger).append('.').append(e.operation);
+        if (e.entity != null) sb.append(" [").append(e.entity).append(']');
+        if (e.message != null) sb.append(": ").append(e.message);
+        if (e.cause != null) sb.append(e.message != null ? " (" : ": ").append(e.cause.getMessage()).append(e.message != null ? ")" : "");
+        return sb.toString();
+    }
+
+    private void field(String name, String value) {
+        if (line.length() > 1) line.append(',');
+        quote(name);
+        line.append(':');
+        if (value == null) line.append("null");
+        else quote(value);
+    }
+
+    // JSON string escaping, as in library.server.Json
+    private void quote(String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -1,5 +1,15 @@
 package library.models;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
 public class Book {
     // Fields
     private String bookID;
@@ -9,6 +19,20 @@ public class Book {
     private int publicationYear;
     private String categoryID;
     private String categoryName; // Included for TableView display (joining)
+    private int version; // Row version read with the record; updates are only applied to this version
+    private int totalCopies; // Copies owned (book_stock, maintained by the borrow and return transactions)
+    private int availableCopies; // Copies on the shelf
+
+    // Table cell values, created the first time a cell shows the column and kept in
+    // step by the setters, so an in-place edit shows without refreshing the table
+    private ReadOnlyStringWrapper bookIDProperty;
+    private ReadOnlyStringWrapper titleProperty;
+    private ReadOnlyStringWrapper authorProperty;
+    private ReadOnlyStringWrapper isbnProperty;
+    private ReadOnlyObjectWrapper<Integer> publicationYearProperty;
+    private ReadOnlyStringWrapper categoryNameProperty;
+    private ReadOnlyStringWrapper copiesProperty;
+    private final Set<String> dirtyColumns = new LinkedHashSet<>();
 
     // --- CONSTRUCTOR 1: For creating NEW books (Used by BookController) ---
     // Takes 6 arguments (excluding CategoryName, which is not stored in the book table)
@@ -33,6 +57,14 @@ public class Book {
         this.categoryName = categoryName; 
     }
 
+    // --- CONSTRUCTOR 3: Copy for editing (same record and version, nothing changed yet) ---
+    public Book(Book other) {
+        this(other.bookID, other.title, other.author, other.isbn, other.publicationYear, other.categoryID, other.categoryName);
+        this.version = other.version;
+        this.totalCopies = other.totalCopies;
+        this.availableCopies = other.availableCopies;
+    }
+
 
     // ----------------------
     // --- Getters (Read) ---
@@ -46,7 +78,7 @@ public class Book {
     public String getAuthor() {
         return author;
     }
-    public String getIsbn() { // Matches PropertyValueFactory("isbn")
+    public String getIsbn() {
         return isbn;
     }
     public int getPublicationYear() {
@@ -58,29 +90,115 @@ public class Book {
     public String getCategoryName() { // Used for TableView display
         return categoryName;
     }
+    public int getVersion() {
+        return version;
+    }
+    public int getTotalCopies() {
+        return totalCopies;
+    }
+    public int getAvailableCopies() {
+        return availableCopies;
+    }
 
     // ----------------------
     // --- Setters (Write) --
     // ----------------------
     public void setBookID(String bookID) {
         this.bookID = bookID;
+        if (bookIDProperty != null) bookIDProperty.set(bookID);
     }
     public void setTitle(String title) {
+        track("Title", this.title, title);
         this.title = title;
+        if (titleProperty != null) titleProperty.set(title);
     }
     public void setAuthor(String author) {
+        track("Author", this.author, author);
         this.author = author;
+        if (authorProperty != null) authorProperty.set(author);
     }
     public void setIsbn(String isbn) {
+        track("ISBN", this.isbn, isbn);
         this.isbn = isbn;
+        if (isbnProperty != null) isbnProperty.set(isbn);
     }
     public void setPublicationYear(int publicationYear) {
+        track("PublicationYear", this.publicationYear, publicationYear);
         this.publicationYear = publicationYear;
+        if (publicationYearProperty != null) publicationYearProperty.set(publicationYear);
     }
     public void setCategoryID(String categoryID) {
+        track("CategoryID", this.categoryID, categoryID);
         this.categoryID = categoryID;
     }
     public void setCategoryName(String categoryName) {
         this.categoryName = categoryName;
+        if (categoryNameProperty != null) categoryNameProperty.set(categoryName);
+    }
+    public void setVersion(int version) {
+        this.version = version;
+    }
+    // Not tracked: the copies are changed through BookStockDAO, not by the book update
+    public void setTotalCopies(int totalCopies) {
+        this.totalCopies = totalCopies;
+        if (copiesProperty != null) copiesProperty.set(copiesText());
+    }
+    public void setAvailableCopies(int availableCopies) {
+        this.availableCopies = availableCopies;
+        if (copiesProperty != null) copiesProperty.set(copiesText());
+    }
+
+    // ----------------------
+    // --- Table Properties -
+    // ----------------------
+    public ReadOnlyStringProperty bookIDProperty() {
+        if (bookIDProperty == null) bookIDProperty = new ReadOnlyStringWrapper(this, "bookID", bookID);
+        return bookIDProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty titleProperty() {
+        if (titleProperty == null) titleProperty = new ReadOnlyStringWrapper(this, "title", title);
+        return titleProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty authorProperty() {
+        if (authorProperty == null) authorProperty = new ReadOnlyStringWrapper(this, "author", author);
+        return authorProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty isbnProperty() {
+        if (isbnProperty == null) isbnProperty = new ReadOnlyStringWrapper(this, "isbn", isbn);
+        return isbnProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyObjectProperty<Integer> publicationYearProperty() {
+        if (publicationYearProperty == null) publicationYearProperty = new ReadOnlyObjectWrapper<>(this, "publicationYear", publicationYear);
+        return publicationYearProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty categoryNameProperty() {
+        if (categoryNameProperty == null) categoryNameProperty = new ReadOnlyStringWrapper(this, "categoryName", categoryName);
+        return categoryNameProperty.getReadOnlyProperty();
+    }
+    // "available / total", e.g. "2 / 5"
+    public ReadOnlyStringProperty copiesProperty() {
+        if (copiesProperty == null) copiesProperty = new ReadOnlyStringWrapper(this, "copies", copiesText());
+        return copiesProperty.getReadOnlyProperty();
+    }
+    private String copiesText() {
+        return availableCopies + " / " + totalCopies;
+    }
+
+    // ----------------------
+    // --- Change Tracking --
+    // ----------------------
+    // Columns given a new value by a setter since the record was read or last saved;
+    // the DAO's update writes only these.
+    public Set<String> getDirtyColumns() {
+        return Collections.unmodifiableSet(dirtyColumns);
+    }
+    public boolean isDirty() {
+        return !dirtyColumns.isEmpty();
+    }
+    public void markClean() {
+        dirtyColumns.clear();
+    }
+    private void track(String column, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) dirtyColumns.add(column);
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,32 @@
 package library.models;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
 public class Category {
     // Essentials for data access and JavaFX TableView
     // Fields correspond to the columns in the 'categories' table
     private String categoryID;
     private String categoryName;
+    // --- Maintained counters (table 'category_stats') ---
+    private int bookCount;
+    private int onLoanCount;
+    private long loanTotal;
+
+    // Cell values of the category table, created on first display (as in Book)
+    private ReadOnlyStringWrapper categoryIDProperty;
+    private ReadOnlyStringWrapper categoryNameProperty;
+    private ReadOnlyObjectWrapper<Integer> bookCountProperty;
+    private ReadOnlyObjectWrapper<Integer> onLoanCountProperty;
+    private ReadOnlyObjectWrapper<Long> loanTotalProperty;
+    private final Set<String> dirtyColumns = new LinkedHashSet<>();
 
     // Constructor
     // A convenient constructor to create a Patron object when reading from the database
@@ -13,6 +35,13 @@ public class Category {
         this.categoryName = categoryName;
     }
 
+    public Category(String categoryID, String categoryName, int bookCount, int onLoanCount, long loanTotal) {
+        this(categoryID, categoryName);
+        this.bookCount = bookCount;
+        this.onLoanCount = onLoanCount;
+        this.loanTotal = loanTotal;
+    }
+
     // ----------------------
     // --- Getters (Read) ---
     // ----------------------
@@ -22,14 +51,68 @@ public class Category {
     public String getCategoryName() {
         return categoryName;
     }
+    public int getBookCount() {
+        return bookCount;
+    }
+    public int getOnLoanCount() {
+        return onLoanCount;
+    }
+    public long getLoanTotal() {
+        return loanTotal;
+    }
 
     // ----------------------
     // --- Setters (Write) --
     // ----------------------
     public void setCategoryID(String categoryID) {
         this.categoryID = categoryID;
+        if (categoryIDProperty != null) categoryIDProperty.set(categoryID);
     }
     public void setCategoryName(String categoryName) {
+        track("CategoryName", this.categoryName, categoryName);
         this.categoryName = categoryName;
+        if (categoryNameProperty != null) categoryNameProperty.set(categoryName);
+    }
+
+    // ----------------------
+    // --- Table Properties -
+    // ----------------------
+    public ReadOnlyStringProperty categoryIDProperty() {
+        if (categoryIDProperty == null) categoryIDProperty = new ReadOnlyStringWrapper(this, "categoryID", categoryID);
+        return categoryIDProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty categoryNameProperty() {
+        if (categoryNameProperty == null) categoryNameProperty = new ReadOnlyStringWrapper(this, "categoryName", categoryName);
+        return categoryNameProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyObjectProperty<Integer> bookCountProperty() {
+        if (bookCountProperty == null) bookCountProperty = new ReadOnlyObjectWrapper<>(this, "bookCount", bookCount);
+        return bookCountProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyObjectProperty<Integer> onLoanCountProperty() {
+        if (onLoanCountProperty == null) onLoanCountProperty = new ReadOnlyObjectWrapper<>(this, "onLoanCount", onLoanCount);
+        return onLoanCountProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyObjectProperty<Long> loanTotalProperty() {
+        if (loanTotalProperty == null) loanTotalProperty = new ReadOnlyObjectWrapper<>(this, "loanTotal", loanTotal);
+        return loanTotalProperty.getReadOnlyProperty();
+    }
+
+    // ----------------------
+    // --- Change Tracking --
+    // ----------------------
+    // Columns given a new value by a setter since the record was read or last saved;
+    // the DAO's update writes only these.
+    public Set<String> getDirtyColumns() {
+        return Collections.unmodifiableSet(dirtyColumns);
+    }
+    public boolean isDirty() {
+        return !dirtyColumns.isEmpty();
+    }
+    public void markClean() {
+        dirtyColumns.clear();
+    }
+    private void track(String column, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) dirtyColumns.add(column);
     }
-}
\ No newline at end of file
+}
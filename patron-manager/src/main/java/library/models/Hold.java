@@ -0,0 +1,53 @@
+package library.models;
+
+public class Hold {
+    // Fields correspond to the columns in the 'holds' table
+    private long holdID;
+    private String bookID;
+    private String patronID;
+    private int priority;       // Higher is served first; first come first served within a priority
+    private String placedAt;
+    private String status;      // WAITING, READY, FULFILLED or CANCELLED
+
+    // Constructor
+    public Hold(long holdID, String bookID, String patronID, int priority, String placedAt, String status) {
+        this.holdID = holdID;
+        this.bookID = bookID;
+        this.patronID = patronID;
+        this.priority = priority;
+        this.placedAt = placedAt;
+        this.status = status;
+    }
+
+    // ----------------------
+    // --- Getters (Read) ---
+    // ----------------------
+    public long getHoldID() {
+        return holdID;
+    }
+    public String getBookID() {
+        return bookID;
+    }
+    public String getPatronID() {
+        return patronID;
+    }
+    public int getPriority() {
+        return priority;
+    }
+    public String getPlacedAt() {
+        return placedAt;
+    }
+    public String getStatus() {
+        return status;
+    }
+
+    // ----------------------
+    // --- Setters (Write) --
+    // ----------------------
+    public void setHoldID(long holdID) {
+        this.holdID = holdID;
+    }
+    public void setStatus(String status) {
+        this.status = status;
+    }
+}
@@ -1,5 +1,13 @@
 package library.models;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
 public class Patron {
     
     // Fields correspond to the columns in the 'patrons' table
@@ -9,6 +17,16 @@ public class Patron {
     private String email;
     private String phone;
     private String address; 
+    private int version; // Row version read with the record; updates are only applied to this version
+
+    // Cell values of the patron table, created on first display (as in Book)
+    private ReadOnlyStringWrapper patronIDProperty;
+    private ReadOnlyStringWrapper firstNameProperty;
+    private ReadOnlyStringWrapper lastNameProperty;
+    private ReadOnlyStringWrapper emailProperty;
+    private ReadOnlyStringWrapper phoneProperty;
+    private ReadOnlyStringWrapper addressProperty;
+    private final Set<String> dirtyColumns = new LinkedHashSet<>();
 
     // Constructor: Order synchronized for consistency (ID, First, Last, Email, Phone, Address)
     public Patron(String patronID, String firstName, String lastName, String email, String phone, String address) {
@@ -20,6 +38,12 @@ public class Patron {
         this.address = address;
     }
 
+    // Copy for editing (same record and version, nothing changed yet)
+    public Patron(Patron other) {
+        this(other.patronID, other.firstName, other.lastName, other.email, other.phone, other.address);
+        this.version = other.version;
+    }
+
     // ----------------------
     // --- Getters (Read) ---
     // ----------------------
@@ -35,32 +59,95 @@ public class Patron {
     public String getEmail() {
         return email;
     }
-    public String getPhone() { // FIX: Getter name matches "phone" PropertyValueFactory
+    public String getPhone() {
         return phone;
     }
     public String getAddress() {
         return address;
     }
+    public int getVersion() {
+        return version;
+    }
 
     // ----------------------
     // --- Setters (Write) --
     // ----------------------
     public void setPatronID(String patronId) {
         this.patronID = patronId;
+        if (patronIDProperty != null) patronIDProperty.set(patronId);
     }
     public void setFirstName(String firstName) {
+        track("FirstName", this.firstName, firstName);
         this.firstName = firstName;
+        if (firstNameProperty != null) firstNameProperty.set(firstName);
     }
     public void setLastName(String lastName) {
+        track("LastName", this.lastName, lastName);
         this.lastName = lastName;
+        if (lastNameProperty != null) lastNameProperty.set(lastName);
     }
     public void setEmail(String email) {
+        track("Email", this.email, email);
         this.email = email;
+        if (emailProperty != null) emailProperty.set(email);
     }
     public void setPhone(String phone) { // FIX: Setter name matches convention
+        track("PhoneNumber", this.phone, phone);
         this.phone = phone;
+        if (phoneProperty != null) phoneProperty.set(phone);
     }
     public void setAddress(String address) {
+        track("Address", this.address, address);
         this.address = address;
+        if (addressProperty != null) addressProperty.set(address);
+    }
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    // ----------------------
+    // --- Table Properties -
+    // ----------------------
+    public ReadOnlyStringProperty patronIDProperty() {
+        if (patronIDProperty == null) patronIDProperty = new ReadOnlyStringWrapper(this, "patronID", patronID);
+        return patronIDProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty firstNameProperty() {
+        if (firstNameProperty == null) firstNameProperty = new ReadOnlyStringWrapper(this, "firstName", firstName);
+        return firstNameProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty lastNameProperty() {
+        if (lastNameProperty == null) lastNameProperty = new ReadOnlyStringWrapper(this, "lastName", lastName);
+        return lastNameProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty emailProperty() {
+        if (emailProperty == null) emailProperty = new ReadOnlyStringWrapper(this, "email", email);
+        return emailProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty phoneProperty() {
+        if (phoneProperty == null) phoneProperty = new ReadOnlyStringWrapper(this, "phone", phone);
+        return phoneProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty addressProperty() {
+        if (addressProperty == null) addressProperty = new ReadOnlyStringWrapper(this, "address", address);
+        return addressProperty.getReadOnlyProperty();
+    }
+
+    // ----------------------
+    // --- Change Tracking --
+    // ----------------------
+    // Columns given a new value by a setter since the record was read or last saved;
+    // the DAO's update writes only these.
+    public Set<String> getDirtyColumns() {
+        return Collections.unmodifiableSet(dirtyColumns);
+    }
+    public boolean isDirty() {
+        return !dirtyColumns.isEmpty();
+    }
+    public void markClean() {
+        dirtyColumns.clear();
+    }
+    private void track(String column, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) dirtyColumns.add(column);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package library.models;
+
+import java.time.LocalDate;
+
+public class Reminder {
+    public static final String DUE_SOON = "DUE_SOON";
+    public static final String OVERDUE = "OVERDUE";
+
+    // Fields correspond to one open loan joined with its patron and book
+    private String transactionID;
+    private String patronID;
+    private String patronName;
+    private String email;
+    private String bookTitle;
+    private LocalDate dueDate;
+    private String kind;        // DUE_SOON or OVERDUE
+    private LocalDate keyDate;  // Which reminder of this kind: the due date, or the start of the overdue period
+
+    // Constructor
+    public Reminder(String transactionID, String patronID, String patronName, String email, String bookTitle,
+                    LocalDate dueDate, String kind, LocalDate keyDate) {
+        this.transactionID = transactionID;
+        this.patronID = patronID;
+        this.patronName = patronName;
+        this.email = email;
+        this.bookTitle = bookTitle;
+        this.dueDate = dueDate;
+        this.kind = kind;
+        this.keyDate = keyDate;
+    }
+
+    // ----------------------
+    // --- Getters (Read) ---
+    // ----------------------
+    public String getTransactionID() {
+        return transactionID;
+    }
+    public String getPatronID() {
+        return patronID;
+    }
+    public String getPatronName() {
+        return patronName;
+    }
+    public String getEmail() {
+        return email;
+    }
+    public String getBookTitle() {
+        return bookTitle;
+    }
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+    public String getKind() {
+        return kind;
+    }
+    public LocalDate getKeyDate() {
+        return keyDate;
+    }
+
+    /**
+     * Identifies this reminder across runs, so sinks can drop a resend after a crash.
+     */
+    public String getIdempotencyKey() {
+        return transactionID + "_" + kind + "_" + keyDate;
+    }
+}
@@ -1,5 +1,8 @@
 package library.models;
 
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
 public class Transaction {
     // Essentials for data access and JavaFX TableView
     // Fields correspond to the 'transactions' table columns
@@ -13,6 +16,14 @@ public class Transaction {
     private String patronName;
     private String bookTitle;
 
+    // Cell values of the loan tables, created on first display (as in Book)
+    private ReadOnlyStringWrapper transactionIDProperty;
+    private ReadOnlyStringWrapper dateBorrowedProperty;
+    private ReadOnlyStringWrapper dueDateProperty;
+    private ReadOnlyStringWrapper dateReturnedProperty;
+    private ReadOnlyStringWrapper patronNameProperty;
+    private ReadOnlyStringWrapper bookTitleProperty;
+
     // --- Constructor ---
     // A convenient constructor to create a Patron object when reading from the database
     public Transaction(String transactionID, String bookID, String patronID, String dateBorrowed, String dueDate, String dateReturned) {
@@ -59,6 +70,7 @@ public class Transaction {
     // ----------------------
     public void setTransactionID(String transactionID) { // Corrected method name to match field case
         this.transactionID = transactionID;
+        if (transactionIDProperty != null) transactionIDProperty.set(transactionID);
     }
     public void setBookID(String bookID) { // Corrected method name to match field case
         this.bookID = bookID;
@@ -68,18 +80,51 @@ public class Transaction {
     }
     public void setDateBorrowed(String dateBorrowed) {
         this.dateBorrowed = dateBorrowed;
+        if (dateBorrowedProperty != null) dateBorrowedProperty.set(dateBorrowed);
     }
     public void setDueDate(String dueDate) {
         this.dueDate = dueDate;
+        if (dueDateProperty != null) dueDateProperty.set(dueDate);
     }
     public void setDateReturned(String dateReturned) {
         this.dateReturned = dateReturned;
+        if (dateReturnedProperty != null) dateReturnedProperty.set(dateReturned);
     }
     // --- UI Display ---
     public void setPatronName(String patronName) {
         this.patronName = patronName;
+        if (patronNameProperty != null) patronNameProperty.set(patronName);
     }
     public void setBookTitle(String bookTitle) {
         this.bookTitle = bookTitle;
+        if (bookTitleProperty != null) bookTitleProperty.set(bookTitle);
+    }
+
+    // ----------------------
+    // --- Table Properties -
+    // ----------------------
+    public ReadOnlyStringProperty transactionIDProperty() {
+        if (transactionIDProperty == null) transactionIDProperty = new ReadOnlyStringWrapper(this, "transactionID", transactionID);
+        return transactionIDProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty dateBorrowedProperty() {
+        if (dateBorrowedProperty == null) dateBorrowedProperty = new ReadOnlyStringWrapper(this, "dateBorrowed", dateBorrowed);
+        return dateBorrowedProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty dueDateProperty() {
+        if (dueDateProperty == null) dueDateProperty = new ReadOnlyStringWrapper(this, "dueDate", dueDate);
+        return dueDateProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty dateReturnedProperty() {
+        if (dateReturnedProperty == null) dateReturnedProperty = new ReadOnlyStringWrapper(this, "dateReturned", dateReturned);
+        return dateReturnedProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty patronNameProperty() {
+        if (patronNameProperty == null) patronNameProperty = new ReadOnlyStringWrapper(this, "patronName", patronName);
+        return patronNameProperty.getReadOnlyProperty();
+    }
+    public ReadOnlyStringProperty bookTitleProperty() {
+        if (bookTitleProperty == null) bookTitleProperty = new ReadOnlyStringWrapper(this, "bookTitle", bookTitle);
+        return bookTitleProperty.getReadOnlyProperty();
     }
-}
\ No newline at end of file
+}
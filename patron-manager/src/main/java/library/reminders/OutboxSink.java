@@ -0,0 +1,60 @@
+package library.reminders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import library.models.Reminder;
+
+/**
+ * Writes each reminder as a plain-text message file into an outbox directory instead of
+ * sending mail, for local testing (or for a separate mailer to pick up).
+ *
+ * Files are named after the idempotency key and created with CREATE_NEW, so a reminder
+ * delivered twice is written only once.
+ */
+public class OutboxSink implements ReminderSink {
+
+    private final Path directory;
+
+    public OutboxSink(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".patron-manager", "outbox");
+    }
+
+    @Override
+    public boolean send(Reminder reminder) throws IOException {
+        Path file = directory.resolve(reminder.getIdempotencyKey() + ".txt");
+        try {
+            Files.writeString(file, format(reminder), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    static String format(Reminder r) {
+        String subject = Reminder.OVERDUE.equals(r.getKind())
+            ? "Overdue: " + r.getBookTitle()
+            : "Due on " + r.getDueDate() + ": " + r.getBookTitle();
+        String body = Reminder.OVERDUE.equals(r.getKind())
+            ? "\"" + r.getBookTitle() + "\" was due on " + r.getDueDate() + ". Please return it as soon as possible; "
+              + "overdue fines apply."
+            : "\"" + r.getBookTitle() + "\" is due on " + r.getDueDate() + ". Please return or renew it by then.";
+        return "To: " + r.getPatronName() + " <" + r.getEmail() + ">\n"
+             + "Subject: " + subject + "\n"
+             + "X-Reminder-Key: " + r.getIdempotencyKey() + "\n"
+             + "\n"
+             + "Dear " + r.getPatronName() + ",\n\n"
+             + body + "\n\n"
+             + "Loan: " + r.getTransactionID() + "\n";
+    }
+}
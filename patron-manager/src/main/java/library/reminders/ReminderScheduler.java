@@ -0,0 +1,233 @@
+package library.reminders;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import library.logging.Log;
+import library.models.Reminder;
+import library.utilities.ReminderDAO;
+
+/**
+ * Daily due-date reminder job.
+ *
+ * A run pages through the open loans due within {@code daysAhead} days or already overdue
+ * (keyset paging, {@code batchSize} loans per page) and hands each page to a fixed pool of
+ * {@code concurrency} dispatchers as one job: claim, send through the sink, mark sent.
+ * At most two jobs per dispatcher are queued, so a slow sink throttles the reader instead
+ * of the whole backlog piling up in memory.
+ *
+ * Only one desk runs at a time (a server-side named lock), and claims in 'reminders_sent'
+ * make a rerun or a restart skip what was already sent.
+ */
+public class ReminderScheduler {
+    private static final Log LOG = Log.get(ReminderScheduler.class);
+
+    /** Outcome of one run. */
+    public record RunStats(long candidates, long sent, long alreadySent, long noAddress, long failed, long elapsedNanos) {
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format(Locale.ROOT,
+                "%d candidates: %d sent, %d already sent, %d without e-mail, %d failed in %.2fs (%.0f reminders/s)",
+                candidates, sent, alreadySent, noAddress, failed, seconds, seconds > 0 ? sent / seconds : 0.0);
+        }
+    }
+
+    private final ReminderDAO reminderDAO = new ReminderDAO();
+    private final ReminderSink sink;
+    private final int daysAhead;
+    private final int overdueEveryDays;
+    private final int concurrency;
+    private final int batchSize;
+
+    private ScheduledExecutorService timer;
+
+    public ReminderScheduler(ReminderSink sink, int daysAhead, int overdueEveryDays, int concurrency, int batchSize) {
+        if (overdueEveryDays <= 0) throw new IllegalArgumentException("overdueEvery must be positive: " + overdueEveryDays);
+        this.sink = sink;
+        this.daysAhead = daysAhead;
+        this.overdueEveryDays = overdueEveryDays;
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+    }
+
+    // ---------------------------------------------
+    // --- SCHEDULING ---
+    // ---------------------------------------------
+    /**
+     * Runs the job every day at {@code runAt} (local time) on a daemon thread.
+     */
+    public synchronized void start(LocalTime runAt) {
+        if (timer != null) return;
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "due-date-reminders");
+            t.setDaemon(true);
+            return t;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(runAt);
+        if (!next.isAfter(now)) next = next.plusDays(1);
+
+        timer.scheduleAtFixedRate(() -> {
+            long started = System.nanoTime();
+            try {
+                RunStats stats = runOnce(LocalDate.now());
+                if (stats == null) {
+                    LOG.atInfo("run").message("Another desk is already sending reminders").log();
+                } else {
+                    LOG.atInfo("run").field("candidates", stats.candidates()).field("sent", stats.sent())
+                        .field("alreadySent", stats.alreadySent()).field("noAddress", stats.noAddress())
+                        .field("failed", stats.failed()).latencySince(started).log();
+                }
+            } catch (SQLException e) {
+                LOG.atWarn("run").latencySince(started).message("Due-date reminders postponed").cause(e).log();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    /**
+     * Sends the reminders due as of {@code today}. Returns null if another desk holds
+     * the run lock.
+     */
+    public RunStats runOnce(LocalDate today) throws SQLException, InterruptedException {
+        long started = System.nanoTime();
+        Connection lock = reminderDAO.tryLockRun();
+        if (lock == null) return null;
+
+        LongAdder candidates = new LongAdder();
+        LongAdder sent = new LongAdder();
+        LongAdder alreadySent = new LongAdder();
+        LongAdder noAddress = new LongAdder();
+        LongAdder failed = new LongAdder();
+
+        ExecutorService dispatchers = Executors.newFixedThreadPool(concurrency);
+        Semaphore queued = new Semaphore(concurrency * 2);
+        try (lock) { // released only after every dispatched job has finished
+            try {
+                LocalDate dueBy = today.plusDays(daysAhead);
+                LocalDate afterDue = null;
+                String afterID = null;
+                while (true) {
+                    List<Reminder> page = reminderDAO.readCandidates(today, dueBy, overdueEveryDays, afterDue, afterID, batchSize);
+                    if (page.isEmpty()) break;
+                    candidates.add(page.size());
+                    Reminder last = page.get(page.size() - 1);
+                    afterDue = last.getDueDate();
+                    afterID = last.getTransactionID();
+
+                    queued.acquire();
+                    dispatchers.execute(() -> {
+                        try {
+                            dispatch(page, sent, alreadySent, noAddress, failed);
+                        } finally {
+                            queued.release();
+                        }
+                    });
+                    if (page.size() < batchSize) break;
+                }
+            } finally {
+                dispatchers.shutdown();
+                dispatchers.awaitTermination(1, TimeUnit.HOURS);
+            }
+        }
+        return new RunStats(candidates.sum(), sent.sum(), alreadySent.sum(), noAddress.sum(), failed.sum(),
+            System.nanoTime() - started);
+    }
+
+    /** One job: claim the page, send what is still unsent, record the deliveries. */
+    private void dispatch(List<Reminder> page, LongAdder sent, LongAdder alreadySent, LongAdder noAddress, LongAdder failed) {
+        List<Reminder> addressed = new ArrayList<>(page.size());
+        for (Reminder r : page) {
+            if (r.getEmail() == null || r.getEmail().isBlank()) noAddress.increment();
+            else addressed.add(r);
+        }
+
+        List<Reminder> toSend;
+        try {
+            toSend = reminderDAO.claim(addressed);
+        } catch (SQLException e) {
+            failed.add(addressed.size()); // nothing claimed or sent; retried on the next run
+            return;
+        }
+        alreadySent.add(addressed.size() - toSend.size());
+
+        List<Reminder> delivered = new ArrayList<>(toSend.size());
+        for (Reminder r : toSend) {
+            try {
+                if (sink.send(r)) sent.increment();
+                else alreadySent.increment();
+                delivered.add(r);
+            } catch (IOException e) {
+                // Left PENDING: retried on the next run
+                LOG.atWarn("send").entity(r.getIdempotencyKey()).message("Error sending reminder").cause(e).log();
+                failed.increment();
+            }
+        }
+        try {
+            reminderDAO.markSent(delivered);
+        } catch (SQLException e) {
+            // Also retried next run; the sink drops the duplicates
+            failed.add(delivered.size());
+        }
+    }
+
+    // ---------------------------------------------
+    // --- ENTRY POINT ---
+    // ---------------------------------------------
+    /**
+     * Usage: ReminderScheduler [mode=once|daemon] [daysAhead=3] [overdueEvery=7]
+     *                          [concurrency=4] [batch=500] [outbox=~/.patron-manager/outbox] [at=08:00]
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) settings.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        ReminderSink sink = new OutboxSink(settings.containsKey("outbox")
+            ? Paths.get(settings.get("outbox")) : OutboxSink.defaultDirectory());
+        ReminderScheduler scheduler = new ReminderScheduler(sink,
+            Integer.parseInt(settings.getOrDefault("daysAhead", "3")),
+            Integer.parseInt(settings.getOrDefault("overdueEvery", "7")),
+            Integer.parseInt(settings.getOrDefault("concurrency", "4")),
+            Integer.parseInt(settings.getOrDefault("batch", "500")));
+
+        if (settings.getOrDefault("mode", "once").equals("daemon")) {
+            scheduler.start(LocalTime.parse(settings.getOrDefault("at", "08:00")));
+            Thread.currentThread().join(); // the timer thread is a daemon
+        } else {
+            RunStats stats = scheduler.runOnce(LocalDate.now());
+            System.out.println(stats != null ? stats : "Another desk is already sending reminders.");
+        }
+    }
+}
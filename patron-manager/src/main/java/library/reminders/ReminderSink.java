@@ -0,0 +1,18 @@
+package library.reminders;
+
+import java.io.IOException;
+
+import library.models.Reminder;
+
+/**
+ * Delivery channel for reminders (mail server, SMS gateway, local outbox...).
+ * Implementations are called from several dispatcher threads at once.
+ */
+public interface ReminderSink {
+
+    /**
+     * Delivers one reminder. Returns false if this sink had already delivered the
+     * reminder with the same idempotency key (a retry after an interrupted run).
+     */
+    boolean send(Reminder reminder) throws IOException;
+}
@@ -0,0 +1,170 @@
+package library.server;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+import library.models.Book;
+import library.models.Hold;
+import library.models.Patron;
+import library.models.Transaction;
+import library.utilities.PopularityIndex;
+import library.utilities.QueryCache;
+
+/**
+ * Minimal JSON writer for the kiosk API. The response shapes are small and
+ * fixed, so a hand-written encoder avoids pulling in a JSON library.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    // ---------------------------------------------
+    // --- MODEL ENCODERS ---
+    // ---------------------------------------------
+    static String book(Book b) {
+        return new Obj()
+            .field("bookID", b.getBookID())
+            .field("title", b.getTitle())
+            .field("author", b.getAuthor())
+            .field("isbn", b.getIsbn())
+            .field("publicationYear", b.getPublicationYear())
+            .field("categoryID", b.getCategoryID())
+            .field("categoryName", b.getCategoryName())
+            .end();
+    }
+
+    static String patron(Patron p) {
+        return new Obj()
+            .field("patronID", p.getPatronID())
+            .field("firstName", p.getFirstName())
+            .field("lastName", p.getLastName())
+            .field("email", p.getEmail())
+            .end();
+    }
+
+    static String loan(Transaction t) {
+        return new Obj()
+            .field("transactionID", t.getTransactionID())
+            .field("bookID", t.getBookID())
+            .field("patronID", t.getPatronID())
+            .field("bookTitle", t.getBookTitle())
+            .field("dateBorrowed", t.getDateBorrowed())
+            .field("dueDate", t.getDueDate())
+            .end();
+    }
+
+    static String hold(Hold h) {
+        return new Obj()
+            .field("holdID", h.getHoldID())
+            .field("bookID", h.getBookID())
+            .field("patronID", h.getPatronID())
+            .field("priority", h.getPriority())
+            .field("status", h.getStatus())
+            .end();
+    }
+
+    static String popular(PopularityIndex.Ranked r) {
+        return new Obj()
+            .field("id", r.id())
+            .field("label", r.label())
+            .field("count", r.count())
+            .field("minimum", r.minimum())
+            .end();
+    }
+
+    static String cacheStats(QueryCache.Stats s) {
+        return new Obj()
+            .field("entries", s.entries())
+            .field("estimatedBytes", s.estimatedBytes())
+            .field("maxBytes", s.maxBytes())
+            .field("hits", s.hits())
+            .field("misses", s.misses())
+            .field("hitRatio", s.hitRatio())
+            .field("evictions", s.evictions())
+            .field("expirations", s.expirations())
+            .field("invalidations", s.invalidations())
+            .end();
+    }
+
+    static <T> String array(List<T> items, Function<T, String> encoder) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(encoder.apply(items.get(i)));
+        }
+        return sb.append(']').toString();
+    }
+
+    static String error(String message) {
+        return new Obj().field("error", message).end();
+    }
+
+    // ---------------------------------------------
+    // --- OBJECT BUILDER ---
+    // ---------------------------------------------
+    static final class Obj {
+        private final StringBuilder sb = new StringBuilder("{");
+
+        Obj field(String name, String value) {
+            key(name);
+            if (value == null) {
+                sb.append("null");
+            } else {
+                quote(sb, value);
+            }
+            return this;
+        }
+
+        Obj field(String name, long value) {
+            key(name);
+            sb.append(value);
+            return this;
+        }
+
+        Obj field(String name, double value) {
+            key(name);
+            sb.append(Double.isFinite(value) ? String.format(Locale.ROOT, "%.3f", value) : "null");
+            return this;
+        }
+
+        Obj raw(String name, String json) {
+            key(name);
+            sb.append(json);
+            return this;
+        }
+
+        String end() {
+            return sb.append('}').toString();
+        }
+
+        private void key(String name) {
+            if (sb.length() > 1) sb.append(',');
+            quote(sb, name);
+            sb.append(':');
+        }
+    }
+
+    private static void quote(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,151 @@
+package library.server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Closed-loop load test for {@link KioskServer}: N simulated kiosks, each on its own
+ * virtual thread, issue requests back-to-back for a fixed duration and report the
+ * sustained requests/second and latency percentiles.
+ *
+ * Usage: KioskLoadTest [baseUrl] [kiosks] [seconds] [writePercent]
+ *   e.g. KioskLoadTest http://localhost:8080 200 60 10
+ *
+ * The mix is catalog searches and patron loan lookups; writePercent of the
+ * iterations borrow a random book and immediately return it.
+ */
+public class KioskLoadTest {
+
+    private static final Pattern BOOK_ID = Pattern.compile("\"bookID\":\"([^\"]+)\"");
+    private static final Pattern TRANSACTION_ID = Pattern.compile("\"transactionID\":\"([^\"]+)\"");
+    private static final String[] SEARCH_TERMS = { "the", "a", "history", "love", "war", "night", "man", "world" };
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int kiosks = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+        // Discover some real book IDs to borrow and patron IDs to look up
+        List<String> bookIDs = extract(BOOK_ID, get(client, baseUrl + "/api/books?q=&limit=200").body());
+        List<String> patronIDs = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) patronIDs.add(String.format("PT-%04d", i));
+        if (bookIDs.isEmpty()) {
+            System.err.println("No books returned by " + baseUrl + "; is the server running against a seeded database?");
+            return;
+        }
+
+        System.out.printf("Running %d kiosks for %ds against %s (%d%% writes)%n", kiosks, seconds, baseUrl, writePercent);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long started = System.nanoTime();
+
+        List<Future<long[]>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int k = 0; k < kiosks; k++) {
+                results.add(pool.submit(() -> runKiosk(client, baseUrl, deadline, bookIDs, patronIDs, writePercent)));
+            }
+        }
+        double elapsed = (System.nanoTime() - started) / 1e9;
+
+        // Each kiosk returns [errors, latency1, latency2, ...] in nanoseconds
+        long errors = 0;
+        List<long[]> perKiosk = new ArrayList<>();
+        int total = 0;
+        for (Future<long[]> f : results) {
+            long[] r = f.get();
+            errors += r[0];
+            perKiosk.add(r);
+            total += r.length - 1;
+        }
+        long[] latencies = new long[total];
+        int pos = 0;
+        for (long[] r : perKiosk) {
+            System.arraycopy(r, 1, latencies, pos, r.length - 1);
+            pos += r.length - 1;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("Requests: %d, errors: %d, sustained: %.1f req/s%n", total, errors, total / elapsed);
+        System.out.printf("Latency ms  p50=%.2f  p95=%.2f  p99=%.2f  max=%.2f%n",
+            percentile(latencies, 0.50), percentile(latencies, 0.95),
+            percentile(latencies, 0.99), total > 0 ? latencies[total - 1] / 1e6 : 0);
+        System.out.println("Server-side metrics: " + get(client, baseUrl + "/metrics").body());
+    }
+
+    private static long[] runKiosk(HttpClient client, String baseUrl, long deadline,
+                                   List<String> bookIDs, List<String> patronIDs, int writePercent) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] samples = new long[1024];
+        int n = 1; // samples[0] holds the error count
+
+        while (System.nanoTime() < deadline) {
+            String patronID = patronIDs.get(random.nextInt(patronIDs.size()));
+            int dice = random.nextInt(100);
+            try {
+                long t0 = System.nanoTime();
+                int status;
+                if (dice < writePercent) {
+                    String bookID = bookIDs.get(random.nextInt(bookIDs.size()));
+                    HttpResponse<String> borrowed = post(client, baseUrl + "/api/loans?patronID=" + patronID + "&bookID=" + bookID);
+                    status = borrowed.statusCode();
+                    List<String> ids = extract(TRANSACTION_ID, borrowed.body());
+                    if (status == 201 && !ids.isEmpty()) {
+                        status = post(client, baseUrl + "/api/loans/" + ids.get(0) + "/return").statusCode();
+                    }
+                } else if (dice < writePercent + (100 - writePercent) / 4) {
+                    status = get(client, baseUrl + "/api/patrons/" + patronID + "/loans").statusCode();
+                } else {
+                    String term = SEARCH_TERMS[random.nextInt(SEARCH_TERMS.length)];
+                    status = get(client, baseUrl + "/api/books?q=" + term).statusCode();
+                }
+                long elapsed = System.nanoTime() - t0;
+
+                if (n == samples.length) samples = Arrays.copyOf(samples, n * 2);
+                samples[n++] = elapsed;
+                if (status >= 500) samples[0]++;
+            } catch (Exception e) {
+                samples[0]++;
+            }
+        }
+        return Arrays.copyOf(samples, n);
+    }
+
+    private static HttpResponse<String> get(HttpClient client, String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> post(HttpClient client, String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).POST(HttpRequest.BodyPublishers.noBody()).build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static List<String> extract(Pattern pattern, String json) {
+        List<String> values = new ArrayList<>();
+        Matcher m = pattern.matcher(json);
+        while (m.find()) values.add(m.group(1));
+        return values;
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
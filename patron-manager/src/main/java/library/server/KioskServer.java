@@ -0,0 +1,427 @@
+package library.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import library.logging.Level;
+import library.logging.Log;
+import library.models.Book;
+import library.models.Hold;
+import library.models.Patron;
+import library.models.Transaction;
+import library.utilities.BookDAO;
+import library.utilities.HoldDAO;
+import library.utilities.JournalReplayer;
+import library.utilities.PatronDAO;
+import library.utilities.PopularityIndex;
+import library.utilities.QueryCache;
+import library.utilities.TransactionDAO;
+
+/**
+ * Headless JSON API for self-service kiosks and the catalog lookup page.
+ * Runs without JavaFX on the JDK's built-in HTTP server, one virtual thread per request.
+ *
+ * Endpoints:
+ *   GET  /api/books?q=term[&limit=n]     catalog search
+ *   GET  /api/patrons/{id}               patron lookup
+ *   GET  /api/patrons/{id}/loans         outstanding loans of a patron
+ *   POST /api/loans  (patronID, bookID)  borrow (form or query parameters)
+ *   POST /api/loans/{id}/return          return (includes the hold the copy is now kept for, if any)
+ *   GET  /api/books/{id}/holds[?patronID=] hold queue length, and the patron's position in it
+ *   POST /api/holds  (patronID, bookID)  place a hold on a book that is on loan
+ *   POST /api/holds/{id}/cancel          cancel a hold
+ *   GET  /api/popular[?window=week|month|all&by=title|author&k=n]  most borrowed titles or authors
+ *   GET  /metrics                        per-route request counts and latency percentiles
+ *   GET  /metrics/cache                  query cache hit ratio and estimated memory use
+ *
+ * Usage: java -p ... -m application/library.server.KioskServer [port]
+ */
+public class KioskServer {
+
+    private static final Log LOG = Log.get(KioskServer.class);
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_SEARCH_LIMIT = 25;
+    private static final int MAX_SEARCH_LIMIT = 200;
+    private static final int LOAN_PERIOD_DAYS = 14; // Same business rule as TransactionController
+    private static final int DEFAULT_POPULAR = 10;
+    private static final int MAX_POPULAR = 100;
+    private static final long POPULAR_TAIL_SECONDS = 30;
+    private static final long JOURNAL_REPLAY_SECONDS = 15; // as the desks
+
+    private final BookDAO bookDAO = new BookDAO();
+    private final PatronDAO patronDAO = new PatronDAO();
+    private final TransactionDAO transactionDAO = new TransactionDAO();
+    private final HoldDAO holdDAO = new HoldDAO();
+    private final RequestMetrics metrics = new RequestMetrics();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Replays the loans and returns answered with an OFF-n ID while the database was unreachable
+    private JournalReplayer journalReplayer;
+
+    public KioskServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/api/", this::handleApi);
+        server.createContext("/metrics", exchange -> send(exchange, 200, metrics.toJson()));
+        server.createContext("/metrics/cache", exchange -> send(exchange, 200, Json.cacheStats(QueryCache.getInstance().stats())));
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        journalReplayer = JournalReplayer.forSharedJournal();
+        if (journalReplayer != null) {
+            journalReplayer.startWatcher(JOURNAL_REPLAY_SECONDS, conflicts -> {
+                if (conflicts.isEmpty()) return;
+                LOG.atWarn("replayJournal").field("entries", conflicts.size())
+                    .message("Offline loans or returns not applied; see journal_replay").log();
+            });
+        }
+        startPopularityIndex();
+        LOG.atInfo("start").field("port", server.getAddress().getPort()).message("Kiosk API listening").log();
+    }
+
+    public void stop() {
+        server.stop(1);
+        if (journalReplayer != null) journalReplayer.stopWatcher();
+        PopularityIndex.getInstance().stopTailing();
+        executor.close();
+    }
+
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    // ---------------------------------------------
+    // --- ROUTING ---
+    // ---------------------------------------------
+    private void handleApi(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().split("/"); // ["", "api", resource, ...]
+        String route = method + " /api/" + (path.length > 2 ? path[2] : "");
+        int status = 500;
+
+        try {
+            Map<String, String> params;
+            try {
+                params = parameters(exchange);
+            } catch (IllegalArgumentException e) { // malformed %-encoding
+                status = 400;
+                send(exchange, status, Json.error("Malformed parameters"));
+                return;
+            }
+            Response response = route(method, path, params);
+            route = response.route;
+            status = response.status;
+            send(exchange, status, response.body);
+        } catch (SQLException e) {
+            status = statusOf(e);
+            LOG.at(status == 409 ? Level.WARN : Level.ERROR, "handleApi").field("route", route)
+                .field("sqlState", e.getSQLState()).latencySince(started).message("Database error").cause(e).log();
+            send(exchange, status, Json.error(switch (status) {
+                case 409 -> "The request conflicts with a concurrent change, please retry";
+                case 503 -> "Database unavailable";
+                default -> "Database error";
+            }));
+        } catch (RuntimeException e) {
+            status = 500;
+            LOG.atError("handleApi").field("route", route).latencySince(started).message("Internal error").cause(e).log();
+            send(exchange, status, Json.error("Internal error"));
+        } finally {
+            metrics.record(route, System.nanoTime() - started, status >= 500);
+        }
+    }
+
+    /**
+     * The HTTP status of a database error, by SQLState class: 08 (connection) and 40
+     * (deadlock, retry) are 503, 23 (constraint, e.g. two desks taking the same
+     * TransactionID) is 409, anything else is 500.
+     */
+    private static int statusOf(SQLException e) {
+        String state = e.getSQLState();
+        if (TransactionDAO.isConnectivityFailure(e) || (state != null && state.startsWith("40"))) return 503;
+        if (state != null && state.startsWith("23")) return 409;
+        return 500;
+    }
+
+    private Response route(String method, String[] path, Map<String, String> params) throws SQLException {
+        String resource = path.length > 2 ? path[2] : "";
+
+        if (method.equals("GET") && resource.equals("books") && path.length == 3) {
+            return searchBooks(params);
+        }
+        if (method.equals("GET") && resource.equals("patrons") && path.length == 4) {
+            return lookupPatron(path[3]);
+        }
+        if (method.equals("GET") && resource.equals("patrons") && path.length == 5 && path[4].equals("loans")) {
+            return patronLoans(path[3]);
+        }
+        if (method.equals("POST") && resource.equals("loans") && path.length == 3) {
+            return borrow(params);
+        }
+        if (method.equals("POST") && resource.equals("loans") && path.length == 5 && path[4].equals("return")) {
+            return returnLoan(path[3]);
+        }
+        if (method.equals("GET") && resource.equals("books") && path.length == 5 && path[4].equals("holds")) {
+            return holdQueue(path[3], params);
+        }
+        if (method.equals("POST") && resource.equals("holds") && path.length == 3) {
+            return placeHold(params);
+        }
+        if (method.equals("POST") && resource.equals("holds") && path.length == 5 && path[4].equals("cancel")) {
+            return cancelHold(path[3]);
+        }
+        if (method.equals("GET") && resource.equals("popular") && path.length == 3) {
+            return popular(params);
+        }
+        return new Response("unmatched", 404, Json.error("No such endpoint"));
+    }
+
+    // ---------------------------------------------
+    // --- HANDLERS ---
+    // ---------------------------------------------
+    private Response searchBooks(Map<String, String> params) throws SQLException {
+        String term = params.getOrDefault("q", "").trim();
+        int limit = DEFAULT_SEARCH_LIMIT;
+        try {
+            if (params.containsKey("limit")) limit = Integer.parseInt(params.get("limit"));
+        } catch (NumberFormatException e) {
+            return new Response("GET /api/books", 400, Json.error("limit must be a number"));
+        }
+        limit = Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+
+        List<Book> books = bookDAO.searchBooks(term, limit);
+        return new Response("GET /api/books", 200, Json.array(books, Json::book));
+    }
+
+    private Response lookupPatron(String patronID) throws SQLException {
+        Patron patron = patronDAO.readPatron(patronID);
+        if (patron == null) {
+            return new Response("GET /api/patrons/{id}", 404, Json.error("Unknown patron"));
+        }
+        return new Response("GET /api/patrons/{id}", 200, Json.patron(patron));
+    }
+
+    private Response patronLoans(String patronID) throws SQLException {
+        List<Transaction> loans = transactionDAO.readOutstandingLoans(patronID);
+        return new Response("GET /api/patrons/{id}/loans", 200, Json.array(loans, Json::loan));
+    }
+
+    private Response borrow(Map<String, String> params) throws SQLException {
+        String route = "POST /api/loans";
+        String patronID = params.get("patronID");
+        String bookID = params.get("bookID");
+        if (patronID == null || bookID == null) {
+            return new Response(route, 400, Json.error("patronID and bookID are required"));
+        }
+        if (!patronMayExist(patronID)) {
+            return new Response(route, 404, Json.error("Unknown patron"));
+        }
+        int free = transactionDAO.availableCopies(bookID);
+        if (free == 0) {
+            return new Response(route, 409, Json.error("This book is currently unavailable (all copies are on loan)."));
+        }
+
+        try {
+            Transaction loan = transactionDAO.borrowBook(patronID, bookID, LocalDate.now().plusDays(LOAN_PERIOD_DAYS));
+            return new Response(route, 201, Json.loan(loan));
+        } catch (SQLException e) {
+            if (TransactionDAO.NO_COPY_AVAILABLE.equals(e.getSQLState())) { // the last copy went to another desk meanwhile
+                return new Response(route, 409, Json.error("This book is currently unavailable (all copies are on loan)."));
+            }
+            if (TransactionDAO.HELD_FOR_OTHERS.equals(e.getSQLState())) { // the free copies are kept for READY holds
+                return new Response(route, 409, Json.error("This book is being held for another patron."));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * False if the patron does not exist. While the database is unreachable the patron
+     * cannot be checked: the loan is journaled, and its replay rejects an unknown patron.
+     */
+    private boolean patronMayExist(String patronID) throws SQLException {
+        try {
+            return patronDAO.readPatron(patronID) != null;
+        } catch (SQLException e) {
+            if (TransactionDAO.isConnectivityFailure(e)) return true;
+            throw e;
+        }
+    }
+
+    private Response returnLoan(String transactionID) throws SQLException {
+        String route = "POST /api/loans/{id}/return";
+        Hold readyHold;
+        try {
+            readyHold = transactionDAO.returnBook(transactionID);
+        } catch (SQLException e) {
+            if (TransactionDAO.UNKNOWN_LOAN.equals(e.getSQLState())) {
+                return new Response(route, 404, Json.error("Unknown loan"));
+            }
+            if (TransactionDAO.ALREADY_RETURNED.equals(e.getSQLState())) {
+                return new Response(route, 409, Json.error("This loan was already returned."));
+            }
+            throw e;
+        }
+        return new Response(route, 200,
+            new Json.Obj().field("transactionID", transactionID).field("returned", LocalDate.now().toString())
+                .raw("readyHold", readyHold != null ? Json.hold(readyHold) : "null").end());
+    }
+
+    private Response holdQueue(String bookID, Map<String, String> params) throws SQLException {
+        Json.Obj body = new Json.Obj().field("bookID", bookID).field("waiting", holdDAO.readQueue(bookID).size());
+        String patronID = params.get("patronID");
+        if (patronID != null) body.field("position", holdDAO.positionInQueue(bookID, patronID));
+        return new Response("GET /api/books/{id}/holds", 200, body.end());
+    }
+
+    private Response placeHold(Map<String, String> params) throws SQLException {
+        String route = "POST /api/holds";
+        String patronID = params.get("patronID");
+        String bookID = params.get("bookID");
+        if (patronID == null || bookID == null) {
+            return new Response(route, 400, Json.error("patronID and bookID are required"));
+        }
+        if (patronDAO.readPatron(patronID) == null) {
+            return new Response(route, 404, Json.error("Unknown patron"));
+        }
+        try {
+            Hold hold = holdDAO.placeHold(bookID, patronID, 0);
+            return new Response(route, 201, new Json.Obj().raw("hold", Json.hold(hold))
+                .field("position", holdDAO.positionInQueue(bookID, patronID)).end());
+        } catch (SQLException e) {
+            if (e.getErrorCode() == 1062) { // duplicate key: an active hold already exists
+                return new Response(route, 409, Json.error("This patron already holds this book."));
+            }
+            throw e;
+        }
+    }
+
+    private Response cancelHold(String holdID) throws SQLException {
+        String route = "POST /api/holds/{id}/cancel";
+        long id;
+        try {
+            id = Long.parseLong(holdID);
+        } catch (NumberFormatException e) {
+            return new Response(route, 400, Json.error("holdID must be a number"));
+        }
+        Hold readyHold = holdDAO.cancelHold(id);
+        return new Response(route, 200, new Json.Obj().field("holdID", id)
+            .raw("readyHold", readyHold != null ? Json.hold(readyHold) : "null").end());
+    }
+
+    private Response popular(Map<String, String> params) {
+        String route = "GET /api/popular";
+        PopularityIndex.Window window = switch (params.getOrDefault("window", "week")) {
+            case "week" -> PopularityIndex.Window.WEEK;
+            case "month" -> PopularityIndex.Window.MONTH;
+            case "all" -> PopularityIndex.Window.ALL_TIME;
+            default -> null;
+        };
+        PopularityIndex.Kind kind = switch (params.getOrDefault("by", "title")) {
+            case "title" -> PopularityIndex.Kind.TITLE;
+            case "author" -> PopularityIndex.Kind.AUTHOR;
+            default -> null;
+        };
+        if (window == null || kind == null) {
+            return new Response(route, 400, Json.error("window must be week, month or all; by must be title or author"));
+        }
+        int k = DEFAULT_POPULAR;
+        try {
+            if (params.containsKey("k")) k = Integer.parseInt(params.get("k"));
+        } catch (NumberFormatException e) {
+            return new Response(route, 400, Json.error("k must be a number"));
+        }
+        k = Math.max(1, Math.min(k, MAX_POPULAR));
+
+        PopularityIndex index = PopularityIndex.getInstance();
+        if (!index.isReady()) {
+            return new Response(route, 503, Json.error("Popularity index is still being built"));
+        }
+        return new Response(route, 200, Json.array(index.top(window, kind, k), Json::popular));
+    }
+
+    /**
+     * Builds the popularity index from the loan history in the background, then keeps it
+     * current with the loans every desk records. Tailing starts first so that loans this
+     * server records during the build are not counted twice.
+     */
+    private static void startPopularityIndex() {
+        PopularityIndex index = PopularityIndex.getInstance();
+        index.startTailing(POPULAR_TAIL_SECONDS);
+        Thread build = new Thread(() -> {
+            try {
+                index.rebuild();
+            } catch (SQLException e) {
+                LOG.atError("startPopularityIndex").message("Popularity index unavailable").cause(e).log();
+            }
+        }, "popularity-build");
+        build.setDaemon(true);
+        build.start();
+    }
+
+    // ---------------------------------------------
+    // --- HTTP HELPERS ---
+    // ---------------------------------------------
+    private record Response(String route, int status, String body) {
+    }
+
+    /**
+     * Query-string parameters merged with an application/x-www-form-urlencoded body.
+     */
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseInto(params, exchange.getRequestURI().getRawQuery());
+        if (exchange.getRequestMethod().equals("POST")) {
+            try (InputStream body = exchange.getRequestBody()) {
+                parseInto(params, new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void parseInto(Map<String, String> params, String encoded) {
+        if (encoded == null || encoded.isEmpty()) return;
+        for (String pair : encoded.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                       URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // ---------------------------------------------
+    // --- ENTRY POINT ---
+    // ---------------------------------------------
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        KioskServer kiosk = new KioskServer(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(kiosk::stop));
+        kiosk.start();
+    }
+}
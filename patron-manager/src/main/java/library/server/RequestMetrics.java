@@ -0,0 +1,83 @@
+package library.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-route request counters and latency histograms.
+ *
+ * Latencies are recorded into fixed log2 microsecond buckets (1us .. ~35min), so
+ * recording is a couple of atomic increments and percentiles are read from the
+ * bucket counts without keeping individual samples.
+ */
+public class RequestMetrics {
+
+    private static final int BUCKETS = 32;
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final long startedAt = System.nanoTime();
+
+    public void record(String route, long elapsedNanos, boolean error) {
+        routes.computeIfAbsent(route, r -> new Route()).record(elapsedNanos, error);
+    }
+
+    /**
+     * Snapshot of every route as JSON: count, errors, requests/second since start,
+     * and p50/p95/p99/max latency in milliseconds.
+     */
+    public String toJson() {
+        double uptimeSeconds = (System.nanoTime() - startedAt) / 1e9;
+        Json.Obj root = new Json.Obj().field("uptimeSeconds", uptimeSeconds);
+        routes.forEach((name, route) -> {
+            long count = route.count.sum();
+            root.raw(name, new Json.Obj()
+                .field("count", count)
+                .field("errors", route.errors.sum())
+                .field("requestsPerSecond", count / Math.max(uptimeSeconds, 1e-9))
+                .field("p50Millis", route.percentileMillis(0.50))
+                .field("p95Millis", route.percentileMillis(0.95))
+                .field("p99Millis", route.percentileMillis(0.99))
+                .field("maxMillis", route.maxNanos / 1e6)
+                .end());
+        });
+        return root.end();
+    }
+
+    // ---------------------------------------------
+    // --- PER-ROUTE HISTOGRAM ---
+    // ---------------------------------------------
+    private static final class Route {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        volatile long maxNanos;
+
+        void record(long elapsedNanos, boolean error) {
+            count.increment();
+            if (error) errors.increment();
+            long micros = Math.max(1, elapsedNanos / 1_000);
+            int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+            if (elapsedNanos > maxNanos) maxNanos = elapsedNanos; // racy max is fine for reporting
+        }
+
+        /**
+         * Upper bound of the bucket containing the requested quantile (capped at the observed max).
+         */
+        double percentileMillis(double quantile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += buckets.get(i);
+            if (total == 0) return 0;
+
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min((1L << (i + 1)) / 1_000.0, maxNanos / 1e6);
+            }
+            return maxNanos / 1e6;
+        }
+    }
+}
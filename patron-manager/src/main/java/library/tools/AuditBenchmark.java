@@ -0,0 +1,175 @@
+package library.tools;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import library.audit.AuditEvent;
+import library.audit.AuditEvent.Action;
+import library.audit.AuditEvent.Entity;
+import library.audit.AuditLog;
+import library.audit.AuditSink;
+import library.audit.DatabaseAuditSink;
+import library.audit.FileAuditSink;
+
+/**
+ * Benchmark of the audit log's publish path: {@code producers} threads publish
+ * {@code events} events each into a log of {@code capacity} slots, as the DAOs do after
+ * every write, then the log is shut down.
+ *
+ *   sink=count  counts the events; {@code sinkMicros} adds a delay per batch, to see
+ *               the buffer fill up and the publishers wait (backpressure)
+ *   sink=file   local audit files in {@code dir}
+ *   sink=db     the 'audit_log' table (files in {@code dir} as fallback)
+ *
+ * Reports the time and the heap allocated per publish (each publisher's allocation
+ * counter, after a warm-up), the log's counters, and whether every event published
+ * reached the sink by the end of the shutdown.
+ *
+ * Usage: AuditBenchmark [producers=4] [events=500000] [capacity=8192] [batch=256]
+ *                       [sink=count] [sinkMicros=0] [maxWaitMillis=2000] [dir=audit-bench]
+ */
+public class AuditBenchmark {
+
+    private static final int WARMUP_EVENTS = 50_000;
+
+    private final int producers;
+    private final int events;
+    private final int capacity;
+    private final int batch;
+    private final String sinkName;
+    private final long sinkMicros;
+    private final long maxWaitMillis;
+    private final String dir;
+
+    public AuditBenchmark(Map<String, String> settings) {
+        this.producers = Integer.parseInt(settings.getOrDefault("producers", "4"));
+        this.events = Integer.parseInt(settings.getOrDefault("events", "500000"));
+        this.capacity = Integer.parseInt(settings.getOrDefault("capacity", "8192"));
+        this.batch = Integer.parseInt(settings.getOrDefault("batch", "256"));
+        this.sinkName = settings.getOrDefault("sink", "count");
+        this.sinkMicros = Long.parseLong(settings.getOrDefault("sinkMicros", "0"));
+        this.maxWaitMillis = Long.parseLong(settings.getOrDefault("maxWaitMillis", "2000"));
+        this.dir = settings.getOrDefault("dir", "audit-bench");
+    }
+
+    /** Counts what it is given; optionally slow. */
+    private static class CountingSink implements AuditSink {
+        final AtomicLong received = new AtomicLong();
+        private final long delayMicros;
+
+        CountingSink(long delayMicros) {
+            this.delayMicros = delayMicros;
+        }
+
+        @Override
+        public void write(AuditEvent[] events, int count) throws IOException {
+            if (delayMicros > 0) {
+                try {
+                    Thread.sleep(delayMicros / 1000, (int) (delayMicros % 1000) * 1000); // as an I/O would block
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            received.addAndGet(count);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    public void run() throws Exception {
+        CountingSink counting = null;
+        AuditSink sink;
+        switch (sinkName) {
+            case "count" -> sink = counting = new CountingSink(sinkMicros);
+            case "file" -> sink = new FileAuditSink(Paths.get(dir), "BENCH", "bench", 16L << 20);
+            case "db" -> sink = new DatabaseAuditSink("BENCH", "bench", new FileAuditSink(Paths.get(dir), "BENCH", "bench", 16L << 20));
+            default -> throw new IllegalArgumentException("sink must be count, file or db");
+        }
+        AuditLog log = AuditLog.start(sink, capacity, batch, TimeUnit.MILLISECONDS.toNanos(maxWaitMillis));
+
+        // Existing strings, as the DAOs pass the codes of their model objects
+        String[] ids = new String[1024];
+        for (int i = 0; i < ids.length; i++) ids[i] = String.format("BK-%04d", i);
+
+        CountDownLatch warm = new CountDownLatch(producers);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] nanos = new long[producers];
+        long[] bytes = new long[producers];
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                publish(log, ids, WARMUP_EVENTS, producer);
+                warm.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long bytes0 = allocatedBytes();
+                long t0 = System.nanoTime();
+                publish(log, ids, events, producer);
+                nanos[producer] = System.nanoTime() - t0;
+                bytes[producer] = allocatedBytes() - bytes0;
+            }, "publisher-" + p);
+            threads.add(thread);
+            thread.start();
+        }
+        warm.await();
+        long t0 = System.nanoTime();
+        go.countDown();
+        for (Thread thread : threads) thread.join();
+        long publishNanos = System.nanoTime() - t0;
+        log.shutdown();
+        long totalNanos = System.nanoTime() - t0;
+
+        long measured = (long) producers * events;
+        long sumNanos = 0, sumBytes = 0;
+        for (int p = 0; p < producers; p++) {
+            sumNanos += nanos[p];
+            sumBytes += bytes[p];
+        }
+        AuditLog.Stats stats = log.stats();
+        System.out.printf(Locale.ROOT, "%d publishers x %,d events, %d slots, batches of %d, sink=%s%s%n",
+            producers, events, capacity, batch, sinkName, sinkMicros > 0 ? " (" + sinkMicros + " us per batch)" : "");
+        System.out.printf(Locale.ROOT, "  publish    %8.1f ns/event per publisher, %.2f bytes/event allocated%n",
+            (double) sumNanos / measured, (double) sumBytes / measured);
+        System.out.printf(Locale.ROOT, "  published  %8.1f ms (%,.0f events/s); written %.1f ms after start%n",
+            publishNanos / 1e6, measured / (publishNanos / 1e9), totalNanos / 1e6);
+        System.out.println("  log: " + stats);
+        // Every event accepted (warm-up included) must have reached the sink by now
+        long received = counting != null ? counting.received.get() : stats.written();
+        System.out.println(received == stats.published()
+            ? "  all " + received + " events published were written"
+            : "  EVENTS MISSING: " + stats.published() + " published, " + received + " written");
+    }
+
+    private static void publish(AuditLog log, String[] ids, int count, int producer) {
+        for (int i = 0; i < count; i++) {
+            String id = ids[(i + producer) & (ids.length - 1)];
+            log.publish(Action.UPDATE, Entity.BOOK, id, "CAT-01", i);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new AuditBenchmark(CirculationSimulator.parseArgs(args)).run();
+    }
+}
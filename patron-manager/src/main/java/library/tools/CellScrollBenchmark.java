@@ -0,0 +1,114 @@
+package library.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import javafx.beans.value.ObservableValue;
+import javafx.scene.control.TableColumn.CellDataFeatures;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.util.Callback;
+import library.models.Book;
+
+/**
+ * Benchmark of the Books table's cell value factories, without a window: the former
+ * PropertyValueFactory columns against the lambda factories that return the rows'
+ * cached properties.
+ *
+ * A scroll is emulated as the cell updates a TableView makes while the rows pass
+ * through the viewport: every row's six cells ask their column's factory for the
+ * value and read it. The same rows are scrolled {@code passes} times (down, back up,
+ * ...), so later passes show what happens to rows already seen. For each variant
+ * and pass it reports the time and the heap allocated per cell (this thread's
+ * allocation counter).
+ *
+ * Usage: CellScrollBenchmark [rows=200000] [passes=3] [seed=42]
+ */
+public class CellScrollBenchmark {
+
+    private static final String[] COLUMNS = { "bookID", "title", "author", "isbn", "publicationYear", "categoryName" };
+
+    private final int rows;
+    private final int passes;
+    private final long seed;
+
+    public CellScrollBenchmark(Map<String, String> settings) {
+        this.rows = Integer.parseInt(settings.getOrDefault("rows", "200000"));
+        this.passes = Integer.parseInt(settings.getOrDefault("passes", "3"));
+        this.seed = Long.parseLong(settings.getOrDefault("seed", "42"));
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    public void run() {
+        List<Callback<CellDataFeatures<Book, Object>, ObservableValue<Object>>> reflective = new ArrayList<>();
+        for (String column : COLUMNS) reflective.add(new PropertyValueFactory<>(column));
+
+        List<Callback<CellDataFeatures<Book, Object>, ObservableValue<Object>>> cached = List.of(
+            cell -> cast(cell.getValue().bookIDProperty()),
+            cell -> cast(cell.getValue().titleProperty()),
+            cell -> cast(cell.getValue().authorProperty()),
+            cell -> cast(cell.getValue().isbnProperty()),
+            cell -> cast(cell.getValue().publicationYearProperty()),
+            cell -> cast(cell.getValue().categoryNameProperty()));
+
+        // Each variant scrolls its own rows, so no property is shared between them
+        scroll("PropertyValueFactory", reflective, generate());
+        scroll("cached properties", cached, generate());
+    }
+
+    private void scroll(String name, List<Callback<CellDataFeatures<Book, Object>, ObservableValue<Object>>> factories,
+                        List<Book> books) {
+        System.out.println(name + ":");
+        long cells = (long) books.size() * factories.size();
+        long checksum = 0;
+        for (int pass = 1; pass <= passes; pass++) {
+            long bytes0 = allocatedBytes();
+            long t0 = System.nanoTime();
+            for (Book book : books) {
+                CellDataFeatures<Book, Object> row = new CellDataFeatures<>(null, null, book);
+                for (Callback<CellDataFeatures<Book, Object>, ObservableValue<Object>> factory : factories) {
+                    Object value = factory.call(row).getValue();
+                    if (value != null) checksum += value.hashCode();
+                }
+            }
+            long nanos = System.nanoTime() - t0;
+            long bytes = allocatedBytes() - bytes0;
+            System.out.printf(Locale.ROOT, "  pass %d  %,12d cells  %8.1f ms  %6.1f ns/cell  %6.1f bytes/cell%n",
+                pass, cells, nanos / 1e6, (double) nanos / cells, (double) bytes / cells);
+        }
+        System.out.println("  checksum " + checksum);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObservableValue<Object> cast(ObservableValue<?> value) {
+        return (ObservableValue<Object>) value;
+    }
+
+    // ---------------------------------------------
+    // --- DATA AND MEASUREMENT ---
+    // ---------------------------------------------
+    private List<Book> generate() {
+        Random random = new Random(seed);
+        List<Book> books = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            books.add(new Book(String.format("BK-%07d", i + 1), "Title " + random.nextInt(1_000_000),
+                "Author " + random.nextInt(50_000), String.valueOf(9_780_000_000_000L + random.nextInt(1_000_000)),
+                1900 + random.nextInt(126), "CAT-" + random.nextInt(40), "Category " + random.nextInt(40)));
+        }
+        return books;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    public static void main(String[] args) {
+        new CellScrollBenchmark(CirculationSimulator.parseArgs(args)).run();
+    }
+}
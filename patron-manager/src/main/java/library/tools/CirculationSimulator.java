@@ -0,0 +1,227 @@
+package library.tools;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import configuration.DBConnector;
+import library.models.Book;
+import library.models.Patron;
+import library.models.Transaction;
+import library.utilities.BookDAO;
+import library.utilities.PatronDAO;
+import library.utilities.TransactionDAO;
+
+/**
+ * Circulation workload simulator: N concurrent "desks" drive the real DAOs the way
+ * TransactionController and PatronController do, against a locally running database.
+ *
+ * Each desk loops until the run ends, choosing per iteration:
+ *   - return one of its own loans once its (exponentially distributed) hold time is over
+ *   - browse the catalog (BookDAO.readAllBooks) with probability browse
+ *   - register a patron (PatronDAO.createPatron) with probability register
+ *   - otherwise borrow a Zipf-distributed popular title for a random patron
+ *     (availability check, then TransactionDAO.borrowBook)
+ *
+ * Usage: CirculationSimulator [desks=8] [seconds=60] [zipf=1.1] [browse=0.05]
+ *                             [register=0.01] [holdMillis=3000] [seed=42]
+ *
+ * The report lists throughput, latency percentiles and errors per operation, plus
+ * anomalies: duplicate-ID failures reported by the DAOs, and copies that end up
+ * with more than one open loan (double loans).
+ */
+public class CirculationSimulator {
+
+    private final Map<String, String> settings;
+    private final int desks;
+    private final int seconds;
+    private final double browse;
+    private final double register;
+    private final long holdMillis;
+    private final long seed;
+
+    private final BookDAO bookDAO = new BookDAO();
+    private final PatronDAO patronDAO = new PatronDAO();
+    private final TransactionDAO transactionDAO = new TransactionDAO();
+
+    private final AtomicLong duplicateIds = new AtomicLong();
+    private final AtomicLong unavailableRejections = new AtomicLong();
+
+    private List<String> bookIDs;
+    private List<String> patronIDs;
+    private ZipfSampler popularity;
+
+    public CirculationSimulator(Map<String, String> settings) {
+        this.settings = settings;
+        this.desks = Integer.parseInt(settings.getOrDefault("desks", "8"));
+        this.seconds = Integer.parseInt(settings.getOrDefault("seconds", "60"));
+        this.browse = Double.parseDouble(settings.getOrDefault("browse", "0.05"));
+        this.register = Double.parseDouble(settings.getOrDefault("register", "0.01"));
+        this.holdMillis = Long.parseLong(settings.getOrDefault("holdMillis", "3000"));
+        this.seed = Long.parseLong(settings.getOrDefault("seed", "42"));
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    public void run() throws Exception {
+        bookIDs = new ArrayList<>();
+        for (Book b : bookDAO.readAllBooks()) bookIDs.add(b.getBookID());
+        patronIDs = new ArrayList<>();
+        for (Patron p : patronDAO.readAllPatrons()) patronIDs.add(p.getPatronID());
+        if (bookIDs.isEmpty() || patronIDs.isEmpty()) {
+            System.err.println("The database needs at least one book and one patron (run 02_insertion.sql or DataGenerator).");
+            return;
+        }
+        popularity = new ZipfSampler(bookIDs.size(), Double.parseDouble(settings.getOrDefault("zipf", "1.1")));
+
+        System.out.printf(Locale.ROOT, "Simulating %d desks for %ds over %d books / %d patrons%n",
+            desks, seconds, bookIDs.size(), patronIDs.size());
+
+        long started = System.nanoTime();
+        long deadline = started + seconds * 1_000_000_000L;
+        List<Future<LatencyRecorder>> results = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(desks);
+        for (int d = 0; d < desks; d++) {
+            final long deskSeed = seed + d;
+            results.add(pool.submit(() -> runDesk(new Random(deskSeed), deadline)));
+        }
+        pool.shutdown();
+
+        LatencyRecorder total = new LatencyRecorder();
+        for (Future<LatencyRecorder> f : results) total.merge(f.get());
+        double elapsed = (System.nanoTime() - started) / 1e9;
+
+        System.out.println();
+        System.out.print(total.report(elapsed));
+        System.out.printf(Locale.ROOT, "%nTotal: %d operations, %.1f ops/s, %d errors%n",
+            total.totalCount(), total.totalCount() / elapsed, total.totalErrors());
+        System.out.println("Borrow attempts rejected as unavailable: " + unavailableRejections.get());
+        System.out.println("Anomaly - duplicate-ID failures:        " + duplicateIds.get());
+        System.out.println("Anomaly - copies with >1 open loan:     " + countDoubleLoans());
+    }
+
+    private LatencyRecorder runDesk(Random random, long deadline) {
+        LatencyRecorder recorder = new LatencyRecorder();
+        // This desk's own loans, earliest scheduled return first: [returnAtNanos, transactionID]
+        PriorityQueue<Object[]> loans = new PriorityQueue<>((a, b) -> Long.compare((long) a[0], (long) b[0]));
+
+        while (System.nanoTime() < deadline) {
+            Object[] due = loans.peek();
+            if (due != null && (long) due[0] <= System.nanoTime()) {
+                loans.poll();
+                timed(recorder, "return", () -> transactionDAO.returnBook((String) due[1]));
+                continue;
+            }
+
+            double dice = random.nextDouble();
+            if (dice < browse) {
+                timed(recorder, "browse", bookDAO::readAllBooks);
+            } else if (dice < browse + register) {
+                Patron patron = new Patron("", "Sim", "Patron" + random.nextInt(1_000_000),
+                    "sim" + Long.toHexString(random.nextLong()) + "@example.org", null, "Simulated");
+                timed(recorder, "register", () -> patronDAO.createPatron(patron));
+            } else {
+                String bookID = bookIDs.get(popularity.next(random));
+                String patronID = patronIDs.get(random.nextInt(patronIDs.size()));
+                Transaction loan = borrow(recorder, bookID, patronID);
+                if (loan != null) {
+                    long hold = (long) (-Math.log(1 - random.nextDouble()) * holdMillis * 1_000_000L);
+                    loans.add(new Object[] { System.nanoTime() + hold, loan.getTransactionID() });
+                }
+            }
+        }
+
+        // Leave the database as we found it: return whatever this desk still holds
+        for (Object[] loan : loans) {
+            timed(recorder, "return", () -> transactionDAO.returnBook((String) loan[1]));
+        }
+        return recorder;
+    }
+
+    private Transaction borrow(LatencyRecorder recorder, String bookID, String patronID) {
+        long t0 = System.nanoTime();
+        try {
+            if (transactionDAO.isBookCurrentlyBorrowed(bookID)) {
+                unavailableRejections.incrementAndGet();
+                recorder.record("check", System.nanoTime() - t0);
+                return null;
+            }
+            Transaction loan = transactionDAO.borrowBook(patronID, bookID, LocalDate.now().plusDays(14));
+            recorder.record("borrow", System.nanoTime() - t0);
+            return loan;
+        } catch (SQLException e) {
+            if (TransactionDAO.NO_COPY_AVAILABLE.equals(e.getSQLState()) // last copy lent by another thread after the check
+                    || TransactionDAO.HELD_FOR_OTHERS.equals(e.getSQLState())) {
+                unavailableRejections.incrementAndGet();
+                return null;
+            }
+            countIfDuplicate(e);
+            recorder.error("borrow");
+            return null;
+        }
+    }
+
+    // ---------------------------------------------
+    // --- HELPERS ---
+    // ---------------------------------------------
+    private interface DaoCall {
+        void run() throws SQLException;
+    }
+
+    private void timed(LatencyRecorder recorder, String operation, DaoCall call) {
+        long t0 = System.nanoTime();
+        try {
+            call.run();
+            recorder.record(operation, System.nanoTime() - t0);
+        } catch (SQLException e) {
+            countIfDuplicate(e);
+            recorder.error(operation);
+        }
+    }
+
+    /**
+     * The DAOs derive new IDs from MAX(ID)+1, so two desks can race for the same ID;
+     * the loser fails with a duplicate-key error (SQLState 23000, error 1062).
+     */
+    private void countIfDuplicate(SQLException e) {
+        if (e.getErrorCode() == 1062) duplicateIds.incrementAndGet();
+    }
+
+    /** Copies lent twice at once; a title with several copies may have several open loans. */
+    private long countDoubleLoans() throws SQLException {
+        String sql = "SELECT COUNT(*) FROM (SELECT CopyKey FROM transactions WHERE DateReturned IS NULL " +
+                     "GROUP BY CopyKey HAVING COUNT(*) > 1) d";
+        try (Connection link = DBConnector.getConnection();
+             PreparedStatement state = link.prepareStatement(sql);
+             ResultSet resultSet = state.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> settings = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) settings.put(arg.substring(0, eq).replaceFirst("^--", ""), arg.substring(eq + 1));
+        }
+        return settings;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new CirculationSimulator(parseArgs(args)).run();
+    }
+}
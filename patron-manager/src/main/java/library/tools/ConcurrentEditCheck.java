@@ -0,0 +1,149 @@
+package library.tools;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import configuration.DBConnector;
+import library.models.Patron;
+import library.utilities.PatronDAO;
+import library.utilities.StaleRecordException;
+
+/**
+ * Concurrent-edit check for the optimistic record versions, against a locally running
+ * database.
+ *
+ * N desks edit the same scratch patron at once. Each edit is a read-modify-write of a
+ * counter kept in the Address field: read the patron, add one, save. Desks save through
+ * PatronDAO.updatePatron and re-read and retry when it reports a conflict, the way a
+ * desk reloads after an edit conflict.
+ *
+ * mode=versioned  (default) every edit must survive: the counter and the row version
+ *                 both end at desks * edits. Exits with status 1 otherwise.
+ * mode=blind      the same edits saved with the old unconditional UPDATE, for
+ *                 comparison: shows how many updates are silently lost.
+ *
+ * The report includes InnoDB row lock waits during the run. No lock is held between
+ * reading and saving, so a desk can only wait for another desk's single-row UPDATE.
+ *
+ * Usage: ConcurrentEditCheck [mode=versioned|blind] [desks=8] [edits=200]
+ */
+public class ConcurrentEditCheck {
+
+    private static final String COUNTER_PREFIX = "edits: ";
+
+    private final PatronDAO patronDAO = new PatronDAO();
+    private final boolean blind;
+    private final int desks;
+    private final int edits;
+
+    private final AtomicLong conflicts = new AtomicLong();
+
+    public ConcurrentEditCheck(Map<String, String> settings) {
+        this.blind = settings.getOrDefault("mode", "versioned").equals("blind");
+        this.desks = Integer.parseInt(settings.getOrDefault("desks", "8"));
+        this.edits = Integer.parseInt(settings.getOrDefault("edits", "200"));
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    /** Returns false if an edit was lost in versioned mode (blind mode is expected to lose some). */
+    public boolean run() throws Exception {
+        Patron scratch = patronDAO.createPatron(new Patron("", "Edit", "Check", null, null, COUNTER_PREFIX + 0));
+        String patronID = scratch.getPatronID();
+        try {
+            long[] locksBefore = readRowLockStatus();
+            long started = System.nanoTime();
+
+            ExecutorService pool = Executors.newFixedThreadPool(desks);
+            List<Future<?>> results = new ArrayList<>();
+            for (int d = 0; d < desks; d++) {
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < edits; i++) editOnce(patronID);
+                    return null;
+                }));
+            }
+            for (Future<?> f : results) f.get();
+            pool.shutdown();
+
+            double seconds = (System.nanoTime() - started) / 1e9;
+            long[] locksAfter = readRowLockStatus();
+            Patron result = patronDAO.readCurrentPatron(patronID);
+
+            long expected = (long) desks * edits;
+            long counted = counterOf(result);
+            long lockWaits = locksAfter[0] - locksBefore[0];
+            System.out.printf(Locale.ROOT, "mode=%s desks=%d edits/desk=%d in %.2fs (%.0f edits/s)%n",
+                blind ? "blind" : "versioned", desks, edits, seconds, expected / seconds);
+            System.out.printf(Locale.ROOT, "counter %d of %d (%d lost updates), row version %d, %d conflicts retried%n",
+                counted, expected, expected - counted, result.getVersion(), conflicts.get());
+            System.out.printf(Locale.ROOT, "row lock waits during the run: %d (%d ms in total)%n",
+                lockWaits, locksAfter[1] - locksBefore[1]);
+            return blind || counted == expected;
+        } finally {
+            patronDAO.deletePatron(patronID);
+        }
+    }
+
+    /** One read-modify-write, retried until it is saved. */
+    private void editOnce(String patronID) throws SQLException {
+        while (true) {
+            Patron patron = patronDAO.readCurrentPatron(patronID);
+            patron.setAddress(COUNTER_PREFIX + (counterOf(patron) + 1));
+            if (blind) {
+                saveBlind(patron);
+                return;
+            }
+            try {
+                patronDAO.updatePatron(patron);
+                return;
+            } catch (StaleRecordException e) {
+                conflicts.incrementAndGet(); // someone saved first: re-read and apply the edit again
+            }
+        }
+    }
+
+    /** The unconditional UPDATE used before record versions. */
+    private void saveBlind(Patron patron) throws SQLException {
+        try (Connection link = DBConnector.getConnection();
+             PreparedStatement state = link.prepareStatement("UPDATE patrons SET Address = ? WHERE PatronID = ?")) {
+            state.setString(1, patron.getAddress());
+            state.setString(2, patron.getPatronID());
+            state.executeUpdate();
+        }
+    }
+
+    private static long counterOf(Patron patron) {
+        return Long.parseLong(patron.getAddress().substring(COUNTER_PREFIX.length()));
+    }
+
+    /** Server-wide Innodb_row_lock_waits and Innodb_row_lock_time (ms). */
+    private static long[] readRowLockStatus() throws SQLException {
+        long[] status = new long[2];
+        try (Connection link = DBConnector.getConnection();
+             PreparedStatement state = link.prepareStatement(
+                 "SHOW GLOBAL STATUS WHERE Variable_name IN ('Innodb_row_lock_waits', 'Innodb_row_lock_time')");
+             ResultSet resultSet = state.executeQuery()) {
+            while (resultSet.next()) {
+                int i = resultSet.getString(1).equalsIgnoreCase("Innodb_row_lock_waits") ? 0 : 1;
+                status[i] = resultSet.getLong(2);
+            }
+        }
+        return status;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean ok = new ConcurrentEditCheck(CirculationSimulator.parseArgs(args)).run();
+        if (!ok) System.exit(1);
+    }
+}
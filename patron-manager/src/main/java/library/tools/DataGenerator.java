@@ -0,0 +1,471 @@
+package library.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import configuration.DBConnector;
+import library.utilities.BookStockDAO;
+import library.utilities.CategoryStatsDAO;
+
+/**
+ * Generates a large, referentially valid data set (categories, books, patrons and
+ * multi-year loan histories) for performance tests.
+ *
+ * Every value is derived from (seed, entity index) only, so the same settings always
+ * produce the same rows regardless of the number of threads. Loans are generated per
+ * book as a non-overlapping timeline, so no book ever has two open loans, and popular
+ * books (Zipf weights) get proportionally more of them. Each book has {@code copies}
+ * copies; its loans all go to the first one.
+ *
+ * Usage: DataGenerator [categories=40] [books=10000] [patrons=5000] [transactions=200000]
+ *                      [copies=1] [years=5] [seed=42] [threads=cores] [batch=5000]
+ *                      [mode=jdbc|files] [out=generated-data] [reset=false]
+ *
+ * mode=jdbc  writes with batched INSERTs, one connection per worker.
+ * mode=files writes tab-separated part files plus load.sql (LOAD DATA LOCAL INFILE).
+ *
+ * Generated IDs are fixed-width (e.g. BK-0000001, T-00000001); the widths fit
+ * varchar(10) up to 99,999,999 transactions. The DAOs number new rows differently (the
+ * highest ID as text + 1, at least four digits), so rows a desk adds on top of generated
+ * data get shorter IDs (e.g. T-5000001) that collide again once their digit count grows:
+ * generate data for benchmarks and load tests, not for a database the desks will use.
+ * Surrogate keys are written explicitly (index + 1), so loans can refer to their book
+ * and patron without a lookup.
+ */
+public class DataGenerator {
+
+    private static final String[] TITLE_WORDS = {
+        "Silent", "River", "Shadow", "Garden", "Empire", "Winter", "Light", "Stone", "Ocean", "Night",
+        "Fire", "Memory", "Glass", "Iron", "Secret", "Last", "Lost", "Hidden", "Golden", "Broken",
+        "City", "Forest", "Storm", "House", "Journey", "Crown", "Song", "Letters", "Bridge", "Island"
+    };
+    private static final String[] FIRST_NAMES = {
+        "Maria", "Jose", "Ana", "Juan", "Mark", "Grace", "John", "Angel", "Paolo", "Joy",
+        "Carlo", "Liza", "Miguel", "Andrea", "Rafael", "Bea", "Daniel", "Camille", "Luis", "Nina"
+    };
+    private static final String[] LAST_NAMES = {
+        "Santos", "Reyes", "Cruz", "Bautista", "Garcia", "Mendoza", "Torres", "Flores", "Ramos", "Aquino",
+        "Castillo", "Villanueva", "Dela Cruz", "Navarro", "Salazar", "Domingo", "Lopez", "Gonzales", "Rivera", "Perez"
+    };
+
+    private final int categories;
+    private final int books;
+    private final int patrons;
+    private final long transactions;
+    private final int copies;
+    private final int years;
+    private final long seed;
+    private final int threads;
+    private final int batchSize;
+    private final boolean toFiles;
+    private final Path outDir;
+    private final boolean reset;
+
+    private final long firstDay;
+    private final long lastDay;
+
+    // table name, part count and column list of everything written, for load.sql
+    private final List<String[]> partsWritten = new ArrayList<>();
+
+    public DataGenerator(Map<String, String> settings) {
+        this.categories = Integer.parseInt(settings.getOrDefault("categories", "40"));
+        this.books = Integer.parseInt(settings.getOrDefault("books", "10000"));
+        this.patrons = Integer.parseInt(settings.getOrDefault("patrons", "5000"));
+        this.transactions = Long.parseLong(settings.getOrDefault("transactions", "200000"));
+        this.copies = Math.max(1, Integer.parseInt(settings.getOrDefault("copies", "1")));
+        this.years = Integer.parseInt(settings.getOrDefault("years", "5"));
+        this.seed = Long.parseLong(settings.getOrDefault("seed", "42"));
+        this.threads = Integer.parseInt(settings.getOrDefault("threads",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        this.batchSize = Integer.parseInt(settings.getOrDefault("batch", "5000"));
+        this.toFiles = settings.getOrDefault("mode", "jdbc").equals("files");
+        this.outDir = Paths.get(settings.getOrDefault("out", "generated-data"));
+        this.reset = Boolean.parseBoolean(settings.getOrDefault("reset", "false"));
+
+        this.lastDay = LocalDate.now().toEpochDay();
+        this.firstDay = LocalDate.now().minusYears(years).toEpochDay();
+
+        if (transactions > 99_999_999L) {
+            throw new IllegalArgumentException("transactions must fit the T-######## ID format (max 99,999,999)");
+        }
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    public void run() throws Exception {
+        long started = System.nanoTime();
+        if (toFiles) {
+            Files.createDirectories(outDir);
+        } else {
+            prepareDatabase();
+        }
+
+        // Loans per book are decided up front so each book owns a contiguous TransactionID range
+        int[] loansPerBook = planLoans();
+        long[] firstLoanOfBook = new long[books + 1];
+        for (int b = 0; b < books; b++) firstLoanOfBook[b + 1] = firstLoanOfBook[b] + loansPerBook[b];
+        System.out.printf(Locale.ROOT, "Planned %,d loans over %,d books (%d years)%n", firstLoanOfBook[books], books, years);
+
+        generate("categories", "INSERT INTO categories (CategoryKey, CategoryID, CategoryName) VALUES (?, ?, ?)",
+            new String[] { "CategoryKey", "CategoryID", "CategoryName" }, categories, this::categoryRow);
+        generate("books", "INSERT INTO books (BookKey, BookID, Title, Author, ISBN, PublicationYear, CategoryID) VALUES (?, ?, ?, ?, ?, ?, ?)",
+            new String[] { "BookKey", "BookID", "Title", "Author", "ISBN", "PublicationYear", "CategoryID" }, books, this::bookRow);
+        generate("book_copies", "INSERT INTO book_copies (CopyKey, BookKey, CopyNumber) VALUES (?, ?, ?)",
+            new String[] { "CopyKey", "BookKey", "CopyNumber" }, books, this::copyRows);
+        generate("patrons", "INSERT INTO patrons (PatronKey, PatronID, FirstName, LastName, Email, PhoneNumber, Address) VALUES (?, ?, ?, ?, ?, ?, ?)",
+            new String[] { "PatronKey", "PatronID", "FirstName", "LastName", "Email", "PhoneNumber", "Address" }, patrons, this::patronRow);
+        generate("transactions", "INSERT INTO transactions (TransactionKey, TransactionID, BookKey, CopyKey, PatronKey, DateBorrowed, DueDate, DateReturned) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+            new String[] { "TransactionKey", "TransactionID", "BookKey", "CopyKey", "PatronKey", "DateBorrowed", "DueDate", "DateReturned" }, books,
+            (book, sink) -> loanRows(book, firstLoanOfBook[book], loansPerBook[book], sink));
+
+        if (toFiles) {
+            writeLoadScript();
+        } else {
+            // The batched INSERTs bypass the DAOs that keep the counters
+            new CategoryStatsDAO().rebuild();
+            new BookStockDAO().rebuild();
+        }
+        System.out.printf(Locale.ROOT, "Done in %.1fs%n", (System.nanoTime() - started) / 1e9);
+    }
+
+    private void prepareDatabase() throws SQLException {
+        try (Connection link = DBConnector.getConnection(); Statement state = link.createStatement()) {
+            if (reset) {
+                state.execute("SET FOREIGN_KEY_CHECKS = 0");
+                for (String table : new String[] { "category_stats", "book_stock", "fines", "holds", "reminders_sent", "journal_replay",
+                                                   "circulation_daily", "transactions", "book_copies", "books", "patrons", "categories" }) {
+                    state.execute("TRUNCATE TABLE " + table);
+                }
+                state.execute("SET FOREIGN_KEY_CHECKS = 1");
+                // The rollups restart from the first day of the new history
+                state.execute("UPDATE rollup_state SET CompleteThrough = NULL");
+            } else {
+                try (ResultSet rs = state.executeQuery("SELECT (SELECT COUNT(*) FROM books) + (SELECT COUNT(*) FROM categories)")) {
+                    if (rs.next() && rs.getLong(1) > 0) {
+                        throw new IllegalStateException("Target database is not empty; pass reset=true to truncate it first.");
+                    }
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------
+    // --- PARALLEL DRIVER ---
+    // ---------------------------------------------
+    private interface RowProducer {
+        void produce(int index, RowSink sink) throws Exception;
+    }
+
+    /**
+     * Splits [0, count) into one contiguous range per thread; each range gets its own
+     * sink (a JDBC connection or a part file).
+     */
+    private void generate(String table, String insertSql, String[] columns, int count, RowProducer producer) throws Exception {
+        long t0 = System.nanoTime();
+        int parts = Math.max(1, Math.min(threads, count));
+        ExecutorService pool = Executors.newFixedThreadPool(parts);
+        List<Future<Long>> results = new ArrayList<>();
+
+        for (int p = 0; p < parts; p++) {
+            final int part = p;
+            final int from = (int) ((long) count * p / parts);
+            final int to = (int) ((long) count * (p + 1) / parts);
+            results.add(pool.submit(() -> {
+                try (RowSink sink = toFiles
+                        ? new FileSink(outDir.resolve(String.format("%s-part-%03d.tsv", table, part)))
+                        : new JdbcSink(insertSql, columns.length, batchSize)) {
+                    for (int i = from; i < to; i++) producer.produce(i, sink);
+                    return sink.rows();
+                }
+            }));
+        }
+        pool.shutdown();
+
+        long rows = 0;
+        for (Future<Long> f : results) rows += f.get();
+        partsWritten.add(new String[] { table, String.valueOf(parts), String.join(",", columns) });
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        System.out.printf(Locale.ROOT, "  %-12s %,12d rows  %6.1fs  %,10.0f rows/s%n", table, rows, seconds, rows / seconds);
+    }
+
+    // ---------------------------------------------
+    // --- ROW GENERATORS ---
+    // ---------------------------------------------
+    private void categoryRow(int i, RowSink sink) throws Exception {
+        sink.row(i + 1, categoryId(i), "Generated Category " + (i + 1));
+    }
+
+    private void bookRow(int i, RowSink sink) throws Exception {
+        long h = mix(seed, 1, i);
+        String title = TITLE_WORDS[(int) (h & 31) % TITLE_WORDS.length] + " "
+                     + TITLE_WORDS[(int) ((h >>> 8) & 31) % TITLE_WORDS.length] + " " + (i + 1);
+        String author = FIRST_NAMES[(int) ((h >>> 16) % FIRST_NAMES.length)] + " "
+                      + LAST_NAMES[(int) ((h >>> 24) & 0xff) % LAST_NAMES.length];
+        int year = 1900 + (int) ((h >>> 32) & 0xffff) % 126;
+        // Category sizes are skewed: low category indexes are more common
+        int category = (int) Math.min(categories - 1, (long) (Math.pow(unit(mix(seed, 2, i)), 2) * categories));
+        sink.row(i + 1, bookId(i), title, author, isbn(i), year, categoryId(category));
+    }
+
+    // CopyKey = book * copies + copy + 1: a loan finds its book's first copy without a lookup
+    private void copyRows(int book, RowSink sink) throws Exception {
+        for (int c = 0; c < copies; c++) {
+            sink.row((long) book * copies + c + 1, book + 1, c + 1);
+        }
+    }
+
+    private void patronRow(int i, RowSink sink) throws Exception {
+        long h = mix(seed, 3, i);
+        String first = FIRST_NAMES[(int) (h & 0xff) % FIRST_NAMES.length];
+        String last = LAST_NAMES[(int) ((h >>> 8) & 0xff) % LAST_NAMES.length];
+        String email = (first + "." + last.replace(" ", "")).toLowerCase(Locale.ROOT) + "." + (i + 1) + "@example.org";
+        int phone = 900_000_000 + i; // unique, fits int(11)
+        String address = (1 + (h >>> 16) % 999) + " Generated St., Batangas City";
+        sink.row(i + 1, patronId(i), first, last, email, phone, address);
+    }
+
+    /**
+     * One book's loan history: loans follow each other without overlapping, spread
+     * over the whole period. A loan still running "today" is left open (no return date).
+     */
+    private void loanRows(int book, long firstLoan, int count, RowSink sink) throws Exception {
+        if (count == 0) return;
+        long span = lastDay - firstDay;
+        double slot = (double) span / count;
+        for (int k = 0; k < count; k++) {
+            long h = mix(seed, 4, firstLoan + k);
+            long borrowed = firstDay + (long) (k * slot + unit(h) * slot * 0.5);
+            long due = borrowed + 14;
+            // Exponential hold time (mean ~12 days), but never past the next slot
+            long hold = 1 + (long) Math.min(slot * 0.5, -Math.log(1 - unit(mix(seed, 7, firstLoan + k))) * 12);
+            long returned = borrowed + hold;
+            String dateReturned = returned > lastDay ? null : LocalDate.ofEpochDay(returned).toString();
+            int patron = (int) ((mix(seed, 5, firstLoan + k) >>> 1) % patrons);
+            sink.row(firstLoan + k + 1, transactionId(firstLoan + k), book + 1, (long) book * copies + 1, patron + 1,
+                LocalDate.ofEpochDay(borrowed).toString(), LocalDate.ofEpochDay(due).toString(), dateReturned);
+        }
+    }
+
+    /**
+     * Distributes the requested number of loans over books by Zipf popularity,
+     * capped so a book's loans still fit one after another in the period.
+     */
+    private int[] planLoans() {
+        int maxPerBook = (int) Math.max(1, (lastDay - firstDay) / 3);
+        double[] weight = new double[books];
+        for (int b = 0; b < books; b++) weight[b] = 1.0 / Math.pow(popularityRank(b) + 1, 0.9);
+
+        // Water-filling: books that hit the cap are fixed, their excess goes to the rest
+        boolean[] capped = new boolean[books];
+        double remaining = transactions;
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            double norm = 0;
+            for (int b = 0; b < books; b++) if (!capped[b]) norm += weight[b];
+            for (int b = 0; b < books && norm > 0; b++) {
+                if (!capped[b] && remaining * weight[b] / norm > maxPerBook) {
+                    capped[b] = true;
+                    remaining -= maxPerBook;
+                    changed = true;
+                }
+            }
+        }
+
+        double norm = 0;
+        for (int b = 0; b < books; b++) if (!capped[b]) norm += weight[b];
+        int[] plan = new int[books];
+        for (int b = 0; b < books; b++) {
+            if (capped[b]) {
+                plan[b] = maxPerBook;
+                continue;
+            }
+            double expected = Math.max(0, remaining) * weight[b] / norm;
+            int whole = (int) expected;
+            if (unit(mix(seed, 6, b)) < expected - whole) whole++;
+            plan[b] = Math.min(maxPerBook, whole);
+        }
+        return plan;
+    }
+
+    /** Popularity rank of a book: a fixed pseudo-random permutation so hot titles are scattered. */
+    private int popularityRank(int book) {
+        return (int) Math.floorMod(mix(seed, 7, 0) + (long) book * 0x9E3779B1L, (long) books);
+    }
+
+    // ---------------------------------------------
+    // --- ID AND VALUE HELPERS ---
+    // ---------------------------------------------
+    private static String categoryId(int i) {
+        return String.format("GEN-%04d", i + 1);
+    }
+
+    private static String bookId(int i) {
+        return String.format("BK-%07d", i + 1);
+    }
+
+    private static String patronId(int i) {
+        return String.format("PT-%07d", i + 1);
+    }
+
+    private static String transactionId(long i) {
+        return String.format("T-%08d", i + 1);
+    }
+
+    /** Unique, checksum-valid ISBN-13 derived from the book index. */
+    private static String isbn(int i) {
+        String body = String.format("978%09d", i);
+        int sum = 0;
+        for (int d = 0; d < 12; d++) sum += (body.charAt(d) - '0') * (d % 2 == 0 ? 1 : 3);
+        return body + ((10 - sum % 10) % 10);
+    }
+
+    /** SplitMix64 finalizer over (seed, stream, index): cheap, stateless and deterministic. */
+    static long mix(long seed, int stream, long index) {
+        long z = seed + stream * 0xD1B54A32D192ED03L + index * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    static double unit(long h) {
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    // ---------------------------------------------
+    // --- SINKS ---
+    // ---------------------------------------------
+    private interface RowSink extends AutoCloseable {
+        void row(Object... values) throws Exception;
+
+        long rows();
+
+        @Override
+        void close() throws SQLException, IOException;
+    }
+
+    /** Batched INSERTs on a dedicated connection, committed every batch. */
+    private static final class JdbcSink implements RowSink {
+        private final Connection link;
+        private final PreparedStatement state;
+        private final int batchSize;
+        private int pending;
+        private long rows;
+
+        JdbcSink(String sql, int columns, int batchSize) throws SQLException {
+            this.link = DBConnector.getConnection();
+            this.batchSize = batchSize;
+            link.setAutoCommit(false);
+            try (Statement s = link.createStatement()) {
+                // Rows are generated referentially valid; skip per-row checks for load speed
+                s.execute("SET SESSION FOREIGN_KEY_CHECKS = 0, SESSION UNIQUE_CHECKS = 0");
+            }
+            this.state = link.prepareStatement(sql);
+        }
+
+        @Override
+        public void row(Object... values) throws SQLException {
+            for (int i = 0; i < values.length; i++) state.setObject(i + 1, values[i]);
+            state.addBatch();
+            rows++;
+            if (++pending == batchSize) flush();
+        }
+
+        private void flush() throws SQLException {
+            if (pending == 0) return;
+            state.executeBatch();
+            link.commit();
+            pending = 0;
+        }
+
+        @Override
+        public long rows() {
+            return rows;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flush();
+            } finally {
+                state.close();
+                link.close();
+            }
+        }
+    }
+
+    /** Tab-separated rows in MariaDB LOAD DATA format (\N for NULL). */
+    private static final class FileSink implements RowSink {
+        private final BufferedWriter out;
+        private long rows;
+
+        FileSink(Path file) throws IOException {
+            this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void row(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) out.write('\t');
+                out.write(values[i] == null ? "\\N" : values[i].toString());
+            }
+            out.write('\n');
+            rows++;
+        }
+
+        @Override
+        public long rows() {
+            return rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private void writeLoadScript() throws IOException {
+        Path script = outDir.resolve("load.sql");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(script, StandardCharsets.UTF_8))) {
+            out.println("-- Generated by library.tools.DataGenerator (seed " + seed + ")");
+            out.println("-- Run with: mariadb --local-infile=1 PatronManagerDB < load.sql");
+            out.println("SET FOREIGN_KEY_CHECKS = 0;");
+            out.println("SET UNIQUE_CHECKS = 0;");
+            for (String[] table : partsWritten) {
+                int parts = Integer.parseInt(table[1]);
+                for (int p = 0; p < parts; p++) {
+                    Path part = outDir.toAbsolutePath().resolve(String.format("%s-part-%03d.tsv", table[0], p));
+                    out.printf("LOAD DATA LOCAL INFILE '%s' INTO TABLE %s FIELDS TERMINATED BY '\\t' (%s);%n",
+                        part.toString().replace("\\", "/"), table[0], table[2]);
+                }
+            }
+            out.println("SET UNIQUE_CHECKS = 1;");
+            out.println("SET FOREIGN_KEY_CHECKS = 1;");
+            out.println(CategoryStatsDAO.REBUILD_SQL + ";");
+            for (String sql : BookStockDAO.REBUILD_SQL) out.println(sql + ";");
+        }
+        System.out.println("Wrote " + script);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new DataGenerator(CirculationSimulator.parseArgs(args)).run();
+    }
+}
@@ -0,0 +1,131 @@
+package library.tools;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+import library.utilities.FinePolicy;
+import library.utilities.FinesEngine;
+
+/**
+ * Benchmark for the fines engine over a large loan history.
+ *
+ * mode=memory  generates {@code loans} synthetic loans (SplitMix64, same shape as
+ *              DataGenerator: 14-day loans, exponential hold times) into primitive arrays
+ *              and times the fine calculation on fork/join pools of each thread count.
+ *              Isolates the CPU cost; the total is printed as a checksum and must be
+ *              identical for every thread count.
+ * mode=db      times FinesEngine.assessAll against the configured database for each
+ *              thread count. Load the history first, e.g.
+ *              DataGenerator transactions=10000000 books=200000 patrons=100000 mode=files
+ *
+ * Usage: FinesBenchmark [mode=memory|db] [loans=10000000] [categories=40]
+ *                       [threads=1,2,4,8] [rounds=5] [seed=42]
+ */
+public class FinesBenchmark {
+
+    private static final int SLICE = 1 << 16;
+
+    private final Map<String, String> settings;
+    private final int[] threadCounts;
+    private final int rounds;
+
+    public FinesBenchmark(Map<String, String> settings) {
+        this.settings = settings;
+        String[] threads = settings.getOrDefault("threads", "1,2,4,8").split(",");
+        this.threadCounts = new int[threads.length];
+        for (int i = 0; i < threads.length; i++) threadCounts[i] = Integer.parseInt(threads[i].trim());
+        this.rounds = Integer.parseInt(settings.getOrDefault("rounds", "5"));
+    }
+
+    // ---------------------------------------------
+    // --- IN-MEMORY KERNEL ---
+    // ---------------------------------------------
+    private void runMemory() {
+        int loans = Integer.parseInt(settings.getOrDefault("loans", "10000000"));
+        int categories = Integer.parseInt(settings.getOrDefault("categories", "40"));
+        long seed = Long.parseLong(settings.getOrDefault("seed", "42"));
+
+        // Columns as the batch job reads them: due day, returned day (-1 = outstanding), category
+        long today = LocalDate.now().toEpochDay();
+        long firstDay = today - 5 * 365;
+        int[] due = new int[loans];
+        int[] returned = new int[loans];
+        short[] category = new short[loans];
+        IntStream.range(0, loans).parallel().forEach(i -> {
+            long h = DataGenerator.mix(seed, 4, i);
+            long borrowed = firstDay + (long) (DataGenerator.unit(h) * (today - firstDay));
+            long hold = 1 + (long) (-Math.log(1 - DataGenerator.unit(DataGenerator.mix(seed, 7, i))) * 12);
+            due[i] = (int) (borrowed + 14);
+            returned[i] = borrowed + hold > today ? -1 : (int) (borrowed + hold);
+            category[i] = (short) ((h >>> 40) % categories);
+        });
+
+        // A spread of rules: grace 0-3 days, 10-50 cents a day, capped at 5.00-20.00
+        FinePolicy.Rule[] rules = new FinePolicy.Rule[categories];
+        for (int c = 0; c < categories; c++) {
+            rules[c] = new FinePolicy.Rule(c % 4, 10 + 10 * (c % 5), 500 + 500 * (c % 4));
+        }
+
+        System.out.printf(Locale.ROOT, "In-memory fines over %,d loans, %d categories%n", loans, categories);
+        for (int threads : threadCounts) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            long total = 0;
+            for (int r = 0; r < rounds; r++) {
+                long t0 = System.nanoTime();
+                total = pool.invoke(ForkJoinTask.adapt(() -> assess(due, returned, category, rules, today, 0, loans)));
+                best = Math.min(best, System.nanoTime() - t0);
+            }
+            pool.shutdown();
+            System.out.printf(Locale.ROOT, "threads=%-3d best %8.1f ms  %,15.0f loans/s  total fines %s%n",
+                threads, best / 1e6, loans / (best / 1e9), FinesEngine.formatCents(total));
+        }
+    }
+
+    /** Sums the fines of loans [from, to), forking the left half while this thread sums the right. */
+    private static long assess(int[] due, int[] returned, short[] category, FinePolicy.Rule[] rules, long today, int from, int to) {
+        if (to - from > SLICE) {
+            int mid = (from + to) >>> 1;
+            ForkJoinTask<Long> left = ForkJoinTask.adapt(() -> assess(due, returned, category, rules, today, from, mid)).fork();
+            long right = assess(due, returned, category, rules, today, mid, to);
+            return left.join() + right;
+        }
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            int daysLate = FinePolicy.daysLate(due[i], returned[i], today);
+            if (daysLate > 0) sum += FinePolicy.fineCents(rules[category[i]], daysLate);
+        }
+        return sum;
+    }
+
+    // ---------------------------------------------
+    // --- DATABASE RUN ---
+    // ---------------------------------------------
+    private void runDatabase() throws Exception {
+        FinePolicy policy = FinePolicy.load();
+        LocalDate asOf = LocalDate.now();
+        for (int threads : threadCounts) {
+            long t0 = System.nanoTime();
+            FinesEngine.Summary summary = new FinesEngine(policy, threads).assessAll(asOf);
+            double seconds = (System.nanoTime() - t0) / 1e9;
+            System.out.printf(Locale.ROOT, "threads=%-3d %8.1f s  %,12.0f late loans/s  %,d fines  total %s%n",
+                threads, seconds, summary.loansAssessed() / seconds, summary.finesWritten(),
+                FinesEngine.formatCents(summary.totalCents()));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>(CirculationSimulator.parseArgs(args));
+        FinesBenchmark benchmark = new FinesBenchmark(settings);
+        if (settings.getOrDefault("mode", "memory").equals("db")) {
+            benchmark.runDatabase();
+        } else {
+            benchmark.runMemory();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package library.tools;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects per-operation latency samples (nanoseconds) and error counts for the
+ * load tools. Each worker owns one recorder; recorders are merged at the end so
+ * recording needs no synchronization.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, Samples> operations = new TreeMap<>();
+
+    public void record(String operation, long elapsedNanos) {
+        operations.computeIfAbsent(operation, o -> new Samples()).add(elapsedNanos);
+    }
+
+    public void error(String operation) {
+        operations.computeIfAbsent(operation, o -> new Samples()).errors++;
+    }
+
+    public void merge(LatencyRecorder other) {
+        other.operations.forEach((name, samples) -> {
+            Samples mine = operations.computeIfAbsent(name, o -> new Samples());
+            for (int i = 0; i < samples.size; i++) mine.add(samples.values[i]);
+            mine.errors += samples.errors;
+        });
+    }
+
+    public long totalCount() {
+        long total = 0;
+        for (Samples s : operations.values()) total += s.size;
+        return total;
+    }
+
+    public long totalErrors() {
+        long total = 0;
+        for (Samples s : operations.values()) total += s.errors;
+        return total;
+    }
+
+    /**
+     * One line per operation: count, errors, throughput and p50/p95/p99/max in ms.
+     */
+    public String report(double elapsedSeconds) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-16s %10s %8s %10s %9s %9s %9s %9s%n",
+            "operation", "count", "errors", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        operations.forEach((name, s) -> {
+            long[] sorted = Arrays.copyOf(s.values, s.size);
+            Arrays.sort(sorted);
+            sb.append(String.format(Locale.ROOT, "%-16s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+                name, s.size, s.errors, s.size / elapsedSeconds,
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0));
+        });
+        return sb.toString();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static final class Samples {
+        long[] values = new long[256];
+        int size;
+        long errors;
+
+        void add(long value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+}
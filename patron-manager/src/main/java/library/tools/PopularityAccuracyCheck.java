@@ -0,0 +1,123 @@
+package library.tools;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import configuration.DBConnector;
+import library.utilities.PopularityIndex;
+import library.utilities.PopularityIndex.Kind;
+import library.utilities.PopularityIndex.Ranked;
+import library.utilities.PopularityIndex.Window;
+
+/**
+ * Accuracy check of the popularity index (Space-Saving summaries) against exact GROUP BY
+ * counts, against a locally running database with no loans being recorded meanwhile, e.g.
+ * after DataGenerator transactions=1000000 books=200000 patrons=100000
+ *
+ * Builds a PopularityIndex with the given capacity, then for each window (week, month,
+ * all time) and each kind (title, author) reports:
+ *   recall    share of the index's top k whose exact count reaches the exact k-th count
+ *             (so ties at the cut-off count as correct)
+ *   overcount largest count - exact count among the top k, against the total / capacity bound
+ *   bounds    entries whose exact count falls outside [minimum, count]: must be 0
+ *   query     the index's top-k time against the exact GROUP BY
+ * Exits with status 1 if any bound is violated.
+ *
+ * Usage: PopularityAccuracyCheck [k=10] [capacity=1000]
+ */
+public class PopularityAccuracyCheck {
+
+    private final int k;
+    private final int capacity;
+
+    public PopularityAccuracyCheck(Map<String, String> settings) {
+        this.k = Integer.parseInt(settings.getOrDefault("k", "10"));
+        this.capacity = Integer.parseInt(settings.getOrDefault("capacity", "1000"));
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    /** Returns false if an exact count fell outside the bounds the index reported. */
+    public boolean run() throws SQLException {
+        PopularityIndex index = new PopularityIndex(capacity);
+        long started = System.nanoTime();
+        index.rebuild();
+        System.out.printf(Locale.ROOT, "capacity=%d k=%d, built in %.1f ms%n", capacity, k, (System.nanoTime() - started) / 1e6);
+
+        boolean ok = true;
+        for (Window window : Window.values()) {
+            for (Kind kind : Kind.values()) {
+                ok &= compare(index, window, kind);
+            }
+        }
+        return ok;
+    }
+
+    private boolean compare(PopularityIndex index, Window window, Kind kind) throws SQLException {
+        long started = System.nanoTime();
+        List<Ranked> estimated = index.top(window, kind, k);
+        double indexMicros = (System.nanoTime() - started) / 1e3;
+
+        started = System.nanoTime();
+        Map<String, Long> exact = exactCounts(window, kind);
+        double exactMillis = (System.nanoTime() - started) / 1e6;
+
+        long total = 0;
+        List<Long> sorted = new ArrayList<>(exact.values());
+        for (long count : sorted) total += count;
+        sorted.sort((a, b) -> Long.compare(b, a));
+        long cutoff = sorted.size() >= k ? sorted.get(k - 1) : 0;
+
+        int hits = 0;
+        int violations = 0;
+        long overcount = 0;
+        for (Ranked r : estimated) {
+            long actual = exact.getOrDefault(r.id(), 0L);
+            if (actual >= cutoff && actual > 0) hits++;
+            if (actual < r.minimum() || actual > r.count()) violations++;
+            overcount = Math.max(overcount, r.count() - actual);
+        }
+        int expected = Math.min(k, sorted.size());
+        System.out.printf(Locale.ROOT,
+            "  %-8s %-6s  %,10d loans  recall %3d/%-3d  overcount %,6d (bound %,d)  bounds violated %d  query %8.1f us vs %8.1f ms%n",
+            window, kind, total, hits, expected, overcount, total / capacity, violations, indexMicros, exactMillis);
+        return violations == 0;
+    }
+
+    /** Exact loan counts per BookID (titles) or per author in the window. */
+    private static Map<String, Long> exactCounts(Window window, Kind kind) throws SQLException {
+        String column = kind == Kind.TITLE ? "b.BookID" : "b.Author";
+        String sql = "SELECT " + column + ", COUNT(*) FROM transactions t JOIN books b ON b.BookKey = t.BookKey" +
+                     (window != Window.ALL_TIME ? " WHERE t.DateBorrowed BETWEEN ? AND ?" : "") +
+                     " GROUP BY " + column;
+
+        Map<String, Long> counts = new HashMap<>();
+        try (Connection link = DBConnector.getConnection();
+             PreparedStatement state = link.prepareStatement(sql)) {
+            if (window != Window.ALL_TIME) {
+                LocalDate today = LocalDate.now();
+                state.setDate(1, Date.valueOf(today.minusDays(window == Window.WEEK ? 6 : 29)));
+                state.setDate(2, Date.valueOf(today));
+            }
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) counts.put(resultSet.getString(1), resultSet.getLong(2));
+            }
+        }
+        return counts;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        boolean ok = new PopularityAccuracyCheck(CirculationSimulator.parseArgs(args)).run();
+        if (!ok) System.exit(1);
+    }
+}
@@ -0,0 +1,204 @@
+package library.tools;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import configuration.DBConnector;
+import library.utilities.RowMappers;
+
+/**
+ * EXPLAIN report for the DAO queries: shows, for every table each query reads, the
+ * access type, the index used, the estimated rows and the optimizer's notes, and
+ * checks that the query's main table is read through the index it was written for.
+ *
+ * The queries are the DAOs' own SQL, bound to a real patron and book (taken from the
+ * most recent loan). Run it against a database loaded with realistic volumes (see
+ * DataGenerator): on a handful of rows the optimizer prefers a table scan to any index.
+ * Queries that read a whole table by design (catalog load, substring search) are
+ * listed as SCAN and never fail.
+ *
+ * Exits with status 1 if any query does not use its index.
+ *
+ * Usage: QueryPlanReport
+ */
+public class QueryPlanReport {
+
+    /**
+     * One DAO query. {@code table} is the alias of the table the index is for and
+     * {@code index} the key expected (null: a full read by design).
+     */
+    private record Check(String name, String sql, String table, String index, Object... params) {}
+
+    private record PlanRow(String table, String type, String key, long rows, String extra) {
+        boolean isScan() {
+            return "ALL".equals(type) || "index".equals(type);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %s %s ~%d rows%s", table, type, key == null ? "-" : key, rows,
+                extra == null || extra.isEmpty() ? "" : " (" + extra + ")");
+        }
+    }
+
+    // ---------------------------------------------
+    // --- THE DAO QUERIES ---
+    // ---------------------------------------------
+    private static List<Check> checks(String patronID, String bookID, String lastDate, String lastID) {
+        Date today = Date.valueOf(LocalDate.now());
+        List<Check> checks = new ArrayList<>();
+
+        checks.add(new Check("TransactionDAO.readOutstandingLoans()",
+            "SELECT " + RowMappers.DESK_LOAN_COLUMNS + " FROM transactions t " +
+            "JOIN patrons p ON t.PatronKey = p.PatronKey JOIN books b ON t.BookKey = b.BookKey " +
+            "WHERE t.DateReturned IS NULL ORDER BY t.DateBorrowed DESC",
+            "t", "OpenByBorrowed"));
+        checks.add(new Check("TransactionDAO.readOutstandingLoans(patron)",
+            "SELECT " + RowMappers.TITLED_LOAN_COLUMNS + " FROM patrons p JOIN transactions t ON t.PatronKey = p.PatronKey " +
+            "JOIN books b ON t.BookKey = b.BookKey WHERE p.PatronID = ? AND t.DateReturned IS NULL ORDER BY t.DueDate",
+            "t", "PatronOpenLoans", patronID));
+        checks.add(new Check("TransactionDAO.readPatronHistory (first page)",
+            "SELECT " + RowMappers.TITLED_LOAN_COLUMNS + " FROM patrons p JOIN transactions t ON t.PatronKey = p.PatronKey " +
+            "JOIN books b ON t.BookKey = b.BookKey WHERE p.PatronID = ? ORDER BY t.DateBorrowed DESC, t.TransactionID DESC LIMIT ?",
+            "t", "PatronHistory", patronID, 50));
+        checks.add(new Check("TransactionDAO.readPatronHistory (next page)",
+            "SELECT " + RowMappers.TITLED_LOAN_COLUMNS + " FROM patrons p JOIN transactions t ON t.PatronKey = p.PatronKey " +
+            "JOIN books b ON t.BookKey = b.BookKey " +
+            "WHERE p.PatronID = ? AND (t.DateBorrowed < ? OR (t.DateBorrowed = ? AND t.TransactionID < ?)) " +
+            "ORDER BY t.DateBorrowed DESC, t.TransactionID DESC LIMIT ?",
+            "t", "PatronHistory", patronID, lastDate, lastDate, lastID, 50));
+        checks.add(new Check("BookStockDAO.readAvailableCopies",
+            "SELECT k.AvailableCopies FROM books b JOIN book_stock k ON k.BookKey = b.BookKey WHERE b.BookID = ?",
+            "k", "PRIMARY", bookID));
+        checks.add(new Check("BookStockDAO.claimCopy (free copy)",
+            "SELECT CopyKey FROM book_copies WHERE BookKey = (SELECT BookKey FROM books WHERE BookID = ?) AND OnLoan = 0 LIMIT 1",
+            "book_copies", "FreeCopies", bookID));
+        checks.add(new Check("CategoryStatsDAO.moveBook (loan counts)",
+            "SELECT COUNT(*) AS Total, COALESCE(SUM(t.DateReturned IS NULL), 0) AS OnLoan " +
+            "FROM books b JOIN transactions t ON t.BookKey = b.BookKey WHERE b.BookID = ?",
+            "t", "BookOpenLoans", bookID));
+        checks.add(new Check("ReminderDAO.readCandidates",
+            "SELECT t.TransactionID, p.PatronID, t.DueDate, p.FirstName, p.LastName, p.Email, b.Title " +
+            "FROM transactions t JOIN patrons p ON p.PatronKey = t.PatronKey JOIN books b ON b.BookKey = t.BookKey " +
+            "WHERE t.DateReturned IS NULL AND t.DueDate <= ? " +
+            "AND (t.DueDate > ? OR (t.DueDate = ? AND t.TransactionID > ?)) ORDER BY t.DueDate, t.TransactionID LIMIT ?",
+            "t", "OpenByDueDate", today, Date.valueOf("1000-01-01"), Date.valueOf("1000-01-01"), "", 500));
+        Date weekAgo = Date.valueOf(LocalDate.now().minusDays(6));
+        checks.add(new Check("CirculationRollup.computeDays (loans)",
+            "SELECT t.DateBorrowed, b.CategoryID, t.PatronKey FROM transactions t JOIN books b ON b.BookKey = t.BookKey " +
+            "WHERE t.DateBorrowed BETWEEN ? AND ?",
+            "t", "BorrowedOn", weekAgo, today));
+        checks.add(new Check("CirculationRollup.computeDays (returns)",
+            "SELECT t.DateReturned, b.CategoryID, COUNT(*) FROM transactions t JOIN books b ON b.BookKey = t.BookKey " +
+            "WHERE t.DateReturned BETWEEN ? AND ? GROUP BY t.DateReturned, b.CategoryID",
+            "t", "OpenByBorrowed", weekAgo, today));
+        checks.add(new Check("CirculationRollup.computeDays (overdue)",
+            "SELECT t.DueDate, b.CategoryID, COUNT(*) FROM transactions t JOIN books b ON b.BookKey = t.BookKey " +
+            "WHERE t.DueDate BETWEEN ? AND ? AND (t.DateReturned IS NULL OR t.DateReturned > t.DueDate) " +
+            "GROUP BY t.DueDate, b.CategoryID",
+            "t", "DueOn", weekAgo, today));
+        checks.add(new Check("CirculationRollup.readTrend",
+            "SELECT Day, Loans, Returns, Overdue, Patrons FROM circulation_daily " +
+            "WHERE CategoryID = ? AND Day BETWEEN ? AND ? ORDER BY Day",
+            "circulation_daily", "PRIMARY", "", weekAgo, today));
+        checks.add(new Check("HoldDAO.readyHoldsForOthers",
+            "SELECT COUNT(*) FROM holds WHERE BookID = ? AND Status = 'READY' AND PatronID <> ?",
+            "holds", "BookQueue", bookID, patronID));
+        checks.add(new Check("HoldDAO.promoteNextHold (next in queue)",
+            "SELECT HoldID, BookID, PatronID, Priority, PlacedAt, Status FROM holds " +
+            "WHERE BookID = ? AND Status = 'WAITING' ORDER BY Priority DESC, HoldID LIMIT 1",
+            "holds", "BookQueue", bookID));
+        checks.add(new Check("BookDAO.readCurrentBook",
+            "SELECT " + RowMappers.BOOK_COLUMNS + " FROM " + RowMappers.BOOK_TABLES + " " +
+            "WHERE b.BookID = ?",
+            "b", "BookCode", bookID));
+        checks.add(new Check("PatronDAO.readPatron",
+            "SELECT " + RowMappers.PATRON_COLUMNS + " FROM patrons WHERE PatronID = ?",
+            "patrons", "PatronCode", patronID));
+
+        // Full reads by design
+        checks.add(new Check("BookDAO.readAllBooks",
+            "SELECT " + RowMappers.BOOK_COLUMNS + " FROM " + RowMappers.BOOK_TABLES + " " +
+            "ORDER BY b.BookID",
+            "b", null));
+        checks.add(new Check("BookDAO.searchBooks (substring match)",
+            "SELECT " + RowMappers.BOOK_COLUMNS + " FROM " + RowMappers.BOOK_TABLES + " " +
+            "WHERE b.Title LIKE ? OR b.Author LIKE ? OR b.ISBN LIKE ? ORDER BY b.Title LIMIT ?",
+            "b", null, "%history%", "%history%", "%history%", 25));
+        checks.add(new Check("PatronDAO.readAllPatrons",
+            "SELECT " + RowMappers.PATRON_COLUMNS + " FROM patrons ORDER BY PatronID",
+            "patrons", null));
+        return checks;
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    /** Prints the report; returns false if any query misses its index. */
+    public boolean run() throws SQLException {
+        int failed = 0;
+        try (Connection link = DBConnector.getConnection()) {
+            String[] sample = sampleLoan(link);
+            if (sample == null) {
+                System.out.println("No loans in the database: load some data first (DataGenerator).");
+                return false;
+            }
+            for (Check check : checks(sample[0], sample[1], sample[2], sample[3])) {
+                List<PlanRow> plan = explain(link, check);
+                String verdict = verdict(check, plan);
+                if (verdict.equals("FAIL")) failed++;
+                System.out.printf(Locale.ROOT, "%-5s %s%n", verdict, check.name());
+                for (PlanRow row : plan) System.out.println("        " + row);
+            }
+        }
+        System.out.println(failed == 0 ? "Every query uses its index." : failed + " queries do not use their index.");
+        return failed == 0;
+    }
+
+    private static String verdict(Check check, List<PlanRow> plan) {
+        if (check.index() == null) return "SCAN";
+        for (PlanRow row : plan) {
+            if (row.table().equals(check.table())) {
+                return check.index().equals(row.key()) && !row.isScan() ? "OK" : "FAIL";
+            }
+        }
+        return "FAIL";
+    }
+
+    private static List<PlanRow> explain(Connection link, Check check) throws SQLException {
+        List<PlanRow> plan = new ArrayList<>();
+        try (PreparedStatement state = link.prepareStatement("EXPLAIN " + check.sql())) {
+            for (int i = 0; i < check.params().length; i++) state.setObject(i + 1, check.params()[i]);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    plan.add(new PlanRow(resultSet.getString("table"), resultSet.getString("type"),
+                        resultSet.getString("key"), resultSet.getLong("rows"), resultSet.getString("Extra")));
+                }
+            }
+        }
+        return plan;
+    }
+
+    /** PatronID, BookID, DateBorrowed and TransactionID of the most recent loan. */
+    private static String[] sampleLoan(Connection link) throws SQLException {
+        String sql = "SELECT p.PatronID, b.BookID, t.DateBorrowed, t.TransactionID FROM transactions t " +
+                     "JOIN patrons p ON p.PatronKey = t.PatronKey JOIN books b ON b.BookKey = t.BookKey " +
+                     "ORDER BY t.TransactionKey DESC LIMIT 1";
+        try (PreparedStatement state = link.prepareStatement(sql);
+             ResultSet resultSet = state.executeQuery()) {
+            if (!resultSet.next()) return null;
+            return new String[] { resultSet.getString(1), resultSet.getString(2), resultSet.getString(3), resultSet.getString(4) };
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        if (!new QueryPlanReport().run()) System.exit(1);
+    }
+}
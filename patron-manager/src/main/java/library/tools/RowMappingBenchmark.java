@@ -0,0 +1,180 @@
+package library.tools;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import configuration.DBConnector;
+import library.models.Book;
+import library.models.Transaction;
+import library.utilities.RowMapper;
+import library.utilities.RowMappers;
+
+/**
+ * Benchmark of the index-based row mappers (RowMappers) against the label-based
+ * mapping the DAOs used before, on the two widest reads: the book catalog and the
+ * open loans of the Transactions tab. Needs a loaded database, e.g.
+ * DataGenerator transactions=1000000 books=200000 patrons=100000
+ *
+ * For each read and each variant it reports:
+ *   query    execute + transfer + map, as the DAO does it ('label' selects b.* / t.*)
+ *   mapping  mapping only: the rows are read once into a scrollable result set and
+ *            mapped again each round, so the difference is the per-value lookup cost
+ * as the median over {@code rounds} after {@code warmup} unmeasured rounds. The
+ * checksum must be the same for both variants.
+ *
+ * Usage: RowMappingBenchmark [rounds=10] [warmup=3]
+ */
+public class RowMappingBenchmark {
+
+    // ---------------------------------------------
+    // --- BASELINE: the DAO reads before RowMappers ---
+    // ---------------------------------------------
+    private static final String LABEL_BOOKS_SQL =
+        "SELECT b.*, c.CategoryName FROM books b JOIN categories c ON b.CategoryID = c.CategoryID ORDER BY b.BookID";
+
+    private static final RowMapper<Book> LABEL_BOOK = resultSet -> {
+        Book book = new Book(
+            resultSet.getString("BookID"),
+            resultSet.getString("Title"),
+            resultSet.getString("Author"),
+            resultSet.getString("ISBN"),
+            resultSet.getInt("PublicationYear"),
+            resultSet.getString("CategoryID"),
+            resultSet.getString("CategoryName")
+        );
+        book.setVersion(resultSet.getInt("Version"));
+        return book;
+    };
+
+    private static final String LABEL_LOANS_SQL =
+        "SELECT t.*, b.BookID, p.PatronID, p.FirstName, p.LastName, b.Title AS BookTitle FROM transactions t " +
+        "JOIN patrons p ON t.PatronKey = p.PatronKey JOIN books b ON t.BookKey = b.BookKey " +
+        "WHERE t.DateReturned IS NULL ORDER BY t.DateBorrowed DESC";
+
+    private static final RowMapper<Transaction> LABEL_LOAN = resultSet -> {
+        Transaction transaction = new Transaction(
+            resultSet.getString("TransactionID"),
+            resultSet.getString("BookID"),
+            resultSet.getString("PatronID"),
+            resultSet.getString("DateBorrowed"),
+            resultSet.getString("DueDate"),
+            resultSet.getString("DateReturned")
+        );
+        transaction.setPatronName(resultSet.getString("FirstName") + " " + resultSet.getString("LastName"));
+        transaction.setBookTitle(resultSet.getString("BookTitle"));
+        return transaction;
+    };
+
+    // ---------------------------------------------
+    // --- INDEX-BASED: the DAO reads now ---
+    // ---------------------------------------------
+    private static final String INDEX_BOOKS_SQL =
+        "SELECT " + RowMappers.BOOK_COLUMNS + " FROM " + RowMappers.BOOK_TABLES + " ORDER BY b.BookID";
+
+    private static final String INDEX_LOANS_SQL =
+        "SELECT " + RowMappers.DESK_LOAN_COLUMNS + " FROM transactions t " +
+        "JOIN patrons p ON t.PatronKey = p.PatronKey JOIN books b ON t.BookKey = b.BookKey " +
+        "WHERE t.DateReturned IS NULL ORDER BY t.DateBorrowed DESC";
+
+    private final int rounds;
+    private final int warmup;
+
+    public RowMappingBenchmark(Map<String, String> settings) {
+        this.rounds = Integer.parseInt(settings.getOrDefault("rounds", "10"));
+        this.warmup = Integer.parseInt(settings.getOrDefault("warmup", "3"));
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    public void run() throws SQLException {
+        compare("books", LABEL_BOOKS_SQL, LABEL_BOOK, INDEX_BOOKS_SQL, RowMappers.BOOK, b -> b.getBookID().hashCode());
+        compare("open loans", LABEL_LOANS_SQL, LABEL_LOAN, INDEX_LOANS_SQL, RowMappers.DESK_LOAN,
+            t -> t.getTransactionID().hashCode() ^ t.getPatronName().hashCode());
+    }
+
+    private <T> void compare(String name, String labelSql, RowMapper<T> labelMapper,
+                             String indexSql, RowMapper<T> indexMapper, ToIntFunction<T> key) throws SQLException {
+        System.out.println(name + ":");
+        Result labelQuery = timeQuery(labelSql, labelMapper, key);
+        Result indexQuery = timeQuery(indexSql, indexMapper, key);
+        report("query   label", labelQuery, null);
+        report("query   index", indexQuery, labelQuery);
+        Result labelMapping = timeMapping(labelSql, labelMapper, key);
+        Result indexMapping = timeMapping(indexSql, indexMapper, key);
+        report("mapping label", labelMapping, null);
+        report("mapping index", indexMapping, labelMapping);
+    }
+
+    /** Execute and map, one fresh query per round. */
+    private <T> Result timeQuery(String sql, RowMapper<T> mapper, ToIntFunction<T> key) throws SQLException {
+        long[] times = new long[rounds];
+        int rows = 0;
+        long checksum = 0;
+        try (Connection link = DBConnector.getConnection()) {
+            for (int r = -warmup; r < rounds; r++) {
+                long t0 = System.nanoTime();
+                rows = 0;
+                checksum = 0;
+                try (PreparedStatement state = link.prepareStatement(sql);
+                     ResultSet resultSet = state.executeQuery()) {
+                    while (resultSet.next()) {
+                        checksum += key.applyAsInt(mapper.map(resultSet));
+                        rows++;
+                    }
+                }
+                if (r >= 0) times[r] = System.nanoTime() - t0;
+            }
+        }
+        return new Result(rows, median(times), checksum);
+    }
+
+    /** Map the same buffered rows again each round. */
+    private <T> Result timeMapping(String sql, RowMapper<T> mapper, ToIntFunction<T> key) throws SQLException {
+        long[] times = new long[rounds];
+        int rows = 0;
+        long checksum = 0;
+        try (Connection link = DBConnector.getConnection();
+             PreparedStatement state = link.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+             ResultSet resultSet = state.executeQuery()) {
+            for (int r = -warmup; r < rounds; r++) {
+                resultSet.beforeFirst();
+                long t0 = System.nanoTime();
+                rows = 0;
+                checksum = 0;
+                while (resultSet.next()) {
+                    checksum += key.applyAsInt(mapper.map(resultSet));
+                    rows++;
+                }
+                if (r >= 0) times[r] = System.nanoTime() - t0;
+            }
+        }
+        return new Result(rows, median(times), checksum);
+    }
+
+    private record Result(int rows, long nanos, long checksum) {}
+
+    private static void report(String label, Result result, Result baseline) {
+        double ms = result.nanos() / 1e6;
+        String speedup = baseline == null ? ""
+            : String.format(Locale.ROOT, "  %.2fx", (double) baseline.nanos() / result.nanos());
+        System.out.printf(Locale.ROOT, "  %s  %,9d rows  %9.2f ms  %,12.0f rows/s  checksum %d%s%n",
+            label, result.rows(), ms, result.rows() / (ms / 1000), result.checksum(), speedup);
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    public static void main(String[] args) throws SQLException {
+        new RowMappingBenchmark(CirculationSimulator.parseArgs(args)).run();
+    }
+}
@@ -0,0 +1,232 @@
+package library.tools;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+import configuration.DBConnector;
+
+/**
+ * Before/after benchmark of migration 004: loans that refer to books and patrons by
+ * their varchar codes (the old schema) against loans that refer to them by bigint
+ * surrogate keys (the current one). Needs a loaded database, e.g.
+ * DataGenerator transactions=1000000 books=200000 patrons=100000
+ *
+ * Both layouts are built as scratch tables from the current data, with the same
+ * columns and the same loan indexes, so only the key type differs:
+ *   bench_code_*  primary keys and joins on BookID / PatronID / TransactionID
+ *   bench_key_*   primary keys and joins on BookKey / PatronKey / TransactionKey,
+ *                 codes kept as unique columns
+ *
+ * For each layout it reports the data and index size of each table (after ANALYZE)
+ * and the median time over {@code rounds} of:
+ *   open loans      the Transactions tab read: open loans joined to books and patrons
+ *   category recount every loan joined to its book, grouped by category
+ * The row counts and checksums must be the same for both layouts.
+ * The scratch tables are dropped at the end unless keep=true.
+ *
+ * Usage: SurrogateKeyBenchmark [rounds=5] [warmup=2] [keep=false]
+ */
+public class SurrogateKeyBenchmark {
+
+    private static final String[] TABLES = {
+        "bench_code_loans", "bench_code_books", "bench_code_patrons",
+        "bench_key_loans", "bench_key_books", "bench_key_patrons"
+    };
+
+    // ---------------------------------------------
+    // --- SCRATCH SCHEMA ---
+    // ---------------------------------------------
+    private static final String[] CREATE_SQL = {
+        "CREATE TABLE bench_code_books (" +
+        "BookID varchar(10) NOT NULL, Title varchar(255) NOT NULL, CategoryID varchar(10) NOT NULL, " +
+        "PRIMARY KEY (BookID)) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci",
+
+        "CREATE TABLE bench_code_patrons (" +
+        "PatronID varchar(10) NOT NULL, FirstName varchar(50) NOT NULL, LastName varchar(50) NOT NULL, " +
+        "PRIMARY KEY (PatronID)) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci",
+
+        "CREATE TABLE bench_code_loans (" +
+        "TransactionID varchar(10) NOT NULL, BookID varchar(10) NOT NULL, PatronID varchar(10) NOT NULL, " +
+        "DateBorrowed date NOT NULL, DueDate date NOT NULL, DateReturned date DEFAULT NULL, " +
+        "PRIMARY KEY (TransactionID), " +
+        "KEY BookOpenLoans (BookID, DateReturned), " +
+        "KEY PatronHistory (PatronID, DateBorrowed, TransactionID), " +
+        "KEY OpenByBorrowed (DateReturned, DateBorrowed)" +
+        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci",
+
+        "CREATE TABLE bench_key_books (" +
+        "BookKey bigint(20) NOT NULL, BookID varchar(10) NOT NULL, Title varchar(255) NOT NULL, CategoryID varchar(10) NOT NULL, " +
+        "PRIMARY KEY (BookKey), UNIQUE KEY BookCode (BookID)) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci",
+
+        "CREATE TABLE bench_key_patrons (" +
+        "PatronKey bigint(20) NOT NULL, PatronID varchar(10) NOT NULL, FirstName varchar(50) NOT NULL, LastName varchar(50) NOT NULL, " +
+        "PRIMARY KEY (PatronKey), UNIQUE KEY PatronCode (PatronID)) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci",
+
+        "CREATE TABLE bench_key_loans (" +
+        "TransactionKey bigint(20) NOT NULL, TransactionID varchar(10) NOT NULL, BookKey bigint(20) NOT NULL, PatronKey bigint(20) NOT NULL, " +
+        "DateBorrowed date NOT NULL, DueDate date NOT NULL, DateReturned date DEFAULT NULL, " +
+        "PRIMARY KEY (TransactionKey), " +
+        "UNIQUE KEY TransactionCode (TransactionID), " +
+        "KEY BookOpenLoans (BookKey, DateReturned), " +
+        "KEY PatronHistory (PatronKey, DateBorrowed, TransactionID), " +
+        "KEY OpenByBorrowed (DateReturned, DateBorrowed)" +
+        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci"
+    };
+
+    private static final String[] FILL_SQL = {
+        "INSERT INTO bench_code_books SELECT BookID, Title, CategoryID FROM books",
+        "INSERT INTO bench_code_patrons SELECT PatronID, FirstName, LastName FROM patrons",
+        "INSERT INTO bench_code_loans SELECT t.TransactionID, b.BookID, p.PatronID, t.DateBorrowed, t.DueDate, t.DateReturned " +
+        "FROM transactions t JOIN books b ON b.BookKey = t.BookKey JOIN patrons p ON p.PatronKey = t.PatronKey",
+        "INSERT INTO bench_key_books SELECT BookKey, BookID, Title, CategoryID FROM books",
+        "INSERT INTO bench_key_patrons SELECT PatronKey, PatronID, FirstName, LastName FROM patrons",
+        "INSERT INTO bench_key_loans SELECT TransactionKey, TransactionID, BookKey, PatronKey, DateBorrowed, DueDate, DateReturned " +
+        "FROM transactions"
+    };
+
+    // ---------------------------------------------
+    // --- THE JOINS ---
+    // ---------------------------------------------
+    private static final String CODE_OPEN_LOANS_SQL =
+        "SELECT l.TransactionID, b.BookID, p.PatronID, b.Title, p.FirstName, p.LastName FROM bench_code_loans l " +
+        "JOIN bench_code_patrons p ON p.PatronID = l.PatronID JOIN bench_code_books b ON b.BookID = l.BookID " +
+        "WHERE l.DateReturned IS NULL ORDER BY l.DateBorrowed DESC";
+
+    private static final String KEY_OPEN_LOANS_SQL =
+        "SELECT l.TransactionID, b.BookID, p.PatronID, b.Title, p.FirstName, p.LastName FROM bench_key_loans l " +
+        "JOIN bench_key_patrons p ON p.PatronKey = l.PatronKey JOIN bench_key_books b ON b.BookKey = l.BookKey " +
+        "WHERE l.DateReturned IS NULL ORDER BY l.DateBorrowed DESC";
+
+    private static final String CODE_RECOUNT_SQL =
+        "SELECT b.CategoryID, COUNT(*) FROM bench_code_loans l JOIN bench_code_books b ON b.BookID = l.BookID " +
+        "GROUP BY b.CategoryID";
+
+    private static final String KEY_RECOUNT_SQL =
+        "SELECT b.CategoryID, COUNT(*) FROM bench_key_loans l JOIN bench_key_books b ON b.BookKey = l.BookKey " +
+        "GROUP BY b.CategoryID";
+
+    private final int rounds;
+    private final int warmup;
+    private final boolean keep;
+
+    public SurrogateKeyBenchmark(Map<String, String> settings) {
+        this.rounds = Integer.parseInt(settings.getOrDefault("rounds", "5"));
+        this.warmup = Integer.parseInt(settings.getOrDefault("warmup", "2"));
+        this.keep = Boolean.parseBoolean(settings.getOrDefault("keep", "false"));
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    public void run() throws SQLException {
+        try (Connection link = DBConnector.getConnection()) {
+            try {
+                build(link);
+                reportSizes(link);
+                compare(link, "open loans", CODE_OPEN_LOANS_SQL, KEY_OPEN_LOANS_SQL);
+                compare(link, "category recount", CODE_RECOUNT_SQL, KEY_RECOUNT_SQL);
+            } finally {
+                if (!keep) drop(link);
+            }
+        }
+    }
+
+    private void build(Connection link) throws SQLException {
+        long t0 = System.nanoTime();
+        try (Statement state = link.createStatement()) {
+            drop(link);
+            for (String sql : CREATE_SQL) state.execute(sql);
+            for (String sql : FILL_SQL) state.execute(sql);
+            // Fresh statistics, so the sizes and the plans reflect the rows just loaded
+            state.execute("ANALYZE TABLE " + String.join(", ", TABLES));
+        }
+        System.out.printf(Locale.ROOT, "Scratch tables built in %.1fs%n", (System.nanoTime() - t0) / 1e9);
+    }
+
+    private static void drop(Connection link) throws SQLException {
+        try (Statement state = link.createStatement()) {
+            state.execute("DROP TABLE IF EXISTS " + String.join(", ", TABLES));
+        }
+    }
+
+    private static void reportSizes(Connection link) throws SQLException {
+        String sql = "SELECT TABLE_NAME, TABLE_ROWS, DATA_LENGTH, INDEX_LENGTH FROM information_schema.TABLES " +
+                     "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME LIKE 'bench\\_%' ORDER BY TABLE_NAME";
+        long[] totals = new long[2]; // code, key: data + indexes
+        System.out.println("sizes (data = clustered primary key, indexes = secondary):");
+        try (PreparedStatement state = link.prepareStatement(sql);
+             ResultSet resultSet = state.executeQuery()) {
+            while (resultSet.next()) {
+                String table = resultSet.getString(1);
+                long data = resultSet.getLong(3);
+                long indexes = resultSet.getLong(4);
+                totals[table.startsWith("bench_code_") ? 0 : 1] += data + indexes;
+                System.out.printf(Locale.ROOT, "  %-20s ~%,12d rows  data %,10d KiB  indexes %,10d KiB%n",
+                    table, resultSet.getLong(2), data >> 10, indexes >> 10);
+            }
+        }
+        System.out.printf(Locale.ROOT, "  total: codes %,d KiB, keys %,d KiB (%.2fx)%n",
+            totals[0] >> 10, totals[1] >> 10, totals[1] == 0 ? 0 : (double) totals[0] / totals[1]);
+    }
+
+    // ---------------------------------------------
+    // --- TIMING ---
+    // ---------------------------------------------
+    private void compare(Connection link, String name, String codeSql, String keySql) throws SQLException {
+        System.out.println(name + ":");
+        Result code = time(link, codeSql);
+        Result key = time(link, keySql);
+        report("codes", code, null);
+        report("keys ", key, code);
+        if (code.rows() != key.rows() || code.checksum() != key.checksum()) {
+            System.out.println("  WARNING: the two layouts returned different rows");
+        }
+    }
+
+    /** Execute and read every row, one fresh query per round. */
+    private Result time(Connection link, String sql) throws SQLException {
+        long[] times = new long[rounds];
+        long rows = 0;
+        long checksum = 0;
+        for (int r = -warmup; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            rows = 0;
+            checksum = 0;
+            try (PreparedStatement state = link.prepareStatement(sql);
+                 ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    checksum += resultSet.getString(1).hashCode() ^ resultSet.getString(2).hashCode();
+                    rows++;
+                }
+            }
+            if (r >= 0) times[r] = System.nanoTime() - t0;
+        }
+        return new Result(rows, median(times), checksum);
+    }
+
+    private record Result(long rows, long nanos, long checksum) {}
+
+    private static void report(String label, Result result, Result baseline) {
+        double ms = result.nanos() / 1e6;
+        String speedup = baseline == null ? ""
+            : String.format(Locale.ROOT, "  %.2fx", (double) baseline.nanos() / result.nanos());
+        System.out.printf(Locale.ROOT, "  %s  %,9d rows  %9.2f ms  checksum %d%s%n",
+            label, result.rows(), ms, result.checksum(), speedup);
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    public static void main(String[] args) throws SQLException {
+        new SurrogateKeyBenchmark(CirculationSimulator.parseArgs(args)).run();
+    }
+}
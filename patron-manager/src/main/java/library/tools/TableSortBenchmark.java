@@ -0,0 +1,171 @@
+package library.tools;
+
+import java.lang.reflect.Method;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import library.models.Book;
+import library.utilities.SortKeys;
+
+/**
+ * Benchmark of the table sort and filter keys (SortKeys) on a large generated
+ * catalog, without a database or a window.
+ *
+ * Reports, as the median over {@code rounds} after {@code warmup} rounds:
+ *   keys         computing every row's keys (once per load)
+ *   sort         the rows sorted by title, by year, and by category then title:
+ *                'default' is what a TableView does without SortKeys (a getter called
+ *                by reflection and a Collator comparison on every comparison),
+ *                'keys' compares the precomputed keys
+ *   re-sort      the same sort again on rows already in order (a filter change)
+ *   keystroke    one filter predicate compiled and applied to every row, for each
+ *                prefix of {@code filter} as it is typed
+ * and marks the times over one 60 Hz frame (16.7 ms).
+ *
+ * Usage: TableSortBenchmark [rows=500000] [rounds=7] [warmup=3] [filter="silent riv"] [seed=42]
+ */
+public class TableSortBenchmark {
+
+    private static final double FRAME_MS = 1000.0 / 60;
+
+    private static final String[] WORDS = {
+        "Silent", "River", "Shadow", "Garden", "Empire", "Winter", "Light", "Stone", "Ocean", "Night",
+        "Fire", "Memory", "Glass", "Iron", "Secret", "Last", "Lost", "Hidden", "Golden", "Broken",
+        "Café", "Éclair", "Niño", "Ångström", "Zürich", "Señor", "Île", "Øresund", "Déjà", "Über"
+    };
+    private static final String[] NAMES = {
+        "Maria Santos", "José Reyes", "Ana Cruz", "juan Bautista", "Mark García", "Grace Mendoza",
+        "Angel Torres", "Paolo Flores", "Joy Ramos", "Liza Aquino", "Miguel Castillo", "Nina Pérez"
+    };
+
+    private final int rows;
+    private final int rounds;
+    private final int warmup;
+    private final String filter;
+    private final long seed;
+
+    public TableSortBenchmark(Map<String, String> settings) {
+        this.rows = Integer.parseInt(settings.getOrDefault("rows", "500000"));
+        this.rounds = Integer.parseInt(settings.getOrDefault("rounds", "7"));
+        this.warmup = Integer.parseInt(settings.getOrDefault("warmup", "3"));
+        this.filter = settings.getOrDefault("filter", "silent riv");
+        this.seed = Long.parseLong(settings.getOrDefault("seed", "42"));
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    public void run() throws Exception {
+        List<Book> books = generate();
+        System.out.printf(Locale.ROOT, "%,d books%n", books.size());
+
+        SortKeys<Book> keys = new SortKeys<>();
+        int title = keys.textColumn(Book::getTitle);
+        keys.textColumn(Book::getAuthor);
+        int category = keys.textColumn(Book::getCategoryName);
+        int year = keys.numberColumn(Book::getPublicationYear);
+
+        report("keys", time(() -> {
+            keys.clear();
+            for (Book book : books) keys.put(book);
+        }));
+
+        Collator collator = Collator.getInstance();
+        compare(books, "title", byGetter(collator, "getTitle"),
+            keys.comparator(List.of(new SortKeys.Order(title, true))));
+        compare(books, "year", byGetter(collator, "getPublicationYear"),
+            keys.comparator(List.of(new SortKeys.Order(year, false))));
+        compare(books, "category, title", byGetter(collator, "getCategoryName").thenComparing(byGetter(collator, "getTitle")),
+            keys.comparator(List.of(new SortKeys.Order(category, true), new SortKeys.Order(title, true))));
+
+        Book[] sorted = books.toArray(new Book[0]);
+        Comparator<Book> byTitle = keys.comparator(List.of(new SortKeys.Order(title, true)));
+        Arrays.sort(sorted, byTitle);
+        report("re-sort (keys, title)", time(() -> Arrays.sort(sorted.clone(), byTitle)));
+
+        for (int typed = 1; typed <= filter.length(); typed++) {
+            String prefix = filter.substring(0, typed);
+            int[] matched = new int[1];
+            long nanos = time(() -> {
+                Predicate<Book> predicate = keys.filter(prefix);
+                int n = 0;
+                for (Book book : books) if (predicate == null || predicate.test(book)) n++;
+                matched[0] = n;
+            });
+            report(String.format(Locale.ROOT, "keystroke %-12s %,9d rows", "\"" + prefix + "\"", matched[0]), nanos);
+        }
+    }
+
+    private void compare(List<Book> books, String name, Comparator<Book> defaultOrder, Comparator<Book> keyOrder) throws Exception {
+        Book[] source = books.toArray(new Book[0]);
+        long slow = time(() -> Arrays.sort(source.clone(), defaultOrder));
+        long fast = time(() -> Arrays.sort(source.clone(), keyOrder));
+        report("sort " + name + " (default)", slow);
+        report("sort " + name + " (keys)", fast);
+        System.out.printf(Locale.ROOT, "    %.1fx faster%n", (double) slow / fast);
+    }
+
+    /** What TableColumn.DEFAULT_COMPARATOR did with the former PropertyValueFactory columns. */
+    private static Comparator<Book> byGetter(Collator collator, String getter) throws NoSuchMethodException {
+        Method method = Book.class.getMethod(getter);
+        return (a, b) -> {
+            try {
+                Object x = method.invoke(a);
+                Object y = method.invoke(b);
+                if (x instanceof String s && y instanceof String t) return collator.compare(s, t);
+                @SuppressWarnings("unchecked")
+                Comparable<Object> c = (Comparable<Object>) x;
+                return c.compareTo(y);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    // ---------------------------------------------
+    // --- DATA AND TIMING ---
+    // ---------------------------------------------
+    private List<Book> generate() {
+        Random random = new Random(seed);
+        List<Book> books = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+                         + " " + (i + 1);
+            String category = "Category " + (char) ('A' + random.nextInt(26));
+            books.add(new Book(String.format("BK-%07d", i + 1), title, NAMES[random.nextInt(NAMES.length)],
+                null, 1900 + random.nextInt(126), "GEN", category));
+        }
+        return books;
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private long time(Task task) throws Exception {
+        long[] times = new long[rounds];
+        for (int r = -warmup; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            task.run();
+            if (r >= 0) times[r] = System.nanoTime() - t0;
+        }
+        Arrays.sort(times);
+        return times[rounds / 2];
+    }
+
+    private static void report(String label, long nanos) {
+        double ms = nanos / 1e6;
+        System.out.printf(Locale.ROOT, "  %-44s %9.2f ms%s%n", label, ms, ms > FRAME_MS ? "  (over one frame)" : "");
+    }
+
+    public static void main(String[] args) throws Exception {
+        new TableSortBenchmark(CirculationSimulator.parseArgs(args)).run();
+    }
+}
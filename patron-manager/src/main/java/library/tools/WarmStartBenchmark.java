@@ -0,0 +1,112 @@
+package library.tools;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import library.models.Book;
+import library.models.Category;
+import library.models.Patron;
+import library.utilities.BookDAO;
+import library.utilities.CategoryDAO;
+import library.utilities.PatronDAO;
+import library.utilities.ReferenceSnapshot;
+
+/**
+ * Cold-start benchmark of the reference data a desk needs before its tables can be
+ * shown: read from the database as before, or from the local snapshot. Run each
+ * source in a fresh JVM (one run per invocation), so class loading, JIT warm-up and
+ * connection setup count as they do at a real startup.
+ *
+ *   source=db        reads categories, books and patrons through the DAOs and
+ *                    writes them to {@code file}, stamped with the change versions
+ *   source=snapshot  reads {@code file} (memory-mapped)
+ *   source=generate  writes a snapshot of generated rows to {@code file}, to try the
+ *                    snapshot side without a database
+ *
+ * Reports the time spent reading and the JVM uptime when the rows were ready.
+ *
+ * Usage: WarmStartBenchmark [source=snapshot] [file=reference-bench.snapshot] [books=200000] [patrons=50000]
+ */
+public class WarmStartBenchmark {
+
+    private final String source;
+    private final Path file;
+    private final int books;
+    private final int patrons;
+
+    public WarmStartBenchmark(Map<String, String> settings) {
+        this.source = settings.getOrDefault("source", "snapshot");
+        this.file = Paths.get(settings.getOrDefault("file", "reference-bench.snapshot"));
+        this.books = Integer.parseInt(settings.getOrDefault("books", "200000"));
+        this.patrons = Integer.parseInt(settings.getOrDefault("patrons", "50000"));
+    }
+
+    // ---------------------------------------------
+    // --- RUN ---
+    // ---------------------------------------------
+    public void run() throws Exception {
+        long t0 = System.nanoTime();
+        ReferenceSnapshot snapshot;
+        switch (source) {
+            case "db" -> {
+                ReferenceSnapshot.ChangeVersions versions = ReferenceSnapshot.readVersions();
+                snapshot = new ReferenceSnapshot(versions, new CategoryDAO().readAllCategories(),
+                    new BookDAO().readAllBooks(), new PatronDAO().readAllPatrons());
+            }
+            case "snapshot" -> {
+                snapshot = ReferenceSnapshot.read(file);
+                if (snapshot == null) throw new IllegalStateException("No usable snapshot at " + file);
+            }
+            case "generate" -> snapshot = generate();
+            default -> throw new IllegalArgumentException("source must be db, snapshot or generate");
+        }
+        long readNanos = System.nanoTime() - t0;
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+
+        System.out.printf(Locale.ROOT, "%s: %,d categories, %,d books, %,d patrons%n", source,
+            snapshot.getCategories().size(), snapshot.getBooks().size(), snapshot.getPatrons().size());
+        System.out.printf(Locale.ROOT, "  read       %9.1f ms%n", readNanos / 1e6);
+        System.out.printf(Locale.ROOT, "  rows ready %9d ms after JVM start%n", uptime);
+
+        if (!source.equals("snapshot")) {
+            long w0 = System.nanoTime();
+            snapshot.write(file);
+            System.out.printf(Locale.ROOT, "  written    %9.1f ms, %,d bytes to %s%n",
+                (System.nanoTime() - w0) / 1e6, Files.size(file), file);
+        }
+    }
+
+    // ---------------------------------------------
+    // --- GENERATED DATA ---
+    // ---------------------------------------------
+    private ReferenceSnapshot generate() {
+        Random random = new Random(42);
+        List<Category> categories = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            categories.add(new Category(String.format("CAT-%02d", i), "Category " + i, books / 40, random.nextInt(500), random.nextInt(100_000)));
+        }
+        List<Book> bookRows = new ArrayList<>(books);
+        for (int i = 1; i <= books; i++) {
+            Category category = categories.get(random.nextInt(categories.size()));
+            bookRows.add(new Book(String.format("BK-%06d", i), "Title of book number " + i, "Author " + random.nextInt(20_000),
+                String.valueOf(9_780_000_000_000L + i), 1900 + random.nextInt(126), category.getCategoryID(), category.getCategoryName()));
+        }
+        List<Patron> patronRows = new ArrayList<>(patrons);
+        for (int i = 1; i <= patrons; i++) {
+            patronRows.add(new Patron(String.format("PT-%06d", i), "First" + i, "Last" + random.nextInt(10_000),
+                "patron" + i + "@example.com", String.valueOf(5_550_000 + i), i + " Generated Street"));
+        }
+        return new ReferenceSnapshot(new ReferenceSnapshot.ChangeVersions(1, 1, 1), categories, bookRows, patronRows);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new WarmStartBenchmark(CirculationSimulator.parseArgs(args)).run();
+    }
+}
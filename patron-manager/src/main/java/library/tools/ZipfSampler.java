@@ -0,0 +1,35 @@
+package library.tools;
+
+import java.util.Random;
+
+/**
+ * Samples ranks 0..n-1 with probability proportional to 1 / (rank + 1)^s.
+ * Rank 0 is the most popular item. The CDF is precomputed once, so each
+ * sample is a binary search.
+ */
+public class ZipfSampler {
+
+    private final double[] cdf;
+
+    public ZipfSampler(int n, double exponent) {
+        if (n <= 0) throw new IllegalArgumentException("n must be positive");
+        cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) cdf[i] /= sum;
+    }
+
+    public int next(Random random) {
+        double u = random.nextDouble();
+        int low = 0, high = cdf.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cdf[mid] < u) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,153 @@
+package library.utilities;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import library.logging.Log;
+import library.models.Book;
+import library.models.Transaction;
+
+/**
+ * Local copy of the outstanding loans (TransactionID -> BookID) and of the number of
+ * copies of each title, used to answer availability checks while the database is
+ * unreachable.
+ *
+ * The snapshot is replaced wholesale every time the outstanding loans are read
+ * successfully, and kept current by every borrow/return (online or journaled); the
+ * copies come from each catalog read. It is written to disk so an offline desk can
+ * still answer after a restart.
+ */
+public class AvailabilitySnapshot {
+
+    private static final Log LOG = Log.get(AvailabilitySnapshot.class);
+
+    private static final AvailabilitySnapshot INSTANCE = new AvailabilitySnapshot();
+
+    // Starts the lines holding a title's copies ("=BookID<tab>copies"); loan lines start with a TransactionID
+    private static final String COPIES_MARK = "=";
+
+    // TransactionID -> BookID, plus BookID -> number of open loans for O(1) checks
+    private final Map<String, String> openLoans = new ConcurrentHashMap<>();
+    private final Map<String, Integer> loansPerBook = new ConcurrentHashMap<>();
+    // BookID -> copies owned; a title not seen yet counts as one copy
+    private final Map<String, Integer> copiesPerBook = new ConcurrentHashMap<>();
+    private final Path file;
+
+    private AvailabilitySnapshot() {
+        String configured = System.getProperty("patronmanager.snapshot");
+        this.file = configured != null
+            ? Paths.get(configured)
+            : Paths.get(System.getProperty("user.home"), ".patron-manager", "availability.snapshot");
+        load();
+    }
+
+    public static AvailabilitySnapshot getInstance() {
+        return INSTANCE;
+    }
+
+    // ---------------------------------------------
+    // --- QUERIES ---
+    // ---------------------------------------------
+    public int availableCopies(String bookID) {
+        return Math.max(0, copiesPerBook.getOrDefault(bookID, 1) - loansPerBook.getOrDefault(bookID, 0));
+    }
+
+    public String bookFor(String transactionID) {
+        return openLoans.get(transactionID);
+    }
+
+    // ---------------------------------------------
+    // --- UPDATES ---
+    // ---------------------------------------------
+    /**
+     * Replaces the snapshot with a fresh list of outstanding loans from the database.
+     * Journaled loans that have not been replayed yet are kept.
+     */
+    public synchronized void replaceAll(List<Transaction> outstanding) {
+        Map<String, String> provisional = new HashMap<>();
+        openLoans.forEach((transactionID, bookID) -> {
+            if (transactionID.startsWith(OfflineJournal.PROVISIONAL_PREFIX)) provisional.put(transactionID, bookID);
+        });
+        openLoans.clear();
+        loansPerBook.clear();
+        provisional.forEach(this::recordBorrow);
+        for (Transaction t : outstanding) {
+            recordBorrow(t.getTransactionID(), t.getBookID());
+        }
+        save();
+    }
+
+    /** Takes the number of copies of each title from a catalog read; saved with the loans. */
+    public void recordCopies(List<Book> books) {
+        for (Book book : books) {
+            if (book.getTotalCopies() > 0) copiesPerBook.put(book.getBookID(), book.getTotalCopies());
+        }
+    }
+
+    public synchronized void recordBorrow(String transactionID, String bookID) {
+        if (openLoans.put(transactionID, bookID) == null) {
+            loansPerBook.merge(bookID, 1, Integer::sum);
+        }
+    }
+
+    public synchronized void recordReturn(String transactionID) {
+        String bookID = openLoans.remove(transactionID);
+        if (bookID != null) {
+            loansPerBook.computeIfPresent(bookID, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Re-keys a provisional (journaled) loan once replay has assigned its real ID.
+     */
+    public synchronized void rename(String provisionalID, String transactionID) {
+        String bookID = openLoans.get(provisionalID);
+        if (bookID != null) {
+            recordReturn(provisionalID);
+            recordBorrow(transactionID, bookID);
+        }
+    }
+
+    // ---------------------------------------------
+    // --- PERSISTENCE ---
+    // ---------------------------------------------
+    public synchronized void save() {
+        List<String> lines = new ArrayList<>(openLoans.size() + copiesPerBook.size());
+        openLoans.forEach((transactionID, bookID) -> lines.add(transactionID + "\t" + bookID));
+        copiesPerBook.forEach((bookID, copies) -> lines.add(COPIES_MARK + bookID + "\t" + copies));
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.atError("save").field("file", file).message("Error saving availability snapshot").cause(e).log();
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) return;
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0) continue;
+                if (line.startsWith(COPIES_MARK)) {
+                    copiesPerBook.put(line.substring(1, tab), Integer.parseInt(line.substring(tab + 1)));
+                } else {
+                    recordBorrow(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        } catch (IOException e) {
+            LOG.atError("load").field("file", file).message("Error loading availability snapshot").cause(e).log();
+        }
+    }
+}
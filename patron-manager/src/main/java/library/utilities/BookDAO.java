@@ -6,14 +6,30 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import configuration.DBConnector;
+import library.audit.AuditEvent.Action;
+import library.audit.AuditEvent.Entity;
+import library.audit.AuditLog;
+import library.logging.Log;
 import library.models.Book;
 
 public class BookDAO {
+    private static final Log LOG = Log.get(BookDAO.class);
+
     private static final String BOOK_PREFIX = "BK-";
 
+    // Cached reads (see QueryCache): tables read, and how long another desk's edit may take to show
+    private static final String[] CATALOG_TABLES = { "books", "categories", "book_stock" };
+    private static final String ALL_BOOKS_SQL =
+        "SELECT " + RowMappers.BOOK_COLUMNS + " FROM " + RowMappers.BOOK_TABLES + " ORDER BY b.BookID";
+    private static final long CATALOG_TTL_MILLIS = 30_000;
+    private static final long SEARCH_TTL_MILLIS = 60_000;
+
     // --- ID GENERATION LOGIC ---
     private String generateNextBookId(Connection conn) throws SQLException {
         // Find the highest BookID that starts with the defined prefix
@@ -47,123 +63,338 @@ public class BookDAO {
     //  ---------- CRUD OPERATIONS ----------
 
     public Book createBook(Book book) throws SQLException { 
+        long started = System.nanoTime();
         String sql = "INSERT INTO books (BookID, Title, Author, ISBN, PublicationYear, CategoryID) " +
                     "VALUES (?, ?, ?, ?, ?, ?)";
         
         // FIX: Using try-with-resources for Connection and PreparedStatement.
         // Removed redundant finally block cleanup.
         try (Connection link = DBConnector.getConnection()) {
-            
-            // --- CRUCIAL: Generate ID here and set it on the object ---
-            String newId = generateNextBookId(link);
-            book.setBookID(newId);
-            // -----------------------------------------------------------
-            
-            try (PreparedStatement state = link.prepareStatement(sql)) {
+            link.setAutoCommit(false);
+            try {
+                // --- CRUCIAL: Generate ID here and set it on the object ---
+                String newId = generateNextBookId(link);
+                book.setBookID(newId);
+                // -----------------------------------------------------------
                 
-                // Map fields to parameters
-                state.setString(1, book.getBookID()); // Use the generated ID
-                state.setString(2, book.getTitle());
-                state.setString(3, book.getAuthor());
-                state.setString(4, book.getIsbn()); // Corrected getter casing
-                state.setInt(5, book.getPublicationYear());
-                state.setString(6, book.getCategoryID());
-                state.executeUpdate();
+                try (PreparedStatement state = link.prepareStatement(sql)) {
+                    
+                    // Map fields to parameters
+                    state.setString(1, book.getBookID()); // Use the generated ID
+                    state.setString(2, book.getTitle());
+                    state.setString(3, book.getAuthor());
+                    state.setString(4, book.getIsbn()); // Corrected getter casing
+                    state.setInt(5, book.getPublicationYear());
+                    state.setString(6, book.getCategoryID());
+                    state.executeUpdate();
+                }
+                CategoryStatsDAO.adjustCategory(link, book.getCategoryID(), 1, 0, 0);
+                int copies = Math.max(1, book.getTotalCopies());
+                BookStockDAO.addCopies(link, book.getBookID(), copies);
+                link.commit();
+                QueryCache.getInstance().invalidate("books", "category_stats", "book_stock");
+                book.setTotalCopies(copies);
+                book.setAvailableCopies(copies);
+                AuditLog.getInstance().publish(Action.CREATE, Entity.BOOK, book.getBookID(), book.getCategoryID(), book.getVersion());
+                LOG.atDebug("createBook").entity(book.getBookID()).latencySince(started).log();
+            } catch (SQLException e) {
+                link.rollback();
+                throw e;
             }
             
             return book; // Return the book object with the new ID
             
         } catch (SQLException e) {
-            System.err.println("Error creating book: " + e.getMessage());
+            LOG.atError("createBook").entity(book.getBookID()).latencySince(started)
+                .message("Error creating book").cause(e).log();
             throw e;
         }
     }
 
     //  ---------- READ (FIXED RESOURCE MANAGEMENT) ----------
     public List<Book> readAllBooks() throws SQLException {
+        // Both the Books and the Transactions tab load the whole catalog on every refresh
+        return QueryCache.getInstance().get(ALL_BOOKS_SQL, List.of(), CATALOG_TABLES, RowMappers.BOOK_WIDTH, CATALOG_TTL_MILLIS, () -> {
+            try (Connection link = DBConnector.getReadConnection()) { // catalog load: replica if available
+                return readAllBooks(link);
+            } catch (SQLException e) {
+                LOG.atError("readAllBooks").message("Error reading all books").cause(e).log();
+                throw e;
+            }
+        });
+    }
+
+    /** The whole catalog, read on the caller's connection, bypassing the cache (see ReferenceSnapshot). */
+    static List<Book> readAllBooks(Connection link) throws SQLException {
         List<Book> books = new ArrayList<>();
-        String sql = "SELECT b.*, c.CategoryName " +
-                    "FROM books b " +
-                    "JOIN categories c ON b.CategoryID = c.CategoryID " +
-                    "ORDER BY b.BookID";
+        try (PreparedStatement state = link.prepareStatement(ALL_BOOKS_SQL);
+             ResultSet resultSet = state.executeQuery()) {
+            while (resultSet.next()) {
+                books.add(RowMappers.BOOK.map(resultSet));
+            }
+        }
+        AvailabilitySnapshot.getInstance().recordCopies(books); // for availability checks while offline
+        return books;
+    }
 
-        // FIX: Relying solely on try-with-resources. Removed all external declarations 
-        // and the manual finally block to prevent NullPointerExceptions on close.
-        try (Connection link = DBConnector.getConnection();
-            PreparedStatement state = link.prepareStatement(sql);
-            ResultSet resultSet = state.executeQuery()) {
+    //  ---------- SEARCH (Kiosk catalog lookup) ----------
+    /**
+     * Finds books whose title, author or ISBN contains the given term.
+     * Results are capped at {@code limit} rows.
+     */
+    public List<Book> searchBooks(String term, int limit) throws SQLException {
+        String sql = "SELECT " + RowMappers.BOOK_COLUMNS + " FROM " + RowMappers.BOOK_TABLES + " " +
+                    "WHERE b.Title LIKE ? OR b.Author LIKE ? OR b.ISBN LIKE ? " +
+                    "ORDER BY b.Title LIMIT ?";
+        String pattern = "%" + term + "%";
 
-            while (resultSet.next()) {
-                String bookID = resultSet.getString("BookID");
-                String title = resultSet.getString("Title");
-                String author = resultSet.getString("Author");
-                // The name "ISBN" from the database is retrieved correctly.
-                String isbn = resultSet.getString("ISBN"); 
-                int publicationYear = resultSet.getInt("PublicationYear");
-                String categoryID = resultSet.getString("CategoryID");
-                
-                // 2. RETRIEVE THE NEW FIELD
-                String categoryName = resultSet.getString("CategoryName"); 
-                
-                // 3. USE THE NEW 7-ARGUMENT CONSTRUCTOR
-                Book book = new Book(
-                    bookID, title, author, isbn, publicationYear, categoryID, categoryName
-                );
-                books.add(book);
+        return QueryCache.getInstance().get(sql, List.of(pattern, limit), CATALOG_TABLES, RowMappers.BOOK_WIDTH, SEARCH_TTL_MILLIS, () -> {
+            List<Book> books = new ArrayList<>();
+            try (Connection link = DBConnector.getReadConnection();
+                PreparedStatement state = link.prepareStatement(sql)) {
+
+                state.setString(1, pattern);
+                state.setString(2, pattern);
+                state.setString(3, pattern);
+                state.setInt(4, limit);
+
+                try (ResultSet resultSet = state.executeQuery()) {
+                    while (resultSet.next()) {
+                        books.add(RowMappers.BOOK.map(resultSet));
+                    }
+                }
+            } catch (SQLException e) {
+                LOG.atError("searchBooks").message("Error searching books").cause(e).log();
+                throw e;
+            }
+            return books;
+        });
+    }
+
+    //  ---------- READ ONE (for editing) ----------
+    /**
+     * Returns the book as it is now on the primary (never a lagging replica), or null if
+     * it no longer exists. Used to reload a record after an edit conflict.
+     */
+    public Book readCurrentBook(String bookId) throws SQLException {
+        String sql = "SELECT " + RowMappers.BOOK_COLUMNS + " FROM " + RowMappers.BOOK_TABLES + " WHERE b.BookID = ?";
+
+        try (Connection link = DBConnector.getPrimaryReadConnection();
+            PreparedStatement state = link.prepareStatement(sql)) {
+
+            state.setString(1, bookId);
+            try (ResultSet resultSet = state.executeQuery()) {
+                return resultSet.next() ? RowMappers.BOOK.map(resultSet) : null;
             }
         } catch (SQLException e) {
-            System.err.println("Error reading all books: " + e.getMessage());
-            throw e; 
-        } 
-        
-        return books;
+            LOG.atError("readCurrentBook").entity(bookId).message("Error reading book").cause(e).log();
+            throw e;
+        }
     }
 
     //  ---------- UPDATE (FIXED RESOURCE MANAGEMENT) ----------
+    /**
+     * Writes the columns changed on the book since it was read (its dirty columns), if the
+     * book is still at the version it was read at, and bumps the version on the object.
+     * No lock is held between reading and saving; if another desk saved the book
+     * meanwhile, nothing is written and a StaleRecordException is thrown.
+     */
     public void updateBook(Book book) throws SQLException {
-        String sql = "UPDATE books SET Title = ?, Author = ?, ISBN = ?, PublicationYear = ?, CategoryID = ? " +
-                    "WHERE BookID = ?";
+        long started = System.nanoTime();
+        Set<String> columns = book.getDirtyColumns();
+        if (columns.isEmpty()) return; // nothing changed: no write, same version
+
+        // Column names come from the model's setters, never from user input
+        StringBuilder sql = new StringBuilder("UPDATE books SET ");
+        for (String column : columns) sql.append(column).append(" = ?, ");
+        sql.append("Version = Version + 1 WHERE BookID = ? AND Version = ?");
         
         // FIX: Using try-with-resources for Connection and PreparedStatement.
         try (Connection link = DBConnector.getConnection();
-            PreparedStatement state = link.prepareStatement(sql)) {
-            
-            // Map updated fields to parameters (1-5)
-            state.setString(1, book.getTitle());
-            state.setString(2, book.getAuthor());
-            state.setString(3, book.getIsbn());
-            state.setInt(4, book.getPublicationYear());
-            state.setString(5, book.getCategoryID());
-            // Map BookID to the WHERE clause (6)
-            state.setString(6, book.getBookID());
-            state.executeUpdate();
+            PreparedStatement state = link.prepareStatement(sql.toString())) {
+            link.setAutoCommit(false);
+            try {
+                // Category counters follow the book if it moves to another category.
+                // Read without a lock: if the row changes after this, the version check fails.
+                String oldCategoryID = columns.contains("CategoryID") ? readCategory(link, book.getBookID(), false) : null;
+
+                // Map the changed fields, then BookID and the version read to the WHERE clause
+                int i = 1;
+                for (String column : columns) {
+                    switch (column) {
+                        case "Title" -> state.setString(i++, book.getTitle());
+                        case "Author" -> state.setString(i++, book.getAuthor());
+                        case "ISBN" -> state.setString(i++, book.getIsbn());
+                        case "PublicationYear" -> state.setInt(i++, book.getPublicationYear());
+                        case "CategoryID" -> state.setString(i++, book.getCategoryID());
+                        default -> throw new IllegalStateException("Unknown books column: " + column);
+                    }
+                }
+                state.setString(i++, book.getBookID());
+                state.setInt(i, book.getVersion());
+                if (state.executeUpdate() == 0) {
+                    throw new StaleRecordException("books", book.getBookID(), book.getVersion());
+                }
+
+                if (oldCategoryID != null && !oldCategoryID.equals(book.getCategoryID())) {
+                    CategoryStatsDAO.moveBook(link, book.getBookID(), oldCategoryID, book.getCategoryID());
+                }
+                link.commit();
+                QueryCache.getInstance().invalidate("books", "category_stats");
+                book.setVersion(book.getVersion() + 1);
+                book.markClean();
+                AuditLog.getInstance().publish(Action.UPDATE, Entity.BOOK, book.getBookID(), book.getCategoryID(), book.getVersion());
+                LOG.atDebug("updateBook").entity(book.getBookID()).latencySince(started).log();
+            } catch (SQLException e) {
+                link.rollback();
+                throw e;
+            }
             
         } catch (SQLException e) {
-            System.err.println("Error updating book: " + e.getMessage());
+            LOG.atError("updateBook").entity(book.getBookID()).latencySince(started)
+                .message("Error updating book").cause(e).log();
+            throw e;
+        }
+    }
+
+    //  ---------- BULK RECATEGORISE ----------
+    /**
+     * Moves many books to one category in a single transaction: one batched UPDATE, and
+     * the category counters adjusted per category rather than per book. Each book must
+     * still be at the version it was read at; if any was saved elsewhere meanwhile,
+     * nothing is moved and a StaleRecordException names the first such book.
+     * On success the books carry their new category, name and version.
+     */
+    public void moveBooksToCategory(List<Book> books, String categoryID, String categoryName) throws SQLException {
+        long started = System.nanoTime();
+        String sql = "UPDATE books SET CategoryID = ?, Version = Version + 1 WHERE BookID = ? AND Version = ?";
+
+        Map<String, String> fromCategory = new LinkedHashMap<>();
+        for (Book book : books) {
+            if (!categoryID.equals(book.getCategoryID())) fromCategory.put(book.getBookID(), book.getCategoryID());
+        }
+        if (fromCategory.isEmpty()) return;
+
+        try (Connection link = DBConnector.getConnection();
+            PreparedStatement state = link.prepareStatement(sql)) {
+            link.setAutoCommit(false);
+            try {
+                List<Book> moving = new ArrayList<>(fromCategory.size());
+                for (Book book : books) {
+                    if (!fromCategory.containsKey(book.getBookID())) continue;
+                    state.setString(1, categoryID);
+                    state.setString(2, book.getBookID());
+                    state.setInt(3, book.getVersion());
+                    state.addBatch();
+                    moving.add(book);
+                }
+                int[] updated = state.executeBatch(); // one count per book (the driver's bulk mode, which would hide them, is off)
+                for (int i = 0; i < updated.length; i++) {
+                    if (updated[i] == 0) {
+                        Book stale = moving.get(i);
+                        throw new StaleRecordException("books", stale.getBookID(), stale.getVersion());
+                    }
+                }
+                CategoryStatsDAO.moveBooks(link, fromCategory, categoryID);
+                link.commit();
+                QueryCache.getInstance().invalidate("books", "category_stats");
+
+                for (Book book : moving) {
+                    book.setCategoryID(categoryID);
+                    book.setCategoryName(categoryName);
+                    book.setVersion(book.getVersion() + 1);
+                    book.markClean();
+                    AuditLog.getInstance().publish(Action.MOVE, Entity.BOOK, book.getBookID(), categoryID, book.getVersion());
+                }
+                LOG.atDebug("moveBooksToCategory").entity(categoryID).field("books", moving.size()).latencySince(started).log();
+            } catch (SQLException e) {
+                link.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            LOG.atError("moveBooksToCategory").entity(categoryID).field("books", books.size()).latencySince(started)
+                .message("Error moving books").cause(e).log();
+            throw e;
+        }
+    }
+
+    //  ---------- ADD COPIES ----------
+    /**
+     * Adds copies of a title, all on the shelf, and updates the counts on the object.
+     * Copies are not withdrawn one by one: a title's copies go with the title.
+     */
+    public void addCopies(Book book, int count) throws SQLException {
+        long started = System.nanoTime();
+        if (count <= 0) return;
+
+        try (Connection link = DBConnector.getConnection()) {
+            link.setAutoCommit(false);
+            try {
+                BookStockDAO.addCopies(link, book.getBookID(), count);
+                link.commit();
+                QueryCache.getInstance().invalidate("book_stock");
+                book.setTotalCopies(book.getTotalCopies() + count);
+                book.setAvailableCopies(book.getAvailableCopies() + count);
+                LOG.atDebug("addCopies").entity(book.getBookID()).field("copies", count).latencySince(started).log();
+            } catch (SQLException e) {
+                link.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            LOG.atError("addCopies").entity(book.getBookID()).latencySince(started)
+                .message("Error adding copies").cause(e).log();
             throw e;
         }
     }
 
     //  ---------- DELETE (FIXED RESOURCE MANAGEMENT) ----------
     public void deleteBook(String bookId) throws SQLException {
+        long started = System.nanoTime();
         String sql = "DELETE FROM books WHERE BookID = ?";
 
         // FIX: Using try-with-resources for Connection and PreparedStatement.
         try (Connection link = DBConnector.getConnection();
             PreparedStatement state = link.prepareStatement(sql)) {
-            
-            state.setString(1, bookId);
-            
-            int rowsAffected = state.executeUpdate();
-            if (rowsAffected == 0) {
-                System.out.println("No book found with ID: " + bookId);
+            link.setAutoCommit(false);
+            try {
+                String categoryID = readCategory(link, bookId, true);
+                // A copy that was ever lent is referenced by its loans: the delete fails as before
+                BookStockDAO.deleteCopies(link, bookId);
+
+                state.setString(1, bookId);
+                
+                int rowsAffected = state.executeUpdate();
+                if (rowsAffected == 0) {
+                    LOG.atWarn("deleteBook").entity(bookId).message("No book found").log();
+                } else {
+                    // A book with loans cannot be deleted (foreign key), so only the book count changes
+                    CategoryStatsDAO.adjustCategory(link, categoryID, -1, 0, 0);
+                }
+                link.commit();
+                QueryCache.getInstance().invalidate("books", "category_stats", "book_stock");
+                if (rowsAffected > 0) AuditLog.getInstance().publish(Action.DELETE, Entity.BOOK, bookId, categoryID);
+                LOG.atDebug("deleteBook").entity(bookId).latencySince(started).log();
+            } catch (SQLException e) {
+                link.rollback();
+                throw e;
             }
         } catch (SQLException e) {
             // Handle Foreign Key Constraint error (if the book is currently on loan)
             if (e.getSQLState() != null && e.getSQLState().startsWith("23")) { 
-                System.err.println("Cannot delete book. It is referenced in a transaction record.");
+                LOG.atWarn("deleteBook").entity(bookId).latencySince(started)
+                    .message("Cannot delete book. It is referenced in a transaction record.").cause(e).log();
             }
             throw e;
         }
     }
-}
\ No newline at end of file
+
+    private String readCategory(Connection link, String bookId, boolean lock) throws SQLException {
+        String sql = "SELECT CategoryID FROM books WHERE BookID = ?" + (lock ? " FOR UPDATE" : "");
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, bookId);
+            try (ResultSet resultSet = state.executeQuery()) {
+                return resultSet.next() ? resultSet.getString("CategoryID") : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package library.utilities;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import configuration.DBConnector;
+import library.logging.Log;
+
+/**
+ * Copies of each title (table 'book_copies') and their maintained counters (table
+ * 'book_stock'): copies owned and copies on the shelf.
+ *
+ * The other DAOs call the package-private helpers below inside their own database
+ * transaction. A borrow locks the title's counters ({@link #lockAvailable}) and takes a
+ * copy with {@link #claimCopy}: a conditional decrement of the counter, then one UPDATE
+ * that flags any free copy. A return gives the copy back with {@link #releaseCopy}.
+ * Availability is therefore a primary-key read of the counters ({@link #readAvailableCopies}), and the Books tab shows available/total
+ * straight from the catalog read. {@link #rebuild()} recomputes the flags and the
+ * counters from the open loans (e.g. after bulk loads that bypass the DAOs).
+ */
+public class BookStockDAO {
+
+    private static final Log LOG = Log.get(BookStockDAO.class);
+
+    // Full recount; also run by 02_insertion.sql, migration 007 and DataGenerator's load.sql
+    public static final String[] REBUILD_SQL = {
+        "UPDATE book_copies c SET c.OnLoan = EXISTS " +
+        "(SELECT 1 FROM transactions t WHERE t.CopyKey = c.CopyKey AND t.DateReturned IS NULL)",
+        "INSERT INTO book_stock (BookKey, TotalCopies, AvailableCopies) " +
+        "SELECT b.BookKey, COUNT(c.CopyKey), COALESCE(SUM(c.OnLoan = 0), 0) " +
+        "FROM books b LEFT JOIN book_copies c ON c.BookKey = b.BookKey GROUP BY b.BookKey " +
+        "ON DUPLICATE KEY UPDATE TotalCopies = VALUES(TotalCopies), AvailableCopies = VALUES(AvailableCopies)"
+    };
+
+    // ---------------------------------------------
+    // --- TRANSACTIONAL ADJUSTMENTS (called by the other DAOs) ---
+    // ---------------------------------------------
+    /**
+     * Adds {@code count} copies to a title, numbered after its last copy, and counts
+     * them as on the shelf. Creates the title's counters row if it has none yet.
+     */
+    static void addCopies(Connection link, String bookID, int count) throws SQLException {
+        String stockSql = "INSERT INTO book_stock (BookKey, TotalCopies, AvailableCopies) " +
+                          "SELECT BookKey, ?, ? FROM books WHERE BookID = ? " +
+                          "ON DUPLICATE KEY UPDATE TotalCopies = TotalCopies + VALUES(TotalCopies), " +
+                          "AvailableCopies = AvailableCopies + VALUES(AvailableCopies)";
+        // Runs after the counters row is locked by the statement above, so two desks
+        // adding copies to the same title cannot pick the same numbers
+        String copiesSql = "INSERT INTO book_copies (BookKey, CopyNumber) " +
+                           "SELECT b.BookKey, COALESCE((SELECT MAX(c.CopyNumber) FROM book_copies c WHERE c.BookKey = b.BookKey), 0) + ? " +
+                           "FROM books b WHERE b.BookID = ?";
+        try (PreparedStatement state = link.prepareStatement(stockSql)) {
+            state.setInt(1, count);
+            state.setInt(2, count);
+            state.setString(3, bookID);
+            if (state.executeUpdate() == 0) throw new SQLException("No book " + bookID, "23000");
+        }
+        try (PreparedStatement state = link.prepareStatement(copiesSql)) {
+            for (int i = 1; i <= count; i++) {
+                state.setInt(1, i);
+                state.setString(2, bookID);
+                state.addBatch();
+            }
+            state.executeBatch();
+        }
+    }
+
+    /**
+     * Locks a title's counters row and returns its copies on the shelf (0 for an unknown
+     * title). Returns, which promote holds, update the same row, so no hold of the title
+     * changes state until the caller's transaction ends.
+     */
+    static int lockAvailable(Connection link, String bookID) throws SQLException {
+        String sql = "SELECT k.AvailableCopies FROM book_stock k JOIN books b ON b.BookKey = k.BookKey " +
+                     "WHERE b.BookID = ? FOR UPDATE";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, bookID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Takes a free copy of the title for a loan, leaving at least {@code reserved} copies
+     * on the shelf (those kept aside for other patrons' READY holds). Returns false, having
+     * changed nothing, if no copy beyond those is free. On success the copy's key is the
+     * connection's LAST_INSERT_ID(), for the statement that inserts the loan.
+     */
+    static boolean claimCopy(Connection link, String bookID, int reserved) throws SQLException {
+        // The decrement locks the title's counters row (if lockAvailable has not already):
+        // concurrent borrows of the title queue here, and never race for the same copy below
+        String stockSql = "UPDATE book_stock k JOIN books b ON b.BookKey = k.BookKey " +
+                          "SET k.AvailableCopies = k.AvailableCopies - 1 " +
+                          "WHERE b.BookID = ? AND k.AvailableCopies > ?";
+        // Any free copy (FreeCopies index); LAST_INSERT_ID(expr) hands its key to the next statement
+        String copySql = "UPDATE book_copies SET OnLoan = 1, CopyKey = LAST_INSERT_ID(CopyKey) " +
+                         "WHERE BookKey = (SELECT BookKey FROM books WHERE BookID = ?) AND OnLoan = 0 LIMIT 1";
+        try (PreparedStatement state = link.prepareStatement(stockSql)) {
+            state.setString(1, bookID);
+            state.setInt(2, reserved);
+            if (state.executeUpdate() == 0) return false;
+        }
+        try (PreparedStatement state = link.prepareStatement(copySql)) {
+            state.setString(1, bookID);
+            if (state.executeUpdate() == 0) {
+                // The counter said a copy was free: the counters are out of step (see check())
+                throw new SQLException("No free copy of " + bookID + " although its counter is above zero", "HY000");
+            }
+        }
+        return true;
+    }
+
+    /** Puts back on the shelf the copy lent by a loan that has just been closed. */
+    static void releaseCopy(Connection link, String transactionID) throws SQLException {
+        String sql = "UPDATE transactions t " +
+                     "JOIN book_copies c ON c.CopyKey = t.CopyKey " +
+                     "JOIN book_stock k ON k.BookKey = t.BookKey " +
+                     "SET c.OnLoan = 0, k.AvailableCopies = k.AvailableCopies + 1 " +
+                     "WHERE t.TransactionID = ? AND c.OnLoan = 1";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, transactionID);
+            state.executeUpdate();
+        }
+    }
+
+    /**
+     * Locks a title's counters and its copies on the shelf, and returns the keys of those
+     * copies. Used by JournalReplayer, which assigns the copies of a whole chunk of loans
+     * itself, then records them with {@link #setOnLoan} and {@link #adjustAvailable}.
+     */
+    static List<Long> lockFreeCopies(Connection link, String bookID) throws SQLException {
+        String copiesSql = "SELECT c.CopyKey FROM book_copies c JOIN books b ON b.BookKey = c.BookKey " +
+                           "WHERE b.BookID = ? AND c.OnLoan = 0 ORDER BY c.CopyNumber FOR UPDATE";
+        lockAvailable(link, bookID); // counters first, as in a borrow, so a replay and a desk lock in the same order
+        List<Long> copies = new ArrayList<>();
+        try (PreparedStatement state = link.prepareStatement(copiesSql)) {
+            state.setString(1, bookID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) copies.add(resultSet.getLong(1));
+            }
+        }
+        return copies;
+    }
+
+    /** Flags copies as lent (true) or on the shelf (false), in one batch. */
+    static void setOnLoan(Connection link, Map<Long, Boolean> copies) throws SQLException {
+        if (copies.isEmpty()) return;
+        try (PreparedStatement state = link.prepareStatement("UPDATE book_copies SET OnLoan = ? WHERE CopyKey = ?")) {
+            for (Map.Entry<Long, Boolean> copy : copies.entrySet()) {
+                state.setBoolean(1, copy.getValue());
+                state.setLong(2, copy.getKey());
+                state.addBatch();
+            }
+            state.executeBatch();
+        }
+    }
+
+    /** Adds the given delta to the copies of a title on the shelf. */
+    static void adjustAvailable(Connection link, String bookID, int delta) throws SQLException {
+        if (delta == 0) return;
+        String sql = "UPDATE book_stock k JOIN books b ON b.BookKey = k.BookKey " +
+                     "SET k.AvailableCopies = k.AvailableCopies + ? WHERE b.BookID = ?";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setInt(1, delta);
+            state.setString(2, bookID);
+            state.executeUpdate();
+        }
+    }
+
+    /** Removes a title's copies and counters, before the title itself is deleted. */
+    static void deleteCopies(Connection link, String bookID) throws SQLException {
+        String stockSql = "DELETE k FROM book_stock k JOIN books b ON b.BookKey = k.BookKey WHERE b.BookID = ?";
+        String copiesSql = "DELETE c FROM book_copies c JOIN books b ON b.BookKey = c.BookKey WHERE b.BookID = ?";
+        for (String sql : new String[] { stockSql, copiesSql }) {
+            try (PreparedStatement state = link.prepareStatement(sql)) {
+                state.setString(1, bookID);
+                state.executeUpdate();
+            }
+        }
+    }
+
+    // ---------------------------------------------
+    // --- READS ---
+    // ---------------------------------------------
+    /**
+     * Copies of the title on the shelf now, from the primary (it guards the borrow
+     * decision). 0 for an unknown title.
+     */
+    public int readAvailableCopies(String bookID) throws SQLException {
+        String sql = "SELECT k.AvailableCopies FROM books b JOIN book_stock k ON k.BookKey = b.BookKey WHERE b.BookID = ?";
+        try (Connection link = DBConnector.getPrimaryReadConnection();
+             PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, bookID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * The counters of every title: BookID -> {available, total}. Used to bring a saved
+     * catalog up to date without re-reading it (see ReferenceSnapshot, which reads them
+     * on the connection it read the change versions on).
+     */
+    static Map<String, int[]> readAllStock(Connection link) throws SQLException {
+        String sql = "SELECT b.BookID, k.AvailableCopies, k.TotalCopies FROM book_stock k JOIN books b ON b.BookKey = k.BookKey";
+        Map<String, int[]> stock = new HashMap<>();
+        try (PreparedStatement state = link.prepareStatement(sql);
+             ResultSet resultSet = state.executeQuery()) {
+            while (resultSet.next()) {
+                stock.put(resultSet.getString(1), new int[] { resultSet.getInt(2), resultSet.getInt(3) });
+            }
+        }
+        return stock;
+    }
+
+    // ---------------------------------------------
+    // --- CONSISTENCY CHECK / REBUILD ---
+    // ---------------------------------------------
+    /**
+     * Recounts every title's copies and copies out, and returns one line per title whose
+     * stored counters differ (empty if consistent).
+     */
+    public List<String> check() throws SQLException {
+        String sql = "SELECT b.BookID, k.TotalCopies, k.AvailableCopies, " +
+                     "COUNT(c.CopyKey) AS Copies, COALESCE(SUM(ln.CopyKey IS NULL AND c.CopyKey IS NOT NULL), 0) AS Free " +
+                     "FROM books b " +
+                     "LEFT JOIN book_stock k ON k.BookKey = b.BookKey " +
+                     "LEFT JOIN book_copies c ON c.BookKey = b.BookKey " +
+                     "LEFT JOIN (SELECT DISTINCT CopyKey FROM transactions WHERE DateReturned IS NULL) ln " +
+                     "ON ln.CopyKey = c.CopyKey " +
+                     "GROUP BY b.BookKey, b.BookID, k.TotalCopies, k.AvailableCopies " +
+                     "ORDER BY b.BookID";
+
+        List<String> drift = new ArrayList<>();
+        try (Connection link = DBConnector.getPrimaryReadConnection(); // must not lag behind the primary
+             PreparedStatement state = link.prepareStatement(sql);
+             ResultSet resultSet = state.executeQuery()) {
+            while (resultSet.next()) {
+                String bookID = resultSet.getString("BookID");
+                if (resultSet.getObject("TotalCopies") == null) {
+                    drift.add(bookID + ": no counters row");
+                    continue;
+                }
+                int total = resultSet.getInt("TotalCopies"), available = resultSet.getInt("AvailableCopies");
+                int copies = resultSet.getInt("Copies"), free = resultSet.getInt("Free");
+                if (total != copies || available != free) {
+                    drift.add(String.format("%s: copies %d (actual %d), available %d (actual %d)",
+                        bookID, total, copies, available, free));
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("check").message("Error checking book stock").cause(e).log();
+            throw e;
+        }
+        return drift;
+    }
+
+    /**
+     * Recomputes the copy flags and all counters. The counter rows are locked first, so
+     * borrows and returns made meanwhile wait for the rebuild instead of being lost.
+     */
+    public void rebuild() throws SQLException {
+        try (Connection link = DBConnector.getConnection()) {
+            link.setAutoCommit(false);
+            try (Statement state = link.createStatement()) {
+                state.executeQuery("SELECT BookKey FROM book_stock FOR UPDATE").close();
+                for (String sql : REBUILD_SQL) state.executeUpdate(sql);
+                link.commit();
+                QueryCache.getInstance().invalidate("book_stock");
+            } catch (SQLException e) {
+                link.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            LOG.atError("rebuild").message("Error rebuilding book stock").cause(e).log();
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        BookStockDAO dao = new BookStockDAO();
+        List<String> drift = dao.check();
+        drift.forEach(System.out::println);
+        System.out.println(drift.isEmpty() ? "Book stock is consistent." : drift.size() + " titles out of step.");
+        if (!drift.isEmpty() && args.length > 0 && args[0].equals("--repair")) {
+            dao.rebuild();
+            System.out.println("Rebuilt.");
+        }
+    }
+}
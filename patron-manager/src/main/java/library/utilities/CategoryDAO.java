@@ -8,15 +8,31 @@ import java.util.ArrayList;
 import java.util.List;
 
 import configuration.DBConnector;
+import library.audit.AuditEvent.Action;
+import library.audit.AuditEvent.Entity;
+import library.audit.AuditLog;
+import library.logging.Log;
 import library.models.Category;
 
 public class CategoryDAO {
+
+    private static final Log LOG = Log.get(CategoryDAO.class);
+
+    // Cached read (see QueryCache)
+    private static final String[] CATEGORY_TABLES = { "categories", "category_stats" };
+    // Counters come from the maintained summary table: one row per category, no GROUP BY
+    private static final String ALL_CATEGORIES_SQL = "SELECT " + RowMappers.CATEGORY_COLUMNS + " " +
+        "FROM categories c LEFT JOIN category_stats s ON s.CategoryID = c.CategoryID " +
+        "ORDER BY c.CategoryName";
+    private static final long CATEGORY_TTL_MILLIS = 10_000;
+
     // -------------------------------------
     // --- CRUD OPERATION IMPLEMENTATION ---
     // -------------------------------------
 
     // ---------- CREATE ----------
     public Category createCategory(Category category) throws SQLException { // Changed signature to take Category object
+        long started = System.nanoTime();
         Connection link = null;
         PreparedStatement state = null;
         
@@ -25,18 +41,26 @@ public class CategoryDAO {
         
         try {
             link = DBConnector.getConnection();
+            link.setAutoCommit(false);
             state = link.prepareStatement(sql);
             
             // 1. Use the ID provided by the Category object (user input)
             state.setString(1, category.getCategoryID()); 
             state.setString(2, category.getCategoryName());
             state.executeUpdate();
+            CategoryStatsDAO.createRow(link, category.getCategoryID()); // counters start at zero
+            link.commit();
+            QueryCache.getInstance().invalidate("categories", "category_stats");
+            AuditLog.getInstance().publish(Action.CREATE, Entity.CATEGORY, category.getCategoryID(), null);
+            LOG.atDebug("createCategory").entity(category.getCategoryID()).latencySince(started).log();
             
             // Return the object that was saved
             return category;
             
         } catch (SQLException e) {
-            System.err.println("Error creating category: " + e.getMessage());
+            if (link != null) link.rollback();
+            LOG.atError("createCategory").entity(category.getCategoryID()).latencySince(started)
+                .message("Error creating category").cause(e).log();
             throw e; 
         } finally {
             if (state != null) state.close();
@@ -46,37 +70,33 @@ public class CategoryDAO {
 
     // ---------- READ ----------
     public List<Category> readAllCategories() throws SQLException {
+        // Cached briefly: every borrow and return at any desk changes the counters
+        return QueryCache.getInstance().get(ALL_CATEGORIES_SQL, List.of(), CATEGORY_TABLES, RowMappers.CATEGORY_WIDTH, CATEGORY_TTL_MILLIS, () -> {
+            try (Connection link = DBConnector.getReadConnection()) { // read-only: replica if available
+                return readAllCategories(link);
+            } catch (SQLException e) {
+                LOG.atError("readAllCategories").message("Error reading all categories").cause(e).log();
+                throw e;
+            }
+        });
+    }
+
+    /** Every category, read on the caller's connection, bypassing the cache (see ReferenceSnapshot). */
+    static List<Category> readAllCategories(Connection link) throws SQLException {
         List<Category> categories = new ArrayList<>();
-        String sql = "SELECT * FROM categories ORDER BY CategoryName";
-        
-        Connection link = null;
-        PreparedStatement state = null;
-        ResultSet resultSet = null;
-        try {
-            link = DBConnector.getConnection();
-            state = link.prepareStatement(sql);
-            resultSet = state.executeQuery();
-            
+        try (PreparedStatement state = link.prepareStatement(ALL_CATEGORIES_SQL);
+             ResultSet resultSet = state.executeQuery()) {
             while (resultSet.next()) {
-                String categoryId = resultSet.getString("CategoryID");
-                String categoryName = resultSet.getString("CategoryName");
-                
-                Category category = new Category(categoryId, categoryName);
-                categories.add(category);
+                categories.add(RowMappers.CATEGORY.map(resultSet));
             }
-        } catch (SQLException e) {
-            System.err.println("Error reading all categories: " + e.getMessage());
-            throw e; 
-        } finally {
-            if (resultSet != null) resultSet.close();
-            if (state != null) state.close();
-            if (link != null) link.close();
         }
         return categories;
     }
 
     // ---------- UPDATE ----------
     public void updateCategory(Category category) throws SQLException {
+        long started = System.nanoTime();
+        if (!category.getDirtyColumns().contains("CategoryName")) return; // the name is the only editable column
         String sql = "UPDATE categories SET CategoryName = ? WHERE CategoryID = ?";
         
         Connection link = null;
@@ -88,9 +108,14 @@ public class CategoryDAO {
             state.setString(1, category.getCategoryName());
             state.setString(2, category.getCategoryID());
             state.executeUpdate();
+            QueryCache.getInstance().invalidate("categories");
+            AuditLog.getInstance().publish(Action.UPDATE, Entity.CATEGORY, category.getCategoryID(), null);
+            LOG.atDebug("updateCategory").entity(category.getCategoryID()).latencySince(started).log();
+            category.markClean();
             
         } catch (SQLException e) {
-            System.err.println("Error updating category: " + e.getMessage());
+            LOG.atError("updateCategory").entity(category.getCategoryID()).latencySince(started)
+                .message("Error updating category").cause(e).log();
             throw e;
         } finally {
             if (state != null) state.close();
@@ -100,24 +125,34 @@ public class CategoryDAO {
 
     // ---------- DELETE ----------
     public void deleteCategory(String categoryID) throws SQLException {
+        long started = System.nanoTime();
         String sql = "DELETE FROM categories WHERE CategoryID = ?";
 
         Connection link = null;
         PreparedStatement state = null;
         try {
             link = DBConnector.getConnection();
+            link.setAutoCommit(false);
+            CategoryStatsDAO.deleteRow(link, categoryID); // references the category
             state = link.prepareStatement(sql);
             
             state.setString(1, categoryID);
             int rowsAffected = state.executeUpdate();
+            link.commit();
+            QueryCache.getInstance().invalidate("categories", "category_stats");
             
             if (rowsAffected == 0) {
-                System.out.println("No category found with ID: " + categoryID);
+                LOG.atWarn("deleteCategory").entity(categoryID).message("No category found").log();
+            } else {
+                AuditLog.getInstance().publish(Action.DELETE, Entity.CATEGORY, categoryID, null);
+                LOG.atDebug("deleteCategory").entity(categoryID).latencySince(started).log();
             }
         } catch (SQLException e) {
+            if (link != null) link.rollback();
             // Handle Foreign Key Constraint error (if the category is referenced by a book)
             if (e.getSQLState().startsWith("23")) { 
-                System.err.println("Cannot delete category. Books are currently assigned to this category.");
+                LOG.atWarn("deleteCategory").entity(categoryID).latencySince(started)
+                    .message("Cannot delete category. Books are currently assigned to this category.").cause(e).log();
             }
             throw e;
         } finally {
@@ -0,0 +1,225 @@
+package library.utilities;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import configuration.DBConnector;
+import library.logging.Log;
+
+/**
+ * Maintained per-category counters (table 'category_stats'): books in the category,
+ * books currently on loan, and loans ever made of its books.
+ *
+ * The other DAOs adjust the counters with the package-private helpers below inside the
+ * same database transaction as the change they count, so the Category tab can read them
+ * in O(categories) instead of grouping books JOIN transactions on every load.
+ * {@link #check()} recomputes them from scratch and reports drift; {@link #rebuild()}
+ * repairs it (e.g. after bulk loads that bypass the DAOs).
+ */
+public class CategoryStatsDAO {
+
+    private static final Log LOG = Log.get(CategoryStatsDAO.class);
+
+    private static final int IN_LIST_SIZE = 500;
+
+    // Full recount; also run by 02_insertion.sql and DataGenerator's load.sql
+    public static final String REBUILD_SQL =
+        "INSERT INTO category_stats (CategoryID, BookCount, OnLoanCount, LoanTotal) " +
+        "SELECT c.CategoryID, COALESCE(bk.Books, 0), COALESCE(ln.OnLoan, 0), COALESCE(ln.Total, 0) " +
+        "FROM categories c " +
+        "LEFT JOIN (SELECT CategoryID, COUNT(*) AS Books FROM books GROUP BY CategoryID) bk " +
+        "ON bk.CategoryID = c.CategoryID " +
+        "LEFT JOIN (SELECT b.CategoryID, SUM(t.DateReturned IS NULL) AS OnLoan, COUNT(*) AS Total " +
+        "FROM transactions t JOIN books b ON b.BookKey = t.BookKey GROUP BY b.CategoryID) ln " +
+        "ON ln.CategoryID = c.CategoryID " +
+        "ON DUPLICATE KEY UPDATE BookCount = VALUES(BookCount), OnLoanCount = VALUES(OnLoanCount), " +
+        "LoanTotal = VALUES(LoanTotal)";
+
+    // ---------------------------------------------
+    // --- TRANSACTIONAL ADJUSTMENTS (called by the other DAOs) ---
+    // ---------------------------------------------
+    static void createRow(Connection link, String categoryID) throws SQLException {
+        String sql = "INSERT INTO category_stats (CategoryID, BookCount, OnLoanCount, LoanTotal) VALUES (?, 0, 0, 0)";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, categoryID);
+            state.executeUpdate();
+        }
+    }
+
+    static void deleteRow(Connection link, String categoryID) throws SQLException {
+        try (PreparedStatement state = link.prepareStatement("DELETE FROM category_stats WHERE CategoryID = ?")) {
+            state.setString(1, categoryID);
+            state.executeUpdate();
+        }
+    }
+
+    /** Adds the given deltas to a category's counters. */
+    static void adjustCategory(Connection link, String categoryID, int books, int onLoan, long loans) throws SQLException {
+        String sql = "UPDATE category_stats SET BookCount = BookCount + ?, OnLoanCount = OnLoanCount + ?, " +
+                     "LoanTotal = LoanTotal + ? WHERE CategoryID = ?";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setInt(1, books);
+            state.setInt(2, onLoan);
+            state.setLong(3, loans);
+            state.setString(4, categoryID);
+            state.executeUpdate();
+        }
+    }
+
+    /** Adds the given deltas to the counters of the category a book belongs to. */
+    static void adjustForBook(Connection link, String bookID, int onLoan, long loans) throws SQLException {
+        String sql = "UPDATE category_stats s JOIN books b ON b.CategoryID = s.CategoryID " +
+                     "SET s.OnLoanCount = s.OnLoanCount + ?, s.LoanTotal = s.LoanTotal + ? WHERE b.BookID = ?";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setInt(1, onLoan);
+            state.setLong(2, loans);
+            state.setString(3, bookID);
+            state.executeUpdate();
+        }
+    }
+
+    /**
+     * Moves a book's contribution from one category to another (recategorisation).
+     */
+    static void moveBook(Connection link, String bookID, String fromCategoryID, String toCategoryID) throws SQLException {
+        String sql = "SELECT COUNT(*) AS Total, COALESCE(SUM(t.DateReturned IS NULL), 0) AS OnLoan " +
+                     "FROM books b JOIN transactions t ON t.BookKey = b.BookKey WHERE b.BookID = ? " +
+                     "LOCK IN SHARE MODE"; // latest loans, not the transaction's snapshot
+        int onLoan;
+        long loans;
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, bookID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                resultSet.next();
+                loans = resultSet.getLong("Total");
+                onLoan = resultSet.getInt("OnLoan");
+            }
+        }
+        adjustCategory(link, fromCategoryID, -1, -onLoan, -loans);
+        adjustCategory(link, toCategoryID, 1, onLoan, loans);
+    }
+
+    /**
+     * Bulk form of {@link #moveBook}: {@code fromCategoryByBook} maps each moved book to
+     * the category it left. Loans are counted per book in IN-list chunks and summed per
+     * category, so the counters take one UPDATE per category involved.
+     */
+    static void moveBooks(Connection link, Map<String, String> fromCategoryByBook, String toCategoryID) throws SQLException {
+        Map<String, long[]> leaving = new HashMap<>(); // category -> {books, on loan, loans}
+        for (String categoryID : fromCategoryByBook.values()) {
+            leaving.computeIfAbsent(categoryID, k -> new long[3])[0]++;
+        }
+
+        List<String> bookIDs = new ArrayList<>(fromCategoryByBook.keySet());
+        for (int from = 0; from < bookIDs.size(); from += IN_LIST_SIZE) {
+            List<String> chunk = bookIDs.subList(from, Math.min(from + IN_LIST_SIZE, bookIDs.size()));
+            StringBuilder sql = new StringBuilder(
+                "SELECT b.BookID, COUNT(*) AS Total, COALESCE(SUM(t.DateReturned IS NULL), 0) AS OnLoan " +
+                "FROM books b JOIN transactions t ON t.BookKey = b.BookKey WHERE b.BookID IN (");
+            for (int i = 0; i < chunk.size(); i++) sql.append(i == 0 ? "?" : ", ?");
+            sql.append(") GROUP BY b.BookID LOCK IN SHARE MODE"); // latest loans, not the transaction's snapshot
+
+            try (PreparedStatement state = link.prepareStatement(sql.toString())) {
+                for (int i = 0; i < chunk.size(); i++) state.setString(i + 1, chunk.get(i));
+                try (ResultSet resultSet = state.executeQuery()) {
+                    while (resultSet.next()) {
+                        long[] counts = leaving.get(fromCategoryByBook.get(resultSet.getString("BookID")));
+                        counts[1] += resultSet.getLong("OnLoan");
+                        counts[2] += resultSet.getLong("Total");
+                    }
+                }
+            }
+        }
+
+        long[] arriving = new long[3];
+        for (Map.Entry<String, long[]> category : leaving.entrySet()) {
+            long[] counts = category.getValue();
+            adjustCategory(link, category.getKey(), (int) -counts[0], (int) -counts[1], -counts[2]);
+            for (int i = 0; i < 3; i++) arriving[i] += counts[i];
+        }
+        adjustCategory(link, toCategoryID, (int) arriving[0], (int) arriving[1], arriving[2]);
+    }
+
+    // ---------------------------------------------
+    // --- CONSISTENCY CHECK / REBUILD ---
+    // ---------------------------------------------
+    /**
+     * Recomputes every counter from books and transactions and returns one line per
+     * category whose stored counters differ (empty if consistent).
+     */
+    public List<String> check() throws SQLException {
+        String sql = "SELECT c.CategoryID, s.BookCount, s.OnLoanCount, s.LoanTotal, " +
+                     "COALESCE(bk.Books, 0) AS Books, COALESCE(ln.OnLoan, 0) AS OnLoan, COALESCE(ln.Total, 0) AS Total " +
+                     "FROM categories c " +
+                     "LEFT JOIN category_stats s ON s.CategoryID = c.CategoryID " +
+                     "LEFT JOIN (SELECT CategoryID, COUNT(*) AS Books FROM books GROUP BY CategoryID) bk " +
+                     "ON bk.CategoryID = c.CategoryID " +
+                     "LEFT JOIN (SELECT b.CategoryID, SUM(t.DateReturned IS NULL) AS OnLoan, COUNT(*) AS Total " +
+                     "FROM transactions t JOIN books b ON b.BookKey = t.BookKey GROUP BY b.CategoryID) ln " +
+                     "ON ln.CategoryID = c.CategoryID " +
+                     "ORDER BY c.CategoryID";
+
+        List<String> drift = new ArrayList<>();
+        try (Connection link = DBConnector.getPrimaryReadConnection(); // must not lag behind the primary
+             PreparedStatement state = link.prepareStatement(sql);
+             ResultSet resultSet = state.executeQuery()) {
+            while (resultSet.next()) {
+                String categoryID = resultSet.getString("CategoryID");
+                if (resultSet.getObject("BookCount") == null) {
+                    drift.add(categoryID + ": no counters row");
+                    continue;
+                }
+                long[] stored = { resultSet.getLong("BookCount"), resultSet.getLong("OnLoanCount"), resultSet.getLong("LoanTotal") };
+                long[] actual = { resultSet.getLong("Books"), resultSet.getLong("OnLoan"), resultSet.getLong("Total") };
+                if (stored[0] != actual[0] || stored[1] != actual[1] || stored[2] != actual[2]) {
+                    drift.add(String.format("%s: books %d (actual %d), on loan %d (actual %d), loans %d (actual %d)",
+                        categoryID, stored[0], actual[0], stored[1], actual[1], stored[2], actual[2]));
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("check").message("Error checking category counters").cause(e).log();
+            throw e;
+        }
+        return drift;
+    }
+
+    /**
+     * Recomputes all counters. The counter rows are locked first, so borrows and returns
+     * made meanwhile wait for the rebuild instead of being lost.
+     */
+    public void rebuild() throws SQLException {
+        try (Connection link = DBConnector.getConnection()) {
+            link.setAutoCommit(false);
+            try (Statement state = link.createStatement()) {
+                state.executeQuery("SELECT CategoryID FROM category_stats FOR UPDATE").close();
+                state.executeUpdate(REBUILD_SQL);
+                link.commit();
+                QueryCache.getInstance().invalidate("category_stats");
+            } catch (SQLException e) {
+                link.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            LOG.atError("rebuild").message("Error rebuilding category counters").cause(e).log();
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        CategoryStatsDAO dao = new CategoryStatsDAO();
+        List<String> drift = dao.check();
+        drift.forEach(System.out::println);
+        System.out.println(drift.isEmpty() ? "Category counters are consistent." : drift.size() + " categories out of step.");
+        if (!drift.isEmpty() && args.length > 0 && args[0].equals("--repair")) {
+            dao.rebuild();
+            System.out.println("Rebuilt.");
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package library.utilities;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import configuration.DBConnector;
+import library.logging.Log;
+
+/**
+ * Daily circulation rollups: loans, returns, overdue loans and distinct borrowers per
+ * day and category, in `circulation_daily` (see migration 008). The Reports tab charts
+ * these rows and never reads the transactions table.
+ *
+ * {@link #run} is incremental. It recomputes whole days, from {@value #LOOKBACK_DAYS}
+ * days before the watermark (`rollup_state.CompleteThrough`) through today, in chunks of
+ * {@value #CHUNK_DAYS} days: each chunk replaces its rows and moves the watermark in one
+ * transaction, holding the watermark row locked, so two desks running it at once take
+ * turns and a failed run resumes from the last chunk committed. The first run
+ * backfills from the first loan.
+ */
+public class CirculationRollup {
+
+    private static final Log LOG = Log.get(CirculationRollup.class);
+
+    /** CategoryID of the rows that total every category. */
+    public static final String ALL_CATEGORIES = "";
+
+    private static final String NAME = "circulation";
+    // Journaled loans and returns can arrive days late; the days since are recomputed
+    private static final int LOOKBACK_DAYS = 7;
+    private static final int CHUNK_DAYS = 31;
+
+    private static final String LOANS_SQL =
+        "SELECT t.DateBorrowed, b.CategoryID, t.PatronKey FROM transactions t JOIN books b ON b.BookKey = t.BookKey " +
+        "WHERE t.DateBorrowed BETWEEN ? AND ?";
+    private static final String RETURNS_SQL =
+        "SELECT t.DateReturned, b.CategoryID, COUNT(*) FROM transactions t JOIN books b ON b.BookKey = t.BookKey " +
+        "WHERE t.DateReturned BETWEEN ? AND ? GROUP BY t.DateReturned, b.CategoryID";
+    private static final String OVERDUE_SQL =
+        "SELECT t.DueDate, b.CategoryID, COUNT(*) FROM transactions t JOIN books b ON b.BookKey = t.BookKey " +
+        "WHERE t.DueDate BETWEEN ? AND ? AND (t.DateReturned IS NULL OR t.DateReturned > t.DueDate) " +
+        "GROUP BY t.DueDate, b.CategoryID";
+
+    /** How the days of a trend are grouped. */
+    public enum Period { DAY, WEEK, MONTH, YEAR }
+
+    /** One point of a trend: the totals of the period starting on {@code start}. */
+    public record Point(LocalDate start, long loans, long returns, long overdue, long patrons) {
+    }
+
+    /** The totals of one category over a date range. */
+    public record CategoryTotals(String categoryID, long loans, long returns, long overdue) {
+    }
+
+    /** Counts of one day and category while a chunk is computed. */
+    private static final class Counts {
+        int loans, returns, overdue;
+        final HyperLogLog patrons = new HyperLogLog();
+    }
+
+    private CirculationRollup() {
+    }
+
+    // ---------------------------------------------
+    // --- INCREMENTAL ROLLUP ---
+    // ---------------------------------------------
+    /**
+     * Brings the rollups up to date through today. Returns the number of days recomputed.
+     */
+    public static int run() throws SQLException {
+        long started = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        int days = 0;
+
+        Connection link = null;
+        try {
+            link = DBConnector.getConnection();
+            link.setAutoCommit(false);
+
+            LocalDate watermark = lockWatermark(link);
+            LocalDate from = watermark != null ? watermark.minusDays(LOOKBACK_DAYS - 1) : firstLoanDay(link);
+            if (from == null) { // no loans yet
+                link.commit();
+                return 0;
+            }
+            while (!from.isAfter(today)) {
+                LocalDate to = from.plusDays(CHUNK_DAYS - 1);
+                if (to.isAfter(today)) to = today;
+                if (days > 0) lockWatermark(link);
+
+                replaceDays(link, from, to, computeDays(link, from, to, today));
+                // Today is partial: the watermark stops at the last day that has ended
+                updateWatermark(link, to.isBefore(today) ? to : today.minusDays(1));
+                link.commit();
+
+                days += (int) (to.toEpochDay() - from.toEpochDay()) + 1;
+                from = to.plusDays(1);
+            }
+            LOG.atInfo("run").field("days", days).latencySince(started).log();
+            return days;
+        } catch (SQLException e) {
+            if (link != null) link.rollback();
+            LOG.atError("run").field("days", days).latencySince(started).message("Error rolling up circulation").cause(e).log();
+            throw e;
+        } finally {
+            if (link != null) link.close();
+        }
+    }
+
+    private static LocalDate lockWatermark(Connection link) throws SQLException {
+        String sql = "SELECT CompleteThrough FROM rollup_state WHERE RollupName = ? FOR UPDATE";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, NAME);
+            try (ResultSet resultSet = state.executeQuery()) {
+                if (!resultSet.next()) throw new SQLException("No rollup_state row for " + NAME + "; apply migration 008");
+                Date day = resultSet.getDate(1);
+                return day != null ? day.toLocalDate() : null;
+            }
+        }
+    }
+
+    private static void updateWatermark(Connection link, LocalDate completeThrough) throws SQLException {
+        try (PreparedStatement state = link.prepareStatement(
+                 "UPDATE rollup_state SET CompleteThrough = ? WHERE RollupName = ?")) {
+            state.setDate(1, Date.valueOf(completeThrough));
+            state.setString(2, NAME);
+            state.executeUpdate();
+        }
+    }
+
+    private static LocalDate firstLoanDay(Connection link) throws SQLException {
+        try (PreparedStatement state = link.prepareStatement("SELECT MIN(DateBorrowed) FROM transactions");
+             ResultSet resultSet = state.executeQuery()) {
+            resultSet.next();
+            Date day = resultSet.getDate(1);
+            return day != null ? day.toLocalDate() : null;
+        }
+    }
+
+    /**
+     * The counts of every day and category in [from, to], plus the all-categories rows.
+     * Three range scans (BorrowedOn, OpenByBorrowed, DueOn); only the loans are read
+     * row by row, for the borrower sketches.
+     */
+    private static Map<String, Map<LocalDate, Counts>> computeDays(Connection link, LocalDate from, LocalDate to,
+                                                                    LocalDate today) throws SQLException {
+        Map<String, Map<LocalDate, Counts>> byCategory = new TreeMap<>();
+
+        try (PreparedStatement state = link.prepareStatement(LOANS_SQL)) {
+            state.setDate(1, Date.valueOf(from));
+            state.setDate(2, Date.valueOf(to));
+            state.setFetchSize(10_000);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    LocalDate day = resultSet.getDate(1).toLocalDate();
+                    long patronKey = resultSet.getLong(3);
+                    for (Counts counts : countsOf(byCategory, resultSet.getString(2), day)) {
+                        counts.loans++;
+                        counts.patrons.add(patronKey);
+                    }
+                }
+            }
+        }
+
+        try (PreparedStatement state = link.prepareStatement(RETURNS_SQL)) {
+            state.setDate(1, Date.valueOf(from));
+            state.setDate(2, Date.valueOf(to));
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    int returns = resultSet.getInt(3);
+                    for (Counts counts : countsOf(byCategory, resultSet.getString(2), resultSet.getDate(1).toLocalDate())) {
+                        counts.returns += returns;
+                    }
+                }
+            }
+        }
+
+        // A loan due today is not overdue until the day is over
+        LocalDate lastEnded = to.isBefore(today) ? to : today.minusDays(1);
+        if (!lastEnded.isBefore(from)) {
+            try (PreparedStatement state = link.prepareStatement(OVERDUE_SQL)) {
+                state.setDate(1, Date.valueOf(from));
+                state.setDate(2, Date.valueOf(lastEnded));
+                try (ResultSet resultSet = state.executeQuery()) {
+                    while (resultSet.next()) {
+                        int overdue = resultSet.getInt(3);
+                        for (Counts counts : countsOf(byCategory, resultSet.getString(2), resultSet.getDate(1).toLocalDate())) {
+                            counts.overdue += overdue;
+                        }
+                    }
+                }
+            }
+        }
+        return byCategory;
+    }
+
+    /** The counts a fact adds to: its category's day and the all-categories day. */
+    private static Counts[] countsOf(Map<String, Map<LocalDate, Counts>> byCategory, String categoryID, LocalDate day) {
+        return new Counts[] {
+            byCategory.computeIfAbsent(categoryID, id -> new TreeMap<>()).computeIfAbsent(day, d -> new Counts()),
+            byCategory.computeIfAbsent(ALL_CATEGORIES, id -> new TreeMap<>()).computeIfAbsent(day, d -> new Counts())
+        };
+    }
+
+    private static void replaceDays(Connection link, LocalDate from, LocalDate to,
+                                    Map<String, Map<LocalDate, Counts>> byCategory) throws SQLException {
+        String deleteSql = "DELETE FROM circulation_daily WHERE Day BETWEEN ? AND ?";
+        String insertSql = "INSERT INTO circulation_daily (Day, CategoryID, Loans, Returns, Overdue, Patrons) " +
+                           "VALUES (?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement delete = link.prepareStatement(deleteSql);
+             PreparedStatement insert = link.prepareStatement(insertSql)) {
+            delete.setDate(1, Date.valueOf(from));
+            delete.setDate(2, Date.valueOf(to));
+            delete.executeUpdate();
+
+            for (Map.Entry<String, Map<LocalDate, Counts>> category : byCategory.entrySet()) {
+                for (Map.Entry<LocalDate, Counts> day : category.getValue().entrySet()) {
+                    Counts counts = day.getValue();
+                    insert.setDate(1, Date.valueOf(day.getKey()));
+                    insert.setString(2, category.getKey());
+                    insert.setInt(3, counts.loans);
+                    insert.setInt(4, counts.returns);
+                    insert.setInt(5, counts.overdue);
+                    insert.setBytes(6, counts.patrons.toBytes());
+                    insert.addBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    // ---------------------------------------------
+    // --- REPORT READS (rollups only) ---
+    // ---------------------------------------------
+    /**
+     * The totals of {@code categoryID} ({@link #ALL_CATEGORIES} for the whole library)
+     * per period over [from, to], oldest first. Distinct borrowers are the merged
+     * sketches of the period's days. Periods without any activity are left out.
+     */
+    public static List<Point> readTrend(LocalDate from, LocalDate to, String categoryID, Period period) throws SQLException {
+        long started = System.nanoTime();
+        String sql = "SELECT Day, Loans, Returns, Overdue, Patrons FROM circulation_daily " +
+                     "WHERE CategoryID = ? AND Day BETWEEN ? AND ? ORDER BY Day";
+
+        Map<LocalDate, long[]> totals = new LinkedHashMap<>();
+        Map<LocalDate, HyperLogLog> patrons = new LinkedHashMap<>();
+        try (Connection link = DBConnector.getReadConnection();
+             PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, categoryID);
+            state.setDate(2, Date.valueOf(from));
+            state.setDate(3, Date.valueOf(to));
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    LocalDate start = startOf(resultSet.getDate(1).toLocalDate(), period);
+                    long[] sums = totals.computeIfAbsent(start, s -> new long[3]);
+                    sums[0] += resultSet.getInt(2);
+                    sums[1] += resultSet.getInt(3);
+                    sums[2] += resultSet.getInt(4);
+                    patrons.computeIfAbsent(start, s -> new HyperLogLog()).merge(HyperLogLog.fromBytes(resultSet.getBytes(5)));
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("readTrend").entity(categoryID).latencySince(started).message("Error reading circulation rollups").cause(e).log();
+            throw e;
+        }
+
+        List<Point> points = new ArrayList<>(totals.size());
+        totals.forEach((start, sums) -> points.add(new Point(start, sums[0], sums[1], sums[2], patrons.get(start).estimate())));
+        LOG.atDebug("readTrend").entity(categoryID).field("points", points.size()).latencySince(started).log();
+        return points;
+    }
+
+    /** The last day whose rollups are final, or null before the first run. */
+    public static LocalDate readCompleteThrough() throws SQLException {
+        try (Connection link = DBConnector.getReadConnection();
+             PreparedStatement state = link.prepareStatement("SELECT CompleteThrough FROM rollup_state WHERE RollupName = ?")) {
+            state.setString(1, NAME);
+            try (ResultSet resultSet = state.executeQuery()) {
+                Date day = resultSet.next() ? resultSet.getDate(1) : null;
+                return day != null ? day.toLocalDate() : null;
+            }
+        }
+    }
+
+    /** Loans, returns and overdue loans of each category over [from, to], most loans first. */
+    public static List<CategoryTotals> readCategoryTotals(LocalDate from, LocalDate to) throws SQLException {
+        String sql = "SELECT CategoryID, SUM(Loans), SUM(Returns), SUM(Overdue) FROM circulation_daily " +
+                     "WHERE Day BETWEEN ? AND ? AND CategoryID <> ? GROUP BY CategoryID ORDER BY SUM(Loans) DESC";
+
+        List<CategoryTotals> result = new ArrayList<>();
+        try (Connection link = DBConnector.getReadConnection();
+             PreparedStatement state = link.prepareStatement(sql)) {
+            state.setDate(1, Date.valueOf(from));
+            state.setDate(2, Date.valueOf(to));
+            state.setString(3, ALL_CATEGORIES);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    result.add(new CategoryTotals(resultSet.getString(1), resultSet.getLong(2),
+                                                  resultSet.getLong(3), resultSet.getLong(4)));
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("readCategoryTotals").message("Error reading circulation rollups").cause(e).log();
+            throw e;
+        }
+        return result;
+    }
+
+    private static LocalDate startOf(LocalDate day, Period period) {
+        return switch (period) {
+            case DAY -> day;
+            case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> day.withDayOfMonth(1);
+            case YEAR -> day.withDayOfYear(1);
+        };
+    }
+
+    // ---------------------------------------------
+    // --- ENTRY POINT ---
+    // ---------------------------------------------
+    /** Runs the rollup once, e.g. nightly: java ... -m application/library.utilities.CirculationRollup */
+    public static void main(String[] args) throws SQLException {
+        long started = System.nanoTime();
+        int days = run();
+        System.out.printf(Locale.ROOT, "Rolled up %d days of circulation (%.1fs)%n", days, (System.nanoTime() - started) / 1e9);
+    }
+}
@@ -0,0 +1,289 @@
+package library.utilities;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import configuration.DBConnector;
+import library.logging.Log;
+
+/**
+ * "Patrons who borrowed X also borrowed ..." recommendations, built from the loan history.
+ *
+ * The index is a sparse item-item co-occurrence matrix: row[a].get(b) is the number of
+ * distinct patrons who borrowed both book a and book b. Books and patrons are mapped to
+ * dense ints, rows are {@link IntIntHashMap}s, and the top-K neighbours of every book are
+ * kept precomputed, so a query is an array copy.
+ *
+ * The full build runs row-parallel on a fork/join pool (each row is independent:
+ * row[a] = sum of the baskets of a's borrowers). Afterwards {@link #recordLoan} keeps the
+ * matrix current as TransactionDAO.borrowBook records new loans. Loans recorded while a
+ * build runs are also kept aside and added to the new matrix once it replaces the old one,
+ * since the build's read may have missed them.
+ */
+public class CoBorrowIndex {
+
+    private static final Log LOG = Log.get(CoBorrowIndex.class);
+
+    private static final CoBorrowIndex INSTANCE = new CoBorrowIndex();
+
+    private static final int TOP_K = 10;
+    // Very long histories would make a patron's pairs quadratic; only the latest loans count
+    private static final int MAX_BASKET = 500;
+    private static final int ROWS_PER_TASK = 256;
+
+    private StringIndex books = new StringIndex();
+    private StringIndex patrons = new StringIndex();
+    private IntIntHashMap[] rows = new IntIntHashMap[0];     // book -> (book -> co-borrow count)
+    private IntIntHashMap[] baskets = new IntIntHashMap[0];  // patron -> set of borrowed books
+    private volatile int[][] topK = new int[0][];            // book -> neighbours, best first
+    private volatile boolean ready;
+    private List<String[]> duringBuild;                      // {patronID, bookID} recorded while a build runs
+
+    private CoBorrowIndex() {
+    }
+
+    public static CoBorrowIndex getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // ---------------------------------------------
+    // --- QUERY ---
+    // ---------------------------------------------
+    /**
+     * Up to {@code k} BookIDs most often borrowed by patrons who also borrowed {@code bookID},
+     * best first. Empty if the index is not built yet or the book has no history.
+     */
+    public List<String> alsoBorrowed(String bookID, int k) {
+        List<String> result = new ArrayList<>();
+        if (!ready) return result;
+
+        int[] neighbours;
+        synchronized (this) {
+            int book = books.find(bookID);
+            int[][] table = topK;
+            if (book < 0 || book >= table.length || table[book] == null) return result;
+            neighbours = table[book];
+            for (int i = 0; i < neighbours.length && i < k; i++) result.add(books.idOf(neighbours[i]));
+        }
+        return result;
+    }
+
+    // ---------------------------------------------
+    // --- FULL BUILD ---
+    // ---------------------------------------------
+    /**
+     * Rebuilds the whole matrix from the transactions table.
+     */
+    public void rebuild() throws SQLException {
+        synchronized (this) {
+            duringBuild = new ArrayList<>();
+        }
+        try {
+            build();
+        } finally {
+            synchronized (this) {
+                duringBuild = null;
+            }
+        }
+    }
+
+    private void build() throws SQLException {
+        // Grouped by patron key: each patron's loans arrive together, as the interning below needs
+        String sql = "SELECT p.PatronID, b.BookID FROM transactions t " +
+                     "JOIN patrons p ON p.PatronKey = t.PatronKey JOIN books b ON b.BookKey = t.BookKey " +
+                     "ORDER BY t.PatronKey, t.DateBorrowed DESC";
+
+        StringIndex bookIndex = new StringIndex();
+        StringIndex patronIndex = new StringIndex();
+        List<IntIntHashMap> basketList = new ArrayList<>();
+
+        try (Connection link = DBConnector.getReadConnection();
+             PreparedStatement state = link.prepareStatement(sql)) {
+            state.setFetchSize(10_000);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    int patron = patronIndex.intern(resultSet.getString(1));
+                    int book = bookIndex.intern(resultSet.getString(2));
+                    if (patron == basketList.size()) basketList.add(new IntIntHashMap());
+                    IntIntHashMap basket = basketList.get(patron);
+                    if (basket.size() < MAX_BASKET) basket.put(book, 1);
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("rebuild").message("Error building co-borrow index").cause(e).log();
+            throw e;
+        }
+
+        int bookCount = bookIndex.size();
+        IntIntHashMap[] newBaskets = basketList.toArray(new IntIntHashMap[0]);
+
+        // Inverted index: book -> patrons who borrowed it
+        int[] borrowerCount = new int[bookCount];
+        for (IntIntHashMap basket : newBaskets) basket.forEach((book, one) -> borrowerCount[book]++);
+        int[][] borrowers = new int[bookCount][];
+        for (int b = 0; b < bookCount; b++) borrowers[b] = new int[borrowerCount[b]];
+        int[] fill = new int[bookCount];
+        for (int p = 0; p < newBaskets.length; p++) {
+            final int patron = p;
+            newBaskets[p].forEach((book, one) -> borrowers[book][fill[book]++] = patron);
+        }
+
+        IntIntHashMap[] newRows = new IntIntHashMap[bookCount];
+        int[][] newTopK = new int[bookCount][];
+        ForkJoinPool.commonPool().invoke(buildRows(0, bookCount, borrowers, newBaskets, newRows, newTopK));
+
+        synchronized (this) {
+            books = bookIndex;
+            patrons = patronIndex;
+            rows = newRows;
+            baskets = newBaskets;
+            topK = newTopK;
+            ready = true;
+            // A loan the build read already is skipped: a basket counts each book once
+            List<String[]> missed = duringBuild;
+            duringBuild = null;
+            for (String[] loan : missed) recordLoan(loan[0], loan[1]);
+        }
+    }
+
+    /**
+     * Computes rows [from, to) of the matrix, splitting until ranges are small. An adapted
+     * lambda rather than a RecursiveAction subclass, which would be Serializable for nothing.
+     */
+    private static ForkJoinTask<?> buildRows(int from, int to, int[][] borrowers, IntIntHashMap[] baskets,
+                                             IntIntHashMap[] rows, int[][] topK) {
+        return ForkJoinTask.adapt(() -> {
+            if (to - from > ROWS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                ForkJoinTask.invokeAll(buildRows(from, mid, borrowers, baskets, rows, topK),
+                                       buildRows(mid, to, borrowers, baskets, rows, topK));
+                return;
+            }
+            for (int a = from; a < to; a++) {
+                final int self = a;
+                IntIntHashMap row = new IntIntHashMap();
+                for (int patron : borrowers[a]) {
+                    baskets[patron].forEach((b, one) -> {
+                        if (b != self) row.addTo(b, 1);
+                    });
+                }
+                rows[a] = row;
+                topK[a] = selectTop(row);
+            }
+        });
+    }
+
+    // ---------------------------------------------
+    // --- INCREMENTAL UPDATE ---
+    // ---------------------------------------------
+    /**
+     * Adds one new loan. Called after TransactionDAO.borrowBook succeeds; before the first
+     * build has finished, only kept for that build (see {@link #rebuild}).
+     */
+    public synchronized void recordLoan(String patronID, String bookID) {
+        if (duringBuild != null) duringBuild.add(new String[] { patronID, bookID });
+        if (!ready) return;
+
+        int patron = patrons.intern(patronID);
+        int book = books.intern(bookID);
+        ensureCapacity(patron, book);
+
+        IntIntHashMap basket = baskets[patron];
+        if (basket.containsKey(book) || basket.size() >= MAX_BASKET) return; // counts distinct patrons only
+
+        int[][] table = topK;
+        final int newBook = book;
+        basket.forEach((other, one) -> {
+            int forward = rows[other].addTo(newBook, 1);
+            table[other] = promote(table[other], rows[other], newBook, forward);
+            int backward = rows[newBook].addTo(other, 1);
+            table[newBook] = promote(table[newBook], rows[newBook], other, backward);
+        });
+        basket.put(book, 1);
+    }
+
+    private void ensureCapacity(int patron, int book) {
+        if (patron >= baskets.length) {
+            int old = baskets.length;
+            baskets = Arrays.copyOf(baskets, Math.max(patron + 1, old * 2));
+            for (int i = old; i < baskets.length; i++) baskets[i] = new IntIntHashMap();
+        }
+        if (book >= rows.length) {
+            int old = rows.length;
+            rows = Arrays.copyOf(rows, Math.max(book + 1, old * 2));
+            for (int i = old; i < rows.length; i++) rows[i] = new IntIntHashMap();
+            int[][] grown = Arrays.copyOf(topK, rows.length);
+            for (int i = old; i < grown.length; i++) grown[i] = new int[0];
+            topK = grown;
+        }
+    }
+
+    // ---------------------------------------------
+    // --- TOP-K HELPERS ---
+    // ---------------------------------------------
+    /** The TOP_K highest-count neighbours of a row, best first (ties by lower code). */
+    private static int[] selectTop(IntIntHashMap row) {
+        int[] best = new int[Math.min(TOP_K, row.size())];
+        int[] bestCount = new int[best.length];
+        int[] filled = { 0 };
+        row.forEach((b, count) -> {
+            int n = filled[0];
+            if (n == best.length && !better(count, b, bestCount[n - 1], best[n - 1])) return;
+            int i = n == best.length ? n - 1 : n;
+            while (i > 0 && better(count, b, bestCount[i - 1], best[i - 1])) {
+                best[i] = best[i - 1];
+                bestCount[i] = bestCount[i - 1];
+                i--;
+            }
+            best[i] = b;
+            bestCount[i] = count;
+            if (n < best.length) filled[0]++;
+        });
+        return best;
+    }
+
+    /**
+     * Returns the top list after {@code candidate}'s count rose to {@code count}:
+     * moves it up if present, otherwise inserts it if it now beats the last entry.
+     * Returns a new array so concurrent readers never see a half-updated list.
+     */
+    private static int[] promote(int[] current, IntIntHashMap row, int candidate, int count) {
+        int position = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == candidate) position = i;
+        }
+        int[] next;
+        if (position >= 0) {
+            next = current.clone();
+        } else if (current.length < TOP_K) {
+            next = Arrays.copyOf(current, current.length + 1);
+            position = current.length;
+        } else if (better(count, candidate, row.get(current[current.length - 1]), current[current.length - 1])) {
+            next = current.clone();
+            position = current.length - 1;
+        } else {
+            return current;
+        }
+        while (position > 0 && better(count, candidate, row.get(next[position - 1]), next[position - 1])) {
+            next[position] = next[position - 1];
+            position--;
+        }
+        next[position] = candidate;
+        return next;
+    }
+
+    private static boolean better(int count, int book, int otherCount, int otherBook) {
+        return count > otherCount || (count == otherCount && book < otherBook);
+    }
+}
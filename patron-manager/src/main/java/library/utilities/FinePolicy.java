@@ -0,0 +1,88 @@
+package library.utilities;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import configuration.DBConnector;
+import library.logging.Log;
+
+/**
+ * Overdue fine rules, one per category (table 'fine_rules'), with a default for
+ * categories without a rule. Amounts are whole cents to keep the arithmetic exact.
+ *
+ * A loan is charged DailyRateCents for every day it is late beyond GraceDays, up to
+ * MaxFineCents (0 = no cap). Late days run to DateReturned, or to the assessment date
+ * while the loan is still outstanding.
+ */
+public class FinePolicy {
+
+    private static final Log LOG = Log.get(FinePolicy.class);
+
+    /** One category's rule. */
+    public record Rule(int graceDays, int dailyRateCents, int maxFineCents) {
+    }
+
+    public static final Rule DEFAULT_RULE = new Rule(
+        Integer.getInteger("patronmanager.fines.graceDays", 0),
+        Integer.getInteger("patronmanager.fines.dailyRateCents", 25),
+        Integer.getInteger("patronmanager.fines.maxFineCents", 1000));
+
+    private final Map<String, Rule> rules;
+
+    public FinePolicy(Map<String, Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Loads the rules table.
+     */
+    public static FinePolicy load() throws SQLException {
+        String sql = "SELECT CategoryID, GraceDays, DailyRateCents, MaxFineCents FROM fine_rules";
+        Map<String, Rule> rules = new HashMap<>();
+
+        try (Connection link = DBConnector.getReadConnection();
+             PreparedStatement state = link.prepareStatement(sql);
+             ResultSet resultSet = state.executeQuery()) {
+            while (resultSet.next()) {
+                rules.put(resultSet.getString("CategoryID"), new Rule(
+                    resultSet.getInt("GraceDays"),
+                    resultSet.getInt("DailyRateCents"),
+                    resultSet.getInt("MaxFineCents")));
+            }
+        } catch (SQLException e) {
+            LOG.atError("load").message("Error reading fine rules").cause(e).log();
+            throw e;
+        }
+        return new FinePolicy(rules);
+    }
+
+    public Rule ruleFor(String categoryID) {
+        return rules.getOrDefault(categoryID, DEFAULT_RULE);
+    }
+
+    // ---------------------------------------------
+    // --- CALCULATION ---
+    // ---------------------------------------------
+    /**
+     * Days late, for dates given as epoch days. {@code returnedDay} < 0 means the loan is
+     * still outstanding and is assessed as of {@code asOfDay}.
+     */
+    public static int daysLate(long dueDay, long returnedDay, long asOfDay) {
+        long end = returnedDay >= 0 ? returnedDay : asOfDay;
+        return (int) Math.max(0, end - dueDay);
+    }
+
+    /**
+     * Fine in cents for the given number of late days under a rule.
+     */
+    public static long fineCents(Rule rule, int daysLate) {
+        long chargeable = daysLate - rule.graceDays();
+        if (chargeable <= 0) return 0;
+        long fine = chargeable * rule.dailyRateCents();
+        return rule.maxFineCents() > 0 ? Math.min(fine, rule.maxFineCents()) : fine;
+    }
+}
@@ -0,0 +1,333 @@
+package library.utilities;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import configuration.DBConnector;
+import library.logging.Log;
+
+/**
+ * Assesses overdue fines into the 'fines' ledger (one row per late loan).
+ *
+ * Batch mode ({@link #assessAll}) splits the transactions table into TransactionID key
+ * ranges of CHUNK_SIZE rows and processes them on a fork/join pool: each range is read
+ * with a single range scan and its ledger rows are written with batched upserts, so the
+ * job scales with the number of connections rather than with round trips.
+ * Outstanding loans are assessed as of a given date (status ACCRUING); returned loans
+ * get their final amount (status FINAL).
+ *
+ * Incremental mode ({@link #assessReturn}) is called by TransactionDAO.returnBook inside
+ * its transaction, so a returned loan's fine is final as soon as the return commits. The
+ * batch reads a replica, which may not have that return yet: its ACCRUING rows never
+ * replace a FINAL one.
+ */
+public class FinesEngine {
+
+    private static final Log LOG = Log.get(FinesEngine.class);
+
+    public static final String ACCRUING = "ACCRUING";
+    public static final String FINAL = "FINAL";
+
+    private static final int CHUNK_SIZE = 50_000;
+    private static final int BATCH_SIZE = 1_000;
+
+    // An ACCRUING row never replaces a FINAL one (the loan was returned after the batch read it).
+    // The assignments run left to right, so Status, which the others test, is assigned last
+    private static final String UPSERT_SQL =
+        "INSERT INTO fines (TransactionID, PatronID, DaysLate, AmountCents, Status) VALUES (?, ?, ?, ?, ?) " +
+        "ON DUPLICATE KEY UPDATE " +
+        "DaysLate = IF(Status = 'FINAL' AND VALUES(Status) = 'ACCRUING', DaysLate, VALUES(DaysLate)), " +
+        "AmountCents = IF(Status = 'FINAL' AND VALUES(Status) = 'ACCRUING', AmountCents, VALUES(AmountCents)), " +
+        "AssessedAt = IF(Status = 'FINAL' AND VALUES(Status) = 'ACCRUING', AssessedAt, current_timestamp()), " +
+        "Status = IF(Status = 'FINAL', Status, VALUES(Status))";
+    private static final String DELETE_SQL = "DELETE FROM fines WHERE TransactionID = ?";
+    // The batch's delete: for a loan it read as outstanding, only an ACCRUING row goes (as above)
+    private static final String DELETE_BATCH_SQL = "DELETE FROM fines WHERE TransactionID = ? AND Status IN (?, 'ACCRUING')";
+
+    // Rules used at return time; re-read once older than the TTL (fine_rules is edited in SQL)
+    private static final long POLICY_TTL_MILLIS = 60_000;
+    private static volatile CachedPolicy returnPolicy;
+
+    private record CachedPolicy(FinePolicy policy, long loadedAt) {}
+
+    private final FinePolicy policy;
+    private final int parallelism;
+
+    /** Outcome of a batch run. */
+    public record Summary(long loansAssessed, long finesWritten, long totalCents) {
+    }
+
+    public FinesEngine(FinePolicy policy, int parallelism) {
+        this.policy = policy;
+        this.parallelism = parallelism;
+    }
+
+    // ---------------------------------------------
+    // --- BATCH ASSESSMENT ---
+    // ---------------------------------------------
+    /**
+     * Recomputes the fine of every late loan, outstanding loans as of {@code asOf}.
+     */
+    public Summary assessAll(LocalDate asOf) throws SQLException {
+        List<String> bounds = chunkBoundaries();
+        if (bounds.size() < 2) return new Summary(0, 0, 0);
+
+        Counters counters = new Counters();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(assessRanges(bounds, 0, bounds.size() - 1, asOf.toEpochDay(), counters));
+        } catch (RuntimeException e) {
+            // Rethrown by the pool on this thread, the task's wrapper may itself be wrapped
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof SQLException sql) throw sql;
+            }
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+        return new Summary(counters.assessed.sum(), counters.written.sum(), counters.cents.sum());
+    }
+
+    private static final class Counters {
+        final LongAdder assessed = new LongAdder();
+        final LongAdder written = new LongAdder();
+        final LongAdder cents = new LongAdder();
+    }
+
+    /**
+     * Range boundaries b0 < b1 < ... < bn: chunk i covers (b[i], b[i+1]]. Each step is a
+     * short index-only scan of the primary key, so finding them costs one pass over the index.
+     */
+    private List<String> chunkBoundaries() throws SQLException {
+        String nextSql = "SELECT TransactionID FROM transactions WHERE TransactionID > ? " +
+                         "ORDER BY TransactionID LIMIT 1 OFFSET " + (CHUNK_SIZE - 1);
+        String lastSql = "SELECT MAX(TransactionID) FROM transactions WHERE TransactionID > ?";
+        List<String> bounds = new ArrayList<>();
+        bounds.add("");
+
+        try (Connection link = DBConnector.getReadConnection();
+             PreparedStatement next = link.prepareStatement(nextSql);
+             PreparedStatement last = link.prepareStatement(lastSql)) {
+            while (true) {
+                String from = bounds.get(bounds.size() - 1);
+                next.setString(1, from);
+                try (ResultSet resultSet = next.executeQuery()) {
+                    if (resultSet.next()) {
+                        bounds.add(resultSet.getString(1));
+                        continue;
+                    }
+                }
+                last.setString(1, from);
+                try (ResultSet resultSet = last.executeQuery()) {
+                    if (resultSet.next() && resultSet.getString(1) != null) bounds.add(resultSet.getString(1));
+                }
+                return bounds;
+            }
+        } catch (SQLException e) {
+            LOG.atError("chunkBoundaries").message("Error partitioning transactions for fines").cause(e).log();
+            throw e;
+        }
+    }
+
+    /**
+     * Assesses chunks [from, to), splitting until a task holds a single chunk. An adapted
+     * lambda rather than a RecursiveAction subclass, which would be Serializable for nothing.
+     */
+    private ForkJoinTask<?> assessRanges(List<String> bounds, int from, int to, long asOfDay, Counters counters) {
+        return ForkJoinTask.adapt(() -> {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                ForkJoinTask.invokeAll(assessRanges(bounds, from, mid, asOfDay, counters),
+                                       assessRanges(bounds, mid, to, asOfDay, counters));
+                return;
+            }
+            try {
+                assessChunk(bounds.get(from), bounds.get(to), asOfDay, counters);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private void assessChunk(String afterID, String throughID, long asOfDay, Counters counters) throws SQLException {
+        String sql = "SELECT t.TransactionID, p.PatronID, t.DueDate, t.DateReturned, b.CategoryID " +
+                     "FROM transactions t JOIN books b ON b.BookKey = t.BookKey " +
+                     "JOIN patrons p ON p.PatronKey = t.PatronKey " +
+                     "WHERE t.TransactionID > ? AND t.TransactionID <= ? " +
+                     "AND (t.DateReturned > t.DueDate OR (t.DateReturned IS NULL AND t.DueDate < ?))";
+
+        try (Connection read = DBConnector.getReadConnection();
+             Connection write = DBConnector.getConnection();
+             PreparedStatement scan = read.prepareStatement(sql);
+             PreparedStatement upsert = write.prepareStatement(UPSERT_SQL);
+             PreparedStatement delete = write.prepareStatement(DELETE_BATCH_SQL)) {
+
+            write.setAutoCommit(false);
+            scan.setString(1, afterID);
+            scan.setString(2, throughID);
+            scan.setDate(3, Date.valueOf(LocalDate.ofEpochDay(asOfDay)));
+
+            int pending = 0;
+            try (ResultSet resultSet = scan.executeQuery()) {
+                while (resultSet.next()) {
+                    long dueDay = resultSet.getDate(3).toLocalDate().toEpochDay();
+                    Date returned = resultSet.getDate(4);
+                    long returnedDay = returned != null ? returned.toLocalDate().toEpochDay() : -1;
+
+                    int daysLate = FinePolicy.daysLate(dueDay, returnedDay, asOfDay);
+                    long cents = FinePolicy.fineCents(policy.ruleFor(resultSet.getString(5)), daysLate);
+                    counters.assessed.increment();
+
+                    if (cents > 0) {
+                        upsert.setString(1, resultSet.getString(1));
+                        upsert.setString(2, resultSet.getString(2));
+                        upsert.setInt(3, daysLate);
+                        upsert.setLong(4, cents);
+                        upsert.setString(5, returned != null ? FINAL : ACCRUING);
+                        upsert.addBatch();
+                        counters.written.increment();
+                        counters.cents.add(cents);
+                    } else {
+                        // Within the grace period (e.g. after a rule change): no fine owed
+                        delete.setString(1, resultSet.getString(1));
+                        delete.setString(2, returned != null ? FINAL : ACCRUING);
+                        delete.addBatch();
+                    }
+                    if (++pending == BATCH_SIZE) {
+                        flush(write, upsert, delete);
+                        pending = 0;
+                    }
+                }
+            }
+            flush(write, upsert, delete);
+
+        } catch (SQLException e) {
+            LOG.atError("assessChunk").field("afterID", afterID).field("throughID", throughID)
+                .message("Error assessing fines").cause(e).log();
+            throw e;
+        }
+    }
+
+    private static void flush(Connection write, PreparedStatement upsert, PreparedStatement delete) throws SQLException {
+        upsert.executeBatch();
+        delete.executeBatch();
+        write.commit();
+    }
+
+    // ---------------------------------------------
+    // --- INCREMENTAL (AT RETURN TIME) ---
+    // ---------------------------------------------
+    /**
+     * Writes the final fine of a loan being returned on {@code returned}. Runs in the
+     * caller's transaction. Returns the fine in cents (0 if it was not late).
+     */
+    static long assessReturn(Connection link, String transactionID, LocalDate returned) throws SQLException {
+        String sql = "SELECT p.PatronID, t.DueDate, b.CategoryID FROM transactions t " +
+                     "JOIN books b ON b.BookKey = t.BookKey JOIN patrons p ON p.PatronKey = t.PatronKey " +
+                     "WHERE t.TransactionID = ?";
+
+        String patronID;
+        int daysLate;
+        long cents;
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, transactionID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                if (!resultSet.next()) return 0;
+                patronID = resultSet.getString("PatronID");
+                long dueDay = resultSet.getDate("DueDate").toLocalDate().toEpochDay();
+                daysLate = FinePolicy.daysLate(dueDay, returned.toEpochDay(), returned.toEpochDay());
+                cents = FinePolicy.fineCents(returnPolicy().ruleFor(resultSet.getString("CategoryID")), daysLate);
+            }
+        }
+
+        if (cents > 0) {
+            try (PreparedStatement state = link.prepareStatement(UPSERT_SQL)) {
+                state.setString(1, transactionID);
+                state.setString(2, patronID);
+                state.setInt(3, daysLate);
+                state.setLong(4, cents);
+                state.setString(5, FINAL);
+                state.executeUpdate();
+            }
+        } else {
+            try (PreparedStatement state = link.prepareStatement(DELETE_SQL)) {
+                state.setString(1, transactionID); // drop any ACCRUING entry left by a batch run
+                state.executeUpdate();
+            }
+        }
+        return cents;
+    }
+
+    private static FinePolicy returnPolicy() {
+        CachedPolicy cached = returnPolicy;
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.loadedAt() < POLICY_TTL_MILLIS) return cached.policy();
+        try {
+            FinePolicy current = FinePolicy.load();
+            returnPolicy = new CachedPolicy(current, now);
+            return current;
+        } catch (SQLException e) {
+            if (cached != null) return cached.policy(); // the last rules read, until the table can be read again
+            // Fall back to the default rule rather than failing the return
+            LOG.atWarn("returnPolicy").message("Fine rules unavailable, using the default rule").cause(e).log();
+            return new FinePolicy(Map.of());
+        }
+    }
+
+    /** Forgets the cached rules so the next return reads the rules table again (they expire after a minute anyway). */
+    public static void reloadPolicy() {
+        returnPolicy = null;
+    }
+
+    // ---------------------------------------------
+    // --- LEDGER QUERIES ---
+    // ---------------------------------------------
+    /**
+     * The recorded fine of a loan in cents, or 0 if none.
+     */
+    public static long readFine(String transactionID) throws SQLException {
+        String sql = "SELECT AmountCents FROM fines WHERE TransactionID = ?";
+        try (Connection link = DBConnector.getReadConnection(); // read-your-writes keeps this on the primary after a return
+             PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, transactionID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            LOG.atError("readFine").entity(transactionID).message("Error reading fine").cause(e).log();
+            throw e;
+        }
+    }
+
+    public static String formatCents(long cents) {
+        return String.format(Locale.ROOT, "%d.%02d", cents / 100, cents % 100);
+    }
+
+    // ---------------------------------------------
+    // --- ENTRY POINT ---
+    // ---------------------------------------------
+    /**
+     * Runs a full assessment, e.g. nightly: FinesEngine [threads=cores] [asOf=today]
+     */
+    public static void main(String[] args) throws SQLException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        LocalDate asOf = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.now();
+
+        long started = System.nanoTime();
+        Summary summary = new FinesEngine(FinePolicy.load(), threads).assessAll(asOf);
+        System.out.printf(Locale.ROOT, "Assessed %d late loans as of %s: %d fines, total %s (%.1fs)%n",
+            summary.loansAssessed(), asOf, summary.finesWritten(), formatCents(summary.totalCents()),
+            (System.nanoTime() - started) / 1e9);
+    }
+}
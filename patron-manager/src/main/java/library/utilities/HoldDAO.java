@@ -0,0 +1,279 @@
+package library.utilities;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import configuration.DBConnector;
+import library.logging.Log;
+import library.models.Hold;
+
+/**
+ * Hold (reservation) queues for books that are on loan.
+ *
+ * The 'holds' table is the source of truth: every state change is a single guarded
+ * UPDATE or runs inside the caller's transaction with the hold row locked, so two desks
+ * can never hand the same copy to two patrons. The per-book queues are mirrored in memory
+ * (a skip-list ordered by priority, then HoldID) so queue views and position lookups
+ * do not hit the database; a book's mirror is loaded on first use and kept in step with
+ * this desk's own changes. clearCache() drops it (e.g. on global refresh) to pick up
+ * changes made by other desks.
+ */
+public class HoldDAO {
+
+    private static final Log LOG = Log.get(HoldDAO.class);
+
+    public static final String WAITING = "WAITING";
+    public static final String READY = "READY";
+    public static final String FULFILLED = "FULFILLED";
+    public static final String CANCELLED = "CANCELLED";
+
+    // Higher priority first, then first come first served (HoldID is assigned in insert order)
+    private static final Comparator<Hold> QUEUE_ORDER =
+        Comparator.comparingInt(Hold::getPriority).reversed().thenComparingLong(Hold::getHoldID);
+
+    private static final ConcurrentMap<String, BookQueue> QUEUES = new ConcurrentHashMap<>();
+
+    /**
+     * In-memory mirror of one book's active holds. A title with several copies can have
+     * several READY holds, one per copy kept aside.
+     */
+    private static final class BookQueue {
+        final ConcurrentSkipListSet<Hold> waiting = new ConcurrentSkipListSet<>(QUEUE_ORDER);
+        final ConcurrentSkipListSet<Hold> ready = new ConcurrentSkipListSet<>(QUEUE_ORDER);
+    }
+
+    // ---------------------------------------------
+    // --- PLACE / CANCEL ---
+    // ---------------------------------------------
+    /**
+     * Adds the patron to the book's queue. A patron can hold a book only once at a time:
+     * a second active hold violates the unique key and throws (error 1062).
+     */
+    public Hold placeHold(String bookID, String patronID, int priority) throws SQLException {
+        String sql = "INSERT INTO holds (BookID, PatronID, Priority, Status, Active) VALUES (?, ?, ?, 'WAITING', 1)";
+
+        try (Connection link = DBConnector.getConnection();
+             PreparedStatement state = link.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            state.setString(1, bookID);
+            state.setString(2, patronID);
+            state.setInt(3, priority);
+            state.executeUpdate();
+
+            long holdID;
+            try (ResultSet keys = state.getGeneratedKeys()) {
+                keys.next();
+                holdID = keys.getLong(1);
+            }
+            Hold hold = new Hold(holdID, bookID, patronID, priority, null, WAITING);
+
+            BookQueue queue = QUEUES.get(bookID);
+            if (queue != null) queue.waiting.add(hold);
+            return hold;
+
+        } catch (SQLException e) {
+            LOG.atError("placeHold").entity(bookID).field("patronID", patronID).message("Error placing hold").cause(e).log();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels an active hold. If the hold was READY (the copy was waiting on the shelf for
+     * this patron), the copy passes to the next patron in the queue in the same transaction.
+     * Returns the hold that became READY as a result, or null.
+     */
+    public Hold cancelHold(long holdID) throws SQLException {
+        String lockSql = "SELECT BookID, Status FROM holds WHERE HoldID = ? AND Active = 1 FOR UPDATE";
+        String cancelSql = "UPDATE holds SET Status = 'CANCELLED', Active = NULL WHERE HoldID = ?";
+
+        try (Connection link = DBConnector.getConnection()) {
+            link.setAutoCommit(false);
+            try {
+                String bookID;
+                String status;
+                try (PreparedStatement state = link.prepareStatement(lockSql)) {
+                    state.setLong(1, holdID);
+                    try (ResultSet resultSet = state.executeQuery()) {
+                        if (!resultSet.next()) {
+                            link.rollback();
+                            return null; // Already cancelled or fulfilled
+                        }
+                        bookID = resultSet.getString("BookID");
+                        status = resultSet.getString("Status");
+                    }
+                }
+                try (PreparedStatement state = link.prepareStatement(cancelSql)) {
+                    state.setLong(1, holdID);
+                    state.executeUpdate();
+                }
+                Hold promoted = READY.equals(status) ? promoteNextHold(link, bookID) : null;
+                link.commit();
+
+                BookQueue queue = QUEUES.get(bookID);
+                if (queue != null) {
+                    queue.waiting.removeIf(h -> h.getHoldID() == holdID);
+                    queue.ready.removeIf(h -> h.getHoldID() == holdID);
+                }
+                afterPromotion(promoted);
+                return promoted;
+
+            } catch (SQLException e) {
+                link.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            LOG.atError("cancelHold").field("holdID", holdID).message("Error cancelling hold").cause(e).log();
+            throw e;
+        }
+    }
+
+    // ---------------------------------------------
+    // --- QUEUE QUERIES (served from the mirror) ---
+    // ---------------------------------------------
+    /**
+     * The book's waiting holds in service order.
+     */
+    public List<Hold> readQueue(String bookID) throws SQLException {
+        return new ArrayList<>(queueFor(bookID).waiting);
+    }
+
+    /**
+     * 1-based position of the patron in the book's queue, 0 if a copy is READY for them,
+     * or -1 if they have no active hold on the book.
+     */
+    public int positionInQueue(String bookID, String patronID) throws SQLException {
+        BookQueue queue = queueFor(bookID);
+        for (Hold ready : queue.ready) {
+            if (ready.getPatronID().equals(patronID)) return 0;
+        }
+
+        int position = 1;
+        for (Hold hold : queue.waiting) {
+            if (hold.getPatronID().equals(patronID)) return position;
+            position++;
+        }
+        return -1;
+    }
+
+    /** Forgets every mirrored queue so they are reloaded from the database. */
+    public static void clearCache() {
+        QUEUES.clear();
+    }
+
+    private BookQueue queueFor(String bookID) throws SQLException {
+        BookQueue queue = QUEUES.get(bookID);
+        if (queue != null) return queue;
+
+        String sql = "SELECT HoldID, BookID, PatronID, Priority, PlacedAt, Status FROM holds " +
+                     "WHERE BookID = ? AND Active = 1";
+        BookQueue loaded = new BookQueue();
+        try (Connection link = DBConnector.getPrimaryReadConnection();
+             PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, bookID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    Hold hold = mapHold(resultSet);
+                    if (READY.equals(hold.getStatus())) loaded.ready.add(hold);
+                    else loaded.waiting.add(hold);
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("readQueue").entity(bookID).message("Error reading hold queue").cause(e).log();
+            throw e;
+        }
+        BookQueue raced = QUEUES.putIfAbsent(bookID, loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    // ---------------------------------------------
+    // --- HAND-OFF (called inside TransactionDAO transactions) ---
+    // ---------------------------------------------
+    /**
+     * Marks the first waiting hold on the book READY, locking it so no concurrent desk can
+     * promote or cancel it at the same time. Must run in the caller's transaction; the
+     * mirror is updated by {@link #afterPromotion} once that transaction commits.
+     */
+    static Hold promoteNextHold(Connection link, String bookID) throws SQLException {
+        String nextSql = "SELECT HoldID, BookID, PatronID, Priority, PlacedAt, Status FROM holds " +
+                         "WHERE BookID = ? AND Status = 'WAITING' ORDER BY Priority DESC, HoldID LIMIT 1 FOR UPDATE";
+        String readySql = "UPDATE holds SET Status = 'READY', ReadyAt = NOW() WHERE HoldID = ?";
+
+        Hold next;
+        try (PreparedStatement state = link.prepareStatement(nextSql)) {
+            state.setString(1, bookID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                if (!resultSet.next()) return null;
+                next = mapHold(resultSet);
+            }
+        }
+        try (PreparedStatement state = link.prepareStatement(readySql)) {
+            state.setLong(1, next.getHoldID());
+            state.executeUpdate();
+        }
+        next.setStatus(READY);
+        return next;
+    }
+
+    /**
+     * The number of copies on the shelf kept aside for other patrons' READY holds: the
+     * patron may borrow only if more copies than that are free. Called by borrowBook
+     * with the title's counters locked; the holds read are share-locked, so the count is
+     * the latest one rather than the transaction's snapshot.
+     */
+    static int readyHoldsForOthers(Connection link, String bookID, String patronID) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM holds WHERE BookID = ? AND Status = 'READY' AND PatronID <> ? LOCK IN SHARE MODE";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, bookID);
+            state.setString(2, patronID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Closes the patron's READY hold when they borrow the copy kept for them.
+     */
+    static void fulfillReadyHold(Connection link, String bookID, String patronID) throws SQLException {
+        String sql = "UPDATE holds SET Status = 'FULFILLED', Active = NULL " +
+                     "WHERE BookID = ? AND PatronID = ? AND Status = 'READY'";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, bookID);
+            state.setString(2, patronID);
+            if (state.executeUpdate() > 0) {
+                BookQueue queue = QUEUES.get(bookID);
+                if (queue != null) queue.ready.removeIf(h -> h.getPatronID().equals(patronID));
+            }
+        }
+    }
+
+    static void afterPromotion(Hold promoted) {
+        if (promoted == null) return;
+        BookQueue queue = QUEUES.get(promoted.getBookID());
+        if (queue != null) {
+            queue.waiting.removeIf(h -> h.getHoldID() == promoted.getHoldID());
+            queue.ready.add(promoted);
+        }
+    }
+
+    private static Hold mapHold(ResultSet resultSet) throws SQLException {
+        return new Hold(
+            resultSet.getLong("HoldID"),
+            resultSet.getString("BookID"),
+            resultSet.getString("PatronID"),
+            resultSet.getInt("Priority"),
+            resultSet.getString("PlacedAt"),
+            resultSet.getString("Status")
+        );
+    }
+}
@@ -0,0 +1,152 @@
+package library.utilities;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing int -> int hash map (linear probing, no boxing).
+ * Keys must be non-negative; absent keys read as 0, which suits counters.
+ * Not thread-safe.
+ */
+public class IntIntHashMap {
+
+    private static final int EMPTY = -1;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int resizeAt;
+
+    /** Receives each (key, value) pair of {@link #forEach}. */
+    public interface Visitor {
+        void visit(int key, int value);
+    }
+
+    public IntIntHashMap() {
+        this(8);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public int get(int key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) return values[i];
+            if (k == EMPTY) return 0;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) return true;
+            if (k == EMPTY) return false;
+        }
+    }
+
+    public void put(int key, int value) {
+        int slot = slotFor(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            if (++size > resizeAt) {
+                values[slot] = value;
+                grow();
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Adds {@code delta} to the value of {@code key} (starting from 0) and returns the new value.
+     */
+    public int addTo(int key, int delta) {
+        int slot = slotFor(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            values[slot] = delta;
+            if (++size > resizeAt) grow();
+            return delta;
+        }
+        return values[slot] += delta;
+    }
+
+    /**
+     * Removes {@code key} and returns its value (0 if absent). The following entries of the
+     * probe run are shifted back, so lookups never need tombstones.
+     */
+    public int remove(int key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY) return 0;
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = mix(keys[j]) & mask;
+            // Move j into the hole unless its home lies cyclically within (i, j]
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = EMPTY;
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) visitor.visit(keys[i], values[i]);
+        }
+    }
+
+    // ---------------------------------------------
+    // --- INTERNALS ---
+    // ---------------------------------------------
+    private int slotFor(int key) {
+        if (key < 0) throw new IllegalArgumentException("Keys must be non-negative: " + key);
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length * 2);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k == EMPTY) continue;
+            int j = mix(k) & mask;
+            while (keys[j] != EMPTY) j = (j + 1) & mask;
+            keys[j] = k;
+            values[j] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
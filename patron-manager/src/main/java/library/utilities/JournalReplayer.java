@@ -0,0 +1,444 @@
+package library.utilities;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import configuration.DBConnector;
+import library.logging.Log;
+import library.models.Hold;
+
+/**
+ * Replays the {@link OfflineJournal} into the database once the connection is back.
+ *
+ * Entries are applied in journal order, in chunks of {@link #BATCH_SIZE}, each chunk
+ * in its own database transaction. Every applied entry is also written to the
+ * {@code journal_replay} table (keyed by desk + sequence) inside that same transaction,
+ * so a crash between the database COMMIT and the journal checkpoint never applies
+ * an entry twice: on restart those sequences are found in the table and skipped.
+ *
+ * An entry that cannot be applied is recorded there too and skipped, so it never
+ * holds up the entries after it: CONFLICT when the database moved on meanwhile (no
+ * copy left, loan already returned), REJECTED when the database refuses it (its book
+ * or patron was deleted, a constraint fails). Only a lost connection, or a lock lost to
+ * a desk (deadlock, lock wait timeout), stops the replay for a retry. Both outcomes are
+ * reported to the staff ({@link #startWatcher}). A replayed return hands its copy to
+ * the title's hold queue, as a return at the desk does.
+ */
+public class JournalReplayer {
+
+    private static final Log LOG = Log.get(JournalReplayer.class);
+
+    private static final int BATCH_SIZE = 100;
+    private static final String OUTCOME_APPLIED = "APPLIED";
+    private static final String OUTCOME_CONFLICT = "CONFLICT";
+    private static final String OUTCOME_REJECTED = "REJECTED";
+
+    private final OfflineJournal journal;
+    private final AvailabilitySnapshot snapshot = AvailabilitySnapshot.getInstance();
+    private final List<String> lastConflicts = new ArrayList<>();
+    private ScheduledExecutorService watcher;
+
+    public JournalReplayer(OfflineJournal journal) {
+        this.journal = journal;
+    }
+
+    // ---------------------------------------------
+    // --- BACKGROUND WATCHER ---
+    // ---------------------------------------------
+    /**
+     * Periodically attempts a replay while the journal has pending entries.
+     * {@code onReplayed} runs (on the watcher thread) after a replay processed something,
+     * with the entries it could not apply (see {@link #getLastConflicts}).
+     */
+    public synchronized void startWatcher(long periodSeconds, Consumer<List<String>> onReplayed) {
+        if (watcher != null) return;
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-replayer");
+            t.setDaemon(true);
+            return t;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            if (!journal.hasPending()) return;
+            try {
+                if (replay() > 0 && onReplayed != null) onReplayed.accept(getLastConflicts());
+            } catch (SQLException e) {
+                // Still offline (or a transient failure); try again on the next tick
+                LOG.atWarn("replay").message("Journal replay postponed").cause(e).log();
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopWatcher() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    public synchronized List<String> getLastConflicts() {
+        return new ArrayList<>(lastConflicts);
+    }
+
+    // ---------------------------------------------
+    // --- REPLAY ---
+    // ---------------------------------------------
+    /**
+     * Applies all pending journal entries. Returns the number of entries processed
+     * (applied, or recorded as conflicts or rejected). Throws only if the database
+     * could not be reached; the entries not yet processed stay pending.
+     */
+    public synchronized int replay() throws SQLException {
+        List<OfflineJournal.Entry> pending = journal.readPending();
+        if (pending.isEmpty()) return 0;
+        lastConflicts.clear();
+
+        String insertLoanSql = "INSERT INTO transactions (TransactionID, BookKey, CopyKey, PatronKey, DateBorrowed, DueDate, DateReturned) " +
+                               "SELECT ?, b.BookKey, ?, p.PatronKey, ?, ?, NULL FROM books b JOIN patrons p " +
+                               "WHERE b.BookID = ? AND p.PatronID = ?";
+        String returnLoanSql = "UPDATE transactions SET DateReturned = ? WHERE TransactionID = ? AND DateReturned IS NULL";
+        String appliedSql = "INSERT INTO journal_replay (DeskID, Sequence, TransactionID, Outcome) VALUES (?, ?, ?, ?)";
+
+        int processed = 0;
+        try (Connection link = DBConnector.getConnection()) {
+            link.setAutoCommit(false);
+            try (PreparedStatement insertLoan = link.prepareStatement(insertLoanSql);
+                 PreparedStatement returnLoan = link.prepareStatement(returnLoanSql);
+                 PreparedStatement applied = link.prepareStatement(appliedSql)) {
+
+                for (int from = 0; from < pending.size(); from += BATCH_SIZE) {
+                    List<OfflineJournal.Entry> chunk = pending.subList(from, Math.min(from + BATCH_SIZE, pending.size()));
+                    try {
+                        applyChunk(link, chunk, insertLoan, returnLoan, applied);
+                        processed += chunk.size();
+                        continue;
+                    } catch (SQLException e) {
+                        abandon(link, insertLoan, returnLoan, applied);
+                        if (isRetryable(e)) throw e;
+                        LOG.atWarn("replay").field("sequence", chunk.get(0).sequence())
+                            .message("Journal chunk refused, replaying it entry by entry").cause(e).log();
+                    }
+                    // One entry of the chunk is bad: apply them one at a time, so only that one is rejected
+                    for (OfflineJournal.Entry entry : chunk) {
+                        try {
+                            applyChunk(link, List.of(entry), insertLoan, returnLoan, applied);
+                        } catch (SQLException e) {
+                            abandon(link, insertLoan, returnLoan, applied);
+                            if (isRetryable(e)) throw e;
+                            reject(link, entry, e);
+                        }
+                        processed++;
+                    }
+                }
+            } catch (SQLException e) {
+                link.rollback();
+                LOG.atError("replay").message("Error replaying offline journal").cause(e).log();
+                throw e;
+            }
+        }
+        snapshot.save();
+        return processed;
+    }
+
+    /** Applies one chunk in one database transaction and checkpoints the journal after it. */
+    private void applyChunk(Connection link, List<OfflineJournal.Entry> chunk, PreparedStatement insertLoan,
+                            PreparedStatement returnLoan, PreparedStatement applied) throws SQLException {
+        List<ReturnedLoan> returned = new ArrayList<>();
+        Map<String, int[]> loanDeltas = new HashMap<>();
+        Map<Long, Boolean> copiesOnLoan = new HashMap<>();
+        List<String> conflicts = new ArrayList<>();
+        Map<String, String> renamed = replayChunk(link, chunk, insertLoan, returnLoan, applied, returned,
+                                                  loanDeltas, copiesOnLoan, conflicts);
+
+        for (int inserted : insertLoan.executeBatch()) {
+            if (inserted == 0) { // the book and patron rows are locked by replayChunk, so this is a bug
+                throw new SQLException("Offline loan refers to a book or patron that no longer exists", "23000");
+            }
+        }
+        int[] closed = returnLoan.executeBatch();
+        for (int i = 0; i < closed.length; i++) {
+            if (closed[i] == 0) { // the loans are locked by openLoan, so this is a bug
+                // Nothing of the chunk is kept: replayed entry by entry, the return is found already closed
+                throw new SQLException("Offline return of " + returned.get(i).transactionID() + " closed no loan", "HY000");
+            }
+        }
+        applied.executeBatch();
+        for (ReturnedLoan r : returned) {
+            FinesEngine.assessReturn(link, r.transactionID(), r.date());
+        }
+        for (Map.Entry<String, int[]> d : loanDeltas.entrySet()) {
+            CategoryStatsDAO.adjustForBook(link, d.getKey(), d.getValue()[0], d.getValue()[1]);
+            BookStockDAO.adjustAvailable(link, d.getKey(), -d.getValue()[0]);
+        }
+        BookStockDAO.setOnLoan(link, copiesOnLoan);
+        List<Hold> promoted = promoteHolds(link, returned, copiesOnLoan);
+        link.commit();
+        QueryCache.getInstance().invalidate("transactions", "category_stats", "book_stock");
+
+        journal.markApplied(chunk.get(chunk.size() - 1).sequence());
+        renamed.forEach(snapshot::rename);
+        promoted.forEach(HoldDAO::afterPromotion);
+        lastConflicts.addAll(conflicts); // only once committed: a refused chunk is replayed again
+    }
+
+    /**
+     * Hands each copy the chunk put back on the shelf to the next patron in its title's
+     * queue, as a return at the desk does. A copy lent again later in the chunk is not
+     * back on the shelf.
+     */
+    private static List<Hold> promoteHolds(Connection link, List<ReturnedLoan> returned,
+                                           Map<Long, Boolean> copiesOnLoan) throws SQLException {
+        Map<String, Integer> copiesBack = new HashMap<>();
+        for (ReturnedLoan r : returned) {
+            if (!copiesOnLoan.get(r.loan().copyKey())) copiesBack.merge(r.loan().bookID(), 1, Integer::sum);
+        }
+        List<Hold> promoted = new ArrayList<>();
+        for (Map.Entry<String, Integer> back : copiesBack.entrySet()) {
+            for (int i = 0; i < back.getValue(); i++) {
+                Hold hold = HoldDAO.promoteNextHold(link, back.getKey());
+                if (hold == null) break; // nobody else waiting
+                promoted.add(hold);
+            }
+        }
+        return promoted;
+    }
+
+    /**
+     * True if the chunk may succeed when tried again later: the database is unreachable,
+     * or the chunk lost a deadlock or timed out waiting for a lock held by a desk.
+     * Such a chunk stays pending instead of having an entry rejected.
+     */
+    private static boolean isRetryable(SQLException e) {
+        return TransactionDAO.isConnectivityFailure(e)
+            || (e.getSQLState() != null && e.getSQLState().startsWith("40"))
+            || e.getErrorCode() == 1205; // ER_LOCK_WAIT_TIMEOUT
+    }
+
+    /** Rolls back a chunk that failed and empties the batches it left behind. */
+    private static void abandon(Connection link, PreparedStatement... batches) throws SQLException {
+        link.rollback();
+        for (PreparedStatement batch : batches) batch.clearBatch();
+    }
+
+    /**
+     * Records an entry the database refused on its own (not for lack of a connection)
+     * as REJECTED, so the replay moves past it.
+     */
+    private void reject(Connection link, OfflineJournal.Entry entry, SQLException cause) throws SQLException {
+        String reason = (entry.isBorrow() ? "Offline loan " : "Offline return of ") + entry.transactionID() +
+                        " rejected by the database: " + cause.getMessage();
+        LOG.atError("replay").field("sequence", entry.sequence()).message(reason).cause(cause).log();
+
+        String sql = "INSERT INTO journal_replay (DeskID, Sequence, TransactionID, Outcome) VALUES (?, ?, NULL, ?)";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, journal.getDeskId());
+            state.setLong(2, entry.sequence());
+            state.setString(3, OUTCOME_REJECTED);
+            state.executeUpdate();
+        }
+        link.commit();
+        journal.markApplied(entry.sequence());
+        if (entry.isBorrow()) snapshot.recordReturn(entry.transactionID());
+        lastConflicts.add(reason);
+    }
+
+    /**
+     * Adds one chunk's statements to the batches. Returns provisional -> real
+     * TransactionIDs for the loans created in this chunk; the entries it cannot apply
+     * are described in {@code conflicts}, the loans it closes are added
+     * to {@code returned} so their fines can be assessed once the batches have run, the
+     * per-book {on loan, loans} changes to {@code loanDeltas} for the category and stock
+     * counters, and the final state of every copy lent or given back to {@code copiesOnLoan}.
+     *
+     * Each loan is given a copy here rather than by BookStockDAO.claimCopy, so the loans
+     * stay in one batch: the free copies of a title are read (and locked) the first time
+     * the chunk lends it, and a copy returned in the chunk can be lent again in it.
+     */
+    private Map<String, String> replayChunk(Connection link, List<OfflineJournal.Entry> chunk,
+                                            PreparedStatement insertLoan, PreparedStatement returnLoan,
+                                            PreparedStatement applied, List<ReturnedLoan> returned,
+                                            Map<String, int[]> loanDeltas, Map<Long, Boolean> copiesOnLoan,
+                                            List<String> conflicts) throws SQLException {
+        Set<Long> alreadyApplied = readAppliedSequences(link, chunk.get(0).sequence(), chunk.get(chunk.size() - 1).sequence());
+        int nextSequence = TransactionDAO.nextTransactionSequence(link);
+
+        // State created by this chunk but not yet visible in the database
+        Map<String, String> renamed = new HashMap<>();
+        Map<String, OpenLoan> newLoans = new HashMap<>();
+        Map<String, Deque<Long>> freeCopies = new HashMap<>();
+        Set<String> closedInChunk = new HashSet<>();
+
+        for (OfflineJournal.Entry entry : chunk) {
+            if (alreadyApplied.contains(entry.sequence())) continue; // crash after COMMIT, before checkpoint
+
+            String resultId = null;
+            String conflict = null;
+            String outcome = OUTCOME_CONFLICT;
+
+            if (entry.isBorrow()) {
+                String bookID = entry.bookID();
+                Long copyKey;
+                if (!rowExists(link, BOOK_EXISTS_SQL, bookID) || !rowExists(link, PATRON_EXISTS_SQL, entry.patronID())) {
+                    conflict = "Offline loan " + entry.transactionID() + " rejected: book " + bookID + " or patron " +
+                               entry.patronID() + " was deleted meanwhile.";
+                    outcome = OUTCOME_REJECTED;
+                    snapshot.recordReturn(entry.transactionID());
+                } else if ((copyKey = freeCopiesOf(link, bookID, freeCopies).poll()) == null) {
+                    conflict = "Offline loan " + entry.transactionID() + " rejected: no copy of book " + bookID + " is available.";
+                    snapshot.recordReturn(entry.transactionID());
+                } else {
+                    resultId = TransactionDAO.formatTransactionId(nextSequence++);
+                    insertLoan.setString(1, resultId);
+                    insertLoan.setLong(2, copyKey);
+                    insertLoan.setString(3, entry.date().toString());
+                    insertLoan.setString(4, entry.dueDate().toString());
+                    insertLoan.setString(5, bookID);
+                    insertLoan.setString(6, entry.patronID());
+                    insertLoan.addBatch();
+
+                    renamed.put(entry.transactionID(), resultId);
+                    newLoans.put(resultId, new OpenLoan(bookID, copyKey));
+                    copiesOnLoan.put(copyKey, true);
+                    int[] delta = loanDeltas.computeIfAbsent(bookID, k -> new int[2]);
+                    delta[0]++;
+                    delta[1]++;
+                }
+            } else {
+                String transactionID = resolve(link, entry.transactionID(), renamed);
+                OpenLoan loan = transactionID == null ? null
+                    : newLoans.containsKey(transactionID) ? newLoans.get(transactionID)
+                    : openLoan(link, transactionID);
+
+                if (loan == null || closedInChunk.contains(transactionID)) {
+                    conflict = "Offline return of " + entry.transactionID() + " rejected: loan is unknown or already returned.";
+                } else {
+                    resultId = transactionID;
+                    returnLoan.setString(1, entry.date().toString());
+                    returnLoan.setString(2, transactionID);
+                    returnLoan.addBatch();
+
+                    closedInChunk.add(transactionID);
+                    returned.add(new ReturnedLoan(transactionID, entry.date(), loan));
+                    freeCopiesOf(link, loan.bookID(), freeCopies).add(loan.copyKey());
+                    copiesOnLoan.put(loan.copyKey(), false);
+                    loanDeltas.computeIfAbsent(loan.bookID(), k -> new int[2])[0]--;
+                }
+            }
+
+            if (conflict != null) {
+                LOG.atWarn("replay").field("sequence", entry.sequence()).message(conflict).log();
+                conflicts.add(conflict);
+            }
+            applied.setString(1, journal.getDeskId());
+            applied.setLong(2, entry.sequence());
+            applied.setString(3, resultId);
+            applied.setString(4, conflict == null ? OUTCOME_APPLIED : outcome);
+            applied.addBatch();
+        }
+        return renamed;
+    }
+
+    // ---------------------------------------------
+    // --- LOOKUPS ---
+    // ---------------------------------------------
+    // Share-locked, so the row cannot be deleted before the chunk commits
+    private static final String BOOK_EXISTS_SQL = "SELECT 1 FROM books WHERE BookID = ? LOCK IN SHARE MODE";
+    private static final String PATRON_EXISTS_SQL = "SELECT 1 FROM patrons WHERE PatronID = ? LOCK IN SHARE MODE";
+
+    private static boolean rowExists(Connection link, String sql, String id) throws SQLException {
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, id);
+            try (ResultSet resultSet = state.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private Set<Long> readAppliedSequences(Connection link, long first, long last) throws SQLException {
+        String sql = "SELECT Sequence FROM journal_replay WHERE DeskID = ? AND Sequence BETWEEN ? AND ?";
+        Set<Long> sequences = new HashSet<>();
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, journal.getDeskId());
+            state.setLong(2, first);
+            state.setLong(3, last);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) sequences.add(resultSet.getLong(1));
+            }
+        }
+        return sequences;
+    }
+
+    /**
+     * Maps a provisional ID (OFF-n) to the real TransactionID it was replayed as,
+     * looking first at this chunk and then at earlier replays.
+     */
+    private String resolve(Connection link, String transactionID, Map<String, String> renamed) throws SQLException {
+        if (!transactionID.startsWith(OfflineJournal.PROVISIONAL_PREFIX)) return transactionID;
+        if (renamed.containsKey(transactionID)) return renamed.get(transactionID);
+
+        long sequence = Long.parseLong(transactionID.substring(OfflineJournal.PROVISIONAL_PREFIX.length()));
+        String sql = "SELECT TransactionID FROM journal_replay WHERE DeskID = ? AND Sequence = ?";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, journal.getDeskId());
+            state.setLong(2, sequence);
+            try (ResultSet resultSet = state.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }
+    }
+
+    // The copies of a title on the shelf as this chunk goes, read from the database (and locked) once
+    private Deque<Long> freeCopiesOf(Connection link, String bookID, Map<String, Deque<Long>> freeCopies) throws SQLException {
+        Deque<Long> copies = freeCopies.get(bookID);
+        if (copies == null) {
+            copies = new ArrayDeque<>(BookStockDAO.lockFreeCopies(link, bookID));
+            freeCopies.put(bookID, copies);
+        }
+        return copies;
+    }
+
+    private record OpenLoan(String bookID, long copyKey) {}
+
+    private record ReturnedLoan(String transactionID, LocalDate date, OpenLoan loan) {}
+
+    // Locked, so a desk cannot return the loan too before the chunk commits; a locking read
+    // also sees a return committed after the chunk's snapshot
+    private OpenLoan openLoan(Connection link, String transactionID) throws SQLException {
+        String sql = "SELECT b.BookID, t.CopyKey FROM transactions t JOIN books b ON b.BookKey = t.BookKey " +
+                     "WHERE t.TransactionID = ? AND t.DateReturned IS NULL FOR UPDATE";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setString(1, transactionID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                return resultSet.next() ? new OpenLoan(resultSet.getString(1), resultSet.getLong(2)) : null;
+            }
+        }
+    }
+
+    /**
+     * Convenience for App start-up: a replayer bound to the shared journal, or null
+     * if the journal file cannot be opened.
+     */
+    public static JournalReplayer forSharedJournal() {
+        try {
+            return new JournalReplayer(OfflineJournal.getInstance());
+        } catch (IOException e) {
+            LOG.atError("forSharedJournal").message("Offline journal unavailable").cause(e).log();
+            return null;
+        }
+    }
+}
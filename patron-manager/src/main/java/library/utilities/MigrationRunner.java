@@ -0,0 +1,289 @@
+package library.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import configuration.DBConnector;
+import library.logging.Log;
+
+/**
+ * Applies the versioned schema migrations in resources/sql/migrations.
+ *
+ * The scripts are listed, in order, in sql/migrations/index; a script's version is
+ * the number its file name starts with. Each applied script is recorded in
+ * 'schema_history' with the SHA-256 of its text, so it is applied exactly once, and a
+ * script edited after it was applied stops the run instead of leaving the database
+ * in an unknown state. Only one desk migrates at a time (a server-side named lock).
+ *
+ * Statements in a script end with ';' at the end of a line; lines starting with '--'
+ * are comments. DDL commits as it goes, so a script that fails part-way is not
+ * recorded and is run again in full next time: write each statement so it can run
+ * twice (IF [NOT] EXISTS), and add indexes with ALGORITHM=INPLACE, LOCK=NONE so that
+ * the server refuses rather than blocking the desks' writes while it builds them.
+ *
+ * A script whose header has a "-- NOT ONLINE" line blocks the desks while it runs
+ * (it rewrites a large table). The desks only apply the online scripts at startup
+ * ({@link #migrate(boolean)}) and leave the rest to this class's main, run out of hours.
+ *
+ * 01_creation.sql creates the latest schema for a fresh install, with 'schema_history'
+ * already listing every script (and its checksum) as applied, so the migrations find
+ * nothing to do. A new script is added there too.
+ */
+public class MigrationRunner {
+
+    private static final Log LOG = Log.get(MigrationRunner.class);
+
+    private static final String DIRECTORY = "/sql/migrations/";
+    private static final String OFFLINE_MARKER = "\n-- NOT ONLINE";
+    private static final String RUN_LOCK = "patronmanager.migrations";
+    private static final int RUN_LOCK_WAIT_SECONDS = 60;
+    // A DDL statement waiting for a table lock stalls every query queued behind it:
+    // give up quickly instead, and retry on the next start
+    private static final int DDL_LOCK_WAIT_SECONDS = 10;
+
+    private static final String HISTORY_SQL =
+        "CREATE TABLE IF NOT EXISTS schema_history (" +
+        "Version int(11) NOT NULL, " +
+        "Script varchar(200) NOT NULL, " +
+        "Checksum char(64) NOT NULL, " +
+        "AppliedAt datetime NOT NULL DEFAULT current_timestamp(), " +
+        "ExecutionMillis bigint(20) NOT NULL, " +
+        "PRIMARY KEY (Version)" +
+        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci";
+
+    /** One script from the index; {@code online} is false for the scripts marked NOT ONLINE. */
+    public record Migration(int version, String script, String checksum, boolean online, List<String> statements) {}
+
+    // ---------------------------------------------
+    // --- MIGRATE ---
+    // ---------------------------------------------
+    /**
+     * Applies every listed migration not yet recorded in 'schema_history' and returns
+     * the scripts applied (empty if the schema was up to date).
+     */
+    public List<String> migrate() throws SQLException, IOException {
+        return migrate(false);
+    }
+
+    /**
+     * As {@link #migrate()}, but with {@code onlineOnly} stops before the first pending
+     * script marked NOT ONLINE: the scripts after it may depend on it, so they stay
+     * pending too ({@link #pending()}).
+     */
+    public List<String> migrate(boolean onlineOnly) throws SQLException, IOException {
+        List<Migration> migrations = loadMigrations();
+        List<String> applied = new ArrayList<>();
+
+        try (Connection link = DBConnector.getConnection()) {
+            lock(link);
+            try (Statement state = link.createStatement()) {
+                state.execute(HISTORY_SQL);
+                state.execute("SET SESSION lock_wait_timeout = " + DDL_LOCK_WAIT_SECONDS);
+
+                Map<Integer, String> history = readHistory(link);
+                for (Migration m : migrations) {
+                    String recorded = history.remove(m.version());
+                    if (recorded != null) {
+                        if (!recorded.equals(m.checksum())) {
+                            throw new SQLException("Migration " + m.script() + " was changed after it was applied " +
+                                "(checksum " + m.checksum() + ", recorded " + recorded + ")");
+                        }
+                        continue;
+                    }
+                    if (onlineOnly && !m.online()) {
+                        LOG.atWarn("migrate").field("script", m.script())
+                            .message("Migration must be applied out of hours with MigrationRunner").log();
+                        break;
+                    }
+
+                    long started = System.nanoTime();
+                    for (String statement : m.statements()) state.execute(statement);
+                    record(link, m, (System.nanoTime() - started) / 1_000_000);
+                    applied.add(m.script());
+                }
+                for (Migration m : migrations) history.remove(m.version()); // those after a stop
+                if (!history.isEmpty()) {
+                    // A newer desk has migrated further; this desk's queries only use older columns
+                    LOG.atWarn("migrate").field("unknown", history.keySet()).message("Schema has migrations this desk does not know").log();
+                }
+            } finally {
+                unlock(link);
+            }
+        } catch (SQLException e) {
+            LOG.atError("migrate").message("Error migrating schema").cause(e).log();
+            throw e;
+        }
+        return applied;
+    }
+
+    /**
+     * The listed scripts not yet recorded in 'schema_history', in order. Only reads, so
+     * it works for a database user that may not change the schema.
+     */
+    public List<String> pending() throws SQLException, IOException {
+        Map<Integer, String> history;
+        try (Connection link = DBConnector.getConnection()) {
+            history = readHistory(link);
+        } catch (SQLException e) {
+            if (!"42S02".equals(e.getSQLState())) throw e;
+            history = Map.of(); // no schema_history yet: nothing was ever applied
+        }
+        List<String> pending = new ArrayList<>();
+        for (Migration m : loadMigrations()) {
+            if (!history.containsKey(m.version())) pending.add(m.script());
+        }
+        return pending;
+    }
+
+    /** Lists every migration with its status: applied (and when) or pending. */
+    public List<String> status() throws SQLException, IOException {
+        List<String> lines = new ArrayList<>();
+        Map<Integer, String> history;
+        Map<Integer, String> appliedAt = new LinkedHashMap<>();
+        try (Connection link = DBConnector.getConnection()) {
+            try (Statement state = link.createStatement()) {
+                state.execute(HISTORY_SQL);
+            }
+            history = readHistory(link);
+            try (Statement state = link.createStatement();
+                 ResultSet resultSet = state.executeQuery("SELECT Version, AppliedAt, ExecutionMillis FROM schema_history")) {
+                while (resultSet.next()) {
+                    appliedAt.put(resultSet.getInt(1), resultSet.getString(2) + " (" + resultSet.getLong(3) + " ms)");
+                }
+            }
+        }
+        for (Migration m : loadMigrations()) {
+            String recorded = history.get(m.version());
+            String state = recorded == null ? "pending"
+                : recorded.equals(m.checksum()) ? "applied " + appliedAt.get(m.version())
+                : "CHANGED since applied " + appliedAt.get(m.version());
+            if (recorded == null && !m.online()) state += " (not online: run out of hours)";
+            lines.add(String.format("%03d  %-40s %s", m.version(), m.script(), state));
+        }
+        return lines;
+    }
+
+    // ---------------------------------------------
+    // --- SCRIPTS ---
+    // ---------------------------------------------
+    public static List<Migration> loadMigrations() throws IOException {
+        List<Migration> migrations = new ArrayList<>();
+        int previous = -1; // 000 is the baseline
+        for (String line : readResource("index").split("\n")) {
+            String script = line.trim();
+            if (script.isEmpty() || script.startsWith("#")) continue;
+
+            int version = Integer.parseInt(script.substring(0, script.indexOf('_')));
+            if (version <= previous) {
+                throw new IOException("Migration " + script + " is out of order in the index");
+            }
+            previous = version;
+            String text = readResource(script);
+            migrations.add(new Migration(version, script, sha256(text), !text.contains(OFFLINE_MARKER), split(text)));
+        }
+        return migrations;
+    }
+
+    private static String readResource(String name) throws IOException {
+        try (InputStream in = MigrationRunner.class.getResourceAsStream(DIRECTORY + name)) {
+            if (in == null) throw new IOException("Migration resource not found: " + DIRECTORY + name);
+            // Line endings normalised so a checkout with CRLF has the same checksum
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+        }
+    }
+
+    static List<String> split(String text) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : text.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) continue;
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                String statement = current.toString().trim();
+                statements.add(statement.substring(0, statement.length() - 1));
+                current.setLength(0);
+            }
+        }
+        if (!current.toString().isBlank()) statements.add(current.toString().trim()); // last one without ';'
+        return statements;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JDK has SHA-256
+        }
+    }
+
+    // ---------------------------------------------
+    // --- HISTORY AND LOCK ---
+    // ---------------------------------------------
+    private static Map<Integer, String> readHistory(Connection link) throws SQLException {
+        Map<Integer, String> history = new LinkedHashMap<>();
+        try (Statement state = link.createStatement();
+             ResultSet resultSet = state.executeQuery("SELECT Version, Checksum FROM schema_history ORDER BY Version")) {
+            while (resultSet.next()) history.put(resultSet.getInt(1), resultSet.getString(2));
+        }
+        return history;
+    }
+
+    private static void record(Connection link, Migration m, long millis) throws SQLException {
+        String sql = "INSERT INTO schema_history (Version, Script, Checksum, ExecutionMillis) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement state = link.prepareStatement(sql)) {
+            state.setInt(1, m.version());
+            state.setString(2, m.script());
+            state.setString(3, m.checksum());
+            state.setLong(4, millis);
+            state.executeUpdate();
+        }
+    }
+
+    private static void lock(Connection link) throws SQLException {
+        try (PreparedStatement state = link.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            state.setString(1, RUN_LOCK);
+            state.setInt(2, RUN_LOCK_WAIT_SECONDS);
+            try (ResultSet resultSet = state.executeQuery()) {
+                if (!resultSet.next() || resultSet.getInt(1) != 1) {
+                    throw new SQLException("Another desk is still migrating the schema");
+                }
+            }
+        }
+    }
+
+    private static void unlock(Connection link) throws SQLException {
+        try (PreparedStatement state = link.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            state.setString(1, RUN_LOCK);
+            state.executeQuery().close();
+        }
+    }
+
+    /**
+     * Usage: MigrationRunner [migrate|status]
+     */
+    public static void main(String[] args) throws Exception {
+        MigrationRunner runner = new MigrationRunner();
+        if (args.length > 0 && args[0].equals("status")) {
+            runner.status().forEach(System.out::println);
+            return;
+        }
+        List<String> applied = runner.migrate();
+        applied.forEach(script -> System.out.println("Applied " + script));
+        System.out.println(applied.isEmpty() ? "Schema is up to date." : applied.size() + " migrations applied.");
+    }
+}
@@ -0,0 +1,271 @@
+package library.utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import library.logging.Log;
+
+/**
+ * Append-only, memory-mapped journal of borrow/return operations recorded
+ * while the database is unreachable.
+ *
+ * File layout:
+ *   HEADER (64 bytes): magic, format version, desk id, next sequence,
+ *                      last applied sequence, write position
+ *   RECORDS:           [int payload length][int CRC32][payload]
+ *
+ * A record only becomes visible once the header's write position has been
+ * advanced past it, so a crash in the middle of an append leaves a torn tail
+ * that is simply ignored on the next open.
+ */
+public class OfflineJournal {
+
+    private static final Log LOG = Log.get(OfflineJournal.class);
+
+    public static final String PROVISIONAL_PREFIX = "OFF-";
+
+    private static final int MAGIC = 0x504D4A31; // "PMJ1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int DESK_ID_LENGTH = 16;
+    private static final long INITIAL_CAPACITY = 4L * 1024 * 1024;
+
+    // Header offsets
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_DESK_ID = 8;
+    private static final int OFF_NEXT_SEQ = 24;
+    private static final int OFF_APPLIED_SEQ = 32;
+    private static final int OFF_WRITE_POS = 40;
+
+    static final byte OP_BORROW = 1;
+    static final byte OP_RETURN = 2;
+
+    // Singleton, same as GlobalEventManager: every DAO instance must share one journal file
+    private static OfflineJournal instance;
+
+    private final Path file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private final String deskId;
+
+    // ---------------------------------------------
+    // --- JOURNAL ENTRY ---
+    // ---------------------------------------------
+    /**
+     * A single journaled operation. For BORROW entries {@code transactionID} is the
+     * provisional ID handed to the UI; for RETURN entries it is the loan being closed
+     * (which may itself be provisional).
+     */
+    public record Entry(long sequence, byte op, String transactionID, String bookID,
+                        String patronID, LocalDate date, LocalDate dueDate) {
+
+        public boolean isBorrow() {
+            return op == OP_BORROW;
+        }
+    }
+
+    // ---------------------------------------------
+    // --- OPEN / SINGLETON ---
+    // ---------------------------------------------
+    public static synchronized OfflineJournal getInstance() throws IOException {
+        if (instance == null) {
+            String configured = System.getProperty("patronmanager.journal");
+            Path path = configured != null
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".patron-manager", "circulation.journal");
+            instance = new OfflineJournal(path);
+        }
+        return instance;
+    }
+
+    OfflineJournal(Path file) throws IOException {
+        this.file = file;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        boolean fresh = !Files.exists(file) || Files.size(file) < HEADER_SIZE;
+
+        this.channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, channel.size()));
+
+        if (fresh) {
+            String newDeskId = UUID.randomUUID().toString().replace("-", "").substring(0, DESK_ID_LENGTH);
+            buffer.putInt(OFF_MAGIC, MAGIC);
+            buffer.putInt(OFF_VERSION, FORMAT_VERSION);
+            buffer.put(OFF_DESK_ID, newDeskId.getBytes(StandardCharsets.US_ASCII));
+            buffer.putLong(OFF_NEXT_SEQ, 1);
+            buffer.putLong(OFF_APPLIED_SEQ, 0);
+            buffer.putLong(OFF_WRITE_POS, HEADER_SIZE);
+            buffer.force(0, HEADER_SIZE);
+        } else if (buffer.getInt(OFF_MAGIC) != MAGIC) {
+            throw new IOException("Not a circulation journal: " + file);
+        }
+
+        byte[] idBytes = new byte[DESK_ID_LENGTH];
+        buffer.get(OFF_DESK_ID, idBytes);
+        this.deskId = new String(idBytes, StandardCharsets.US_ASCII);
+    }
+
+    // ---------------------------------------------
+    // --- APPEND OPERATIONS ---
+    // ---------------------------------------------
+    /**
+     * Journals a loan and returns the provisional TransactionID (e.g. OFF-12).
+     */
+    public synchronized String appendBorrow(String bookID, String patronID, LocalDate dateBorrowed, LocalDate dueDate)
+            throws IOException {
+        long seq = buffer.getLong(OFF_NEXT_SEQ);
+        String provisionalId = PROVISIONAL_PREFIX + seq;
+        append(new Entry(seq, OP_BORROW, provisionalId, bookID, patronID, dateBorrowed, dueDate));
+        return provisionalId;
+    }
+
+    public synchronized void appendReturn(String transactionID, LocalDate dateReturned) throws IOException {
+        long seq = buffer.getLong(OFF_NEXT_SEQ);
+        append(new Entry(seq, OP_RETURN, transactionID, null, null, dateReturned, null));
+    }
+
+    private void append(Entry entry) throws IOException {
+        byte[] payload = encode(entry);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        int writePos = (int) buffer.getLong(OFF_WRITE_POS);
+        int recordLength = 8 + payload.length;
+        ensureCapacity(writePos + recordLength);
+
+        buffer.putInt(writePos, payload.length);
+        buffer.putInt(writePos + 4, (int) crc.getValue());
+        buffer.put(writePos + 8, payload);
+        buffer.force(writePos, recordLength);
+
+        // Publish: the record only counts once the header points past it
+        buffer.putLong(OFF_NEXT_SEQ, entry.sequence() + 1);
+        buffer.putLong(OFF_WRITE_POS, writePos + recordLength);
+        buffer.force(0, HEADER_SIZE);
+    }
+
+    private void ensureCapacity(long required) throws IOException {
+        if (required <= buffer.capacity()) return;
+        long newCapacity = buffer.capacity();
+        while (newCapacity < required) newCapacity *= 2;
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+    }
+
+    // ---------------------------------------------
+    // --- READ / CHECKPOINT ---
+    // ---------------------------------------------
+    /**
+     * Returns every valid entry whose sequence is greater than the last applied one,
+     * in journal order. Reading stops at the first record whose checksum does not match.
+     */
+    public synchronized List<Entry> readPending() {
+        List<Entry> pending = new ArrayList<>();
+        long applied = buffer.getLong(OFF_APPLIED_SEQ);
+        int end = (int) buffer.getLong(OFF_WRITE_POS);
+        int pos = HEADER_SIZE;
+
+        while (pos + 8 <= end) {
+            int length = buffer.getInt(pos);
+            int storedCrc = buffer.getInt(pos + 4);
+            if (length <= 0 || pos + 8 + length > end) break;
+
+            byte[] payload = new byte[length];
+            buffer.get(pos + 8, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != storedCrc) {
+                LOG.atWarn("readPending").field("file", file).field("offset", pos)
+                    .message("Journal checksum mismatch; ignoring the rest of the journal").log();
+                break;
+            }
+
+            Entry entry = decode(payload);
+            if (entry.sequence() > applied) pending.add(entry);
+            pos += 8 + length;
+        }
+        return pending;
+    }
+
+    public synchronized boolean hasPending() {
+        return buffer.getLong(OFF_APPLIED_SEQ) < buffer.getLong(OFF_NEXT_SEQ) - 1;
+    }
+
+    /**
+     * Records that every entry up to and including {@code sequence} reached the database.
+     * Once the whole journal has been applied the log is truncated back to the header.
+     */
+    public synchronized void markApplied(long sequence) {
+        buffer.putLong(OFF_APPLIED_SEQ, sequence);
+        if (sequence >= buffer.getLong(OFF_NEXT_SEQ) - 1) {
+            buffer.putLong(OFF_WRITE_POS, HEADER_SIZE);
+        }
+        buffer.force(0, HEADER_SIZE);
+    }
+
+    public String getDeskId() {
+        return deskId;
+    }
+
+    // ---------------------------------------------
+    // --- ENCODING ---
+    // ---------------------------------------------
+    private static byte[] encode(Entry entry) {
+        byte[][] strings = {
+            bytes(entry.transactionID()), bytes(entry.bookID()), bytes(entry.patronID())
+        };
+        int size = 1 + 8 + 8 + 8;
+        for (byte[] s : strings) size += 2 + s.length;
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(entry.op());
+        out.putLong(entry.sequence());
+        out.putLong(entry.date().toEpochDay());
+        out.putLong(entry.dueDate() != null ? entry.dueDate().toEpochDay() : Long.MIN_VALUE);
+        for (byte[] s : strings) {
+            out.putShort((short) s.length);
+            out.put(s);
+        }
+        return out.array();
+    }
+
+    private static Entry decode(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        byte op = in.get();
+        long seq = in.getLong();
+        LocalDate date = LocalDate.ofEpochDay(in.getLong());
+        long due = in.getLong();
+        String transactionID = string(in);
+        String bookID = string(in);
+        String patronID = string(in);
+        return new Entry(seq, op, transactionID, bookID, patronID, date,
+            due == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(due));
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer in) {
+        int length = in.getShort();
+        if (length == 0) return null;
+        byte[] raw = new byte[length];
+        in.get(raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+}
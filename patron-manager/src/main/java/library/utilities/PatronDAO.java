@@ -7,13 +7,25 @@ import java.sql.SQLException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import configuration.DBConnector;
+import library.audit.AuditEvent.Action;
+import library.audit.AuditEvent.Entity;
+import library.audit.AuditLog;
+import library.logging.Log;
 import library.models.Patron;
 
 public class PatronDAO {
+    private static final Log LOG = Log.get(PatronDAO.class);
+
     private static final String PATRON_PREFIX = "PT-";
 
+    // Cached read (see QueryCache)
+    private static final String[] PATRON_TABLES = { "patrons" };
+    private static final long PATRON_TTL_MILLIS = 30_000;
+    private static final String ALL_PATRONS_SQL = "SELECT " + RowMappers.PATRON_COLUMNS + " FROM patrons ORDER BY PatronID";
+
     // --- ID GENERATION LOGIC ---
     private String generateNextPatronId(Connection conn) throws SQLException {
         String sql = "SELECT PatronID FROM patrons WHERE PatronID LIKE ? ORDER BY PatronID DESC LIMIT 1";
@@ -39,6 +51,7 @@ public class PatronDAO {
     
     //  ---------- CREATE (Fixes "wont save") ----------
     public Patron createPatron(Patron patron) throws SQLException { 
+        long started = System.nanoTime();
         // SQL order: (1:ID, 2:First, 3:Last, 4:Email, 5:Phone, 6:Address)
         String sql = "INSERT INTO patrons (PatronID, FirstName, LastName, Email, PhoneNumber, Address) " +
                     "VALUES (?, ?, ?, ?, ?, ?)";
@@ -59,79 +72,142 @@ public class PatronDAO {
                 state.setString(6, patron.getAddress());
                 state.executeUpdate();
             }
+            QueryCache.getInstance().invalidate("patrons");
+            AuditLog.getInstance().publish(Action.CREATE, Entity.PATRON, patron.getPatronID(), null, patron.getVersion());
+            LOG.atDebug("createPatron").entity(patron.getPatronID()).latencySince(started).log();
             
             return patron;
             
         } catch (SQLException e) {
-            System.err.println("Error creating patron: " + e.getMessage());
+            LOG.atError("createPatron").entity(patron.getPatronID()).latencySince(started)
+                .message("Error creating patron").cause(e).log();
             throw e;
         }
     }
 
     //  ---------- READ ALL ----------
     public List<Patron> readAllPatrons() throws SQLException {
+        // Both the Patrons and the Transactions tab load every patron on every refresh
+        return QueryCache.getInstance().get(ALL_PATRONS_SQL, List.of(), PATRON_TABLES, RowMappers.PATRON_WIDTH, PATRON_TTL_MILLIS, () -> {
+            try (Connection link = DBConnector.getReadConnection()) { // read-only: replica if available
+                return readAllPatrons(link);
+            } catch (SQLException e) {
+                LOG.atError("readAllPatrons").message("Error reading all patrons").cause(e).log();
+                throw e;
+            }
+        });
+    }
+
+    /** Every patron, read on the caller's connection, bypassing the cache (see ReferenceSnapshot). */
+    static List<Patron> readAllPatrons(Connection link) throws SQLException {
         List<Patron> patrons = new ArrayList<>();
-        // FIX: Ensure SQL selects the column name used for phone number (e.g., PhoneNumber)
-        String sql = "SELECT PatronID, FirstName, LastName, Email, PhoneNumber, Address FROM patrons ORDER BY PatronID";
+        try (PreparedStatement state = link.prepareStatement(ALL_PATRONS_SQL);
+             ResultSet resultSet = state.executeQuery()) {
+            while (resultSet.next()) {
+                patrons.add(RowMappers.PATRON.map(resultSet));
+            }
+        }
+        return patrons;
+    }
 
-        try (Connection link = DBConnector.getConnection();
-            PreparedStatement state = link.prepareStatement(sql);
-            ResultSet resultSet = state.executeQuery()) {
+    //  ---------- READ ONE ----------
+    /**
+     * Returns the patron with the given ID, or null if there is none.
+     */
+    public Patron readPatron(String patronId) throws SQLException {
+        return readPatron(patronId, false);
+    }
 
-            while (resultSet.next()) {
-                // Constructor Call Order: (ID, First, Last, Email, Phone, Address)
-                Patron patron = new Patron(
-                    resultSet.getString("PatronID"),
-                    resultSet.getString("FirstName"),
-                    resultSet.getString("LastName"),
-                    resultSet.getString("Email"),
-                    resultSet.getString("PhoneNumber"), // FIX: Using DB column name to retrieve value
-                    resultSet.getString("Address")
-                );
-                patrons.add(patron);
+    /**
+     * Returns the patron as it is now on the primary (never a lagging replica), or null
+     * if it no longer exists. Used to reload a record after an edit conflict.
+     */
+    public Patron readCurrentPatron(String patronId) throws SQLException {
+        return readPatron(patronId, true);
+    }
+
+    private Patron readPatron(String patronId, boolean fromPrimary) throws SQLException {
+        String sql = "SELECT " + RowMappers.PATRON_COLUMNS + " FROM patrons WHERE PatronID = ?";
+
+        try (Connection link = fromPrimary ? DBConnector.getPrimaryReadConnection() : DBConnector.getReadConnection();
+            PreparedStatement state = link.prepareStatement(sql)) {
+
+            state.setString(1, patronId);
+            try (ResultSet resultSet = state.executeQuery()) {
+                return resultSet.next() ? RowMappers.PATRON.map(resultSet) : null;
             }
         } catch (SQLException e) {
-            System.err.println("Error reading all patrons: " + e.getMessage());
-            throw e; 
-        } 
-        
-        return patrons;
+            LOG.atError("readPatron").entity(patronId).message("Error reading patron").cause(e).log();
+            throw e;
+        }
     }
 
     //  ---------- UPDATE ----------
+    /**
+     * Writes the columns changed on the patron since it was read (its dirty columns), if
+     * the patron is still at the version it was read at, and bumps the version on the
+     * object. If another desk saved the patron meanwhile, nothing is written and a
+     * StaleRecordException is thrown.
+     */
     public void updatePatron(Patron patron) throws SQLException {
-        String sql = "UPDATE patrons SET FirstName = ?, LastName = ?, Email = ?, PhoneNumber = ?, Address = ? " +
-                    "WHERE PatronID = ?";
+        long started = System.nanoTime();
+        Set<String> columns = patron.getDirtyColumns();
+        if (columns.isEmpty()) return; // nothing changed: no write, same version
+
+        // Column names come from the model's setters, never from user input
+        StringBuilder sql = new StringBuilder("UPDATE patrons SET ");
+        for (String column : columns) sql.append(column).append(" = ?, ");
+        sql.append("Version = Version + 1 WHERE PatronID = ? AND Version = ?");
         
         try (Connection link = DBConnector.getConnection();
-            PreparedStatement state = link.prepareStatement(sql)) {
+            PreparedStatement state = link.prepareStatement(sql.toString())) {
             
-            state.setString(1, patron.getFirstName());
-            state.setString(2, patron.getLastName());
-            state.setString(3, patron.getEmail());
-            state.setString(4, patron.getPhone()); // FIX: Using getPhone()
-            state.setString(5, patron.getAddress());
-            state.setString(6, patron.getPatronID());
-            state.executeUpdate();
+            int i = 1;
+            for (String column : columns) {
+                switch (column) {
+                    case "FirstName" -> state.setString(i++, patron.getFirstName());
+                    case "LastName" -> state.setString(i++, patron.getLastName());
+                    case "Email" -> state.setString(i++, patron.getEmail());
+                    case "PhoneNumber" -> state.setString(i++, patron.getPhone()); // FIX: Using getPhone()
+                    case "Address" -> state.setString(i++, patron.getAddress());
+                    default -> throw new IllegalStateException("Unknown patrons column: " + column);
+                }
+            }
+            state.setString(i++, patron.getPatronID());
+            state.setInt(i, patron.getVersion());
+            if (state.executeUpdate() == 0) {
+                throw new StaleRecordException("patrons", patron.getPatronID(), patron.getVersion());
+            }
+            QueryCache.getInstance().invalidate("patrons");
+            patron.setVersion(patron.getVersion() + 1);
+            patron.markClean();
+            AuditLog.getInstance().publish(Action.UPDATE, Entity.PATRON, patron.getPatronID(), null, patron.getVersion());
+            LOG.atDebug("updatePatron").entity(patron.getPatronID()).latencySince(started).log();
             
         } catch (SQLException e) {
-            System.err.println("Error updating patron: " + e.getMessage());
+            LOG.atError("updatePatron").entity(patron.getPatronID()).latencySince(started)
+                .message("Error updating patron").cause(e).log();
             throw e;
         }
     }
 
     //  ---------- DELETE (Fixes "cant be deleted") ----------
     public void deletePatron(String patronId) throws SQLException {
+        long started = System.nanoTime();
         String sql = "DELETE FROM patrons WHERE PatronID = ?";
 
         try (Connection link = DBConnector.getConnection();
             PreparedStatement state = link.prepareStatement(sql)) {
             
             state.setString(1, patronId);
-            state.executeUpdate();
+            int rowsAffected = state.executeUpdate();
+            QueryCache.getInstance().invalidate("patrons");
+            if (rowsAffected > 0) AuditLog.getInstance().publish(Action.DELETE, Entity.PATRON, patronId, null);
+            LOG.atDebug("deletePatron").entity(patronId).latencySince(started).log();
             
         } catch (SQLException e) {
-            System.err.println("Error deleting patron: " + e.getMessage());
+            LOG.atError("deletePatron").entity(patronId).latencySince(started)
+                .message("Error deleting patron").cause(e).log();
             throw e; 
         }
     }
@@ -0,0 +1,464 @@
+package library.utilities;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import configuration.DBConnector;
+import library.logging.Log;
+
+/**
+ * Most borrowed titles and authors over the last week, the last month and all time,
+ * kept in {@link SpaceSaving} summaries instead of grouping the transactions table per request.
+ *
+ * There is one summary per day for the last {@value #DAYS} days (a ring reused as days go
+ * by) and one for all time, each for titles and for authors. A week or month query merges
+ * the daily summaries in its range, so the windows roll daily without decrementing anything.
+ * Counts are estimates: each comes with a guaranteed minimum, and the error shrinks as the
+ * capacity grows (see {@link SpaceSaving}).
+ *
+ * The first build splits the transactions table into TransactionKey ranges scanned in
+ * parallel, one read connection each, and merges the partial summaries. Afterwards
+ * {@link #recordLoan} counts the loans of this desk as TransactionDAO.borrowBook records
+ * them, and {@link #catchUp} (run by {@link #startTailing}) reads the loans other desks and
+ * journal replays have added since.
+ *
+ * A TransactionKey is assigned at insert but becomes visible at commit, so a loan can
+ * appear below a key already read. Each catch-up re-reads the last {@value #TAIL_WINDOW}
+ * keys below the highest one read and skips the keys it has counted there.
+ */
+public class PopularityIndex {
+
+    private static final Log LOG = Log.get(PopularityIndex.class);
+
+    private static final int CAPACITY = Integer.getInteger("patronmanager.popular.capacity", 1000);
+    private static final PopularityIndex INSTANCE = new PopularityIndex(CAPACITY);
+
+    private static final int DAYS = 30;
+    private static final int MAX_PARTS = 4;
+    private static final int TAIL_BATCH = 10_000;
+    private static final int TAIL_WINDOW = 1_000;
+
+    public enum Window {
+        WEEK(7), MONTH(30), ALL_TIME(0);
+
+        private final int days;
+
+        Window(int days) {
+            this.days = days;
+        }
+    }
+
+    public enum Kind { TITLE, AUTHOR }
+
+    /** One ranked title (BookID and title) or author (name twice), with its loan count estimate. */
+    public record Ranked(String id, String label, long count, long minimum) {
+    }
+
+    private final int capacity;
+
+    // Catalog codes: BookKey -> book code -> author code; grows as new titles show up
+    private final IntIntHashMap bookOfKey = new IntIntHashMap();  // BookKey -> book code + 1
+    private final StringIndex books = new StringIndex();
+    private final StringIndex authors = new StringIndex();
+    private final List<String> titles = new ArrayList<>();
+    private final List<Integer> authorOf = new ArrayList<>();
+
+    private final Day[] days = new Day[DAYS];
+    private SpaceSaving allTitles;
+    private SpaceSaving allAuthors;
+    private long lastKey;                                         // highest TransactionKey counted
+    private final NavigableSet<Long> countedKeys = new TreeSet<>(); // keys counted within TAIL_WINDOW of lastKey
+    private final Set<String> countedHere = new HashSet<>();     // loans counted by recordLoan, not yet tailed
+    private long builds;                                          // bumped by every rebuild
+    private volatile boolean ready;
+    private ScheduledExecutorService tailer;
+
+    /** The summaries of one calendar day. */
+    private static final class Day {
+        final long epochDay;
+        final SpaceSaving titles, authors;
+
+        Day(long epochDay, int capacity) {
+            this(epochDay, new SpaceSaving(capacity), new SpaceSaving(capacity));
+        }
+
+        Day(long epochDay, SpaceSaving titles, SpaceSaving authors) {
+            this.epochDay = epochDay;
+            this.titles = titles;
+            this.authors = authors;
+        }
+    }
+
+    /** Separate instances are for tools comparing capacities; the application uses {@link #getInstance}. */
+    public PopularityIndex(int capacity) {
+        this.capacity = capacity;
+        this.allTitles = new SpaceSaving(capacity);
+        this.allAuthors = new SpaceSaving(capacity);
+    }
+
+    public static PopularityIndex getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // ---------------------------------------------
+    // --- QUERY ---
+    // ---------------------------------------------
+    /**
+     * Up to {@code k} most borrowed titles or authors in the window, most borrowed first.
+     * Empty until the first build has finished.
+     */
+    public synchronized List<Ranked> top(Window window, Kind kind, int k) {
+        List<Ranked> result = new ArrayList<>();
+        if (!ready) return result;
+
+        SpaceSaving summary;
+        if (window == Window.ALL_TIME) {
+            summary = kind == Kind.TITLE ? allTitles : allAuthors;
+        } else {
+            long first = LocalDate.now().toEpochDay() - window.days + 1;
+            List<SpaceSaving> parts = new ArrayList<>();
+            for (Day day : days) {
+                if (day != null && day.epochDay >= first) parts.add(kind == Kind.TITLE ? day.titles : day.authors);
+            }
+            summary = SpaceSaving.merge(parts, capacity);
+        }
+        for (SpaceSaving.Entry e : summary.top(k)) {
+            if (kind == Kind.TITLE) {
+                result.add(new Ranked(books.idOf(e.key()), titles.get(e.key()), e.count(), e.count() - e.error()));
+            } else {
+                String author = authors.idOf(e.key());
+                result.add(new Ranked(author, author, e.count(), e.count() - e.error()));
+            }
+        }
+        return result;
+    }
+
+    // ---------------------------------------------
+    // --- FULL BUILD ---
+    // ---------------------------------------------
+    /**
+     * Rebuilds every summary from the transactions table. The TransactionKey range is split
+     * into parts read in parallel (a primary key range scan each, no join: loans carry
+     * BookKey, which the catalog read maps to titles and authors).
+     */
+    public void rebuild() throws SQLException {
+        long started = System.nanoTime();
+        String rangeSql = "SELECT MIN(TransactionKey), MAX(TransactionKey) FROM transactions";
+
+        long min, max;
+        Codes codes;
+        synchronized (this) {
+            readCatalog(null);
+            codes = snapshotCodes();
+        }
+        try (Connection link = DBConnector.getReadConnection();
+             PreparedStatement state = link.prepareStatement(rangeSql);
+             ResultSet resultSet = state.executeQuery()) {
+            resultSet.next();
+            min = resultSet.getLong(1);
+            max = resultSet.getLong(2);
+        } catch (SQLException e) {
+            LOG.atError("rebuild").message("Error reading the loan range").cause(e).log();
+            throw e;
+        }
+
+        long today = LocalDate.now().toEpochDay();
+        int parts = (int) Math.max(1, Math.min(Math.min(MAX_PARTS, Runtime.getRuntime().availableProcessors()),
+                                               (max - min) / TAIL_BATCH + 1));
+        long span = (max - min) / parts + 1;
+
+        List<Partial> partials = new ArrayList<>();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parts, r -> {
+            Thread t = new Thread(r, "popularity-rebuild-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Partial>> futures = new ArrayList<>();
+            for (int i = 0; i < parts; i++) {
+                long from = min + i * span;
+                long to = Math.min(max, from + span - 1);
+                futures.add(pool.submit(() -> scan(from, to, max - TAIL_WINDOW, today, codes)));
+            }
+            for (Future<Partial> future : futures) partials.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Popularity rebuild interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            LOG.atError("rebuild").latencySince(started).message("Error building popularity index").cause(cause).log();
+            if (cause instanceof SQLException sqlException) throw sqlException;
+            throw new SQLException("Popularity rebuild failed", cause);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long loans = 0;
+        synchronized (this) {
+            List<SpaceSaving> titleParts = new ArrayList<>();
+            List<SpaceSaving> authorParts = new ArrayList<>();
+            for (Partial p : partials) {
+                titleParts.add(p.titles);
+                authorParts.add(p.authors);
+                loans += p.titles.total();
+            }
+            allTitles = SpaceSaving.merge(titleParts, capacity);
+            allAuthors = SpaceSaving.merge(authorParts, capacity);
+            for (int d = 0; d < DAYS; d++) {
+                long epochDay = today - d;
+                titleParts.clear();
+                authorParts.clear();
+                for (Partial p : partials) {
+                    if (p.dayTitles[d] == null) continue;
+                    titleParts.add(p.dayTitles[d]);
+                    authorParts.add(p.dayAuthors[d]);
+                }
+                Day day = new Day(epochDay, capacity);
+                if (!titleParts.isEmpty()) {
+                    day = new Day(epochDay, SpaceSaving.merge(titleParts, capacity), SpaceSaving.merge(authorParts, capacity));
+                }
+                days[slotOf(epochDay)] = day;
+            }
+            lastKey = max;
+            countedKeys.clear();
+            for (Partial p : partials) countedKeys.addAll(p.recentKeys);
+            countedHere.clear();
+            builds++;
+            ready = true;
+        }
+        LOG.atInfo("rebuild").field("loans", loans).field("parts", parts).latencySince(started).log();
+    }
+
+    /** The summaries of one TransactionKey range; day d of the arrays is today minus d. */
+    private static final class Partial {
+        final SpaceSaving titles, authors;
+        final SpaceSaving[] dayTitles = new SpaceSaving[DAYS];
+        final SpaceSaving[] dayAuthors = new SpaceSaving[DAYS];
+        final List<Long> recentKeys = new ArrayList<>(); // counted keys the first catch-up re-reads
+
+        Partial(int capacity) {
+            titles = new SpaceSaving(capacity);
+            authors = new SpaceSaving(capacity);
+        }
+    }
+
+    /** Catalog codes frozen for the parallel scans: BookKey -> book code + 1, book code -> author code. */
+    private record Codes(int[] bookOfKey, int[] authorOf) {
+    }
+
+    private Codes snapshotCodes() {
+        int[] maxKey = { 0 };
+        bookOfKey.forEach((key, book) -> maxKey[0] = Math.max(maxKey[0], key));
+        int[] byKey = new int[maxKey[0] + 1];
+        bookOfKey.forEach((key, book) -> byKey[key] = book);
+        int[] byBook = new int[authorOf.size()];
+        for (int b = 0; b < byBook.length; b++) byBook[b] = authorOf.get(b);
+        return new Codes(byKey, byBook);
+    }
+
+    private Partial scan(long from, long to, long windowFloor, long today, Codes codes) throws SQLException {
+        String sql = "SELECT TransactionKey, BookKey, DateBorrowed FROM transactions WHERE TransactionKey BETWEEN ? AND ?";
+
+        Partial partial = new Partial(capacity);
+        try (Connection link = DBConnector.getReadConnection();
+             PreparedStatement state = link.prepareStatement(sql)) {
+            state.setLong(1, from);
+            state.setLong(2, to);
+            state.setFetchSize(10_000);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    long key = resultSet.getLong(1);
+                    long bookKey = resultSet.getLong(2);
+                    int book = bookKey < codes.bookOfKey.length ? codes.bookOfKey[(int) bookKey] - 1 : -1;
+                    if (book < 0) continue; // title added after the catalog read
+                    int author = codes.authorOf[book];
+                    partial.titles.offer(book);
+                    partial.authors.offer(author);
+                    if (key > windowFloor) partial.recentKeys.add(key);
+                    long age = today - resultSet.getDate(3).toLocalDate().toEpochDay();
+                    if (age < 0 || age >= DAYS) continue;
+                    int d = (int) age;
+                    if (partial.dayTitles[d] == null) {
+                        partial.dayTitles[d] = new SpaceSaving(capacity);
+                        partial.dayAuthors[d] = new SpaceSaving(capacity);
+                    }
+                    partial.dayTitles[d].offer(book);
+                    partial.dayAuthors[d].offer(author);
+                }
+            }
+        }
+        return partial;
+    }
+
+    // ---------------------------------------------
+    // --- INCREMENTAL UPDATE ---
+    // ---------------------------------------------
+    /**
+     * Counts one new loan. Called after TransactionDAO.borrowBook succeeds; ignored until the
+     * first build has finished (the build reads every loan committed before it). A title the
+     * index has not seen yet is left to {@link #catchUp}, which reads its catalog row.
+     */
+    public synchronized void recordLoan(String transactionID, String bookID, LocalDate dateBorrowed) {
+        if (!ready) return;
+        int book = books.find(bookID);
+        if (book < 0 || book >= authorOf.size()) return;
+        count(book, dateBorrowed.toEpochDay());
+        if (tailer != null) countedHere.add(transactionID); // the tail must not count it again
+    }
+
+    /**
+     * Counts the loans added to the transactions table since the last build or catch-up,
+     * skipping those {@link #recordLoan} has counted already. Returns the number counted.
+     * Reads the primary, so that loans are counted as soon as they commit, without
+     * holding the other reads on the primary (DBConnector.getPrimaryReadConnection).
+     */
+    public int catchUp() throws SQLException {
+        if (!ready) return 0;
+        String sql = "SELECT TransactionKey, TransactionID, BookKey, DateBorrowed FROM transactions " +
+                     "WHERE TransactionKey > ? ORDER BY TransactionKey LIMIT " + TAIL_BATCH;
+
+        int counted = 0;
+        long generation;
+        long from;
+        synchronized (this) {
+            generation = builds;
+            from = Math.max(0, lastKey - TAIL_WINDOW); // loans that committed after a higher key was read
+        }
+        while (true) {
+            List<Object[]> rows = new ArrayList<>();
+            try (Connection link = DBConnector.getPrimaryReadConnection();
+                 PreparedStatement state = link.prepareStatement(sql)) {
+                state.setLong(1, from);
+                try (ResultSet resultSet = state.executeQuery()) {
+                    while (resultSet.next()) {
+                        rows.add(new Object[] { resultSet.getLong(1), resultSet.getString(2),
+                                                resultSet.getLong(3), resultSet.getDate(4) });
+                    }
+                }
+            } catch (SQLException e) {
+                LOG.atError("catchUp").field("fromKey", from).message("Error reading new loans").cause(e).log();
+                throw e;
+            }
+            if (rows.isEmpty()) return counted;
+
+            synchronized (this) {
+                if (builds != generation) return counted; // a rebuild ran meanwhile and read these loans
+                for (Object[] row : rows) {
+                    long key = (Long) row[0];
+                    if (key <= lastKey - TAIL_WINDOW || !countedKeys.add(key)) continue; // counted already
+                    lastKey = Math.max(lastKey, key);
+                    if (countedHere.remove((String) row[1])) continue;
+                    int bookKey = Math.toIntExact((Long) row[2]);
+                    if (!bookOfKey.containsKey(bookKey)) readCatalog(bookKey);
+                    int book = bookOfKey.get(bookKey) - 1;
+                    if (book < 0) continue; // deleted since
+                    count(book, ((Date) row[3]).toLocalDate().toEpochDay());
+                    counted++;
+                }
+                countedKeys.headSet(lastKey - TAIL_WINDOW, true).clear();
+            }
+            if (rows.size() < TAIL_BATCH) return counted;
+            from = (Long) rows.get(rows.size() - 1)[0];
+        }
+    }
+
+    /** Runs {@link #catchUp} every {@code periodSeconds} on a background thread. */
+    public synchronized void startTailing(long periodSeconds) {
+        if (tailer != null) return;
+        tailer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "popularity-tail");
+            t.setDaemon(true);
+            return t;
+        });
+        tailer.scheduleWithFixedDelay(() -> {
+            try {
+                catchUp();
+            } catch (SQLException e) {
+                // Logged by catchUp; the next tick continues from the same key
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopTailing() {
+        if (tailer != null) {
+            tailer.shutdownNow();
+            tailer = null;
+            countedHere.clear();
+        }
+    }
+
+    private void count(int book, long epochDay) {
+        int author = authorOf.get(book);
+        allTitles.offer(book);
+        allAuthors.offer(author);
+        long today = LocalDate.now().toEpochDay();
+        if (epochDay > today || epochDay <= today - DAYS) return;
+        int slot = slotOf(epochDay);
+        Day day = days[slot];
+        if (day == null || day.epochDay < epochDay) {
+            day = new Day(epochDay, capacity); // the slot held a day that has left the month
+            days[slot] = day;
+        } else if (day.epochDay > epochDay) {
+            return;
+        }
+        day.titles.offer(book);
+        day.authors.offer(author);
+    }
+
+    private static int slotOf(long epochDay) {
+        return (int) Math.floorMod(epochDay, (long) DAYS);
+    }
+
+    // ---------------------------------------------
+    // --- CATALOG CODES ---
+    // ---------------------------------------------
+    /**
+     * Reads titles and authors into the code tables: the whole catalog, or only the title
+     * with {@code bookKey}. Codes never change once assigned, so summaries stay valid.
+     * Callers hold the lock.
+     */
+    private void readCatalog(Integer bookKey) throws SQLException {
+        String sql = "SELECT BookKey, BookID, Title, Author FROM books" + (bookKey != null ? " WHERE BookKey = ?" : "");
+
+        try (Connection link = bookKey != null ? DBConnector.getPrimaryReadConnection() : DBConnector.getReadConnection();
+             PreparedStatement state = link.prepareStatement(sql)) {
+            if (bookKey != null) state.setInt(1, bookKey);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    int key = Math.toIntExact(resultSet.getLong(1));
+                    int book = books.intern(resultSet.getString(2));
+                    if (book == titles.size()) {
+                        titles.add(resultSet.getString(3));
+                        authorOf.add(authors.intern(resultSet.getString(4)));
+                    }
+                    bookOfKey.put(key, book + 1);
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("readCatalog").message("Error reading titles for the popularity index").cause(e).log();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package library.utilities;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-process cache of read query results, keyed by SQL text plus parameters.
+ *
+ * Each entry names the tables it was read from and has its own time to live. The DAO
+ * write methods call {@link #invalidate} for the tables they change, so this desk
+ * never sees its own writes go missing. Writes made by other desks show up once the
+ * entry expires, so the TTL is the longest a cached read can lag behind them.
+ *
+ * Memory is bounded by an estimate of the entries' size (rows x columns). The least
+ * recently used entries are evicted first. A result bigger than a quarter of the
+ * bound is returned without being cached.
+ *
+ * A load that overlaps a write to one of its tables is not cached, so an entry can
+ * never hold rows older than an invalidation.
+ */
+public class QueryCache {
+
+    // Rough heap cost of a mapped row: object header and fields, plus per column a
+    // short String (header, byte array and a dozen or so characters)
+    private static final int ROW_OVERHEAD_BYTES = 32;
+    private static final int COLUMN_BYTES = 64;
+
+    private static final QueryCache INSTANCE =
+        new QueryCache(Long.getLong("patronmanager.cache.maxBytes", 32L << 20));
+
+    /** Runs the query on a miss. */
+    @FunctionalInterface
+    public interface Loader<T> {
+        List<T> load() throws SQLException;
+    }
+
+    /** Counters since start (or the last {@link #clear}). */
+    public record Stats(long hits, long misses, long evictions, long expirations, long invalidations,
+                        int entries, long estimatedBytes, long maxBytes) {
+        public double hitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%d entries, ~%d KiB of %d KiB, hit ratio %.1f%% (%d hits, %d misses), %d evicted, %d expired, %d invalidated",
+                entries, estimatedBytes >> 10, maxBytes >> 10, hitRatio() * 100, hits, misses,
+                evictions, expirations, invalidations);
+        }
+    }
+
+    private record Key(String sql, List<Object> params) {}
+
+    private record Entry(List<?> rows, String[] tables, long expiresAt, long bytes) {}
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true); // access order = LRU
+    private final Map<String, Long> tableGenerations = new HashMap<>();
+    private long bytes;
+    private long hits, misses, evictions, expirations, invalidations;
+
+    QueryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static QueryCache getInstance() {
+        return INSTANCE;
+    }
+
+    // ---------------------------------------------
+    // --- LOOKUP ---
+    // ---------------------------------------------
+    /**
+     * Returns the cached result of {@code sql} with {@code params}, or runs the loader
+     * and caches its result for {@code ttlMillis}. {@code tables} are the tables the
+     * query reads; {@code columns} is the width of a row, for the size estimate.
+     * The caller gets its own copy of the list; the rows are shared.
+     */
+    public <T> List<T> get(String sql, List<Object> params, String[] tables, int columns,
+                           long ttlMillis, Loader<T> loader) throws SQLException {
+        Key key = new Key(sql, params);
+        long[] generations;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt() - System.nanoTime() > 0) {
+                    hits++;
+                    @SuppressWarnings("unchecked")
+                    List<T> rows = (List<T>) entry.rows();
+                    return new ArrayList<>(rows);
+                }
+                remove(key, entry);
+                expirations++;
+            }
+            misses++;
+            generations = generationsOf(tables);
+        }
+
+        List<T> rows = loader.load(); // outside the lock: other queries are not held up
+        long size = (long) rows.size() * (ROW_OVERHEAD_BYTES + (long) columns * COLUMN_BYTES);
+
+        synchronized (this) {
+            if (size <= maxBytes / 4 && Arrays.equals(generations, generationsOf(tables))) {
+                Entry old = entries.put(key, new Entry(List.copyOf(rows), tables,
+                    System.nanoTime() + ttlMillis * 1_000_000, size));
+                if (old != null) bytes -= old.bytes();
+                bytes += size;
+                evictToBound();
+            }
+        }
+        return rows;
+    }
+
+    // ---------------------------------------------
+    // --- INVALIDATION ---
+    // ---------------------------------------------
+    /**
+     * Drops every entry read from any of the tables. Called by the DAOs after a write
+     * to those tables has committed.
+     */
+    public synchronized void invalidate(String... tables) {
+        for (String table : tables) tableGenerations.merge(table, 1L, Long::sum);
+
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (readsAny(entry, tables)) {
+                bytes -= entry.bytes();
+                invalidations++;
+                it.remove();
+            }
+        }
+    }
+
+    /** Empties the cache and resets the counters (e.g. the global Refresh button). */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            for (String table : entry.tables()) tableGenerations.merge(table, 1L, Long::sum);
+        }
+        entries.clear();
+        bytes = 0;
+        hits = misses = evictions = expirations = invalidations = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, expirations, invalidations, entries.size(), bytes, maxBytes);
+    }
+
+    // ---------------------------------------------
+    // --- INTERNALS (callers hold the lock) ---
+    // ---------------------------------------------
+    private long[] generationsOf(String[] tables) {
+        long[] generations = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) generations[i] = tableGenerations.getOrDefault(tables[i], 0L);
+        return generations;
+    }
+
+    private static boolean readsAny(Entry entry, String[] tables) {
+        for (String read : entry.tables()) {
+            for (String written : tables) {
+                if (read.equals(written)) return true;
+            }
+        }
+        return false;
+    }
+
+    private void remove(Key key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.bytes();
+    }
+
+    private void evictToBound() {
+        Iterator<Entry> it = entries.values().iterator(); // least recently used first
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().bytes();
+            it.remove();
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package library.utilities;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import configuration.DBConnector;
+import library.logging.Log;
+import library.models.Book;
+import library.models.Category;
+import library.models.Patron;
+
+/**
+ * Local copy of the reference data (categories, books, patrons), stamped with the
+ * change versions it was read at (table 'change_versions', bumped by triggers on
+ * every change to these tables).
+ *
+ * A desk shows the snapshot at startup instead of waiting for the database, then
+ * calls {@link #readChanged} in the background: it compares the change versions and
+ * re-reads only the tables that changed. The categories are always re-read, because
+ * their counters move with every loan; books are also re-read when a category
+ * changed, because each book row shows its category's name. The copies of each title
+ * move with every loan too, but outside 'books' (table 'book_stock'), so an unchanged
+ * catalog only has its counters refreshed.
+ *
+ * The file is a compact binary (length-prefixed UTF-8 strings, fixed-width numbers,
+ * CRC32 trailer) that is memory-mapped to read: decoding it is the only work before
+ * the first table can be shown. It is written to a temporary file and moved into
+ * place, so a desk never reads a half-written snapshot; a snapshot that is missing,
+ * damaged or of another format is ignored.
+ */
+public class ReferenceSnapshot {
+
+    private static final Log LOG = Log.get(ReferenceSnapshot.class);
+
+    private static final int MAGIC = 0x504D5253; // "PMRS"
+    private static final int FORMAT = 2; // 2: copies available and owned per book
+    private static final long UNKNOWN = -1; // versions not readable: always re-read
+    private static final int[] NO_STOCK = { 0, 0 };
+
+    /** Change versions of the three tables, as read from 'change_versions'. */
+    public record ChangeVersions(long categories, long books, long patrons) {
+        static final ChangeVersions NONE = new ChangeVersions(UNKNOWN, UNKNOWN, UNKNOWN);
+    }
+
+    private final ChangeVersions versions;
+    private final List<Category> categories;
+    private final List<Book> books;
+    private final List<Patron> patrons;
+
+    public ReferenceSnapshot(ChangeVersions versions, List<Category> categories, List<Book> books, List<Patron> patrons) {
+        this.versions = versions;
+        this.categories = categories;
+        this.books = books;
+        this.patrons = patrons;
+    }
+
+    public ChangeVersions getVersions() {
+        return versions;
+    }
+    public List<Category> getCategories() {
+        return categories;
+    }
+    public List<Book> getBooks() {
+        return books;
+    }
+    public List<Patron> getPatrons() {
+        return patrons;
+    }
+
+    /** ~/.patron-manager/reference.snapshot, or -Dpatronmanager.referenceSnapshot. */
+    public static Path defaultFile() {
+        String configured = System.getProperty("patronmanager.referenceSnapshot");
+        return configured != null
+            ? Paths.get(configured)
+            : Paths.get(System.getProperty("user.home"), ".patron-manager", "reference.snapshot");
+    }
+
+    // ---------------------------------------------
+    // --- RECONCILE WITH THE DATABASE ---
+    // ---------------------------------------------
+    /**
+     * Reads the current change versions, then re-reads the tables changed since
+     * {@code previous} (all of them if it is null). Unchanged tables keep the previous
+     * snapshot's list, so callers can tell what changed by identity.
+     *
+     * The versions are read before the rows, and on the same connection: a replica
+     * fresher than the one the rows come from would stamp the snapshot with versions
+     * newer than its data, and the next start would keep the stale rows. A change made
+     * meanwhile is re-read next time rather than missed. The DAOs' cache is emptied for
+     * the tables re-read.
+     */
+    public static ReferenceSnapshot readChanged(ReferenceSnapshot previous) throws SQLException {
+        try (Connection link = DBConnector.getReadConnection()) {
+            ChangeVersions now = readVersions(link);
+            ChangeVersions then = previous != null ? previous.versions : ChangeVersions.NONE;
+            boolean categoriesChanged = changed(then.categories(), now.categories());
+            boolean booksChanged = categoriesChanged || changed(then.books(), now.books());
+            boolean patronsChanged = changed(then.patrons(), now.patrons());
+
+            QueryCache.getInstance().invalidate("categories", "category_stats");
+            List<Category> categories = CategoryDAO.readAllCategories(link);
+            List<Book> books = previous != null && !booksChanged ? withStock(previous.books, BookStockDAO.readAllStock(link)) : null;
+            if (books == null) {
+                QueryCache.getInstance().invalidate("books");
+                books = BookDAO.readAllBooks(link);
+            }
+            List<Patron> patrons = previous != null && !patronsChanged ? previous.patrons : null;
+            if (patrons == null) {
+                QueryCache.getInstance().invalidate("patrons");
+                patrons = PatronDAO.readAllPatrons(link);
+            }
+            return new ReferenceSnapshot(now, categories, books, patrons);
+        } catch (SQLException e) {
+            LOG.atError("readChanged").message("Error reading the reference data").cause(e).log();
+            throw e;
+        }
+    }
+
+    /**
+     * The books with the given counters (BookID -> {available, total}): the same list if
+     * none differs, otherwise a new list in which the books that differ are copies.
+     */
+    private static List<Book> withStock(List<Book> books, Map<String, int[]> stock) {
+        List<Book> updated = null;
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            int[] counts = stock.getOrDefault(book.getBookID(), NO_STOCK);
+            if (book.getAvailableCopies() == counts[0] && book.getTotalCopies() == counts[1]) continue;
+            if (updated == null) updated = new ArrayList<>(books);
+            Book copy = new Book(book);
+            copy.setAvailableCopies(counts[0]);
+            copy.setTotalCopies(counts[1]);
+            updated.set(i, copy);
+        }
+        return updated != null ? updated : books;
+    }
+
+    private static boolean changed(long then, long now) {
+        return then == UNKNOWN || now == UNKNOWN || then != now;
+    }
+
+    /**
+     * The change versions in the database. A database without the table (migration 005
+     * not applied) reports every table as changed.
+     */
+    public static ChangeVersions readVersions() throws SQLException {
+        try (Connection link = DBConnector.getReadConnection()) {
+            return readVersions(link);
+        }
+    }
+
+    private static ChangeVersions readVersions(Connection link) throws SQLException {
+        String sql = "SELECT TableName, Version FROM change_versions";
+        long categories = UNKNOWN, books = UNKNOWN, patrons = UNKNOWN;
+        try (PreparedStatement state = link.prepareStatement(sql);
+             ResultSet resultSet = state.executeQuery()) {
+            while (resultSet.next()) {
+                switch (resultSet.getString(1)) {
+                    case "categories" -> categories = resultSet.getLong(2);
+                    case "books" -> books = resultSet.getLong(2);
+                    case "patrons" -> patrons = resultSet.getLong(2);
+                    default -> { }
+                }
+            }
+        } catch (SQLException e) {
+            if (!"42S02".equals(e.getSQLState())) throw e; // table not found
+            LOG.atWarn("readVersions").message("No change versions in this database (migration 005 not applied): reading everything").log();
+        }
+        return new ChangeVersions(categories, books, patrons);
+    }
+
+    // ---------------------------------------------
+    // --- FILE ---
+    // ---------------------------------------------
+    /** Writes the snapshot, replacing the file atomically. */
+    public void write(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = parent.resolve(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(versions.categories());
+            out.writeLong(versions.books());
+            out.writeLong(versions.patrons());
+
+            out.writeInt(categories.size());
+            for (Category category : categories) {
+                writeString(out, category.getCategoryID());
+                writeString(out, category.getCategoryName());
+                out.writeInt(category.getBookCount());
+                out.writeInt(category.getOnLoanCount());
+                out.writeLong(category.getLoanTotal());
+            }
+            out.writeInt(books.size());
+            for (Book book : books) {
+                writeString(out, book.getBookID());
+                writeString(out, book.getTitle());
+                writeString(out, book.getAuthor());
+                writeString(out, book.getIsbn());
+                out.writeInt(book.getPublicationYear());
+                writeString(out, book.getCategoryID());
+                writeString(out, book.getCategoryName());
+                out.writeInt(book.getVersion());
+                out.writeInt(book.getAvailableCopies());
+                out.writeInt(book.getTotalCopies());
+            }
+            out.writeInt(patrons.size());
+            for (Patron patron : patrons) {
+                writeString(out, patron.getPatronID());
+                writeString(out, patron.getFirstName());
+                writeString(out, patron.getLastName());
+                writeString(out, patron.getEmail());
+                writeString(out, patron.getPhone());
+                writeString(out, patron.getAddress());
+                out.writeInt(patron.getVersion());
+            }
+            out.flush();
+            new DataOutputStream(raw).writeInt((int) crc.getValue()); // trailer, not part of the checksum
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Reads a snapshot file; null if there is none or it cannot be used. */
+    public static ReferenceSnapshot read(Path file) {
+        if (!Files.exists(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 32 || size > Integer.MAX_VALUE) throw new IOException("unexpected size " + size);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int end = (int) size - 4;
+            CRC32 crc = new CRC32();
+            crc.update(map.slice(0, end));
+            if ((int) crc.getValue() != map.getInt(end)) throw new IOException("checksum mismatch");
+            if (map.getInt() != MAGIC || map.getInt() != FORMAT) throw new IOException("not a snapshot of this format");
+            ChangeVersions versions = new ChangeVersions(map.getLong(), map.getLong(), map.getLong());
+
+            int count = map.getInt();
+            List<Category> categories = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                categories.add(new Category(readString(map), readString(map), map.getInt(), map.getInt(), map.getLong()));
+            }
+            count = map.getInt();
+            List<Book> books = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Book book = new Book(readString(map), readString(map), readString(map), readString(map),
+                                     map.getInt(), readString(map), readString(map));
+                book.setVersion(map.getInt());
+                book.setAvailableCopies(map.getInt());
+                book.setTotalCopies(map.getInt());
+                books.add(book);
+            }
+            count = map.getInt();
+            List<Patron> patrons = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Patron patron = new Patron(readString(map), readString(map), readString(map), readString(map),
+                                           readString(map), readString(map));
+                patron.setVersion(map.getInt());
+                patrons.add(patron);
+            }
+            if (map.position() != end) throw new IOException("trailing bytes");
+            return new ReferenceSnapshot(versions, categories, books, patrons);
+        } catch (IOException | RuntimeException e) {
+            LOG.atWarn("read").field("file", file).message("Reference snapshot not used").cause(e).log();
+            return null;
+        }
+    }
+
+    // A string is its UTF-8 length (-1 for null) followed by its bytes
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer map) {
+        int length = map.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        map.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,184 @@
+package library.utilities;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import configuration.DBConnector;
+import library.logging.Log;
+import library.models.Reminder;
+
+/**
+ * Data access for due-date reminders.
+ *
+ * Candidates are open loans due on or before a cut-off date, read page by page in
+ * (DueDate, TransactionID) order from the index on (DateReturned, DueDate), so the
+ * query touches only open loans in the date range instead of scanning transactions.
+ *
+ * The 'reminders_sent' table makes sending idempotent: a reminder is claimed (PENDING)
+ * before it is sent and marked SENT afterwards. A reminder already SENT is never sent
+ * again; one left PENDING by a crash is retried, and the sink drops it if it had
+ * already been delivered (see Reminder.getIdempotencyKey()).
+ */
+public class ReminderDAO {
+
+    private static final Log LOG = Log.get(ReminderDAO.class);
+
+    private static final String RUN_LOCK = "patronmanager.reminders";
+    private static final Date BEFORE_ANY_DUE_DATE = Date.valueOf(LocalDate.of(1000, 1, 1));
+
+    // ---------------------------------------------
+    // --- CANDIDATES ---
+    // ---------------------------------------------
+    /**
+     * One page of open loans due on or before {@code dueBy}, after the keyset position
+     * (afterDue, afterID); pass nulls for the first page.
+     */
+    public List<Reminder> readCandidates(LocalDate today, LocalDate dueBy, int overdueEveryDays,
+                                         LocalDate afterDue, String afterID, int limit) throws SQLException {
+        String sql = "SELECT t.TransactionID, p.PatronID, t.DueDate, p.FirstName, p.LastName, p.Email, b.Title " +
+                     "FROM transactions t " +
+                     "JOIN patrons p ON p.PatronKey = t.PatronKey " +
+                     "JOIN books b ON b.BookKey = t.BookKey " +
+                     "WHERE t.DateReturned IS NULL AND t.DueDate <= ? " +
+                     "AND (t.DueDate > ? OR (t.DueDate = ? AND t.TransactionID > ?)) " +
+                     "ORDER BY t.DueDate, t.TransactionID LIMIT ?";
+
+        List<Reminder> page = new ArrayList<>(limit);
+        try (Connection link = DBConnector.getReadConnection();
+             PreparedStatement state = link.prepareStatement(sql)) {
+
+            state.setDate(1, Date.valueOf(dueBy));
+            Date from = afterDue != null ? Date.valueOf(afterDue) : BEFORE_ANY_DUE_DATE;
+            state.setDate(2, from);
+            state.setDate(3, from);
+            state.setString(4, afterID != null ? afterID : "");
+            state.setInt(5, limit);
+
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    LocalDate due = resultSet.getDate("DueDate").toLocalDate();
+                    String kind;
+                    LocalDate keyDate;
+                    if (!due.isBefore(today)) {
+                        kind = Reminder.DUE_SOON;
+                        keyDate = due;
+                    } else {
+                        // One overdue reminder per period: days 1, 1 + every, 1 + 2 * every, ... after the due date
+                        long late = today.toEpochDay() - due.toEpochDay();
+                        kind = Reminder.OVERDUE;
+                        keyDate = due.plusDays(1 + (late - 1) / overdueEveryDays * overdueEveryDays);
+                    }
+                    page.add(new Reminder(
+                        resultSet.getString("TransactionID"),
+                        resultSet.getString("PatronID"),
+                        resultSet.getString("FirstName") + " " + resultSet.getString("LastName"),
+                        resultSet.getString("Email"),
+                        resultSet.getString("Title"),
+                        due, kind, keyDate));
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("readCandidates").message("Error reading reminder candidates").cause(e).log();
+            throw e;
+        }
+        return page;
+    }
+
+    // ---------------------------------------------
+    // --- IDEMPOTENCY ---
+    // ---------------------------------------------
+    /**
+     * Claims a batch of reminders and returns the ones that still have to be sent
+     * (new claims, and claims left PENDING by an earlier, interrupted run).
+     */
+    public List<Reminder> claim(List<Reminder> batch) throws SQLException {
+        if (batch.isEmpty()) return batch;
+        String claimSql = "INSERT IGNORE INTO reminders_sent (TransactionID, Kind, KeyDate, Status) VALUES (?, ?, ?, 'PENDING')";
+
+        StringBuilder sentSql = new StringBuilder(
+            "SELECT TransactionID, Kind, KeyDate FROM reminders_sent WHERE Status = 'SENT' AND TransactionID IN (");
+        for (int i = 0; i < batch.size(); i++) sentSql.append(i == 0 ? "?" : ", ?");
+        sentSql.append(')');
+
+        Set<String> sent = new HashSet<>();
+        try (Connection link = DBConnector.getConnection()) {
+            try (PreparedStatement state = link.prepareStatement(claimSql)) {
+                for (Reminder r : batch) {
+                    state.setString(1, r.getTransactionID());
+                    state.setString(2, r.getKind());
+                    state.setDate(3, Date.valueOf(r.getKeyDate()));
+                    state.addBatch();
+                }
+                state.executeBatch();
+            }
+            try (PreparedStatement state = link.prepareStatement(sentSql.toString())) {
+                for (int i = 0; i < batch.size(); i++) state.setString(i + 1, batch.get(i).getTransactionID());
+                try (ResultSet resultSet = state.executeQuery()) {
+                    while (resultSet.next()) {
+                        sent.add(resultSet.getString(1) + "_" + resultSet.getString(2) + "_" + resultSet.getDate(3).toLocalDate());
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("claim").field("reminders", batch.size()).message("Error claiming reminders").cause(e).log();
+            throw e;
+        }
+
+        List<Reminder> toSend = new ArrayList<>(batch.size());
+        for (Reminder r : batch) {
+            if (!sent.contains(r.getIdempotencyKey())) toSend.add(r);
+        }
+        return toSend;
+    }
+
+    public void markSent(List<Reminder> delivered) throws SQLException {
+        if (delivered.isEmpty()) return;
+        String sql = "UPDATE reminders_sent SET Status = 'SENT', SentAt = current_timestamp() " +
+                     "WHERE TransactionID = ? AND Kind = ? AND KeyDate = ?";
+
+        try (Connection link = DBConnector.getConnection();
+             PreparedStatement state = link.prepareStatement(sql)) {
+            for (Reminder r : delivered) {
+                state.setString(1, r.getTransactionID());
+                state.setString(2, r.getKind());
+                state.setDate(3, Date.valueOf(r.getKeyDate()));
+                state.addBatch();
+            }
+            state.executeBatch();
+        } catch (SQLException e) {
+            LOG.atError("markSent").field("reminders", delivered.size()).message("Error recording sent reminders").cause(e).log();
+            throw e;
+        }
+    }
+
+    // ---------------------------------------------
+    // --- RUN LOCK ---
+    // ---------------------------------------------
+    /**
+     * Takes the server-wide reminder lock so only one desk runs the job at a time.
+     * Returns the connection holding the lock (close it to release), or null if another
+     * desk is already running.
+     */
+    public Connection tryLockRun() throws SQLException {
+        Connection link = DBConnector.getConnection();
+        try (PreparedStatement state = link.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            state.setString(1, RUN_LOCK);
+            try (ResultSet resultSet = state.executeQuery()) {
+                if (resultSet.next() && resultSet.getInt(1) == 1) return link;
+            }
+        } catch (SQLException e) {
+            link.close();
+            throw e;
+        }
+        link.close();
+        return null;
+    }
+}
@@ -0,0 +1,13 @@
+package library.utilities;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set to an object. See {@link RowMappers}.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    T map(ResultSet resultSet) throws SQLException;
+}
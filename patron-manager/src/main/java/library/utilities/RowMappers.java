@@ -0,0 +1,117 @@
+package library.utilities;
+
+import library.models.Book;
+import library.models.Category;
+import library.models.Patron;
+import library.models.Transaction;
+
+/**
+ * Select lists and the row mappers that read them.
+ *
+ * Each mapper reads its columns by position, in the order of the select list defined
+ * next to it, and calls the model constructor directly: no label lookup per value and
+ * no reflection. A query selects a list first and may append its own columns after it;
+ * read those at {@code WIDTH + 1} onwards. Change a list and its mapper together.
+ */
+public final class RowMappers {
+
+    private RowMappers() {}
+
+    // ---------------------------------------------
+    // --- BOOKS (books b JOIN categories c LEFT JOIN book_stock k) ---
+    // ---------------------------------------------
+    public static final String BOOK_TABLES =
+        "books b JOIN categories c ON b.CategoryID = c.CategoryID LEFT JOIN book_stock k ON k.BookKey = b.BookKey";
+    public static final String BOOK_COLUMNS =
+        "b.BookID, b.Title, b.Author, b.ISBN, b.PublicationYear, b.CategoryID, c.CategoryName, b.Version, " +
+        "k.AvailableCopies, k.TotalCopies";
+    public static final int BOOK_WIDTH = 10;
+
+    public static final RowMapper<Book> BOOK = resultSet -> {
+        Book book = new Book(
+            resultSet.getString(1),
+            resultSet.getString(2),
+            resultSet.getString(3),
+            resultSet.getString(4),
+            resultSet.getInt(5),
+            resultSet.getString(6),
+            resultSet.getString(7)
+        );
+        book.setVersion(resultSet.getInt(8));
+        book.setAvailableCopies(resultSet.getInt(9)); // 0 / 0 if the title has no counters row
+        book.setTotalCopies(resultSet.getInt(10));
+        return book;
+    };
+
+    // ---------------------------------------------
+    // --- PATRONS (patrons) ---
+    // ---------------------------------------------
+    public static final String PATRON_COLUMNS =
+        "PatronID, FirstName, LastName, Email, PhoneNumber, Address, Version";
+    public static final int PATRON_WIDTH = 7;
+
+    public static final RowMapper<Patron> PATRON = resultSet -> {
+        Patron patron = new Patron(
+            resultSet.getString(1),
+            resultSet.getString(2),
+            resultSet.getString(3),
+            resultSet.getString(4),
+            resultSet.getString(5),
+            resultSet.getString(6)
+        );
+        patron.setVersion(resultSet.getInt(7));
+        return patron;
+    };
+
+    // ---------------------------------------------
+    // --- CATEGORIES (categories c LEFT JOIN category_stats s) ---
+    // ---------------------------------------------
+    public static final String CATEGORY_COLUMNS =
+        "c.CategoryID, c.CategoryName, s.BookCount, s.OnLoanCount, s.LoanTotal";
+    public static final int CATEGORY_WIDTH = 5;
+
+    public static final RowMapper<Category> CATEGORY = resultSet -> new Category(
+        resultSet.getString(1),
+        resultSet.getString(2),
+        resultSet.getInt(3),
+        resultSet.getInt(4),
+        resultSet.getLong(5)
+    );
+
+    // ---------------------------------------------
+    // --- LOANS (transactions t JOIN books b JOIN patrons p) ---
+    // ---------------------------------------------
+    // A loan holds keys; the book and patron codes come from the joined rows
+    public static final String LOAN_COLUMNS =
+        "t.TransactionID, b.BookID, p.PatronID, t.DateBorrowed, t.DueDate, t.DateReturned";
+    public static final int LOAN_WIDTH = 6;
+
+    public static final RowMapper<Transaction> LOAN = resultSet -> new Transaction(
+        resultSet.getString(1),
+        resultSet.getString(2),
+        resultSet.getString(3),
+        resultSet.getString(4),
+        resultSet.getString(5),
+        resultSet.getString(6)
+    );
+
+    // A loan with the title of the book
+    public static final String TITLED_LOAN_COLUMNS = LOAN_COLUMNS + ", b.Title";
+    public static final int TITLED_LOAN_WIDTH = LOAN_WIDTH + 1;
+
+    public static final RowMapper<Transaction> TITLED_LOAN = resultSet -> {
+        Transaction transaction = LOAN.map(resultSet);
+        transaction.setBookTitle(resultSet.getString(7));
+        return transaction;
+    };
+
+    // ... and the patron's name, for the Transactions tab
+    public static final String DESK_LOAN_COLUMNS = TITLED_LOAN_COLUMNS + ", p.FirstName, p.LastName";
+    public static final int DESK_LOAN_WIDTH = TITLED_LOAN_WIDTH + 2;
+
+    public static final RowMapper<Transaction> DESK_LOAN = resultSet -> {
+        Transaction transaction = TITLED_LOAN.map(resultSet);
+        transaction.setPatronName(resultSet.getString(8) + " " + resultSet.getString(9));
+        return transaction;
+    };
+}
@@ -0,0 +1,177 @@
+package library.utilities;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Sort and filter keys of table rows, computed once per row instead of on every
+ * comparison.
+ *
+ * Text columns are compared by a folded key: the text in lower case without accents,
+ * so "émile", "Emile" and "EMILE" sort together, then by the text itself so the order
+ * is stable. A row's keys are computed when it is added or edited ({@link #put}); a
+ * sort then compares precomputed keys, with no reflection or Collator call per
+ * comparison. (java.text.CollationKey orders by the desk's language, but building one
+ * costs microseconds per value: seconds for a large catalog.) Numeric columns are
+ * compared through their getter as primitives, which is cheaper than looking up any
+ * stored key.
+ *
+ * The filter matches rows whose text columns contain every word typed, ignoring case
+ * and accents. Each row keeps one folded string of its text columns, so a filter is
+ * compiled once per keystroke and costs a few substring searches per row.
+ *
+ * Rows are held by identity. Not thread-safe: used on the FX thread.
+ */
+public class SortKeys<T> {
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+    private static final Pattern WORDS = Pattern.compile("\\s+");
+    private static final String SEPARATOR = "\u0000"; // never typed, so words do not match across columns
+
+    // Latin letters folded one char at a time (lower case, accent removed): most text
+    // never needs the full Unicode normalisation
+    private static final char[] FOLDED = new char[0x250];
+    static {
+        for (char c = 0; c < FOLDED.length; c++) {
+            String folded = slowFold(String.valueOf(c));
+            FOLDED[c] = folded.length() == 1 ? folded.charAt(0) : Character.toLowerCase(c);
+        }
+    }
+
+    /** One key of a sort: a column (as returned by the column methods) and its direction. */
+    public record Order(int column, boolean ascending) {}
+
+    // folded[i] is the sort key of text[i]; haystack joins the folded values
+    private record Keys(String[] folded, String[] text, String haystack) {}
+
+    private final List<Function<T, String>> textColumns = new ArrayList<>();
+    private final List<ToLongFunction<T>> numberColumns = new ArrayList<>();
+    private final Map<T, Keys> keys = new IdentityHashMap<>();
+
+    // ---------------------------------------------
+    // --- COLUMNS (registered before any row is added) ---
+    // ---------------------------------------------
+    /** Adds a text column; returns its column number for {@link Order}. */
+    public int textColumn(Function<T, String> value) {
+        textColumns.add(value);
+        return textColumns.size() - 1;
+    }
+
+    /** Adds a numeric column; returns its column number for {@link Order}. */
+    public int numberColumn(ToLongFunction<T> value) {
+        numberColumns.add(value);
+        return -numberColumns.size(); // -1, -2, ... so one int names either kind
+    }
+
+    // ---------------------------------------------
+    // --- ROWS ---
+    // ---------------------------------------------
+    /** Computes (or recomputes, after an edit) the keys of a row. */
+    public void put(T row) {
+        String[] text = new String[textColumns.size()];
+        String[] folded = new String[text.length];
+        StringBuilder haystack = new StringBuilder();
+        for (int i = 0; i < text.length; i++) {
+            String value = textColumns.get(i).apply(row);
+            text[i] = value == null ? "" : value;
+            folded[i] = fold(text[i]);
+            haystack.append(folded[i]).append(SEPARATOR);
+        }
+        keys.put(row, new Keys(folded, text, haystack.toString()));
+    }
+
+    public void remove(T row) {
+        keys.remove(row);
+    }
+
+    public void clear() {
+        keys.clear();
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    // ---------------------------------------------
+    // --- SORT AND FILTER ---
+    // ---------------------------------------------
+    /**
+     * Comparator for a multi-column sort (first order first). Returns null for an empty
+     * sort, which leaves the rows in load order.
+     */
+    public Comparator<T> comparator(List<Order> orders) {
+        if (orders.isEmpty()) return null;
+        int[] columns = new int[orders.size()];
+        int[] signs = new int[orders.size()];
+        List<ToLongFunction<T>> numbers = new ArrayList<>();
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = orders.get(i).column();
+            signs[i] = orders.get(i).ascending() ? 1 : -1;
+            numbers.add(columns[i] < 0 ? numberColumns.get(-columns[i] - 1) : null);
+        }
+        return (a, b) -> {
+            Keys ka = null;
+            Keys kb = null;
+            for (int i = 0; i < columns.length; i++) {
+                int column = columns[i];
+                int c;
+                if (column >= 0) {
+                    if (ka == null) {
+                        ka = keys.get(a);
+                        kb = keys.get(b);
+                    }
+                    c = ka.folded()[column].compareTo(kb.folded()[column]);
+                    if (c == 0) c = ka.text()[column].compareTo(kb.text()[column]);
+                } else {
+                    ToLongFunction<T> number = numbers.get(i);
+                    c = Long.compare(number.applyAsLong(a), number.applyAsLong(b));
+                }
+                if (c != 0) return c * signs[i];
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * Predicate for the text typed in a filter field: every word must appear in one of
+     * the row's text columns. Returns null when nothing is typed (every row matches).
+     */
+    public Predicate<T> filter(String typed) {
+        String folded = typed == null ? "" : fold(typed).trim();
+        if (folded.isEmpty()) return null;
+        String[] words = WORDS.split(folded);
+        return row -> {
+            String haystack = keys.get(row).haystack();
+            for (String word : words) {
+                if (!haystack.contains(word)) return false;
+            }
+            return true;
+        };
+    }
+
+    /** Lower case without accents, so "jose" finds "José". */
+    static String fold(String text) {
+        char[] out = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= FOLDED.length) return slowFold(text);
+            char folded = FOLDED[c];
+            if (folded != c && out == null) out = text.toCharArray();
+            if (out != null) out[i] = folded;
+        }
+        return out == null ? text : new String(out);
+    }
+
+    private static String slowFold(String text) {
+        return ACCENTS.matcher(Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)).replaceAll("");
+    }
+}
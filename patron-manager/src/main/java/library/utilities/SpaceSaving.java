@@ -0,0 +1,198 @@
+package library.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Space-Saving heavy-hitter summary over int keys: the approximate most frequent keys of
+ * a stream, in a fixed number of counters.
+ *
+ * Each monitored key has a count and an error. A new key arriving while every counter is
+ * in use takes over the smallest counter, inheriting its count as error. So for every
+ * monitored key, {@code count - error <= true frequency <= count}, and any key whose true
+ * frequency exceeds {@code total / capacity} is monitored. Counters sit in a min-heap, so
+ * an update is O(log capacity).
+ *
+ * Summaries built on separate parts of a stream are combined with {@link #merge}.
+ * Not thread-safe.
+ */
+public class SpaceSaving {
+
+    /** A monitored key with its estimated count; {@code count - error} is a guaranteed minimum. */
+    public record Entry(int key, long count, long error) {
+    }
+
+    private final int capacity;
+    private final int[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final int[] heap;       // heap position -> counter, smallest count first
+    private final int[] position;   // counter -> heap position
+    private final IntIntHashMap counterOf = new IntIntHashMap(); // key -> counter + 1
+    private int size;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.keys = new int[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.heap = new int[capacity];
+        this.position = new int[capacity];
+    }
+
+    // ---------------------------------------------
+    // --- UPDATES ---
+    // ---------------------------------------------
+    public void offer(int key) {
+        offer(key, 1);
+    }
+
+    public void offer(int key, long weight) {
+        total += weight;
+        int counter = counterOf.get(key) - 1;
+        if (counter >= 0) {
+            counts[counter] += weight;
+            siftDown(position[counter]);
+        } else if (size < capacity) {
+            add(key, weight, 0);
+        } else {
+            counter = heap[0];
+            counterOf.remove(keys[counter]);
+            counterOf.put(key, counter + 1);
+            keys[counter] = key;
+            errors[counter] = counts[counter];
+            counts[counter] += weight;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Combines summaries of disjoint parts of a stream (Agarwal et al., "Mergeable
+     * Summaries"). A key missing from a full summary may have occurred up to that summary's
+     * minimum count times there, so the minimum is added to both its count and its error.
+     * The {@code capacity} largest results are kept; the bounds above still hold.
+     */
+    public static SpaceSaving merge(List<SpaceSaving> parts, int capacity) {
+        IntIntHashMap index = new IntIntHashMap();
+        List<Integer> mergedKeys = new ArrayList<>();
+        for (SpaceSaving part : parts) {
+            for (int c = 0; c < part.size; c++) {
+                if (!index.containsKey(part.keys[c])) {
+                    index.put(part.keys[c], mergedKeys.size());
+                    mergedKeys.add(part.keys[c]);
+                }
+            }
+        }
+        int n = mergedKeys.size();
+        long[] mergedCounts = new long[n];
+        long[] mergedErrors = new long[n];
+        long mergedTotal = 0;
+        for (SpaceSaving part : parts) {
+            mergedTotal += part.total;
+            long missing = part.minCount();
+            boolean[] seen = new boolean[n];
+            for (int c = 0; c < part.size; c++) {
+                int i = index.get(part.keys[c]);
+                seen[i] = true;
+                mergedCounts[i] += part.counts[c];
+                mergedErrors[i] += part.errors[c];
+            }
+            if (missing > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (seen[i]) continue;
+                    mergedCounts[i] += missing;
+                    mergedErrors[i] += missing;
+                }
+            }
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(mergedCounts[b], mergedCounts[a]));
+
+        SpaceSaving merged = new SpaceSaving(capacity);
+        for (int i = 0; i < n && i < capacity; i++) {
+            int o = order[i];
+            merged.add(mergedKeys.get(o), mergedCounts[o], mergedErrors[o]);
+        }
+        merged.total = mergedTotal;
+        return merged;
+    }
+
+    // ---------------------------------------------
+    // --- QUERIES ---
+    // ---------------------------------------------
+    /** Up to {@code k} monitored keys, highest count first (ties by lower key). */
+    public List<Entry> top(int k) {
+        Integer[] order = new Integer[size];
+        for (int c = 0; c < size; c++) order[c] = c;
+        Arrays.sort(order, (a, b) -> counts[a] != counts[b]
+            ? Long.compare(counts[b], counts[a])
+            : Integer.compare(keys[a], keys[b]));
+        List<Entry> result = new ArrayList<>(Math.min(k, size));
+        for (int i = 0; i < size && i < k; i++) {
+            int c = order[i];
+            result.add(new Entry(keys[c], counts[c], errors[c]));
+        }
+        return result;
+    }
+
+    /** The count any unmonitored key may have reached: 0 until every counter is in use. */
+    public long minCount() {
+        return size < capacity ? 0 : counts[heap[0]];
+    }
+
+    /** Total weight offered (or merged in). */
+    public long total() {
+        return total;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // ---------------------------------------------
+    // --- HEAP ---
+    // ---------------------------------------------
+    private void add(int key, long count, long error) {
+        int counter = size++;
+        keys[counter] = key;
+        counts[counter] = count;
+        errors[counter] = error;
+        heap[counter] = counter;
+        position[counter] = counter;
+        counterOf.put(key, counter + 1);
+        siftUp(counter);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[heap[i]]) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) return;
+            int smallest = left + 1 < size && counts[heap[left + 1]] < counts[heap[left]] ? left + 1 : left;
+            if (counts[heap[i]] <= counts[heap[smallest]]) return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int counter = heap[a];
+        heap[a] = heap[b];
+        heap[b] = counter;
+        position[heap[a]] = a;
+        position[heap[b]] = b;
+    }
+}
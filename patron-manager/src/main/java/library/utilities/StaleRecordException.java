@@ -0,0 +1,37 @@
+package library.utilities;
+
+import java.io.Serial;
+import java.sql.SQLException;
+
+/**
+ * Thrown by an optimistic update when the row is no longer at the version the caller
+ * read: another desk changed (or deleted) it in the meantime. Nothing was written;
+ * re-read the record, merge or discard the edit, and retry with the new version.
+ */
+public class StaleRecordException extends SQLException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String table;
+    private final String recordID;
+    private final int expectedVersion;
+
+    public StaleRecordException(String table, String recordID, int expectedVersion) {
+        super("Record " + recordID + " in " + table + " is no longer at version " + expectedVersion
+            + "; it was changed by someone else.");
+        this.table = table;
+        this.recordID = recordID;
+        this.expectedVersion = expectedVersion;
+    }
+
+    public String getTable() {
+        return table;
+    }
+    public String getRecordID() {
+        return recordID;
+    }
+    public int getExpectedVersion() {
+        return expectedVersion;
+    }
+}
@@ -0,0 +1,67 @@
+package library.utilities;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense int codes (0, 1, 2, ...) to string IDs such as "BK-0001", and maps
+ * them back. Lets the analytics structures work on primitive ints instead of Strings.
+ * Not thread-safe.
+ */
+public class StringIndex {
+
+    private String[] table = new String[64];   // open-addressing slots holding the IDs
+    private int[] codes = new int[64];          // code stored alongside each slot
+    private String[] byCode = new String[64];   // code -> ID
+    private int size;
+
+    /** Returns the code of {@code id}, assigning the next free code if it is new. */
+    public int intern(String id) {
+        int mask = table.length - 1;
+        int i = id.hashCode() & 0x7fffffff & mask;
+        while (table[i] != null) {
+            if (table[i].equals(id)) return codes[i];
+            i = (i + 1) & mask;
+        }
+        int code = size++;
+        table[i] = id;
+        codes[i] = code;
+        if (code == byCode.length) byCode = Arrays.copyOf(byCode, code * 2);
+        byCode[code] = id;
+        if (size * 2 > table.length) rehash();
+        return code;
+    }
+
+    /** Returns the code of {@code id}, or -1 if it has never been interned. */
+    public int find(String id) {
+        int mask = table.length - 1;
+        int i = id.hashCode() & 0x7fffffff & mask;
+        while (table[i] != null) {
+            if (table[i].equals(id)) return codes[i];
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    public String idOf(int code) {
+        return byCode[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        String[] oldTable = table;
+        int[] oldCodes = codes;
+        table = new String[oldTable.length * 2];
+        codes = new int[oldTable.length * 2];
+        int mask = table.length - 1;
+        for (int j = 0; j < oldTable.length; j++) {
+            if (oldTable[j] == null) continue;
+            int i = oldTable[j].hashCode() & 0x7fffffff & mask;
+            while (table[i] != null) i = (i + 1) & mask;
+            table[i] = oldTable[j];
+            codes[i] = oldCodes[j];
+        }
+    }
+}
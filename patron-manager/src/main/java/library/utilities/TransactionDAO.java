@@ -1,9 +1,13 @@
 package library.utilities;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
 import java.text.DecimalFormat; // NEW IMPORT for ID generation
 import java.time.LocalDate; // NEW IMPORT for date handling
 import java.time.format.DateTimeFormatter;
@@ -11,13 +15,31 @@ import java.util.ArrayList;
 import java.util.List;
 
 import configuration.DBConnector;
+import library.audit.AuditEvent.Action;
+import library.audit.AuditEvent.Entity;
+import library.audit.AuditLog;
+import library.logging.Log;
+import library.models.Hold;
 import library.models.Transaction;
 
 public class TransactionDAO {
+    private static final Log LOG = Log.get(TransactionDAO.class);
+
     
     private static final String TRANSACTION_PREFIX = "T-";
     private static final DateTimeFormatter SQL_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+    /** SQLState of the borrow refused because the last copy was lent meanwhile (after the availability check). */
+    public static final String NO_COPY_AVAILABLE = "45000";
+    /** SQLState of a return refused because the loan does not exist. */
+    public static final String UNKNOWN_LOAN = "02000";
+    /** SQLState of a return refused because the loan was returned already (e.g. at another desk). */
+    public static final String ALREADY_RETURNED = "45001";
+    /** SQLState of the borrow refused because every free copy is kept aside for other patrons' READY holds. */
+    public static final String HELD_FOR_OTHERS = "45002";
+
+    private final BookStockDAO stockDAO = new BookStockDAO();
+
     // ---------------------------------------------
     // --- ID GENERATION LOGIC ---
     // ---------------------------------------------
@@ -25,6 +47,14 @@ public class TransactionDAO {
      * Generates the next sequential TransactionID (e.g., T-0001).
      */
     private String generateNextTransactionId(Connection conn) throws SQLException {
+        return formatTransactionId(nextTransactionSequence(conn));
+    }
+
+    /**
+     * Returns the numeric part of the next TransactionID. Shared with JournalReplayer,
+     * which allocates a whole batch of IDs from a single lookup.
+     */
+    static int nextTransactionSequence(Connection conn) throws SQLException {
         String sql = "SELECT TransactionID FROM transactions WHERE TransactionID LIKE ? ORDER BY TransactionID DESC LIMIT 1";
         int nextSequence = 1;
         
@@ -38,9 +68,26 @@ public class TransactionDAO {
                 }
             }
         }
-        
+        return nextSequence;
+    }
+
+    static String formatTransactionId(int sequence) {
         DecimalFormat df = new DecimalFormat("0000"); // 4 sequential digits
-        return TRANSACTION_PREFIX + df.format(nextSequence); 
+        return TRANSACTION_PREFIX + df.format(sequence); 
+    }
+
+    // ---------------------------------------------
+    // --- OFFLINE SUPPORT ---
+    // ---------------------------------------------
+    /**
+     * True if the exception means the database could not be reached (as opposed to
+     * a constraint violation or a bad statement), i.e. the operation may be journaled.
+     */
+    public static boolean isConnectivityFailure(SQLException e) {
+        return e instanceof SQLTransientConnectionException
+            || e instanceof SQLNonTransientConnectionException
+            || e instanceof SQLTimeoutException
+            || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
     }
 
     // ---------------------------------------------
@@ -51,6 +98,7 @@ public class TransactionDAO {
      * NOTE: Signature adjusted to match the simplified controller call.
      */
     public Transaction borrowBook(String patronID, String bookID, LocalDate dueDate) throws SQLException {
+        long started = System.nanoTime();
         Connection link = null;
         PreparedStatement state = null;
         
@@ -58,25 +106,54 @@ public class TransactionDAO {
         String transactionID;
 
         // Note: DateReturned is NULL initially for a new loan.
-        String sql = "INSERT INTO transactions (TransactionID, BookID, PatronID, DateBorrowed, DueDate, DateReturned) " +
-                    "VALUES (?, ?, ?, ?, ?, NULL)"; 
+        // The book and patron codes are resolved to their keys through the unique code indexes;
+        // the copy is the one just claimed (BookStockDAO.claimCopy leaves its key in LAST_INSERT_ID(), which
+        // still holds it while this INSERT runs: the TransactionKey it generates only shows from the next statement)
+        String sql = "INSERT INTO transactions (TransactionID, BookKey, CopyKey, PatronKey, DateBorrowed, DueDate, DateReturned) " +
+                    "SELECT ?, b.BookKey, LAST_INSERT_ID(), p.PatronKey, ?, ?, NULL FROM books b JOIN patrons p " +
+                    "WHERE b.BookID = ? AND p.PatronID = ?"; 
 
         try {
             link = DBConnector.getConnection();
+            link.setAutoCommit(false);
             
-            // 1. Generate ID
+            // 1. Take a copy off the shelf. With the title's counters locked no hold can be
+            // promoted meanwhile, so the copies kept for other patrons' READY holds are exact;
+            // the counter only goes down while more copies than those are free
+            int free = BookStockDAO.lockAvailable(link, bookID);
+            int reserved = HoldDAO.readyHoldsForOthers(link, bookID, patronID);
+            if (!BookStockDAO.claimCopy(link, bookID, reserved)) {
+                throw free > 0
+                    ? new SQLException("Every free copy of " + bookID + " is held for another patron", HELD_FOR_OTHERS)
+                    : new SQLException("No copy of " + bookID + " is available", NO_COPY_AVAILABLE);
+            }
+
+            // 2. Generate ID
             transactionID = generateNextTransactionId(link);
             
             state = link.prepareStatement(sql);
             
-            // 2. Map fields to parameters
+            // 3. Map fields to parameters
             state.setString(1, transactionID);
-            state.setString(2, bookID);
-            state.setString(3, patronID);
-            state.setString(4, dateBorrowed.format(SQL_DATE_FORMATTER));
-            state.setString(5, dueDate.format(SQL_DATE_FORMATTER));
-            state.executeUpdate();
+            state.setString(2, dateBorrowed.format(SQL_DATE_FORMATTER));
+            state.setString(3, dueDate.format(SQL_DATE_FORMATTER));
+            state.setString(4, bookID);
+            state.setString(5, patronID);
+            if (state.executeUpdate() == 0) {
+                // What the foreign keys reported when the loan held the codes themselves
+                throw new SQLException("No book " + bookID + " or no patron " + patronID, "23000");
+            }
+            HoldDAO.fulfillReadyHold(link, bookID, patronID); // the copy kept for this patron, if any
+            CategoryStatsDAO.adjustForBook(link, bookID, 1, 1);
+            link.commit();
+            QueryCache.getInstance().invalidate("transactions", "category_stats", "book_stock");
             
+            AvailabilitySnapshot.getInstance().recordBorrow(transactionID, bookID);
+            CoBorrowIndex.getInstance().recordLoan(patronID, bookID);
+            PopularityIndex.getInstance().recordLoan(transactionID, bookID, dateBorrowed);
+            AuditLog.getInstance().publish(Action.BORROW, Entity.LOAN, transactionID, bookID);
+            LOG.atDebug("borrowBook").entity(transactionID).latencySince(started).log();
+
             // Return the newly created object (Controller will set PatronName/BookTitle manually)
             return new Transaction(
                 transactionID, 
@@ -88,7 +165,12 @@ public class TransactionDAO {
             );
             
         } catch (SQLException e) {
-            System.err.println("Error recording book loan: " + e.getMessage());
+            rollbackQuietly(link);
+            if (isConnectivityFailure(e)) {
+                return journalBorrow(patronID, bookID, dateBorrowed, dueDate, e);
+            }
+            LOG.atError("borrowBook").entity(bookID).field("patronID", patronID).latencySince(started)
+                .message("Error recording book loan").cause(e).log();
             throw e;
         } finally {
             if (state != null) state.close();
@@ -96,6 +178,34 @@ public class TransactionDAO {
         }
     }
 
+    /**
+     * Records the loan in the local journal while the database is unreachable.
+     * The returned Transaction carries a provisional ID (OFF-n) until replay.
+     */
+    private Transaction journalBorrow(String patronID, String bookID, LocalDate dateBorrowed, LocalDate dueDate,
+                                      SQLException cause) throws SQLException {
+        try {
+            String provisionalID = OfflineJournal.getInstance().appendBorrow(bookID, patronID, dateBorrowed, dueDate);
+            AvailabilitySnapshot.getInstance().recordBorrow(provisionalID, bookID);
+            AvailabilitySnapshot.getInstance().save();
+            LOG.atWarn("borrowBook").entity(provisionalID).field("bookID", bookID).field("patronID", patronID)
+                .message("Database unreachable; loan journaled offline").cause(cause).log();
+
+            return new Transaction(
+                provisionalID,
+                bookID,
+                patronID,
+                dateBorrowed.format(SQL_DATE_FORMATTER),
+                dueDate.format(SQL_DATE_FORMATTER),
+                null
+            );
+        } catch (IOException io) {
+            LOG.atError("borrowBook").entity(bookID).field("patronID", patronID).message("Error journaling book loan").cause(io).log();
+            cause.addSuppressed(io);
+            throw cause;
+        }
+    }
+
     // ---------------------------------------------
     // --- NEW: READ OUTSTANDING LOANS ---
     // ---------------------------------------------
@@ -107,9 +217,9 @@ public class TransactionDAO {
         List<Transaction> transactions = new ArrayList<>();
         
         // FIX: JOIN to get Patron Name and Book Title for the Controller's TableView
-        String sql = "SELECT t.*, p.FirstName, p.LastName, b.Title AS BookTitle FROM transactions t " +
-                    "JOIN patrons p ON t.PatronID = p.PatronID " +
-                    "JOIN books b ON t.BookID = b.BookID " +
+        String sql = "SELECT " + RowMappers.DESK_LOAN_COLUMNS + " FROM transactions t " +
+                    "JOIN patrons p ON t.PatronKey = p.PatronKey " +
+                    "JOIN books b ON t.BookKey = b.BookKey " +
                     "WHERE t.DateReturned IS NULL " +
                     "ORDER BY t.DateBorrowed DESC"; 
         
@@ -118,31 +228,17 @@ public class TransactionDAO {
         ResultSet resultSet = null;
         
         try {
-            link = DBConnector.getConnection();
+            link = DBConnector.getReadConnection(); // stays on the primary right after a borrow/return
             state = link.prepareStatement(sql);
             resultSet = state.executeQuery();
             
             while (resultSet.next()) {
-                String patronName = resultSet.getString("FirstName") + " " + resultSet.getString("LastName");
-                String bookTitle = resultSet.getString("BookTitle");
-                
-                Transaction transaction = new Transaction(
-                    resultSet.getString("TransactionID"),
-                    resultSet.getString("BookID"),
-                    resultSet.getString("PatronID"),
-                    resultSet.getString("DateBorrowed"),
-                    resultSet.getString("DueDate"),
-                    resultSet.getString("DateReturned")
-                );
-                
-                // Manually set the joined fields on the model for the UI
-                transaction.setPatronName(patronName); 
-                transaction.setBookTitle(bookTitle); 
-                
-                transactions.add(transaction);
+                transactions.add(RowMappers.DESK_LOAN.map(resultSet)); // with patron name and book title for the UI
             }
+            // Keep the offline availability snapshot in step with the database
+            AvailabilitySnapshot.getInstance().replaceAll(transactions);
         } catch (SQLException e) {
-            System.err.println("Error reading outstanding transactions: " + e.getMessage());
+            LOG.atError("readOutstandingLoans").message("Error reading outstanding transactions").cause(e).log();
             throw e; 
         } finally {
             if (resultSet != null) resultSet.close();
@@ -152,37 +248,98 @@ public class TransactionDAO {
         return transactions;
     }
 
+    /**
+     * Reads the open loans of a single patron (used by the kiosk "my loans" screen).
+     */
+    public List<Transaction> readOutstandingLoans(String patronID) throws SQLException {
+        List<Transaction> transactions = new ArrayList<>();
+        String sql = "SELECT " + RowMappers.TITLED_LOAN_COLUMNS + " FROM patrons p " +
+                    "JOIN transactions t ON t.PatronKey = p.PatronKey " +
+                    "JOIN books b ON t.BookKey = b.BookKey " +
+                    "WHERE p.PatronID = ? AND t.DateReturned IS NULL " +
+                    "ORDER BY t.DueDate";
+
+        try (Connection link = DBConnector.getReadConnection();
+            PreparedStatement state = link.prepareStatement(sql)) {
+
+            state.setString(1, patronID);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    transactions.add(RowMappers.TITLED_LOAN.map(resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("readOutstandingLoans").entity(patronID).message("Error reading patron loans").cause(e).log();
+            throw e;
+        }
+        return transactions;
+    }
+
+    /**
+     * Reads one page of a patron's loan history, newest first, returned or not.
+     * Keyset paging: pass the DateBorrowed and TransactionID of the last row of the
+     * previous page (nulls for the first page). Each page is a short range scan of the
+     * PatronHistory index (PatronKey, DateBorrowed, TransactionID), however long the
+     * history is, where OFFSET paging would re-read every earlier row.
+     */
+    public List<Transaction> readPatronHistory(String patronID, String afterDate, String afterID, int limit) throws SQLException {
+        List<Transaction> transactions = new ArrayList<>(limit);
+        String sql = "SELECT " + RowMappers.TITLED_LOAN_COLUMNS + " FROM patrons p " +
+                    "JOIN transactions t ON t.PatronKey = p.PatronKey " +
+                    "JOIN books b ON t.BookKey = b.BookKey " +
+                    "WHERE p.PatronID = ? " +
+                    (afterDate != null ? "AND (t.DateBorrowed < ? OR (t.DateBorrowed = ? AND t.TransactionID < ?)) " : "") +
+                    "ORDER BY t.DateBorrowed DESC, t.TransactionID DESC LIMIT ?";
+
+        try (Connection link = DBConnector.getReadConnection();
+            PreparedStatement state = link.prepareStatement(sql)) {
+
+            int i = 1;
+            state.setString(i++, patronID);
+            if (afterDate != null) {
+                state.setString(i++, afterDate);
+                state.setString(i++, afterDate);
+                state.setString(i++, afterID);
+            }
+            state.setInt(i, limit);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    transactions.add(RowMappers.TITLED_LOAN.map(resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            LOG.atError("readPatronHistory").entity(patronID).message("Error reading patron history").cause(e).log();
+            throw e;
+        }
+        return transactions;
+    }
+
     // ---------------------------------------------
     // --- NEW: AVAILABILITY CHECK ---
     // ---------------------------------------------
     /**
-     * Checks if a book is currently borrowed (DateReturned is NULL).
+     * Returns how many copies of the book are on the shelf: the title's maintained
+     * counter, read on the primary (no count of loans or copies).
+     * Falls back to the local availability snapshot when the database is unreachable.
      */
-    public boolean isBookCurrentlyBorrowed(String bookID) throws SQLException {
-        String sql = "SELECT 1 FROM transactions WHERE BookID = ? AND DateReturned IS NULL LIMIT 1";
-        
-        Connection link = null;
-        PreparedStatement state = null;
-        ResultSet resultSet = null;
-        
+    public int availableCopies(String bookID) throws SQLException {
         try {
-            link = DBConnector.getConnection();
-            state = link.prepareStatement(sql);
-            state.setString(1, bookID);
-            resultSet = state.executeQuery();
-            
-            // If resultSet.next() returns true, a record exists (the book is currently borrowed)
-            return resultSet.next();
-            
+            return stockDAO.readAvailableCopies(bookID);
         } catch (SQLException e) {
-            System.err.println("Error checking book availability: " + e.getMessage());
+            if (isConnectivityFailure(e)) {
+                return AvailabilitySnapshot.getInstance().availableCopies(bookID);
+            }
+            LOG.atError("availableCopies").entity(bookID).message("Error checking book availability").cause(e).log();
             throw e;
-        } finally {
-            if (resultSet != null) resultSet.close();
-            if (state != null) state.close();
-            if (link != null) link.close();
         }
     }
+
+    /**
+     * Checks if every copy of a book is currently borrowed, i.e. none can be lent.
+     */
+    public boolean isBookCurrentlyBorrowed(String bookID) throws SQLException {
+        return availableCopies(bookID) == 0;
+    }
     
     // ---------------------------------------------
     // --- UPDATE/RETURN OPERATION (Modified) ---
@@ -190,33 +347,114 @@ public class TransactionDAO {
     /**
      * Records the return date of a book based on TransactionID.
      * NOTE: Signature simplified to use LocalDate.now() in the implementation.
+     * If patrons are waiting for the book, the first hold in its queue becomes READY in the
+     * same database transaction and is returned, so the desk can keep the copy aside;
+     * returns null when nobody is waiting (or the return was journaled offline).
+     * A late return's fine is written to the fines ledger in the same transaction.
+     * A loan that is not open is refused with SQLState {@link #UNKNOWN_LOAN} or
+     * {@link #ALREADY_RETURNED}.
      */
-    public void returnBook(String transactionId) throws SQLException {
+    public Hold returnBook(String transactionId) throws SQLException {
+        long started = System.nanoTime();
         // Only update the DateReturned field
-        String sql = "UPDATE transactions SET DateReturned = ? WHERE TransactionID = ?";
+        String sql = "UPDATE transactions SET DateReturned = ? WHERE TransactionID = ? AND DateReturned IS NULL";
+        String bookSql = "SELECT b.BookID FROM transactions t JOIN books b ON b.BookKey = t.BookKey WHERE t.TransactionID = ?";
+        String existsSql = "SELECT 1 FROM transactions WHERE TransactionID = ?";
         
+        // Loans recorded offline only exist in the journal until they are replayed
+        if (transactionId.startsWith(OfflineJournal.PROVISIONAL_PREFIX)) {
+            journalReturn(transactionId, null);
+            return null;
+        }
+
         Connection link = null;
         PreparedStatement state = null;
         try {
             link = DBConnector.getConnection();
+            link.setAutoCommit(false);
             state = link.prepareStatement(sql);
             
             // Use current date for DateReturned
-            String dateReturned = LocalDate.now().format(SQL_DATE_FORMATTER);
+            LocalDate today = LocalDate.now();
+            String dateReturned = today.format(SQL_DATE_FORMATTER);
             
             // Map parameters
             state.setString(1, dateReturned);
             state.setString(2, transactionId);
-            state.executeUpdate();
+            Hold readyHold = null;
+            String returnedBookID = null;
+            if (state.executeUpdate() == 0) {
+                try (PreparedStatement existsState = link.prepareStatement(existsSql)) {
+                    existsState.setString(1, transactionId);
+                    try (ResultSet resultSet = existsState.executeQuery()) {
+                        throw resultSet.next()
+                            ? new SQLException("Loan " + transactionId + " was already returned", ALREADY_RETURNED)
+                            : new SQLException("Loan " + transactionId + " does not exist", UNKNOWN_LOAN);
+                    }
+                }
+            } else {
+                // The fine (if late) becomes final together with the return
+                FinesEngine.assessReturn(link, transactionId, today);
+                BookStockDAO.releaseCopy(link, transactionId);
+
+                // Hand the copy to the next patron in the queue before anyone else can borrow it
+                try (PreparedStatement bookState = link.prepareStatement(bookSql)) {
+                    bookState.setString(1, transactionId);
+                    try (ResultSet resultSet = bookState.executeQuery()) {
+                        if (resultSet.next()) {
+                            returnedBookID = resultSet.getString("BookID");
+                            CategoryStatsDAO.adjustForBook(link, returnedBookID, -1, 0);
+                            readyHold = HoldDAO.promoteNextHold(link, returnedBookID);
+                        }
+                    }
+                }
+            }
+            link.commit();
+            QueryCache.getInstance().invalidate("transactions", "category_stats", "book_stock");
+            AvailabilitySnapshot.getInstance().recordReturn(transactionId);
+            if (returnedBookID != null) AuditLog.getInstance().publish(Action.RETURN, Entity.LOAN, transactionId, returnedBookID);
+            LOG.atDebug("returnBook").entity(transactionId).latencySince(started).log();
+            HoldDAO.afterPromotion(readyHold);
+            return readyHold;
             
         } catch (SQLException e) {
-            System.err.println("Error recording book return: " + e.getMessage());
+            rollbackQuietly(link);
+            if (isConnectivityFailure(e)) {
+                journalReturn(transactionId, e);
+                return null;
+            }
+            if (UNKNOWN_LOAN.equals(e.getSQLState()) || ALREADY_RETURNED.equals(e.getSQLState())) throw e; // not an error
+            LOG.atError("returnBook").entity(transactionId).latencySince(started)
+                .message("Error recording book return").cause(e).log();
             throw e;
         } finally {
             if (state != null) state.close();
             if (link != null) link.close();
         }
     }
+
+    private static void rollbackQuietly(Connection link) {
+        if (link == null) return;
+        try {
+            link.rollback();
+        } catch (SQLException ignored) {
+            // The connection is already broken; the server discards the transaction
+        }
+    }
+
+    private void journalReturn(String transactionId, SQLException cause) throws SQLException {
+        try {
+            OfflineJournal.getInstance().appendReturn(transactionId, LocalDate.now());
+            AvailabilitySnapshot.getInstance().recordReturn(transactionId);
+            AvailabilitySnapshot.getInstance().save();
+            LOG.atWarn("returnBook").entity(transactionId).message("Database unreachable; return journaled offline").cause(cause).log();
+        } catch (IOException io) {
+            LOG.atError("returnBook").entity(transactionId).message("Error journaling book return").cause(io).log();
+            SQLException failure = cause != null ? cause : new SQLException("Offline journal unavailable", io);
+            failure.addSuppressed(io);
+            throw failure;
+        }
+    }
     
     // ... (readAllTransactions is no longer strictly needed but can be kept) ...
 }
\ No newline at end of file
@@ -5,6 +5,9 @@ module application {
     requires javafx.fxml;
     requires javafx.base;       // Needed for data binding
     requires javafx.graphics;   // Needed for the Application class
+    requires jdk.httpserver;    // Needed for the headless kiosk API (library.server)
+    requires java.net.http;     // Needed for the kiosk load test client
+    requires jdk.management;    // Needed for the allocation counts in library.tools benchmarks
     
     // 2. EXPORTS (Public access to packages)
     exports application;        // Export the main application package to be launched
@@ -12,6 +15,11 @@ module application {
     exports library.controllers;
     exports library.models;
     exports library.utilities;
+    exports library.server;
+    exports library.tools;
+    exports library.reminders;
+    exports library.audit;
+    exports library.logging;
 
     // 3. OPENS (Access via reflection, necessary for FXMLLoader and Data Binding)
     opens application to javafx.fxml; 
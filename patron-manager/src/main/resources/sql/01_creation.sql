@@ -28,6 +28,7 @@ SET time_zone = "+00:00";
 
 DROP TABLE IF EXISTS `categories`;
 CREATE TABLE `categories` (
+  `CategoryKey` bigint(20) NOT NULL,
   `CategoryID` varchar(10) NOT NULL,
   `CategoryName` varchar(50) NOT NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
@@ -36,16 +37,48 @@ CREATE TABLE `categories` (
 
 --
 -- Table structure for table `books`
+-- (`Version` is bumped by every update; edits are rejected if it changed meanwhile)
 --
 
 DROP TABLE IF EXISTS `books`;
 CREATE TABLE `books` (
+  `BookKey` bigint(20) NOT NULL,
   `BookID` varchar(10) NOT NULL,
   `Title` varchar(255) NOT NULL,
   `Author` varchar(50) NOT NULL,
   `ISBN` varchar(17) DEFAULT NULL,
   `PublicationYear` int(11) DEFAULT NULL,
-  `CategoryID` varchar(10) NOT NULL
+  `CategoryID` varchar(10) NOT NULL,
+  `Version` int(11) NOT NULL DEFAULT 0
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `book_copies`
+-- (the physical copies of each title; `OnLoan` is 1 while the copy is lent; see migration 007)
+--
+
+DROP TABLE IF EXISTS `book_copies`;
+CREATE TABLE `book_copies` (
+  `CopyKey` bigint(20) NOT NULL,
+  `BookKey` bigint(20) NOT NULL,
+  `CopyNumber` int(11) NOT NULL,
+  `OnLoan` tinyint(1) NOT NULL DEFAULT 0
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `book_stock`
+-- (copies owned and copies on the shelf per title, kept in step by the application; 02_insertion.sql rebuilds them)
+--
+
+DROP TABLE IF EXISTS `book_stock`;
+CREATE TABLE `book_stock` (
+  `BookKey` bigint(20) NOT NULL,
+  `TotalCopies` int(11) NOT NULL DEFAULT 0,
+  `AvailableCopies` int(11) NOT NULL DEFAULT 0
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
 
 -- --------------------------------------------------------
@@ -56,50 +89,269 @@ CREATE TABLE `books` (
 
 DROP TABLE IF EXISTS `patrons`;
 CREATE TABLE `patrons` (
+  `PatronKey` bigint(20) NOT NULL,
   `PatronID` varchar(10) NOT NULL,
   `FirstName` varchar(50) NOT NULL,
   `LastName` varchar(50) NOT NULL,
   `Address` varchar(255) DEFAULT NULL,
   `Email` varchar(50) DEFAULT NULL,
-  `PhoneNumber` int(11) DEFAULT NULL
+  `PhoneNumber` int(11) DEFAULT NULL,
+  `Version` int(11) NOT NULL DEFAULT 0
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
 
 -- --------------------------------------------------------
 
 --
 -- Table structure for table `transactions`
+-- (loans refer to their book, copy and patron by surrogate key; the codes are on `books` and `patrons`)
 --
 
 DROP TABLE IF EXISTS `transactions`;
 CREATE TABLE `transactions` (
+  `TransactionKey` bigint(20) NOT NULL,
   `TransactionID` varchar(10) NOT NULL,
-  `BookID` varchar(10) NOT NULL,
-  `PatronID` varchar(10) NOT NULL,
+  `BookKey` bigint(20) NOT NULL,
+  `CopyKey` bigint(20) NOT NULL,
+  `PatronKey` bigint(20) NOT NULL,
   `DateBorrowed` date NOT NULL,
   `DueDate` date NOT NULL,
   `DateReturned` date DEFAULT NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
 
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `journal_replay`
+-- (offline journal entries already applied, keyed by desk + journal sequence)
+--
+
+DROP TABLE IF EXISTS `journal_replay`;
+CREATE TABLE `journal_replay` (
+  `DeskID` varchar(16) NOT NULL,
+  `Sequence` bigint(20) NOT NULL,
+  `TransactionID` varchar(10) DEFAULT NULL,
+  `Outcome` varchar(10) NOT NULL,
+  `AppliedAt` timestamp NOT NULL DEFAULT current_timestamp()
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `holds`
+-- (reservation queues; `Active` is 1 while WAITING or READY and NULL afterwards,
+--  so the unique key allows one active hold per patron and book)
+--
+
+DROP TABLE IF EXISTS `holds`;
+CREATE TABLE `holds` (
+  `HoldID` bigint(20) NOT NULL,
+  `BookID` varchar(10) NOT NULL,
+  `PatronID` varchar(10) NOT NULL,
+  `Priority` int(11) NOT NULL DEFAULT 0,
+  `PlacedAt` timestamp NOT NULL DEFAULT current_timestamp(),
+  `Status` varchar(10) NOT NULL DEFAULT 'WAITING',
+  `ReadyAt` timestamp NULL DEFAULT NULL,
+  `Active` tinyint(1) DEFAULT 1
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `fine_rules`
+-- (overdue fine per category; categories without a row use the built-in default)
+--
+
+DROP TABLE IF EXISTS `fine_rules`;
+CREATE TABLE `fine_rules` (
+  `CategoryID` varchar(10) NOT NULL,
+  `GraceDays` int(11) NOT NULL DEFAULT 0,
+  `DailyRateCents` int(11) NOT NULL,
+  `MaxFineCents` int(11) NOT NULL DEFAULT 0
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `fines`
+-- (fines ledger: one row per late loan, ACCRUING while outstanding, FINAL once returned)
+--
+
+DROP TABLE IF EXISTS `fines`;
+CREATE TABLE `fines` (
+  `TransactionID` varchar(10) NOT NULL,
+  `PatronID` varchar(10) NOT NULL,
+  `DaysLate` int(11) NOT NULL,
+  `AmountCents` bigint(20) NOT NULL,
+  `Status` varchar(10) NOT NULL,
+  `AssessedAt` timestamp NOT NULL DEFAULT current_timestamp()
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `reminders_sent`
+-- (due-date reminders claimed/sent, one row per loan, kind and period)
+--
+
+DROP TABLE IF EXISTS `reminders_sent`;
+CREATE TABLE `reminders_sent` (
+  `TransactionID` varchar(10) NOT NULL,
+  `Kind` varchar(10) NOT NULL,
+  `KeyDate` date NOT NULL,
+  `Status` varchar(10) NOT NULL,
+  `ClaimedAt` timestamp NOT NULL DEFAULT current_timestamp(),
+  `SentAt` timestamp NULL DEFAULT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `category_stats`
+-- (counters per category, kept in step by the application; 02_insertion.sql rebuilds them)
+--
+
+DROP TABLE IF EXISTS `category_stats`;
+CREATE TABLE `category_stats` (
+  `CategoryID` varchar(10) NOT NULL,
+  `BookCount` int(11) NOT NULL DEFAULT 0,
+  `OnLoanCount` int(11) NOT NULL DEFAULT 0,
+  `LoanTotal` bigint(20) NOT NULL DEFAULT 0
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `change_versions`
+-- (one counter per reference table, bumped by the triggers below; see migration 005)
+--
+
+DROP TABLE IF EXISTS `change_versions`;
+CREATE TABLE `change_versions` (
+  `TableName` varchar(64) NOT NULL,
+  `Version` bigint(20) NOT NULL DEFAULT 0
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+INSERT INTO `change_versions` (`TableName`) VALUES ('categories'), ('books'), ('patrons');
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `audit_log`
+-- (who created, edited or deleted which record, and who processed which loan; see migration 006)
+--
+
+DROP TABLE IF EXISTS `audit_log`;
+CREATE TABLE `audit_log` (
+  `AuditKey` bigint(20) NOT NULL,
+  `OccurredAt` datetime(3) NOT NULL,
+  `DeskID` varchar(16) NOT NULL,
+  `Actor` varchar(64) NOT NULL,
+  `Action` varchar(10) NOT NULL,
+  `Entity` varchar(10) NOT NULL,
+  `RecordID` varchar(10) NOT NULL,
+  `RelatedID` varchar(10) DEFAULT NULL,
+  `Version` int(11) DEFAULT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `circulation_daily`
+-- (loans, returns, overdue loans and distinct borrowers per day and category; see migration 008)
+--
+
+DROP TABLE IF EXISTS `circulation_daily`;
+CREATE TABLE `circulation_daily` (
+  `Day` date NOT NULL,
+  `CategoryID` varchar(10) NOT NULL,
+  `Loans` int(11) NOT NULL DEFAULT 0,
+  `Returns` int(11) NOT NULL DEFAULT 0,
+  `Overdue` int(11) NOT NULL DEFAULT 0,
+  `Patrons` varbinary(1025) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `rollup_state`
+-- (the last day each rollup has completed)
+--
+
+DROP TABLE IF EXISTS `rollup_state`;
+CREATE TABLE `rollup_state` (
+  `RollupName` varchar(32) NOT NULL,
+  `CompleteThrough` date DEFAULT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+INSERT INTO `rollup_state` (`RollupName`) VALUES ('circulation');
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `schema_history`
+-- (the migrations applied, see library.utilities.MigrationRunner: this schema already
+-- has every change of the scripts below, so they are recorded as applied with their
+-- checksums; a script added to sql/migrations/index is added here too)
+--
+
+DROP TABLE IF EXISTS `schema_history`;
+CREATE TABLE `schema_history` (
+  `Version` int(11) NOT NULL,
+  `Script` varchar(200) NOT NULL,
+  `Checksum` char(64) NOT NULL,
+  `AppliedAt` datetime NOT NULL DEFAULT current_timestamp(),
+  `ExecutionMillis` bigint(20) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+INSERT INTO `schema_history` (`Version`, `Script`, `Checksum`, `ExecutionMillis`) VALUES
+(0, '000_baseline.sql', 'b64db63d636beb1d913a69c4712043ad368e4806da80f357ee8a66f67c0be0e2', 0),
+(1, '001_patron_history_index.sql', '713a1f99fc3172291d55e69f40f46de60fa5b0d2f121bc819bef3fc9033751bd', 0),
+(2, '002_record_versions.sql', '49faa0708bb103e2100af13c4dc8c554f70348a55acc72935a4457c1e24861f6', 0),
+(3, '003_loan_lookup_indexes.sql', '06b1da7c528cfb9f50b749950ea2af4934a3717242237279b13af849af92ee2b', 0),
+(4, '004_surrogate_keys.sql', '359d495fdfc39ca6d6111d3f1a160e7ea8152227235b97a907971e3a15f75bff', 0),
+(5, '005_change_versions.sql', '72a06cf673ecf1e95b2a08ea79a9e8fd3bec7c431716660a153606b1a48b765f', 0),
+(6, '006_audit_log.sql', 'f5979ef6fac55d3dfef160dc63d92ed65345bc5fd7f27e28d65821778c3907d3', 0),
+(7, '007_book_copies.sql', '196f87dfb2a8ab7252ee982203710a6bb30f6a121cdcfaf370f40c16ba0cf705', 0),
+(8, '008_circulation_rollups.sql', '6e276a0e953d8a183902b6e2390735e657e15c41eabf3934a3717a4b7d748831', 0),
+(9, '009_category_stats_fill.sql', '8c9ffd1c96c9f3fb8820a1990b757b3497b3b325fc34197793804108c0657ee3', 0);
+
 --
 -- Indexes for table `books`
 --
 ALTER TABLE `books`
-  ADD PRIMARY KEY (`BookID`),
+  ADD PRIMARY KEY (`BookKey`),
+  ADD UNIQUE KEY `BookCode` (`BookID`),
   ADD UNIQUE KEY `ISBN` (`ISBN`),
   ADD KEY `CategoryID` (`CategoryID`);
 
+--
+-- Indexes for table `book_copies`
+--
+ALTER TABLE `book_copies`
+  ADD PRIMARY KEY (`CopyKey`),
+  ADD UNIQUE KEY `BookCopyNumber` (`BookKey`,`CopyNumber`),
+  ADD KEY `FreeCopies` (`BookKey`,`OnLoan`);
+
+--
+-- Indexes for table `book_stock`
+--
+ALTER TABLE `book_stock`
+  ADD PRIMARY KEY (`BookKey`);
+
 --
 -- Indexes for table `categories`
 --
 ALTER TABLE `categories`
-  ADD PRIMARY KEY (`CategoryID`),
+  ADD PRIMARY KEY (`CategoryKey`),
+  ADD UNIQUE KEY `CategoryCode` (`CategoryID`),
   ADD UNIQUE KEY `CategoryName` (`CategoryName`);
 
 --
 -- Indexes for table `patrons`
 --
 ALTER TABLE `patrons`
-  ADD PRIMARY KEY (`PatronID`),
+  ADD PRIMARY KEY (`PatronKey`),
+  ADD UNIQUE KEY `PatronCode` (`PatronID`),
   ADD UNIQUE KEY `Email` (`Email`),
   ADD UNIQUE KEY `PhoneNumber` (`PhoneNumber`);
 
@@ -107,22 +359,205 @@ ALTER TABLE `patrons`
 -- Indexes for table `transactions`
 --
 ALTER TABLE `transactions`
+  ADD PRIMARY KEY (`TransactionKey`),
+  ADD UNIQUE KEY `TransactionCode` (`TransactionID`),
+  ADD KEY `BookOpenLoans` (`BookKey`,`DateReturned`),
+  ADD KEY `PatronHistory` (`PatronKey`,`DateBorrowed`,`TransactionID`),
+  ADD KEY `PatronOpenLoans` (`PatronKey`,`DateReturned`,`DueDate`),
+  ADD KEY `OpenByDueDate` (`DateReturned`,`DueDate`),
+  ADD KEY `OpenByBorrowed` (`DateReturned`,`DateBorrowed`),
+  ADD KEY `CopyOpenLoans` (`CopyKey`,`DateReturned`),
+  ADD KEY `BorrowedOn` (`DateBorrowed`,`BookKey`,`PatronKey`),
+  ADD KEY `DueOn` (`DueDate`,`DateReturned`,`BookKey`);
+
+--
+-- Indexes for table `journal_replay`
+--
+ALTER TABLE `journal_replay`
+  ADD PRIMARY KEY (`DeskID`,`Sequence`);
+
+--
+-- Indexes for table `holds`
+--
+ALTER TABLE `holds`
+  ADD PRIMARY KEY (`HoldID`),
+  ADD UNIQUE KEY `BookPatronActive` (`BookID`,`PatronID`,`Active`),
+  ADD KEY `BookQueue` (`BookID`,`Status`,`Priority`,`HoldID`),
+  ADD KEY `PatronID` (`PatronID`);
+
+--
+-- Indexes for table `fine_rules`
+--
+ALTER TABLE `fine_rules`
+  ADD PRIMARY KEY (`CategoryID`);
+
+--
+-- Indexes for table `fines`
+--
+ALTER TABLE `fines`
   ADD PRIMARY KEY (`TransactionID`),
-  ADD KEY `BookID` (`BookID`),
   ADD KEY `PatronID` (`PatronID`);
 
+--
+-- Indexes for table `reminders_sent`
+--
+ALTER TABLE `reminders_sent`
+  ADD PRIMARY KEY (`TransactionID`,`Kind`,`KeyDate`);
+
+--
+-- Indexes for table `category_stats`
+--
+ALTER TABLE `category_stats`
+  ADD PRIMARY KEY (`CategoryID`);
+
+--
+-- Indexes for table `change_versions`
+--
+ALTER TABLE `change_versions`
+  ADD PRIMARY KEY (`TableName`);
+
+--
+-- Indexes for table `audit_log`
+--
+ALTER TABLE `audit_log`
+  ADD PRIMARY KEY (`AuditKey`),
+  ADD KEY `AuditByRecord` (`Entity`,`RecordID`,`OccurredAt`);
+
+--
+-- Indexes for table `circulation_daily`
+--
+ALTER TABLE `circulation_daily`
+  ADD PRIMARY KEY (`Day`,`CategoryID`);
+
+--
+-- Indexes for table `rollup_state`
+--
+ALTER TABLE `rollup_state`
+  ADD PRIMARY KEY (`RollupName`);
+
+--
+-- Indexes for table `schema_history`
+--
+ALTER TABLE `schema_history`
+  ADD PRIMARY KEY (`Version`);
+
+--
+-- AUTO_INCREMENT for table `categories`
+--
+ALTER TABLE `categories`
+  MODIFY `CategoryKey` bigint(20) NOT NULL AUTO_INCREMENT;
+
+--
+-- AUTO_INCREMENT for table `books`
+--
+ALTER TABLE `books`
+  MODIFY `BookKey` bigint(20) NOT NULL AUTO_INCREMENT;
+
+--
+-- AUTO_INCREMENT for table `book_copies`
+--
+ALTER TABLE `book_copies`
+  MODIFY `CopyKey` bigint(20) NOT NULL AUTO_INCREMENT;
+
+--
+-- AUTO_INCREMENT for table `patrons`
+--
+ALTER TABLE `patrons`
+  MODIFY `PatronKey` bigint(20) NOT NULL AUTO_INCREMENT;
+
+--
+-- AUTO_INCREMENT for table `transactions`
+--
+ALTER TABLE `transactions`
+  MODIFY `TransactionKey` bigint(20) NOT NULL AUTO_INCREMENT;
+
+--
+-- AUTO_INCREMENT for table `holds`
+--
+ALTER TABLE `holds`
+  MODIFY `HoldID` bigint(20) NOT NULL AUTO_INCREMENT;
+
+--
+-- AUTO_INCREMENT for table `audit_log`
+--
+ALTER TABLE `audit_log`
+  MODIFY `AuditKey` bigint(20) NOT NULL AUTO_INCREMENT;
+
 --
 -- Constraints for table `books`
 --
 ALTER TABLE `books`
   ADD CONSTRAINT `books_ibfk_1` FOREIGN KEY (`CategoryID`) REFERENCES `categories` (`CategoryID`);
 
+--
+-- Constraints for table `book_copies`
+--
+ALTER TABLE `book_copies`
+  ADD CONSTRAINT `book_copies_ibfk_1` FOREIGN KEY (`BookKey`) REFERENCES `books` (`BookKey`);
+
+--
+-- Constraints for table `book_stock`
+--
+ALTER TABLE `book_stock`
+  ADD CONSTRAINT `book_stock_ibfk_1` FOREIGN KEY (`BookKey`) REFERENCES `books` (`BookKey`);
+
 --
 -- Constraints for table `transactions`
 --
 ALTER TABLE `transactions`
-  ADD CONSTRAINT `transactions_ibfk_1` FOREIGN KEY (`BookID`) REFERENCES `books` (`BookID`),
-  ADD CONSTRAINT `transactions_ibfk_2` FOREIGN KEY (`PatronID`) REFERENCES `patrons` (`PatronID`);
+  ADD CONSTRAINT `transactions_ibfk_1` FOREIGN KEY (`BookKey`) REFERENCES `books` (`BookKey`),
+  ADD CONSTRAINT `transactions_ibfk_2` FOREIGN KEY (`PatronKey`) REFERENCES `patrons` (`PatronKey`),
+  ADD CONSTRAINT `transactions_ibfk_3` FOREIGN KEY (`CopyKey`) REFERENCES `book_copies` (`CopyKey`);
+
+--
+-- Constraints for table `holds`
+--
+ALTER TABLE `holds`
+  ADD CONSTRAINT `holds_ibfk_1` FOREIGN KEY (`BookID`) REFERENCES `books` (`BookID`),
+  ADD CONSTRAINT `holds_ibfk_2` FOREIGN KEY (`PatronID`) REFERENCES `patrons` (`PatronID`);
+
+--
+-- Constraints for table `fine_rules`
+--
+ALTER TABLE `fine_rules`
+  ADD CONSTRAINT `fine_rules_ibfk_1` FOREIGN KEY (`CategoryID`) REFERENCES `categories` (`CategoryID`);
+
+--
+-- Constraints for table `fines`
+--
+ALTER TABLE `fines`
+  ADD CONSTRAINT `fines_ibfk_1` FOREIGN KEY (`TransactionID`) REFERENCES `transactions` (`TransactionID`),
+  ADD CONSTRAINT `fines_ibfk_2` FOREIGN KEY (`PatronID`) REFERENCES `patrons` (`PatronID`);
+
+--
+-- Constraints for table `category_stats`
+--
+ALTER TABLE `category_stats`
+  ADD CONSTRAINT `category_stats_ibfk_1` FOREIGN KEY (`CategoryID`) REFERENCES `categories` (`CategoryID`);
+
+--
+-- Triggers: every change to the reference tables bumps their change version
+--
+CREATE TRIGGER `categories_changed_insert` AFTER INSERT ON `categories`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'categories';
+CREATE TRIGGER `categories_changed_update` AFTER UPDATE ON `categories`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'categories';
+CREATE TRIGGER `categories_changed_delete` AFTER DELETE ON `categories`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'categories';
+
+CREATE TRIGGER `books_changed_insert` AFTER INSERT ON `books`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'books';
+CREATE TRIGGER `books_changed_update` AFTER UPDATE ON `books`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'books';
+CREATE TRIGGER `books_changed_delete` AFTER DELETE ON `books`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'books';
+
+CREATE TRIGGER `patrons_changed_insert` AFTER INSERT ON `patrons`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'patrons';
+CREATE TRIGGER `patrons_changed_update` AFTER UPDATE ON `patrons`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'patrons';
+CREATE TRIGGER `patrons_changed_delete` AFTER DELETE ON `patrons`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'patrons';
 COMMIT;
 
 /*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
@@ -79,6 +79,19 @@ INSERT INTO books (BookID, Title, Author, ISBN, PublicationYear, CategoryID) VAL
 
 
 
+-- ----------------------------------------------------------------------
+-- 3b. Insert the COPIES of each book (References BookKey)
+-- One copy of every title; the two Rizal novels are class readers with several copies
+-- ----------------------------------------------------------------------
+INSERT INTO book_copies (BookKey, CopyNumber)
+SELECT b.BookKey, n.CopyNumber
+FROM books b
+JOIN (SELECT 1 AS CopyNumber UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4) n
+  ON n.CopyNumber = 1 OR b.BookID IN ('BK-0001', 'BK-0002')
+ORDER BY b.BookKey, n.CopyNumber;
+
+
+
 -- ----------------------------------------------------------------------
 -- 2. Insert Sample Data into PATRONS (Parent Table)
 -- PatronID (varchar, Primary Key), FirstName, LastName, Address, Email (Unique), PhoneNumber (int, Unique)
@@ -96,14 +109,55 @@ INSERT INTO patrons (PatronID, FirstName, LastName, PhoneNumber, Email, Address)
 
 
 -- ----------------------------------------------------------------------
--- 4. Insert Sample Data into TRANSACTIONS (References BookID and PatronID)
--- TransactionID (PK), BookID (FK), PatronID (FK), DateBorrowed, DueDate, DateReturned (NULLABLE)
+-- 4. Insert Sample Data into TRANSACTIONS (References BookKey, CopyKey and PatronKey)
+-- TransactionID (Unique), BookKey (FK), CopyKey (FK), PatronKey (FK), DateBorrowed, DueDate, DateReturned (NULLABLE)
+-- The loans are written with book and patron codes and joined to their keys (copy 1 of each book)
+-- ----------------------------------------------------------------------
+INSERT INTO transactions (TransactionID, BookKey, CopyKey, PatronKey, DateBorrowed, DueDate, DateReturned)
+SELECT l.TransactionID, b.BookKey, bc.CopyKey, p.PatronKey, l.DateBorrowed, l.DueDate, l.DateReturned
+FROM (
+  SELECT 'T-0001' AS TransactionID, 'BK-0008' AS BookID, 'PT-0001' AS PatronID,
+         '2025-12-10' AS DateBorrowed, '2025-12-24' AS DueDate, NULL AS DateReturned  -- Shinichi borrows Sherlock Holmes (still out)
+  UNION ALL SELECT 'T-0002', 'BK-0006', 'PT-0005', '2025-11-01', '2025-11-15', '2025-11-12' -- Ran borrows Little Prince (returned)
+  UNION ALL SELECT 'T-0003', 'BK-0001', 'PT-0002', '2025-11-21', '2025-12-05', NULL         -- Heiji borrows Noli Me Tangere (overdue, due 12/05)
+  UNION ALL SELECT 'T-0004', 'BK-0004', 'PT-0006', '2025-12-08', '2025-12-22', NULL         -- Kazuha borrows Florante at Laura (still out)
+  UNION ALL SELECT 'T-0005', 'BK-0012', 'PT-0004', '2025-10-15', '2025-10-29', '2025-10-25' -- Kaito borrows Moomin book (returned)
+  UNION ALL SELECT 'T-0006', 'BK-0005', 'PT-0007', '2025-12-13', '2025-12-27', NULL         -- Aoko borrows All Tomorrows (still out)
+) l
+JOIN books b ON b.BookID = l.BookID
+JOIN book_copies bc ON bc.BookKey = b.BookKey AND bc.CopyNumber = 1
+JOIN patrons p ON p.PatronID = l.PatronID
+ORDER BY l.TransactionID;
+
+
+
+-- ----------------------------------------------------------------------
+-- 5. Build the per-category counters from the rows above
+-- (same statement as CategoryStatsDAO.REBUILD_SQL)
+-- ----------------------------------------------------------------------
+INSERT INTO category_stats (CategoryID, BookCount, OnLoanCount, LoanTotal)
+SELECT c.CategoryID, COALESCE(bk.Books, 0), COALESCE(ln.OnLoan, 0), COALESCE(ln.Total, 0)
+FROM categories c
+LEFT JOIN (SELECT CategoryID, COUNT(*) AS Books FROM books GROUP BY CategoryID) bk
+  ON bk.CategoryID = c.CategoryID
+LEFT JOIN (SELECT b.CategoryID, SUM(t.DateReturned IS NULL) AS OnLoan, COUNT(*) AS Total
+           FROM transactions t JOIN books b ON b.BookKey = t.BookKey GROUP BY b.CategoryID) ln
+  ON ln.CategoryID = c.CategoryID
+ON DUPLICATE KEY UPDATE BookCount = VALUES(BookCount), OnLoanCount = VALUES(OnLoanCount),
+  LoanTotal = VALUES(LoanTotal);
+
+
+
+-- ----------------------------------------------------------------------
+-- 6. Mark the copies on loan and build the per-title counters
+-- (same statements as BookStockDAO.REBUILD_SQL)
 -- ----------------------------------------------------------------------
--- P0001 borrows B0003 (still out)
-INSERT INTO transactions (TransactionID, BookID, PatronID, DateBorrowed, DueDate, DateReturned) VALUES
-('T-0001', 'BK-0008', 'PT-0001', '2025-12-10', '2025-12-24', NULL),         -- Shinichi borrows Sherlock Holmes (still out)
-('T-0002', 'BK-0006', 'PT-0005', '2025-11-01', '2025-11-15', '2025-11-12'), -- Ran borrows Little Prince (returned)
-('T-0003', 'BK-0001', 'PT-0002', '2025-11-21', '2025-12-05', NULL),         -- Heiji borrows Noli Me Tangere (overdue, due 12/05)
-('T-0004', 'BK-0004', 'PT-0006', '2025-12-08', '2025-12-22', NULL),         -- Kazuha borrows Florante at Laura (still out)
-('T-0005', 'BK-0012', 'PT-0004', '2025-10-15', '2025-10-29', '2025-10-25'), -- Kaito borrows Moomin book (returned)
-('T-0006', 'BK-0005', 'PT-0007', '2025-12-13', '2025-12-27', NULL);         -- Aoko borrows All Tomorrows (still out)
\ No newline at end of file
+UPDATE book_copies c
+SET c.OnLoan = EXISTS (SELECT 1 FROM transactions t WHERE t.CopyKey = c.CopyKey AND t.DateReturned IS NULL);
+
+INSERT INTO book_stock (BookKey, TotalCopies, AvailableCopies)
+SELECT b.BookKey, COUNT(c.CopyKey), COALESCE(SUM(c.OnLoan = 0), 0)
+FROM books b
+LEFT JOIN book_copies c ON c.BookKey = b.BookKey
+GROUP BY b.BookKey
+ON DUPLICATE KEY UPDATE TotalCopies = VALUES(TotalCopies), AvailableCopies = VALUES(AvailableCopies);
@@ -0,0 +1,81 @@
+--
+-- Baseline: the tables added before the migrations existed
+--
+-- The offline journal, holds, fines, reminders and category counters were added to
+-- 01_creation.sql only, so a database upgraded with MigrationRunner alone had none of
+-- them, and returns (fines), borrows (holds, category_stats) and the journal replay
+-- failed on it. This script creates them with the keys and foreign keys of
+-- 01_creation.sql. It runs before 001, so it only refers to the columns every version
+-- of the schema has (the `BookID`, `PatronID` and `TransactionID` codes).
+--
+-- The new `category_stats` table is empty; migration 009 fills it.
+--
+-- Safe to run twice and on a database created from 01_creation.sql.
+--
+
+CREATE TABLE IF NOT EXISTS `journal_replay` (
+  `DeskID` varchar(16) NOT NULL,
+  `Sequence` bigint(20) NOT NULL,
+  `TransactionID` varchar(10) DEFAULT NULL,
+  `Outcome` varchar(10) NOT NULL,
+  `AppliedAt` timestamp NOT NULL DEFAULT current_timestamp(),
+  PRIMARY KEY (`DeskID`,`Sequence`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `holds` (
+  `HoldID` bigint(20) NOT NULL AUTO_INCREMENT,
+  `BookID` varchar(10) NOT NULL,
+  `PatronID` varchar(10) NOT NULL,
+  `Priority` int(11) NOT NULL DEFAULT 0,
+  `PlacedAt` timestamp NOT NULL DEFAULT current_timestamp(),
+  `Status` varchar(10) NOT NULL DEFAULT 'WAITING',
+  `ReadyAt` timestamp NULL DEFAULT NULL,
+  `Active` tinyint(1) DEFAULT 1,
+  PRIMARY KEY (`HoldID`),
+  UNIQUE KEY `BookPatronActive` (`BookID`,`PatronID`,`Active`),
+  KEY `BookQueue` (`BookID`,`Status`,`Priority`,`HoldID`),
+  KEY `PatronID` (`PatronID`),
+  CONSTRAINT `holds_ibfk_1` FOREIGN KEY (`BookID`) REFERENCES `books` (`BookID`),
+  CONSTRAINT `holds_ibfk_2` FOREIGN KEY (`PatronID`) REFERENCES `patrons` (`PatronID`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `fine_rules` (
+  `CategoryID` varchar(10) NOT NULL,
+  `GraceDays` int(11) NOT NULL DEFAULT 0,
+  `DailyRateCents` int(11) NOT NULL,
+  `MaxFineCents` int(11) NOT NULL DEFAULT 0,
+  PRIMARY KEY (`CategoryID`),
+  CONSTRAINT `fine_rules_ibfk_1` FOREIGN KEY (`CategoryID`) REFERENCES `categories` (`CategoryID`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `fines` (
+  `TransactionID` varchar(10) NOT NULL,
+  `PatronID` varchar(10) NOT NULL,
+  `DaysLate` int(11) NOT NULL,
+  `AmountCents` bigint(20) NOT NULL,
+  `Status` varchar(10) NOT NULL,
+  `AssessedAt` timestamp NOT NULL DEFAULT current_timestamp(),
+  PRIMARY KEY (`TransactionID`),
+  KEY `PatronID` (`PatronID`),
+  CONSTRAINT `fines_ibfk_1` FOREIGN KEY (`TransactionID`) REFERENCES `transactions` (`TransactionID`),
+  CONSTRAINT `fines_ibfk_2` FOREIGN KEY (`PatronID`) REFERENCES `patrons` (`PatronID`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `reminders_sent` (
+  `TransactionID` varchar(10) NOT NULL,
+  `Kind` varchar(10) NOT NULL,
+  `KeyDate` date NOT NULL,
+  `Status` varchar(10) NOT NULL,
+  `ClaimedAt` timestamp NOT NULL DEFAULT current_timestamp(),
+  `SentAt` timestamp NULL DEFAULT NULL,
+  PRIMARY KEY (`TransactionID`,`Kind`,`KeyDate`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `category_stats` (
+  `CategoryID` varchar(10) NOT NULL,
+  `BookCount` int(11) NOT NULL DEFAULT 0,
+  `OnLoanCount` int(11) NOT NULL DEFAULT 0,
+  `LoanTotal` bigint(20) NOT NULL DEFAULT 0,
+  PRIMARY KEY (`CategoryID`),
+  CONSTRAINT `category_stats_ibfk_1` FOREIGN KEY (`CategoryID`) REFERENCES `categories` (`CategoryID`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
@@ -0,0 +1,16 @@
+--
+-- Patron loan history index
+-- (keyset paging of one patron's loans, newest first: TransactionDAO.readPatronHistory)
+--
+-- Replaces the single-column `PatronID` key, which the new key also covers
+-- (lookups by PatronID and the `transactions_ibfk_2` foreign key use its prefix).
+-- Both changes are in one statement, so the foreign key is never left without an index.
+-- MariaDB before 10.8 ignores DESC in key definitions; newest-first pages are read
+-- with a backward scan of the ascending key, which is just as cheap.
+-- Built in place without blocking reads or writes (LOCK=NONE).
+--
+
+ALTER TABLE `transactions`
+  ADD KEY IF NOT EXISTS `PatronHistory` (`PatronID`,`DateBorrowed`,`TransactionID`),
+  DROP KEY IF EXISTS `PatronID`,
+  ALGORITHM=INPLACE, LOCK=NONE;
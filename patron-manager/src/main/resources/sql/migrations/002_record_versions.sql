@@ -0,0 +1,14 @@
+--
+-- Record versions for optimistic concurrency
+-- (BookDAO.updateBook / PatronDAO.updatePatron only write a row whose `Version` is
+--  still the one the desk read, and bump it; a mismatch is reported as a conflict)
+--
+-- Existing rows start at version 0. Desks still running the previous release
+-- neither check nor bump the version, so upgrade every desk.
+--
+
+ALTER TABLE `books`
+  ADD COLUMN IF NOT EXISTS `Version` int(11) NOT NULL DEFAULT 0;
+
+ALTER TABLE `patrons`
+  ADD COLUMN IF NOT EXISTS `Version` int(11) NOT NULL DEFAULT 0;
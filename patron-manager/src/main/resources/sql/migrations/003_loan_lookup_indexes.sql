@@ -0,0 +1,31 @@
+--
+-- Indexes for the open-loan lookups
+-- (check with: java ... -m application/library.tools.QueryPlanReport)
+--
+--   BookOpenLoans    TransactionDAO.isBookCurrentlyBorrowed, CategoryStatsDAO.moveBook(s):
+--                    the loans of a book, open ones first; covers the loan counts.
+--                    Replaces the single-column `BookID` key, which it also covers
+--                    (the `transactions_ibfk_1` foreign key uses its prefix).
+--   PatronOpenLoans  TransactionDAO.readOutstandingLoans(patronID), the kiosk "my loans":
+--                    a patron's open loans in due-date order, without reading the
+--                    patron's whole history.
+--   OpenByDueDate    ReminderDAO.readCandidates. Already in 01_creation.sql; older
+--                    databases were told to add it by hand.
+--   OpenByBorrowed   TransactionDAO.readOutstandingLoans(), the Transactions tab:
+--                    open loans newest first without sorting them.
+--
+-- Built in place without blocking reads or writes (LOCK=NONE). Each ALTER skips the
+-- keys that already exist, so the script is safe on databases created from
+-- 01_creation.sql.
+--
+
+ALTER TABLE `transactions`
+  ADD KEY IF NOT EXISTS `BookOpenLoans` (`BookID`,`DateReturned`),
+  DROP KEY IF EXISTS `BookID`,
+  ALGORITHM=INPLACE, LOCK=NONE;
+
+ALTER TABLE `transactions`
+  ADD KEY IF NOT EXISTS `PatronOpenLoans` (`PatronID`,`DateReturned`,`DueDate`),
+  ADD KEY IF NOT EXISTS `OpenByDueDate` (`DateReturned`,`DueDate`),
+  ADD KEY IF NOT EXISTS `OpenByBorrowed` (`DateReturned`,`DateBorrowed`),
+  ALGORITHM=INPLACE, LOCK=NONE;
@@ -0,0 +1,81 @@
+--
+-- Integer surrogate keys
+--
+-- Books, patrons, categories and transactions get a bigint primary key (BookKey,
+-- PatronKey, CategoryKey, TransactionKey), numbered in code order. The codes
+-- (BK-0001, PT-0001, ...) stay as unique display columns: desks, kiosks and receipts
+-- keep using them, and holds, fines, fine rules and reminders still refer to them.
+--
+-- Loans refer to their book and patron by key: transactions.BookID and PatronID are
+-- replaced by BookKey and PatronKey, so the loan joins and the loan indexes compare
+-- 8-byte integers instead of utf8mb4 strings, and every secondary index of these
+-- tables carries an 8-byte primary key instead of a varchar one.
+--
+-- NOT ONLINE: numbering existing rows and rewriting `transactions` blocks writes to
+-- these tables while it runs. On a large database apply it out of hours with
+-- MigrationRunner before upgrading the desks.
+--
+-- Safe to run twice and on a database created from 01_creation.sql: the transactions
+-- rewrite only runs while the old `BookID` column is still there.
+--
+
+-- 1. The codes get their own unique keys, so the foreign keys that refer to them keep
+--    an index once the primary keys move to the new columns
+ALTER TABLE `categories` ADD UNIQUE KEY IF NOT EXISTS `CategoryCode` (`CategoryID`), ALGORITHM=INPLACE, LOCK=NONE;
+ALTER TABLE `books` ADD UNIQUE KEY IF NOT EXISTS `BookCode` (`BookID`), ALGORITHM=INPLACE, LOCK=NONE;
+ALTER TABLE `patrons` ADD UNIQUE KEY IF NOT EXISTS `PatronCode` (`PatronID`), ALGORITHM=INPLACE, LOCK=NONE;
+ALTER TABLE `transactions` ADD UNIQUE KEY IF NOT EXISTS `TransactionCode` (`TransactionID`), ALGORITHM=INPLACE, LOCK=NONE;
+
+-- 2. Surrogate primary keys (existing rows are numbered in the order of the old key)
+ALTER TABLE `categories`
+  ADD COLUMN IF NOT EXISTS `CategoryKey` bigint(20) NOT NULL AUTO_INCREMENT FIRST,
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`CategoryKey`);
+
+ALTER TABLE `books`
+  ADD COLUMN IF NOT EXISTS `BookKey` bigint(20) NOT NULL AUTO_INCREMENT FIRST,
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`BookKey`);
+
+ALTER TABLE `patrons`
+  ADD COLUMN IF NOT EXISTS `PatronKey` bigint(20) NOT NULL AUTO_INCREMENT FIRST,
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`PatronKey`);
+
+-- 3. Loans refer to books and patrons by key
+SET @legacy_loans = (SELECT COUNT(*) FROM information_schema.COLUMNS
+                     WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'transactions' AND COLUMN_NAME = 'BookID');
+
+ALTER TABLE `transactions`
+  ADD COLUMN IF NOT EXISTS `BookKey` bigint(20) DEFAULT NULL AFTER `TransactionID`,
+  ADD COLUMN IF NOT EXISTS `PatronKey` bigint(20) DEFAULT NULL AFTER `BookKey`;
+
+EXECUTE IMMEDIATE IF(@legacy_loans,
+  'UPDATE `transactions` t JOIN `books` b ON b.`BookID` = t.`BookID` JOIN `patrons` p ON p.`PatronID` = t.`PatronID`
+   SET t.`BookKey` = b.`BookKey`, t.`PatronKey` = p.`PatronKey`',
+  'DO 0');
+
+-- The old constraints go first: a foreign key cannot be dropped and added in one COPY ALTER
+EXECUTE IMMEDIATE IF(@legacy_loans,
+  'ALTER TABLE `transactions` DROP FOREIGN KEY IF EXISTS `transactions_ibfk_1`, DROP FOREIGN KEY IF EXISTS `transactions_ibfk_2`',
+  'DO 0');
+
+-- One statement, so the table is never left half converted
+EXECUTE IMMEDIATE IF(@legacy_loans,
+  'ALTER TABLE `transactions`
+     DROP KEY IF EXISTS `BookOpenLoans`,
+     DROP KEY IF EXISTS `PatronHistory`,
+     DROP KEY IF EXISTS `PatronOpenLoans`,
+     DROP COLUMN `BookID`,
+     DROP COLUMN `PatronID`,
+     MODIFY `BookKey` bigint(20) NOT NULL,
+     MODIFY `PatronKey` bigint(20) NOT NULL,
+     ADD COLUMN `TransactionKey` bigint(20) NOT NULL AUTO_INCREMENT FIRST,
+     DROP PRIMARY KEY,
+     ADD PRIMARY KEY (`TransactionKey`),
+     ADD KEY `BookOpenLoans` (`BookKey`,`DateReturned`),
+     ADD KEY `PatronHistory` (`PatronKey`,`DateBorrowed`,`TransactionID`),
+     ADD KEY `PatronOpenLoans` (`PatronKey`,`DateReturned`,`DueDate`),
+     ADD CONSTRAINT `transactions_ibfk_1` FOREIGN KEY (`BookKey`) REFERENCES `books` (`BookKey`),
+     ADD CONSTRAINT `transactions_ibfk_2` FOREIGN KEY (`PatronKey`) REFERENCES `patrons` (`PatronKey`)',
+  'DO 0');
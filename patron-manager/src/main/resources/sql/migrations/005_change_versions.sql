@@ -0,0 +1,40 @@
+--
+-- Change versions of the reference data
+--
+-- One counter per table, bumped by a trigger on every insert, update and delete in
+-- `categories`, `books` and `patrons`, whoever makes the change (a desk, the kiosk
+-- API or a bulk load). A desk saves these tables to a local snapshot stamped with
+-- the counters (library.utilities.ReferenceSnapshot). At startup it shows the
+-- snapshot and re-reads only the tables whose counter has moved since.
+--
+-- Safe to run twice and on a database created from 01_creation.sql.
+--
+
+CREATE TABLE IF NOT EXISTS `change_versions` (
+  `TableName` varchar(64) NOT NULL,
+  `Version` bigint(20) NOT NULL DEFAULT 0,
+  PRIMARY KEY (`TableName`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+INSERT IGNORE INTO `change_versions` (`TableName`) VALUES ('categories'), ('books'), ('patrons');
+
+CREATE TRIGGER IF NOT EXISTS `categories_changed_insert` AFTER INSERT ON `categories`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'categories';
+CREATE TRIGGER IF NOT EXISTS `categories_changed_update` AFTER UPDATE ON `categories`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'categories';
+CREATE TRIGGER IF NOT EXISTS `categories_changed_delete` AFTER DELETE ON `categories`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'categories';
+
+CREATE TRIGGER IF NOT EXISTS `books_changed_insert` AFTER INSERT ON `books`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'books';
+CREATE TRIGGER IF NOT EXISTS `books_changed_update` AFTER UPDATE ON `books`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'books';
+CREATE TRIGGER IF NOT EXISTS `books_changed_delete` AFTER DELETE ON `books`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'books';
+
+CREATE TRIGGER IF NOT EXISTS `patrons_changed_insert` AFTER INSERT ON `patrons`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'patrons';
+CREATE TRIGGER IF NOT EXISTS `patrons_changed_update` AFTER UPDATE ON `patrons`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'patrons';
+CREATE TRIGGER IF NOT EXISTS `patrons_changed_delete` AFTER DELETE ON `patrons`
+  FOR EACH ROW UPDATE `change_versions` SET `Version` = `Version` + 1 WHERE `TableName` = 'patrons';
@@ -0,0 +1,33 @@
+--
+-- Audit log
+--
+-- One row per create, edit or delete of a book, patron or category and per loan or
+-- return, written by the desk that made the change: who (`Actor`, the desk's user),
+-- where (`DeskID`, as in `journal_replay`) and when. Rows are inserted in batches
+-- by library.audit.AuditLog after the change is committed, so they can trail it by
+-- a fraction of a second; a desk that cannot reach the database writes them to
+-- local files instead (~/.patron-manager/audit).
+--
+--   RecordID   the book, patron or category code, or the loan's TransactionID
+--   RelatedID  the book's category (the new one for an edit or a move), or the
+--              loan's book
+--   Version    the book's or patron's version after the change, else NULL
+--
+-- AuditByRecord answers "who changed this record, and when".
+--
+-- Safe to run twice and on a database created from 01_creation.sql.
+--
+
+CREATE TABLE IF NOT EXISTS `audit_log` (
+  `AuditKey` bigint(20) NOT NULL AUTO_INCREMENT,
+  `OccurredAt` datetime(3) NOT NULL,
+  `DeskID` varchar(16) NOT NULL,
+  `Actor` varchar(64) NOT NULL,
+  `Action` varchar(10) NOT NULL,
+  `Entity` varchar(10) NOT NULL,
+  `RecordID` varchar(10) NOT NULL,
+  `RelatedID` varchar(10) DEFAULT NULL,
+  `Version` int(11) DEFAULT NULL,
+  PRIMARY KEY (`AuditKey`),
+  KEY `AuditByRecord` (`Entity`,`RecordID`,`OccurredAt`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
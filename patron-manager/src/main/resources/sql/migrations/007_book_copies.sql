@@ -0,0 +1,71 @@
+--
+-- Copies of a title
+--
+-- A `books` row is a title; `book_copies` holds its physical copies, so twelve copies
+-- of a textbook are one catalog row (one ISBN) with twelve copy rows. A loan records
+-- the copy lent (`transactions.CopyKey`), and `OnLoan` marks the copies that are out.
+--
+-- `book_stock` keeps two counters per title: copies owned and copies on the shelf.
+-- They are maintained in the borrow and return transactions, in the same way as
+-- `category_stats`. A borrow decrements `AvailableCopies` only while it is above zero,
+-- then flags one free copy (FreeCopies index) in a single UPDATE. The Books tab reads
+-- the counters with the catalog, so nothing counts loans or copies at read time.
+-- The counters are kept out of `books` so that loans do not bump the catalog's change
+-- version (migration 005) and force every desk to re-read the whole catalog.
+--
+-- Existing titles get one copy each. Every loan, open or returned, is assigned that
+-- copy, and the counters are built from the open loans.
+--
+-- NOT ONLINE: filling and making `transactions.CopyKey` NOT NULL rewrites the table
+-- and blocks loans while it runs. Apply it out of hours with MigrationRunner, and
+-- upgrade every desk with it: older desks write loans without a copy.
+--
+-- Safe to run twice and on a database created from 01_creation.sql.
+--
+
+CREATE TABLE IF NOT EXISTS `book_copies` (
+  `CopyKey` bigint(20) NOT NULL AUTO_INCREMENT,
+  `BookKey` bigint(20) NOT NULL,
+  `CopyNumber` int(11) NOT NULL,
+  `OnLoan` tinyint(1) NOT NULL DEFAULT 0,
+  PRIMARY KEY (`CopyKey`),
+  UNIQUE KEY `BookCopyNumber` (`BookKey`,`CopyNumber`),
+  KEY `FreeCopies` (`BookKey`,`OnLoan`),
+  CONSTRAINT `book_copies_ibfk_1` FOREIGN KEY (`BookKey`) REFERENCES `books` (`BookKey`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS `book_stock` (
+  `BookKey` bigint(20) NOT NULL,
+  `TotalCopies` int(11) NOT NULL DEFAULT 0,
+  `AvailableCopies` int(11) NOT NULL DEFAULT 0,
+  PRIMARY KEY (`BookKey`),
+  CONSTRAINT `book_stock_ibfk_1` FOREIGN KEY (`BookKey`) REFERENCES `books` (`BookKey`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- 1. One copy per existing title
+INSERT IGNORE INTO `book_copies` (`BookKey`, `CopyNumber`) SELECT `BookKey`, 1 FROM `books`;
+
+-- 2. Loans refer to the copy lent
+ALTER TABLE `transactions` ADD COLUMN IF NOT EXISTS `CopyKey` bigint(20) DEFAULT NULL AFTER `BookKey`;
+
+UPDATE `transactions` t
+  JOIN `book_copies` c ON c.`BookKey` = t.`BookKey` AND c.`CopyNumber` = 1
+  SET t.`CopyKey` = c.`CopyKey`
+  WHERE t.`CopyKey` IS NULL;
+
+ALTER TABLE `transactions`
+  MODIFY `CopyKey` bigint(20) NOT NULL,
+  ADD KEY IF NOT EXISTS `CopyOpenLoans` (`CopyKey`,`DateReturned`);
+
+ALTER TABLE `transactions`
+  ADD CONSTRAINT IF NOT EXISTS `transactions_ibfk_3` FOREIGN KEY (`CopyKey`) REFERENCES `book_copies` (`CopyKey`);
+
+-- 3. Copies out and counters, from the open loans (same statements as BookStockDAO.REBUILD_SQL)
+UPDATE `book_copies` c
+  SET c.`OnLoan` = EXISTS (SELECT 1 FROM `transactions` t WHERE t.`CopyKey` = c.`CopyKey` AND t.`DateReturned` IS NULL);
+
+INSERT INTO `book_stock` (`BookKey`, `TotalCopies`, `AvailableCopies`)
+  SELECT b.`BookKey`, COUNT(c.`CopyKey`), COALESCE(SUM(c.`OnLoan` = 0), 0)
+  FROM `books` b LEFT JOIN `book_copies` c ON c.`BookKey` = b.`BookKey`
+  GROUP BY b.`BookKey`
+  ON DUPLICATE KEY UPDATE `TotalCopies` = VALUES(`TotalCopies`), `AvailableCopies` = VALUES(`AvailableCopies`);
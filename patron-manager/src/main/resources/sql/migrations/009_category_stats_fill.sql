@@ -0,0 +1,24 @@
+--
+-- Category counters for databases upgraded through the migrations
+--
+-- Migration 000 creates `category_stats` empty on a database that did not have it.
+-- This script adds the missing row of every category, counted from `books` and the
+-- loans as CategoryStatsDAO.rebuild does. Rows that already exist are kept (INSERT
+-- IGNORE): on a database whose counters were maintained all along it adds nothing.
+--
+-- NOT ONLINE: counting reads the whole of `transactions` and holds shared locks on
+-- the rows it reads, which blocks returns while it runs. Apply it out of hours with
+-- MigrationRunner.
+--
+-- Safe to run twice and on a database created from 01_creation.sql.
+--
+
+INSERT IGNORE INTO `category_stats` (`CategoryID`, `BookCount`, `OnLoanCount`, `LoanTotal`)
+SELECT c.`CategoryID`, COALESCE(bk.Books, 0), COALESCE(ln.OnLoan, 0), COALESCE(ln.Total, 0)
+FROM `categories` c
+LEFT JOIN (SELECT `CategoryID`, COUNT(*) AS Books FROM `books` GROUP BY `CategoryID`) bk
+  ON bk.`CategoryID` = c.`CategoryID`
+LEFT JOIN (SELECT b.`CategoryID`, SUM(t.`DateReturned` IS NULL) AS OnLoan, COUNT(*) AS Total
+           FROM `transactions` t JOIN `books` b ON b.`BookKey` = t.`BookKey`
+           GROUP BY b.`CategoryID`) ln
+  ON ln.`CategoryID` = c.`CategoryID`;